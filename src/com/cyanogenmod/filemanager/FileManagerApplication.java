@@ -22,13 +22,19 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.pm.ApplicationInfo;
+import android.os.Build;
 import android.util.Log;
 
+import com.cyanogenmod.filemanager.commands.shell.CommandRegistry;
+import com.cyanogenmod.filemanager.commands.shell.ListCommand;
+import com.cyanogenmod.filemanager.commands.shell.MachineListingCheckCommand;
 import com.cyanogenmod.filemanager.console.Console;
 import com.cyanogenmod.filemanager.console.ConsoleAllocException;
 import com.cyanogenmod.filemanager.console.ConsoleBuilder;
 import com.cyanogenmod.filemanager.console.ConsoleHolder;
+import com.cyanogenmod.filemanager.console.ConsoleMetrics;
 import com.cyanogenmod.filemanager.console.shell.PrivilegedConsole;
+import com.cyanogenmod.filemanager.console.shell.ShellConsole;
 import com.cyanogenmod.filemanager.preferences.AccessMode;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
@@ -40,9 +46,13 @@ import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * A class that wraps the information of the application (constants,
@@ -54,9 +64,15 @@ public final class FileManagerApplication extends Application {
     private static final String TAG = "FileManagerApplication"; //$NON-NLS-1$
 
     private static boolean DEBUG = false;
-    private static Properties sSystemProperties;
 
-    private static Map<String, Boolean> sOptionalCommandsMap;
+    // The file of the cache of the probes of the device (in the files directory)
+    private static final String PROBE_CACHE_FILE = "probes.properties"; //$NON-NLS-1$
+    private static final String FEATURE_MACHINE_LISTING = "lsmachine"; //$NON-NLS-1$
+    private static volatile Properties sSystemProperties;
+
+    private static volatile Map<String, Boolean> sOptionalCommandsMap;
+    // Released when the optional commands were checked
+    private static final CountDownLatch OPTIONAL_COMMANDS_LOADED = new CountDownLatch(1);
 
     /**
      * A constant that contains the main process name.
@@ -66,7 +82,7 @@ public final class FileManagerApplication extends Application {
 
     //Static resources
     private static FileManagerApplication sApp;
-    private static ConsoleHolder sBackgroundConsole;
+    private static volatile ConsoleHolder sBackgroundConsole;
 
     private static boolean sIsDebuggable = false;
     private static boolean sIsDeviceRooted = false;
@@ -98,6 +114,11 @@ public final class FileManagerApplication extends Application {
                                 c.reloadTrace();
                             }
                         } catch (Throwable _throw) {/**NON BLOCK**/}
+
+                    } else if (key != null &&
+                        key.compareTo(FileManagerSettings.SETTINGS_CONSOLE_METRICS.getId()) == 0) {
+                        // The console metrics setting has changed
+                        loadConsoleMetrics();
                     }
                 }
             }
@@ -221,6 +242,16 @@ public final class FileManagerApplication extends Application {
         registerReceiver(this.mUninstallReceiver, unfilter);
     }
 
+    /**
+     * Method that enables or disables the record of the metrics of the consoles.
+     */
+    private static void loadConsoleMetrics() {
+        ConsoleMetrics.setEnabled(Preferences.getSharedPreferences().getBoolean(
+                FileManagerSettings.SETTINGS_CONSOLE_METRICS.getId(),
+                ((Boolean)FileManagerSettings.SETTINGS_CONSOLE_METRICS.
+                        getDefaultValue()).booleanValue()));
+    }
+
     /**
      * Method that initializes the application.
      */
@@ -228,9 +259,21 @@ public final class FileManagerApplication extends Application {
         //Save the static application reference
         sApp = this;
 
-        // Read the system properties
-        sSystemProperties = new Properties();
-        readSystemProperties();
+        // Read the system properties and the optional commands. The probes of the last
+        // launch are used (if the build didn't change) while they are validated
+        final ProbeCache probeCache = new ProbeCache(new File(getFilesDir(), PROBE_CACHE_FILE));
+        final boolean cached = probeCache.load(Build.FINGERPRINT);
+        if (cached) {
+            sSystemProperties = probeCache.getSystemProperties();
+            sOptionalCommandsMap = probeCache.getOptionalCommands();
+            OPTIONAL_COMMANDS_LOADED.countDown();
+            ListCommand.setMachineListingSupported(
+                    Boolean.TRUE.equals(
+                            probeCache.getFeatures().get(FEATURE_MACHINE_LISTING)));
+        } else {
+            sSystemProperties = new Properties();
+            readSystemProperties();
+        }
 
         // Check if the application is debuggable
         sIsDebuggable = (0 != (getApplicationInfo().flags &= ApplicationInfo.FLAG_DEBUGGABLE));
@@ -238,12 +281,31 @@ public final class FileManagerApplication extends Application {
         // Check if the device is rooted
         sIsDeviceRooted = areShellCommandsPresent();
 
-        // Check optional commands
-        loadOptionalCommands();
+        // Check optional commands and validate the probes (in background. If the probes
+        // aren't cached, the queries of the optional commands wait for the check)
+        Thread probes = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    validateProbes(probeCache, cached);
+                } finally {
+                    // Never block the queries of the optional commands
+                    OPTIONAL_COMMANDS_LOADED.countDown();
+                }
+            }
+        }, "Probes"); //$NON-NLS-1$
+        probes.setDaemon(true);
+        probes.start();
+
+        // Load the command definitions
+        CommandRegistry.getInstance(getResources());
 
         //Sets the default preferences if no value is set yet
         Preferences.loadDefaults();
 
+        // Record the console metrics?
+        loadConsoleMetrics();
+
         // Read AIDs
         AIDHelper.getAIDs(getApplicationContext(), true);
 
@@ -268,8 +330,11 @@ public final class FileManagerApplication extends Application {
         Theme theme = ThemeManager.getCurrentTheme(getApplicationContext());
         theme.setBaseTheme(getApplicationContext(), false);
 
-        //Create a console for background tasks
-        allocBackgroundConsole(getApplicationContext());
+        //Create the default console and the console for background tasks. If the
+        //warm-up is disabled the default console is created when it is used
+        if (!ConsoleBuilder.warmUp(getApplicationContext())) {
+            allocBackgroundConsole(getApplicationContext());
+        }
 
         //Force the load of mime types
         try {
@@ -314,10 +379,18 @@ public final class FileManagerApplication extends Application {
      * @return boolean If the command is present
      */
     public static boolean hasOptionalCommand(String commandId) {
-        if (!sOptionalCommandsMap.containsKey(commandId)) {
+        try {
+            OPTIONAL_COMMANDS_LOADED.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return false;
         }
-        return sOptionalCommandsMap.get(commandId).booleanValue();
+        Map<String, Boolean> optionalCommands = sOptionalCommandsMap;
+        if (optionalCommands == null) {
+            return false;
+        }
+        Boolean found = optionalCommands.get(commandId);
+        return found != null && found.booleanValue();
     }
 
     /**
@@ -362,6 +435,12 @@ public final class FileManagerApplication extends Application {
      * @param ctx The current context
      */
     private static synchronized void allocBackgroundConsole(Context ctx) {
+        // Other thread could have allocated the console while this thread was waiting
+        if (sBackgroundConsole != null &&
+            sBackgroundConsole.getConsole() != null &&
+            sBackgroundConsole.getConsole().isActive()) {
+            return;
+        }
         try {
             // Dispose the current console
             if (sBackgroundConsole != null) {
@@ -492,36 +571,133 @@ public final class FileManagerApplication extends Application {
         return false;
     }
 
-    @SuppressWarnings("boxing")
-    private void loadOptionalCommands() {
+    /**
+     * Method that probes the device again if the probed files changed since the probes
+     * were cached, and caches the new probes.
+     *
+     * @param probeCache The cache of the probes
+     * @param cached If the probes were loaded from the cache
+     * @hide
+     */
+    void validateProbes(ProbeCache probeCache, boolean cached) {
+        Map<String, String> commands = getOptionalCommands();
+        MachineListingCheckCommand machineListingCheck = null;
+        try {
+            machineListingCheck = new MachineListingCheckCommand();
+        } catch (Exception e) {
+            Log.w(TAG, "Invalid machine listing check", e); //$NON-NLS-1$
+        }
+        List<File> files = new ArrayList<File>();
+        files.add(new File(getString(R.string.system_props_file)));
+        Iterator<String> it = commands.values().iterator();
+        while (it.hasNext()) {
+            files.add(new File(it.next()));
+        }
+        if (machineListingCheck != null) {
+            files.add(new File(machineListingCheck.getCommand()));
+        }
+        String filesFingerprint = ProbeCache.getFilesFingerprint(files);
+        if (cached && filesFingerprint.compareTo(probeCache.getFilesFingerprint()) == 0) {
+            // The cached probes are still valid
+            return;
+        }
+        if (cached) {
+            readSystemProperties();
+        }
+        loadOptionalCommands(commands);
+
+        Map<String, Boolean> features = new HashMap<String, Boolean>();
+        boolean machineListing = checkMachineListing(machineListingCheck);
+        ListCommand.setMachineListingSupported(machineListing);
+        features.put(FEATURE_MACHINE_LISTING, Boolean.valueOf(machineListing));
+        probeCache.store(Build.FINGERPRINT, filesFingerprint,
+                sOptionalCommandsMap, features, sSystemProperties);
+    }
+
+    /**
+     * Method that checks if the <code>find</code> command of the device supports the
+     * machine listing format of the shell listings. The check is executed in the
+     * background console, so it runs with the identity of the shell listings.
+     *
+     * @param check The check of the machine listing format (<code>null</code> if the
+     * check isn't defined)
+     * @return boolean If the machine listing format is supported
+     */
+    private static boolean checkMachineListing(MachineListingCheckCommand check) {
+        // Only the shell consoles list with the machine listing format
+        if (check == null || !isDeviceRooted()) {
+            return false;
+        }
         try {
-            sOptionalCommandsMap = new HashMap<String, Boolean>();
+            Console console = getBackgroundConsole();
+            if (!(console instanceof ShellConsole)) {
+                return false;
+            }
+            console.execute(check);
+            return Boolean.TRUE.equals(check.getResult());
+        } catch (Exception e) {
+            Log.i(TAG, "Machine listing not supported", e); //$NON-NLS-1$
+        }
+        return false;
+    }
 
+    /**
+     * Method that returns the optional commands that can be present in the device.
+     *
+     * @return Map<String, String> The paths of the optional commands, by command key
+     */
+    private Map<String, String> getOptionalCommands() {
+        Map<String, String> optionalCommands = new HashMap<String, String>();
+        try {
             String shellCommands = getString(R.string.shell_optional_commands);
             String[] commands = shellCommands.split(","); //$NON-NLS-1$
             int cc = commands.length;
-            if (cc == 0) {
-                Log.w(TAG, "No optional commands."); //$NON-NLS-1$
-                return;
-            }
             for (int i = 0; i < cc; i++) {
                 String c = commands[i].trim();
                 String key = c.substring(0, c.indexOf("=")).trim(); //$NON-NLS-1$
                 c = c.substring(c.indexOf("=")+1).trim(); //$NON-NLS-1$
                 if (c.length() == 0) continue;
-                File cmd = new File(c);
+                optionalCommands.put(key, c);
+            }
+        } catch (Exception e) {
+            Log.e(TAG,
+                    "Failed to read optional shell commands.", e); //$NON-NLS-1$
+        }
+        return optionalCommands;
+    }
+
+    /**
+     * Method that checks which optional commands are present in the device. The
+     * queries of the optional commands are released when the check ends.
+     *
+     * @param commands The paths of the optional commands, by command key
+     * @hide
+     */
+    @SuppressWarnings("boxing")
+    void loadOptionalCommands(Map<String, String> commands) {
+        Map<String, Boolean> optionalCommands = new HashMap<String, Boolean>();
+        try {
+            if (commands.isEmpty()) {
+                Log.w(TAG, "No optional commands."); //$NON-NLS-1$
+                return;
+            }
+            Iterator<Map.Entry<String, String>> it = commands.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, String> command = it.next();
+                File cmd = new File(command.getValue());
                 Boolean found = Boolean.valueOf(cmd.exists() && cmd.isFile());
-                sOptionalCommandsMap.put(key, found);
+                optionalCommands.put(command.getKey(), found);
                 if (DEBUG) {
                     Log.w(TAG,
                             String.format(
                                     "Optional command %s %s.", //$NON-NLS-1$
-                                    c, found ? "found" : "not found")); //$NON-NLS-1$ //$NON-NLS-2$
+                                    command.getValue(),
+                                    found ? "found" : "not found")); //$NON-NLS-1$ //$NON-NLS-2$
                 }
             }
-        } catch (Exception e) {
-            Log.e(TAG,
-                    "Failed to read optional shell commands.", e); //$NON-NLS-1$
+        } finally {
+            sOptionalCommandsMap = optionalCommands;
+            OPTIONAL_COMMANDS_LOADED.countDown();
         }
     }
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * The cache of the probes of the device between launches of the application: the
+ * optional commands that are present, the features of the commands and the system
+ * properties.<br/>
+ * <br/>
+ * The probes are stored with a fingerprint of the build of the device and a fingerprint
+ * of the modification times of the probed files. The cache is used at start if the
+ * build didn't change, and the fingerprint of the files is validated later in background
+ * (see {@link #getFilesFingerprint(Collection)}), so the start of the application doesn't
+ * pay for the probes.
+ */
+final class ProbeCache {
+
+    private static final String TAG = "ProbeCache"; //$NON-NLS-1$
+
+    private static final String KEY_BUILD = "fingerprint.build"; //$NON-NLS-1$
+    private static final String KEY_FILES = "fingerprint.files"; //$NON-NLS-1$
+    private static final String PREFIX_COMMAND = "command."; //$NON-NLS-1$
+    private static final String PREFIX_FEATURE = "feature."; //$NON-NLS-1$
+    private static final String PREFIX_PROPERTY = "property."; //$NON-NLS-1$
+
+    private final File mFile;
+    private String mFilesFingerprint;
+    private Map<String, Boolean> mOptionalCommands;
+    private Map<String, Boolean> mFeatures;
+    private Properties mSystemProperties;
+
+    /**
+     * Constructor of <code>ProbeCache</code>.
+     *
+     * @param file The file of the cache
+     */
+    ProbeCache(File file) {
+        super();
+        this.mFile = file;
+    }
+
+    /**
+     * Method that loads the probes stored by the last launch.
+     *
+     * @param buildFingerprint The fingerprint of the current build of the device
+     * @return boolean If the probes were loaded. The probes aren't loaded if they don't
+     * exist or if they were stored by other build
+     */
+    boolean load(String buildFingerprint) {
+        if (!this.mFile.exists()) {
+            return false;
+        }
+        Properties cache = new Properties();
+        InputStream is = null;
+        try {
+            is = new FileInputStream(this.mFile);
+            cache.load(is);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to read the probe cache", e); //$NON-NLS-1$
+            return false;
+        } finally {
+            try {
+                if (is != null) {
+                    is.close();
+                }
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+        if (buildFingerprint == null ||
+            buildFingerprint.compareTo(cache.getProperty(KEY_BUILD, "")) != 0) { //$NON-NLS-1$
+            return false;
+        }
+
+        Map<String, Boolean> commands = new HashMap<String, Boolean>();
+        Map<String, Boolean> features = new HashMap<String, Boolean>();
+        Properties properties = new Properties();
+        Iterator<String> it = cache.stringPropertyNames().iterator();
+        while (it.hasNext()) {
+            String key = it.next();
+            if (key.startsWith(PREFIX_COMMAND)) {
+                commands.put(key.substring(PREFIX_COMMAND.length()),
+                        Boolean.valueOf(cache.getProperty(key)));
+            } else if (key.startsWith(PREFIX_FEATURE)) {
+                features.put(key.substring(PREFIX_FEATURE.length()),
+                        Boolean.valueOf(cache.getProperty(key)));
+            } else if (key.startsWith(PREFIX_PROPERTY)) {
+                properties.setProperty(
+                        key.substring(PREFIX_PROPERTY.length()), cache.getProperty(key));
+            }
+        }
+        this.mFilesFingerprint = cache.getProperty(KEY_FILES);
+        this.mOptionalCommands = commands;
+        this.mFeatures = features;
+        this.mSystemProperties = properties;
+        return true;
+    }
+
+    /**
+     * Method that stores the probes for the next launches.
+     *
+     * @param buildFingerprint The fingerprint of the current build of the device
+     * @param filesFingerprint The fingerprint of the probed files
+     * @param commands The optional commands that are present
+     * @param features The features of the commands that are supported
+     * @param properties The system properties
+     */
+    void store(String buildFingerprint, String filesFingerprint,
+            Map<String, Boolean> commands, Map<String, Boolean> features,
+            Properties properties) {
+        Properties cache = new Properties();
+        cache.setProperty(KEY_BUILD, buildFingerprint);
+        cache.setProperty(KEY_FILES, filesFingerprint);
+        Iterator<Map.Entry<String, Boolean>> it = commands.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Boolean> command = it.next();
+            cache.setProperty(
+                    PREFIX_COMMAND + command.getKey(), String.valueOf(command.getValue()));
+        }
+        it = features.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Boolean> feature = it.next();
+            cache.setProperty(
+                    PREFIX_FEATURE + feature.getKey(), String.valueOf(feature.getValue()));
+        }
+        Iterator<String> it2 = properties.stringPropertyNames().iterator();
+        while (it2.hasNext()) {
+            String key = it2.next();
+            cache.setProperty(PREFIX_PROPERTY + key, properties.getProperty(key));
+        }
+
+        // Write a new file and replace the old one, so a reader never sees a partial file
+        File tmp = new File(this.mFile.getAbsolutePath() + ".tmp"); //$NON-NLS-1$
+        OutputStream os = null;
+        try {
+            os = new FileOutputStream(tmp);
+            cache.store(os, null);
+            os.close();
+            os = null;
+            if (!tmp.renameTo(this.mFile)) {
+                Log.w(TAG, "Failed to replace the probe cache"); //$NON-NLS-1$
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to write the probe cache", e); //$NON-NLS-1$
+        } finally {
+            try {
+                if (os != null) {
+                    os.close();
+                }
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Method that returns the fingerprint of the probed files of the loaded probes.
+     *
+     * @return String The fingerprint of the probed files
+     */
+    String getFilesFingerprint() {
+        return this.mFilesFingerprint;
+    }
+
+    /**
+     * Method that returns the optional commands of the loaded probes.
+     *
+     * @return Map<String, Boolean> The optional commands that are present
+     */
+    Map<String, Boolean> getOptionalCommands() {
+        return this.mOptionalCommands;
+    }
+
+    /**
+     * Method that returns the features of the commands of the loaded probes.
+     *
+     * @return Map<String, Boolean> The features of the commands that are supported
+     */
+    Map<String, Boolean> getFeatures() {
+        return this.mFeatures;
+    }
+
+    /**
+     * Method that returns the system properties of the loaded probes.
+     *
+     * @return Properties The system properties
+     */
+    Properties getSystemProperties() {
+        return this.mSystemProperties;
+    }
+
+    /**
+     * Method that returns a fingerprint of the probed files. The fingerprint changes
+     * when a file is created, modified or removed.
+     *
+     * @param files The probed files
+     * @return String The fingerprint of the probed files
+     */
+    static String getFilesFingerprint(Collection<File> files) {
+        CRC32 crc = new CRC32();
+        Iterator<File> it = files.iterator();
+        while (it.hasNext()) {
+            File file = it.next();
+            crc.update((file.getAbsolutePath() + ':' + file.lastModified()).getBytes());
+        }
+        return Long.toHexString(crc.getValue());
+    }
+}
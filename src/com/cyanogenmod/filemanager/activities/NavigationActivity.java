@@ -69,6 +69,7 @@ import com.cyanogenmod.filemanager.parcelables.HistoryNavigable;
 import com.cyanogenmod.filemanager.parcelables.NavigationViewInfoParcelable;
 import com.cyanogenmod.filemanager.parcelables.SearchInfoParcelable;
 import com.cyanogenmod.filemanager.preferences.AccessMode;
+import com.cyanogenmod.filemanager.preferences.DisplayPreferencesSnapshot;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.NavigationLayoutMode;
 import com.cyanogenmod.filemanager.preferences.ObjectIdentifier;
@@ -200,9 +201,11 @@ public class NavigationActivity extends Activity
                             return;
                         }
 
-                        // Case sensitive sort
+                        // Case sensitive sort (changed without notify the configuration
+                        // listeners)
                         if (key.compareTo(FileManagerSettings.
                                 SETTINGS_CASE_SENSITIVE_SORT.getId()) == 0) {
+                            DisplayPreferencesSnapshot.invalidate();
                             getCurrentNavigationView().refresh();
                             return;
                         }
@@ -242,7 +245,7 @@ public class NavigationActivity extends Activity
                             // Refresh the data
                             synchronized (FileHelper.DATETIME_SYNC) {
                                 FileHelper.sReloadDateTimeFormats = true;
-                                NavigationActivity.this.getCurrentNavigationView().refresh();
+                                NavigationActivity.this.getCurrentNavigationView().applyFormat();
                             }
                         }
                     }
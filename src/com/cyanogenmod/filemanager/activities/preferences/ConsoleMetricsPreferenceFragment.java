@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.activities.preferences;
+
+import android.app.AlertDialog;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.preference.CheckBoxPreference;
+import android.preference.Preference;
+import android.preference.Preference.OnPreferenceChangeListener;
+import android.preference.Preference.OnPreferenceClickListener;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.console.ConsoleMetrics;
+import com.cyanogenmod.filemanager.console.TraceRing;
+import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
+import com.cyanogenmod.filemanager.preferences.Preferences;
+import com.cyanogenmod.filemanager.util.DialogHelper;
+
+import java.io.File;
+
+/**
+ * A class that manages the record of the metrics of the consoles
+ */
+public class ConsoleMetricsPreferenceFragment extends TitlePreferenceFragment {
+
+    private static final String TAG = "ConsoleMetricsPreferenceFragment"; //$NON-NLS-1$
+
+    private static final boolean DEBUG = false;
+
+    // Internal keys
+    private static final String SHOW_METRICS_KEY =
+                                        "cm_filemanager_console_metrics_show"; //$NON-NLS-1$
+    private static final String DUMP_METRICS_KEY =
+                                        "cm_filemanager_console_metrics_dump"; //$NON-NLS-1$
+    private static final String RESET_METRICS_KEY =
+                                        "cm_filemanager_console_metrics_reset"; //$NON-NLS-1$
+    private static final String EXPORT_TRACE_KEY =
+                                        "cm_filemanager_console_trace_export"; //$NON-NLS-1$
+
+    private CheckBoxPreference mRecordMetrics;
+    private Preference mShowMetrics;
+    private Preference mDumpMetrics;
+    private Preference mResetMetrics;
+    private Preference mExportTrace;
+
+    /**
+     * @hide
+     */
+    boolean mLoaded = false;
+
+    private final OnPreferenceChangeListener mOnChangeListener =
+            new OnPreferenceChangeListener() {
+        @Override
+        public boolean onPreferenceChange(Preference preference, Object newValue) {
+            if (DEBUG) {
+                Log.d(TAG,
+                    String.format("New value for %s: %s",  //$NON-NLS-1$
+                            preference.getKey(),
+                            String.valueOf(newValue)));
+            }
+
+            // Notify the change (only if fragment is loaded. Default values are loaded
+            // while not in loaded mode)
+            if (ConsoleMetricsPreferenceFragment.this.mLoaded) {
+                Intent intent = new Intent(FileManagerSettings.INTENT_SETTING_CHANGED);
+                intent.putExtra(
+                        FileManagerSettings.EXTRA_SETTING_CHANGED_KEY, preference.getKey());
+                getActivity().sendBroadcast(intent);
+            }
+
+            return true;
+        }
+    };
+
+    private final OnPreferenceClickListener mOnClickListener =
+            new Preference.OnPreferenceClickListener() {
+        @Override
+        public boolean onPreferenceClick(Preference preference) {
+            String key = preference.getKey();
+            if (key.compareTo(SHOW_METRICS_KEY) == 0) {
+                showMetrics();
+            } else if (key.compareTo(DUMP_METRICS_KEY) == 0) {
+                dumpMetrics();
+            } else if (key.compareTo(EXPORT_TRACE_KEY) == 0) {
+                exportTrace();
+            } else if (key.compareTo(RESET_METRICS_KEY) == 0) {
+                ConsoleMetrics.reset();
+
+                // Advise the user
+                DialogHelper.showToast(
+                        getActivity(),
+                        R.string.pref_console_metrics_reset_msg,
+                        Toast.LENGTH_SHORT);
+            }
+            return false;
+        }
+    };
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        // Change the preference manager
+        getPreferenceManager().setSharedPreferencesName(Preferences.SETTINGS_FILENAME);
+        getPreferenceManager().setSharedPreferencesMode(Context.MODE_PRIVATE);
+        this.mLoaded = false;
+
+        // Add the preferences
+        addPreferencesFromResource(R.xml.preferences_console_metrics);
+
+        // Record metrics
+        this.mRecordMetrics =
+                (CheckBoxPreference)findPreference(
+                        FileManagerSettings.SETTINGS_CONSOLE_METRICS.getId());
+        this.mRecordMetrics.setOnPreferenceChangeListener(this.mOnChangeListener);
+
+        // Show, dump and reset metrics, and export the trace
+        this.mShowMetrics = findPreference(SHOW_METRICS_KEY);
+        this.mShowMetrics.setOnPreferenceClickListener(this.mOnClickListener);
+        this.mDumpMetrics = findPreference(DUMP_METRICS_KEY);
+        this.mDumpMetrics.setOnPreferenceClickListener(this.mOnClickListener);
+        this.mResetMetrics = findPreference(RESET_METRICS_KEY);
+        this.mResetMetrics.setOnPreferenceClickListener(this.mOnClickListener);
+        this.mExportTrace = findPreference(EXPORT_TRACE_KEY);
+        this.mExportTrace.setOnPreferenceClickListener(this.mOnClickListener);
+
+        // Loaded
+        this.mLoaded = true;
+    }
+
+    /**
+     * Method that shows the recorded metrics in a dialog
+     * @hide
+     */
+    void showMetrics() {
+        AlertDialog dialog = DialogHelper.createAlertDialog(
+                getActivity(), 0,
+                R.string.pref_console_metrics, ConsoleMetrics.dump(), false);
+        DialogHelper.delegateDialogShow(getActivity(), dialog);
+    }
+
+    /**
+     * Method that writes the recorded metrics to a file of the application
+     * @hide
+     */
+    void dumpMetrics() {
+        try {
+            File file = ConsoleMetrics.dumpToFile(getDumpDir());
+            DialogHelper.showToast(
+                    getActivity(),
+                    getString(R.string.pref_console_metrics_dump_msg, file.getAbsolutePath()),
+                    Toast.LENGTH_LONG);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to dump the console metrics", e); //$NON-NLS-1$
+            DialogHelper.showToast(
+                    getActivity(),
+                    R.string.pref_console_metrics_dump_failed_msg,
+                    Toast.LENGTH_SHORT);
+        }
+    }
+
+    /**
+     * Method that writes the latest events of the consoles to a file of the application
+     * @hide
+     */
+    void exportTrace() {
+        try {
+            File file = TraceRing.getInstance().exportToFile(getDumpDir());
+            DialogHelper.showToast(
+                    getActivity(),
+                    getString(R.string.pref_console_trace_export_msg, file.getAbsolutePath()),
+                    Toast.LENGTH_LONG);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to export the console trace", e); //$NON-NLS-1$
+            DialogHelper.showToast(
+                    getActivity(),
+                    R.string.pref_console_trace_export_failed_msg,
+                    Toast.LENGTH_SHORT);
+        }
+    }
+
+    /**
+     * Method that returns the directory where the metrics and the trace are written.
+     * The external storage is preferred, so the files can be retrieved from the device
+     *
+     * @return File The directory where the files are written
+     */
+    private File getDumpDir() {
+        File dir = getActivity().getExternalFilesDir(null);
+        if (dir == null) {
+            dir = getActivity().getFilesDir();
+        }
+        return dir;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CharSequence getTitle() {
+        return getString(R.string.pref_console_metrics);
+    }
+}
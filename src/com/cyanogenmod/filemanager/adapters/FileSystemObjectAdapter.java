@@ -31,6 +31,7 @@ import android.widget.TextView;
 import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.ParentDirectory;
+import com.cyanogenmod.filemanager.model.Symlink;
 import com.cyanogenmod.filemanager.ui.IconHolder;
 import com.cyanogenmod.filemanager.ui.ThemeManager;
 import com.cyanogenmod.filemanager.ui.ThemeManager.Theme;
@@ -38,10 +39,22 @@ import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * An implementation of {@link ArrayAdapter} for display file system objects.
+ * An implementation of {@link ArrayAdapter} for display file system objects.<br/>
+ * <br/>
+ * The display data of the items is processed on demand, when the items are about to be
+ * shown, and only the data of the last shown items is kept. So huge directories don't
+ * need to process all their items before showing the first ones, and the memory used by
+ * the display data doesn't depend on the number of items.
  */
 public class FileSystemObjectAdapter
     extends ArrayAdapter<FileSystemObject> implements OnClickListener {
@@ -86,6 +99,7 @@ public class FileSystemObjectAdapter
         public DataHolder() {
             super();
         }
+        FileSystemObject mFso;
         boolean mSelected;
         Drawable mDwCheck;
         Drawable mDwIcon;
@@ -95,14 +109,22 @@ public class FileSystemObjectAdapter
     }
 
 
-    private DataHolder[] mData;
+    private final Map<FileSystemObject, DataHolder> mData;
+    // The items of the adapter (the list of the super adapter) and their index by path
+    private final List<FileSystemObject> mItems;
+    private final Map<String, FileSystemObject> mIndex;
     private IconHolder mIconHolder;
     private final int mItemViewResourceId;
-    private List<FileSystemObject> mSelectedItems;
+    private Set<FileSystemObject> mSelectedItems;
     private final boolean mPickable;
 
     private OnSelectionChangedListener mOnSelectionChangedListener;
 
+    // The maximum number of data holders that are kept
+    private static final int MAX_DATA_HOLDERS = 512;
+    // The number of items around a shown item whose data is processed in advance
+    private static final int PREFETCH_MARGIN = 24;
+
     //The resource of the item check
     private static final int RESOURCE_ITEM_CHECK = R.id.navigation_view_item_check;
     //The resource of the item icon
@@ -127,14 +149,27 @@ public class FileSystemObjectAdapter
             Context context, List<FileSystemObject> files,
             int itemViewResourceId, boolean pickable) {
         super(context, RESOURCE_ITEM_NAME, files);
+        this.mItems = files;
+        this.mIndex = new HashMap<String, FileSystemObject>();
+        index(files);
         this.mIconHolder = new IconHolder();
         this.mItemViewResourceId = itemViewResourceId;
-        this.mSelectedItems = new ArrayList<FileSystemObject>();
+        this.mSelectedItems = new LinkedHashSet<FileSystemObject>();
         this.mPickable = pickable;
 
+        // The data holders of the last shown items (in access order)
+        this.mData = new LinkedHashMap<FileSystemObject, DataHolder>(16, 0.75f, true) {
+            private static final long serialVersionUID = -4393432437455627458L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<FileSystemObject, DataHolder> eldest) {
+                return size() > MAX_DATA_HOLDERS;
+            }
+        };
+
         //Do cache of the data for better performance
         loadDefaultIcons();
-        processData(files);
     }
 
     /**
@@ -155,23 +190,83 @@ public class FileSystemObjectAdapter
         this.mIconHolder.getDrawable(getContext(), "ic_fso_default_drawable"); //$NON-NLS-1$
     }
 
+    /**
+     * Method that dispose the elements of the adapter.
+     */
+    public void dispose() {
+        clear();
+        this.mData.clear();
+        this.mIconHolder = null;
+        this.mSelectedItems.clear();
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
-    public void notifyDataSetChanged() {
-        processData(null);
-        super.notifyDataSetChanged();
+    public void add(FileSystemObject object) {
+        super.add(object);
+        this.mIndex.put(object.getFullPath(), object);
     }
 
     /**
-     * Method that dispose the elements of the adapter.
+     * {@inheritDoc}
      */
-    public void dispose() {
-        clear();
-        this.mData = null;
-        this.mIconHolder = null;
-        this.mSelectedItems.clear();
+    @Override
+    public void addAll(Collection<? extends FileSystemObject> collection) {
+        super.addAll(collection);
+        index(collection);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addAll(FileSystemObject... items) {
+        super.addAll(items);
+        for (FileSystemObject fso : items) {
+            this.mIndex.put(fso.getFullPath(), fso);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void insert(FileSystemObject object, int index) {
+        super.insert(object, index);
+        this.mIndex.put(object.getFullPath(), object);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void remove(FileSystemObject object) {
+        super.remove(object);
+        if (object != null) {
+            this.mIndex.remove(object.getFullPath());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() {
+        super.clear();
+        this.mIndex.clear();
+    }
+
+    /**
+     * Method that adds file system objects to the index of the items.
+     *
+     * @param files The file system objects
+     */
+    private void index(Collection<? extends FileSystemObject> files) {
+        for (FileSystemObject fso : files) {
+            this.mIndex.put(fso.getFullPath(), fso);
+        }
     }
 
     /**
@@ -181,65 +276,256 @@ public class FileSystemObjectAdapter
      * @return FileSystemObject The file system object reference
      */
     public FileSystemObject getItem(String path) {
-        int cc = getCount();
-        for (int i = 0; i < cc; i++) {
-          //File system object info
-            FileSystemObject fso = getItem(i);
-            if (fso.getFullPath().compareTo(path) == 0) {
-                return fso;
+        return this.mIndex.get(path);
+    }
+
+    /**
+     * Method that returns the data holder of an item before use it in {@link #getView}.
+     * If the data of the item isn't processed yet (or the item changed), the data of the
+     * items around it is processed too, so the next shown items are already processed.
+     *
+     * @param position The position of the item
+     * @param theme The current theme
+     * @return DataHolder The data holder of the item
+     */
+    private DataHolder getDataHolder(int position, Theme theme) {
+        FileSystemObject fso = getItem(position);
+        DataHolder data = this.mData.get(fso);
+        if (data == null || hasChanged(data.mFso, fso)) {
+            Resources res = getContext().getResources();
+            int start = Math.max(0, position - PREFETCH_MARGIN);
+            int end = Math.min(getCount(), position + PREFETCH_MARGIN + 1);
+            for (int i = start; i < end; i++) {
+                FileSystemObject item = getItem(i);
+                DataHolder holder = this.mData.get(item);
+                if (holder == null || hasChanged(holder.mFso, item)) {
+                    this.mData.put(item, createDataHolder(item, theme, res));
+                }
             }
+            data = this.mData.get(fso);
         }
-        return null;
+
+        // The selection is not part of the processed data
+        boolean selected = this.mSelectedItems.contains(fso);
+        if (data.mSelected != selected) {
+            setSelected(data, selected, theme);
+        }
+        return data;
     }
 
     /**
-     * Method that process the data before use {@link #getView} method.
+     * Method that sets the selection state of a data holder.
      *
-     * @param files The list of files (to better performance) or null.
+     * @param data The data holder
+     * @param selected If the item is selected
+     * @param theme The current theme
      */
-    private void processData(List<FileSystemObject> files) {
-        Theme theme = ThemeManager.getCurrentTheme(getContext());
-        Resources res = getContext().getResources();
-        this.mData = new DataHolder[getCount()];
-        int cc = (files == null) ? getCount() : files.size();
-        for (int i = 0; i < cc; i++) {
-            //File system object info
-            FileSystemObject fso = (files == null) ? getItem(i) : files.get(i);
-
-            //Parse the last modification time and permissions
-            StringBuilder sbSummary = new StringBuilder();
-            if (fso instanceof ParentDirectory) {
-                sbSummary.append(res.getString(R.string.parent_dir));
-            } else {
-                sbSummary.append(
-                        FileHelper.formatFileTime(
-                                getContext(), fso.getLastModifiedTime()));
-                sbSummary.append("   "); //$NON-NLS-1$
-                sbSummary.append(fso.toRawPermissionString());
+    private void setSelected(DataHolder data, boolean selected, Theme theme) {
+        data.mSelected = selected;
+        if (data.mSelected) {
+            data.mDwCheck =
+                    theme.getDrawable(
+                            getContext(), "checkbox_selected_drawable"); //$NON-NLS-1$
+        } else {
+            data.mDwCheck =
+                    theme.getDrawable(
+                            getContext(), "checkbox_deselected_drawable"); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that creates the data holder of a file system object.
+     *
+     * @param fso The file system object
+     * @param theme The current theme
+     * @param res The resources of the application
+     * @return DataHolder The data holder of the file system object
+     */
+    private DataHolder createDataHolder(FileSystemObject fso, Theme theme, Resources res) {
+        //Parse the last modification time and permissions
+        StringBuilder sbSummary = new StringBuilder();
+        if (fso instanceof ParentDirectory) {
+            sbSummary.append(res.getString(R.string.parent_dir));
+        } else {
+            sbSummary.append(
+                    FileHelper.formatFileTime(
+                            getContext(), fso.getLastModifiedTime()));
+            sbSummary.append("   "); //$NON-NLS-1$
+            sbSummary.append(fso.toRawPermissionString());
+        }
+
+        //Build the data holder
+        DataHolder data = new FileSystemObjectAdapter.DataHolder();
+        data.mFso = fso;
+        setSelected(data, this.mSelectedItems.contains(fso), theme);
+        data.mDwIcon = this.mIconHolder.getDrawable(
+                getContext(),
+                MimeTypeHelper.getIcon(getContext(), fso));
+        data.mName = fso.getName();
+        data.mSummary = sbSummary.toString();
+        data.mSize = FileHelper.getHumanReadableSize(fso);
+        return data;
+    }
+
+    /**
+     * Method that replaces the items of the adapter with a new listing. The data of the
+     * items isn't processed until they are shown, and the items whose shown attributes
+     * (size, last modification time, permissions, owner and link target) didn't change
+     * reuse their processed data. The selection
+     * is kept.
+     *
+     * @param files The new listing
+     */
+    public void setFiles(List<FileSystemObject> files) {
+        // Replace the items without discard the processed data
+        setNotifyOnChange(false);
+        clear();
+        addAll(files);
+
+        // The internal structure was update, only super adapter need to be notified
+        super.notifyDataSetChanged();
+    }
+
+    /**
+     * Method that returns if a file system object of a new listing changed respect to
+     * the current item of the same path, that is, if any of the attributes that the
+     * item shows (or that are shown in its details) changed.
+     *
+     * @param current The current item
+     * @param fso The file system object of the new listing
+     * @return boolean If the file system object changed
+     */
+    private static boolean hasChanged(FileSystemObject current, FileSystemObject fso) {
+        if (current.getClass() != fso.getClass() || current.getSize() != fso.getSize()) {
+            return true;
+        }
+        if (current.getLastModifiedTime() == null || fso.getLastModifiedTime() == null) {
+            return true;
+        }
+        if (!current.getLastModifiedTime().equals(fso.getLastModifiedTime())
+                || !isEqual(current.getPermissions(), fso.getPermissions())
+                || !isEqual(current.getUser(), fso.getUser())
+                || !isEqual(current.getGroup(), fso.getGroup())) {
+            return true;
+        }
+        if (current instanceof Symlink) {
+            // The icon of a symlink is the icon of its target
+            Symlink currentLink = (Symlink)current;
+            Symlink link = (Symlink)fso;
+            if (!isEqual(currentLink.getLink(), link.getLink())) {
+                return true;
+            }
+            FileSystemObject currentRef = currentLink.getLinkRef();
+            FileSystemObject ref = link.getLinkRef();
+            if (currentRef == null || ref == null) {
+                return currentRef != ref;
             }
+            return hasChanged(currentRef, ref);
+        }
+        return false;
+    }
 
-            //Build the data holder
-            this.mData[i] = new FileSystemObjectAdapter.DataHolder();
-            this.mData[i].mSelected = this.mSelectedItems.contains(fso);
-            if (this.mData[i].mSelected) {
-                this.mData[i].mDwCheck =
-                        theme.getDrawable(
-                                getContext(), "checkbox_selected_drawable"); //$NON-NLS-1$
-            } else {
-                this.mData[i].mDwCheck =
-                        theme.getDrawable(
-                                getContext(), "checkbox_deselected_drawable"); //$NON-NLS-1$
+    /**
+     * Method that compares two attributes that can be <code>null</code>.
+     *
+     * @param a An attribute
+     * @param b Other attribute
+     * @return boolean If both attributes are <code>null</code> or are equals
+     */
+    private static boolean isEqual(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Method that applies the changes of the directory to the adapter. Only the changed
+     * items are processed; the rest of the items, the scroll position and the selection
+     * are kept. The new and modified items are placed in their sorted position. The
+     * items are found by the index of paths and a binary search, so the cost of a
+     * change doesn't depend on the number of items.
+     *
+     * @param changed The new or modified file system objects
+     * @param removed The full paths of the removed file system objects
+     * @param comparator The comparator that sorts the items of the adapter
+     */
+    public void applyChanges(
+            List<FileSystemObject> changed, List<String> removed,
+            Comparator<FileSystemObject> comparator) {
+        boolean selectionChanged = false;
+
+        // The items are changed in the list of the super adapter, and only the super
+        // adapter is notified, so the processed data is not discarded
+        setNotifyOnChange(false);
+        for (String path : removed) {
+            FileSystemObject fso = this.mIndex.remove(path);
+            if (fso != null) {
+                removeItem(fso, comparator);
+                this.mData.remove(fso);
+                selectionChanged |= this.mSelectedItems.remove(fso);
             }
-            this.mData[i].mDwIcon = this.mIconHolder.getDrawable(
-                    getContext(),
-                    MimeTypeHelper.getIcon(getContext(), fso));
-            this.mData[i].mName = fso.getName();
-            this.mData[i].mSummary = sbSummary.toString();
-            this.mData[i].mSize = FileHelper.getHumanReadableSize(fso);
+        }
+        for (FileSystemObject fso : changed) {
+            String path = fso.getFullPath();
+            FileSystemObject current = this.mIndex.remove(path);
+            if (current != null) {
+                removeItem(current, comparator);
+            }
+            this.mData.remove(fso);
 
+            // Selected items are equals by path, but hold the new information
+            if (this.mSelectedItems.remove(fso)) {
+                this.mSelectedItems.add(fso);
+            }
+
+            this.mItems.add(getSortedPosition(fso, comparator), fso);
+            this.mIndex.put(path, fso);
+        }
+
+        // The internal structure was update, only super adapter need to be notified
+        super.notifyDataSetChanged();
+
+        //Communicate event
+        if (selectionChanged && this.mOnSelectionChangedListener != null) {
+            List<FileSystemObject> selection =
+                    new ArrayList<FileSystemObject>(this.mSelectedItems);
+            this.mOnSelectionChangedListener.onSelectionChanged(selection);
         }
     }
 
+    /**
+     * Method that removes an item from the list of the super adapter.
+     *
+     * @param fso The item
+     * @param comparator The comparator that sorts the items of the adapter
+     */
+    private void removeItem(FileSystemObject fso, Comparator<FileSystemObject> comparator) {
+        int pos = FileHelper.indexOf(this.mItems, fso, comparator);
+        if (pos != -1) {
+            this.mItems.remove(pos);
+        }
+    }
+
+    /**
+     * Method that returns the position in which a file system object must be inserted
+     * to keep the items sorted. The items are searched with a binary search.
+     *
+     * @param fso The file system object
+     * @param comparator The comparator that sorts the items of the adapter
+     * @return int The position of the file system object
+     */
+    private int getSortedPosition(FileSystemObject fso, Comparator<FileSystemObject> comparator) {
+        int low = 0;
+        int high = getCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(getItem(mid), fso) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -268,13 +554,13 @@ public class FileSystemObjectAdapter
         }
 
         //Retrieve data holder
-        final DataHolder dataHolder = this.mData[position];
+        Theme theme = ThemeManager.getCurrentTheme(getContext());
+        final DataHolder dataHolder = getDataHolder(position, theme);
 
         //Retrieve the view holder
         ViewHolder viewHolder = (ViewHolder)v.getTag();
 
         // Apply the current theme
-        Theme theme = ThemeManager.getCurrentTheme(getContext());
         theme.setBackgroundDrawable(
                 getContext(), v, "background_drawable"); //$NON-NLS-1$
         theme.setTextColor(
@@ -325,7 +611,7 @@ public class FileSystemObjectAdapter
      * @return boolean If the item of the passed position is selected
      */
     public boolean isSelected(int position) {
-        return this.mData[position].mSelected;
+        return this.mSelectedItems.contains(getItem(position));
     }
 
     /**
@@ -344,70 +630,48 @@ public class FileSystemObjectAdapter
      * @param fso The file system object to select
      */
     private void toggleSelection(View v, FileSystemObject fso) {
-        if (this.mData != null) {
-            Theme theme = ThemeManager.getCurrentTheme(getContext());
-            int cc = this.mData.length;
-            for (int i = 0; i < cc; i++) {
-                DataHolder data = this.mData[i];
-                if (data.mName.compareTo(fso.getName()) == 0) {
-                    //Select/Deselect the item
-                    data.mSelected = !data.mSelected;
-                    if (v != null) {
-                        ((View)v.getParent()).setSelected(data.mSelected);
-                    }
-                    if (data.mSelected) {
-                        data.mDwCheck =
-                                theme.getDrawable(
-                                        getContext(), "checkbox_selected_drawable"); //$NON-NLS-1$
-                    } else {
-                        data.mDwCheck =
-                                theme.getDrawable(
-                                        getContext(),
-                                            "checkbox_deselected_drawable"); //$NON-NLS-1$
-                    }
-                    if (v != null) {
-                        ((ImageView)v).setImageDrawable(data.mDwCheck);
-                        if (data.mSelected) {
-                            theme.setBackgroundDrawable(
-                                    getContext(),
-                                    (View)v.getParent(),
-                                    "selectors_selected_drawable"); //$NON-NLS-1$
-                        } else {
-                            theme.setBackgroundDrawable(
-                                    getContext(),
-                                    (View)v.getParent(),
-                                    "selectors_deselected_drawable"); //$NON-NLS-1$
-                        }
-                    }
-
-                    //Add or remove from the global selected items
-                    final List<FileSystemObject> selectedItems =
-                            FileSystemObjectAdapter.this.mSelectedItems;
-                    if (data.mSelected) {
-                        if (!selectedItems.contains(fso)) {
-                            selectedItems.add(fso);
-                        }
-                    } else {
-                        if (selectedItems.contains(fso)) {
-                            selectedItems.remove(fso);
-                        }
-                    }
-
-                    //Communicate event
-                    if (this.mOnSelectionChangedListener != null) {
-                        List<FileSystemObject> selection =
-                                new ArrayList<FileSystemObject>(selectedItems);
-                        this.mOnSelectionChangedListener.onSelectionChanged(selection);
-                    }
-
-                    // The internal structure was update, only super adapter need to be notified
-                    super.notifyDataSetChanged();
-
-                    //Found
-                    return;
-                }
+        Theme theme = ThemeManager.getCurrentTheme(getContext());
+
+        //Select/Deselect the item
+        boolean selected = !this.mSelectedItems.contains(fso);
+        DataHolder data = this.mData.get(fso);
+        if (data == null) {
+            // The data of the item isn't processed. Only the selection is needed
+            data = new FileSystemObjectAdapter.DataHolder();
+        }
+        setSelected(data, selected, theme);
+        if (v != null) {
+            ((View)v.getParent()).setSelected(data.mSelected);
+            ((ImageView)v).setImageDrawable(data.mDwCheck);
+            if (data.mSelected) {
+                theme.setBackgroundDrawable(
+                        getContext(),
+                        (View)v.getParent(),
+                        "selectors_selected_drawable"); //$NON-NLS-1$
+            } else {
+                theme.setBackgroundDrawable(
+                        getContext(),
+                        (View)v.getParent(),
+                        "selectors_deselected_drawable"); //$NON-NLS-1$
             }
         }
+
+        //Add or remove from the global selected items
+        if (data.mSelected) {
+            this.mSelectedItems.add(fso);
+        } else {
+            this.mSelectedItems.remove(fso);
+        }
+
+        //Communicate event
+        if (this.mOnSelectionChangedListener != null) {
+            List<FileSystemObject> selection =
+                    new ArrayList<FileSystemObject>(this.mSelectedItems);
+            this.mOnSelectionChangedListener.onSelectionChanged(selection);
+        }
+
+        // The internal structure was update, only super adapter need to be notified
+        super.notifyDataSetChanged();
     }
 
     /**
@@ -438,46 +702,28 @@ public class FileSystemObjectAdapter
      * @param select Indicates if select (true) or deselect (false) all items.
      */
     private void doSelectDeselectAllVisibleItems(boolean select) {
-        if (this.mData != null && this.mData.length > 0) {
-            Theme theme = ThemeManager.getCurrentTheme(getContext());
-            int cc = this.mData.length;
+        int cc = getCount();
+        if (cc > 0) {
+            // The check drawables of the items are updated when they are shown
             for (int i = 0; i < cc; i++) {
-                DataHolder data = this.mData[i];
-                if (data.mName.compareTo(FileHelper.PARENT_DIRECTORY) == 0) {
+                FileSystemObject fso = getItem(i);
+                if (fso instanceof ParentDirectory) {
                     // No select the parent directory
                     continue;
                 }
-                data.mSelected = select;
-                if (data.mSelected) {
-                    data.mDwCheck =
-                            theme.getDrawable(
-                                    getContext(), "checkbox_selected_drawable"); //$NON-NLS-1$
-                } else {
-                    data.mDwCheck =
-                            theme.getDrawable(
-                                    getContext(), "checkbox_deselected_drawable"); //$NON-NLS-1$
-                }
 
                 //Add or remove from the global selected items
-                FileSystemObject fso = getItem(i);
-                final List<FileSystemObject> selectedItems =
-                        FileSystemObjectAdapter.this.mSelectedItems;
-                if (data.mSelected) {
-                    if (!selectedItems.contains(fso)) {
-                        selectedItems.add(fso);
-                    }
+                if (select) {
+                    this.mSelectedItems.add(fso);
                 } else {
-                    if (selectedItems.contains(fso)) {
-                        selectedItems.remove(fso);
-                    }
+                    this.mSelectedItems.remove(fso);
                 }
             }
 
             //Communicate event
             if (this.mOnSelectionChangedListener != null) {
                 List<FileSystemObject> selection =
-                        new ArrayList<FileSystemObject>(
-                                FileSystemObjectAdapter.this.mSelectedItems);
+                        new ArrayList<FileSystemObject>(this.mSelectedItems);
                 this.mOnSelectionChangedListener.onSelectionChanged(selection);
             }
 
@@ -501,7 +747,7 @@ public class FileSystemObjectAdapter
      * @param selectedItems The selected items
      */
     public void setSelectedItems(List<FileSystemObject> selectedItems) {
-        this.mSelectedItems = selectedItems;
+        this.mSelectedItems = new LinkedHashSet<FileSystemObject>(selectedItems);
     }
 
     /**
@@ -533,6 +779,19 @@ public class FileSystemObjectAdapter
     public void notifyThemeChanged() {
         // Empty icon holder
         this.mIconHolder = new IconHolder();
+
+        // The data of the items can't be reused with the new theme
+        this.mData.clear();
+    }
+
+    /**
+     * Method that should be invoked when the format of the shown data (the file time
+     * format) was changed
+     */
+    public void notifyFormatChanged() {
+        // The data of the items is processed again when the items are shown
+        this.mData.clear();
+        super.notifyDataSetChanged();
     }
 
 }
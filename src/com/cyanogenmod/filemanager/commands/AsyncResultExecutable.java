@@ -97,6 +97,13 @@ public interface AsyncResultExecutable extends Executable {
      */
     boolean isCancellable();
 
+    /**
+     * Method that returns the cancellation token of the program. The token is cancelled
+     * when the program is cancelled or ended.
+     *
+     * @return CancellationToken The cancellation token
+     */
+    CancellationToken getCancellationToken();
 
     /**
      * Method that returns the listener to communicate result in
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands;
+
+import java.io.Closeable;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A cooperative cancellation token of an {@link Executable}.<br/>
+ * <br/>
+ * The program checks the token in its inner loops (directory walks, copy, digest and
+ * read loops) and leaves the loop as soon as it's cancelled. The cancellation never
+ * waits for the program. To interrupt a blocking operation, the program can attach the
+ * thread that executes it and register the stream over which it blocks; both are
+ * interrupted (the stream is closed) when the token is cancelled.
+ */
+public final class CancellationToken {
+
+    private volatile boolean mCancelled;
+
+    private final Object mSync = new Object();
+    private Thread mThread;
+    private Closeable mResource;
+
+    /**
+     * Constructor of <code>CancellationToken</code>.
+     */
+    public CancellationToken() {
+        super();
+        this.mCancelled = false;
+    }
+
+    /**
+     * Method that returns if the token was cancelled.
+     *
+     * @return boolean If the token was cancelled
+     */
+    public boolean isCancelled() {
+        return this.mCancelled;
+    }
+
+    /**
+     * Method that throws a {@link CancellationException} if the token was cancelled.
+     *
+     * @throws CancellationException If the token was cancelled
+     */
+    public void throwIfCancelled() throws CancellationException {
+        if (this.mCancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * Method that cancels the token. The attached thread is interrupted and the
+     * registered stream is closed. This method returns immediately.
+     *
+     * @return boolean If the token was cancelled by this call
+     */
+    public boolean cancel() {
+        Thread thread;
+        Closeable resource;
+        synchronized (this.mSync) {
+            if (this.mCancelled) {
+                return false;
+            }
+            this.mCancelled = true;
+            thread = this.mThread;
+            resource = this.mResource;
+        }
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (Throwable _throw) {/**NON BLOCK**/}
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * Method that attaches the current thread to the token. The thread is interrupted
+     * if the token is cancelled before it is detached.
+     */
+    public void attach() {
+        synchronized (this.mSync) {
+            this.mThread = Thread.currentThread();
+            if (this.mCancelled) {
+                this.mThread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Method that detaches the current thread from the token. An interruption caused
+     * by the cancellation of the token is cleared, so it doesn't leak to the next work
+     * of the thread.
+     */
+    public void detach() {
+        synchronized (this.mSync) {
+            if (this.mThread == Thread.currentThread()) {
+                this.mThread = null;
+                if (this.mCancelled) {
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    /**
+     * Method that registers the stream over which the program blocks. The stream is
+     * closed if the token is cancelled before it is unregistered.
+     *
+     * @param resource The stream
+     * @throws CancellationException If the token was already cancelled. The stream is closed
+     */
+    public void register(Closeable resource) throws CancellationException {
+        synchronized (this.mSync) {
+            if (!this.mCancelled) {
+                this.mResource = resource;
+                return;
+            }
+        }
+        try {
+            resource.close();
+        } catch (Throwable _throw) {/**NON BLOCK**/}
+        throw new CancellationException();
+    }
+
+    /**
+     * Method that unregisters a stream registered with {@link #register(Closeable)}.
+     *
+     * @param resource The stream
+     */
+    public void unregister(Closeable resource) {
+        synchronized (this.mSync) {
+            if (this.mResource == resource) {
+                this.mResource = null;
+            }
+        }
+    }
+}
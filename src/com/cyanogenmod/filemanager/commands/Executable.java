@@ -20,5 +20,19 @@ package com.cyanogenmod.filemanager.commands;
  * An interface that defines a class as executable.
  */
 public interface Executable {
-    /**NON BLOCK**/
+
+    /**
+     * Method that returns the priority of the executable.
+     * {@link ExecutionPriority#INTERACTIVE} by default.
+     *
+     * @return ExecutionPriority The priority of the executable
+     */
+    ExecutionPriority getPriority();
+
+    /**
+     * Method that sets the priority of the executable.
+     *
+     * @param priority The priority of the executable
+     */
+    void setPriority(ExecutionPriority priority);
 }
@@ -185,7 +185,8 @@ public interface ExecutableCreator {
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
     /**
-     * Method that creates an executable for make searches over the filesystem.
+     * Method that creates an executable for make searches over the filesystem. The
+     * executable has a {@link ExecutionPriority#BACKGROUND} priority.
      *
      * @param directory The directory where to search
      * @param query The term of the query
@@ -201,7 +202,8 @@ public interface ExecutableCreator {
             NoSuchFileOrDirectory, InsufficientPermissionsException;
 
     /**
-     * Method that creates an executable for compute the disk usage of a folder.
+     * Method that creates an executable for compute the disk usage of a folder. The
+     * executable has a {@link ExecutionPriority#BACKGROUND} priority.
      *
      * @param directory The directory where to search
      * @param asyncResultListener The listener where to return partial results
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands;
+
+/**
+ * An enumeration of the priorities of the executables.
+ */
+public enum ExecutionPriority {
+
+    /**
+     * An executable requested by the navigation (listings, file info, ...). Runs ahead
+     * of the background executables.
+     */
+    INTERACTIVE,
+    /**
+     * A long running scan (a search, the usage of a folder, ...). Runs when there are no
+     * interactive executables waiting, or when it waited too long.
+     */
+    BACKGROUND
+}
@@ -41,9 +41,30 @@ public interface ListExecutable extends SyncResultExecutable {
         FILEINFO
     }
 
+    /**
+     * An interface for receive the files of a listing while the listing is in progress.
+     */
+    public interface OnPartialListListener {
+        /**
+         * Method invoked when new files were listed. This method is not invoked
+         * in the UI thread.
+         *
+         * @param files The new listed files (not the whole listing)
+         */
+        void onPartialList(List<FileSystemObject> files);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     List<FileSystemObject> getResult();
+
+    /**
+     * Method that sets the listener that receives the files while they are listed.
+     * The result of the executable is the whole listing anyway.
+     *
+     * @param listener The listener (<code>null</code> for none)
+     */
+    void setOnPartialListListener(OnPartialListListener listener);
 }
@@ -0,0 +1,603 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.hybrid;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.ChangeOwnerExecutable;
+import com.cyanogenmod.filemanager.commands.ChangePermissionsExecutable;
+import com.cyanogenmod.filemanager.commands.ChecksumExecutable;
+import com.cyanogenmod.filemanager.commands.CompressExecutable;
+import com.cyanogenmod.filemanager.commands.CopyExecutable;
+import com.cyanogenmod.filemanager.commands.CreateDirExecutable;
+import com.cyanogenmod.filemanager.commands.CreateFileExecutable;
+import com.cyanogenmod.filemanager.commands.DeleteDirExecutable;
+import com.cyanogenmod.filemanager.commands.DeleteFileExecutable;
+import com.cyanogenmod.filemanager.commands.DiskUsageExecutable;
+import com.cyanogenmod.filemanager.commands.EchoExecutable;
+import com.cyanogenmod.filemanager.commands.Executable;
+import com.cyanogenmod.filemanager.commands.ExecExecutable;
+import com.cyanogenmod.filemanager.commands.ExecutableCreator;
+import com.cyanogenmod.filemanager.commands.FindExecutable;
+import com.cyanogenmod.filemanager.commands.FolderUsageExecutable;
+import com.cyanogenmod.filemanager.commands.GroupsExecutable;
+import com.cyanogenmod.filemanager.commands.IdentityExecutable;
+import com.cyanogenmod.filemanager.commands.LinkExecutable;
+import com.cyanogenmod.filemanager.commands.ListExecutable;
+import com.cyanogenmod.filemanager.commands.MountExecutable;
+import com.cyanogenmod.filemanager.commands.MountPointInfoExecutable;
+import com.cyanogenmod.filemanager.commands.MoveExecutable;
+import com.cyanogenmod.filemanager.commands.ParentDirExecutable;
+import com.cyanogenmod.filemanager.commands.ProcessIdExecutable;
+import com.cyanogenmod.filemanager.commands.QuickFolderSearchExecutable;
+import com.cyanogenmod.filemanager.commands.ReadExecutable;
+import com.cyanogenmod.filemanager.commands.ResolveLinkExecutable;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.commands.SendSignalExecutable;
+import com.cyanogenmod.filemanager.commands.UncompressExecutable;
+import com.cyanogenmod.filemanager.commands.WriteExecutable;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.console.hybrid.HybridConsole;
+import com.cyanogenmod.filemanager.console.java.OrderedAsyncResultListener;
+import com.cyanogenmod.filemanager.model.Group;
+import com.cyanogenmod.filemanager.model.MountPoint;
+import com.cyanogenmod.filemanager.model.Permissions;
+import com.cyanogenmod.filemanager.model.Query;
+import com.cyanogenmod.filemanager.model.User;
+import com.cyanogenmod.filemanager.preferences.CompressionMode;
+import com.cyanogenmod.filemanager.util.StorageHelper;
+
+import java.io.File;
+
+/**
+ * A class for create hybrid {@link "Executable"} objects.<br/>
+ * <br/>
+ * The operations over the paths of the storage volumes that the application can access
+ * are created by the java creator. The rest of operations are created by the shell
+ * creator, and the ones that modify the filesystem are ordered by the hybrid console
+ * with the java programs that modify the same paths.
+ */
+public class HybridExecutableCreator implements ExecutableCreator {
+
+    private final HybridConsole mConsole;
+    private final ExecutableCreator mJavaCreator;
+    private final ExecutableCreator mShellCreator;
+
+    /**
+     * Constructor of <code>HybridExecutableCreator</code>.
+     *
+     * @param console The hybrid console
+     * @param javaCreator The creator of the java executables
+     * @param shellCreator The creator of the shell executables
+     */
+    HybridExecutableCreator(HybridConsole console,
+            ExecutableCreator javaCreator, ExecutableCreator shellCreator) {
+        super();
+        this.mConsole = console;
+        this.mJavaCreator = javaCreator;
+        this.mShellCreator = shellCreator;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeOwnerExecutable createChangeOwnerExecutable(
+            String fso, User newUser, Group newGroup)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return ordered(this.mShellCreator.createChangeOwnerExecutable(fso, newUser, newGroup),
+                fso);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangePermissionsExecutable createChangePermissionsExecutable(
+            String fso, Permissions newPermissions)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return ordered(this.mShellCreator.createChangePermissionsExecutable(
+                fso, newPermissions), fso);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CopyExecutable createCopyExecutable(String src, String dst)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canRead(src) && canCreate(dst)) {
+            return this.mJavaCreator.createCopyExecutable(src, dst);
+        }
+        return ordered(this.mShellCreator.createCopyExecutable(src, dst), dst);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CreateDirExecutable createCreateDirectoryExecutable(String dir)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canCreate(dir)) {
+            return this.mJavaCreator.createCreateDirectoryExecutable(dir);
+        }
+        return ordered(this.mShellCreator.createCreateDirectoryExecutable(dir), dir);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CreateFileExecutable createCreateFileExecutable(String file)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canCreate(file)) {
+            return this.mJavaCreator.createCreateFileExecutable(file);
+        }
+        return ordered(this.mShellCreator.createCreateFileExecutable(file), file);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DeleteDirExecutable createDeleteDirExecutable(String dir)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canCreate(dir)) {
+            return this.mJavaCreator.createDeleteDirExecutable(dir);
+        }
+        return ordered(this.mShellCreator.createDeleteDirExecutable(dir), dir);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DeleteFileExecutable createDeleteFileExecutable(String file)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canCreate(file)) {
+            return this.mJavaCreator.createDeleteFileExecutable(file);
+        }
+        return ordered(this.mShellCreator.createDeleteFileExecutable(file), file);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DiskUsageExecutable createDiskUsageExecutable()
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createDiskUsageExecutable();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DiskUsageExecutable createDiskUsageExecutable(String dir)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (exists(dir)) {
+            return this.mJavaCreator.createDiskUsageExecutable(dir);
+        }
+        return this.mShellCreator.createDiskUsageExecutable(dir);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public EchoExecutable createEchoExecutable(String msg)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createEchoExecutable(msg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExecExecutable createExecExecutable(String cmd, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createExecExecutable(cmd, asyncResultListener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FindExecutable createFindExecutable(
+            String directory, Query query, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canRead(directory)) {
+            return this.mJavaCreator.createFindExecutable(directory, query, asyncResultListener);
+        }
+        return this.mShellCreator.createFindExecutable(directory, query, asyncResultListener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FolderUsageExecutable createFolderUsageExecutable(
+            String directory, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canRead(directory)) {
+            return this.mJavaCreator.createFolderUsageExecutable(directory, asyncResultListener);
+        }
+        return this.mShellCreator.createFolderUsageExecutable(directory, asyncResultListener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public GroupsExecutable createGroupsExecutable()
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createGroupsExecutable();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public IdentityExecutable createIdentityExecutable()
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createIdentityExecutable();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public LinkExecutable createLinkExecutable(String src, String link)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return ordered(this.mShellCreator.createLinkExecutable(src, link), link);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListExecutable createListExecutable(String src)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canRead(src)) {
+            return this.mJavaCreator.createListExecutable(src);
+        }
+        return this.mShellCreator.createListExecutable(src);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ListExecutable createFileInfoExecutable(String src, boolean followSymlinks)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (exists(src)) {
+            return this.mJavaCreator.createFileInfoExecutable(src, followSymlinks);
+        }
+        return this.mShellCreator.createFileInfoExecutable(src, followSymlinks);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MountExecutable createMountExecutable(MountPoint mp, boolean rw)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createMountExecutable(mp, rw);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MountPointInfoExecutable createMountPointInfoExecutable()
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createMountPointInfoExecutable();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public MoveExecutable createMoveExecutable(String src, String dst)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canCreate(src) && canCreate(dst)) {
+            return this.mJavaCreator.createMoveExecutable(src, dst);
+        }
+        return ordered(this.mShellCreator.createMoveExecutable(src, dst), src, dst);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ParentDirExecutable createParentDirExecutable(String fso)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mJavaCreator.createParentDirExecutable(fso);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ProcessIdExecutable createShellProcessIdExecutable()
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createShellProcessIdExecutable();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ProcessIdExecutable createProcessIdExecutable(int pid)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createProcessIdExecutable(pid);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ProcessIdExecutable createProcessIdExecutable(int pid, String processName)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createProcessIdExecutable(pid, processName);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public QuickFolderSearchExecutable createQuickFolderSearchExecutable(String regexp)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createQuickFolderSearchExecutable(regexp);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ReadExecutable createReadExecutable(String file, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canRead(file)) {
+            return this.mJavaCreator.createReadExecutable(file, asyncResultListener);
+        }
+        return this.mShellCreator.createReadExecutable(file, asyncResultListener);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResolveLinkExecutable createResolveLinkExecutable(String fso)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (exists(fso)) {
+            return this.mJavaCreator.createResolveLinkExecutable(fso);
+        }
+        return this.mShellCreator.createResolveLinkExecutable(fso);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SendSignalExecutable createSendSignalExecutable(int process, SIGNAL signal)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createSendSignalExecutable(process, signal);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SendSignalExecutable createKillExecutable(int process)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        return this.mShellCreator.createKillExecutable(process);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public WriteExecutable createWriteExecutable(
+            String file, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canWrite(file)) {
+            return this.mJavaCreator.createWriteExecutable(file, asyncResultListener);
+        }
+        OrderedAsyncResultListener listener =
+                new OrderedAsyncResultListener(asyncResultListener);
+        return ordered(this.mShellCreator.createWriteExecutable(file, listener),
+                listener, file);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompressExecutable createCompressExecutable(
+            CompressionMode mode, String dst, String[] src, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        OrderedAsyncResultListener listener =
+                new OrderedAsyncResultListener(asyncResultListener);
+        return ordered(this.mShellCreator.createCompressExecutable(mode, dst, src, listener),
+                listener, dst);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompressExecutable createCompressExecutable(
+            CompressionMode mode, String src, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        OrderedAsyncResultListener listener =
+                new OrderedAsyncResultListener(asyncResultListener);
+        return ordered(this.mShellCreator.createCompressExecutable(mode, src, listener),
+                listener, src);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UncompressExecutable createUncompressExecutable(
+            String src, String dst, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        OrderedAsyncResultListener listener =
+                new OrderedAsyncResultListener(asyncResultListener);
+        return ordered(this.mShellCreator.createUncompressExecutable(src, dst, listener),
+                listener, src, dst);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChecksumExecutable createChecksumExecutable(
+            String src, AsyncResultListener asyncResultListener)
+            throws CommandNotFoundException, NoSuchFileOrDirectory,
+            InsufficientPermissionsException {
+        if (canRead(src)) {
+            return this.mJavaCreator.createChecksumExecutable(src, asyncResultListener);
+        }
+        return this.mShellCreator.createChecksumExecutable(src, asyncResultListener);
+    }
+
+    /**
+     * Method that orders a synchronous executable of the shell console with the java
+     * programs that modify the same paths.
+     *
+     * @param executable The executable of the shell console
+     * @param paths The paths that the executable modifies
+     * @return T The executable
+     */
+    private <T extends Executable> T ordered(T executable, String... paths) {
+        this.mConsole.setModifiedPaths(executable, paths, null);
+        return executable;
+    }
+
+    /**
+     * Method that orders an asynchronous executable of the shell console with the java
+     * programs that modify the same paths.
+     *
+     * @param executable The executable of the shell console
+     * @param listener The listener of the executable, that retains the paths until the
+     * executable ends
+     * @param paths The paths that the executable modifies
+     * @return T The executable
+     */
+    private <T extends Executable> T ordered(
+            T executable, OrderedAsyncResultListener listener, String... paths) {
+        this.mConsole.setModifiedPaths(executable, paths, listener);
+        return executable;
+    }
+
+    /**
+     * Method that returns if the application can read a path of a storage volume.
+     *
+     * @param path The path
+     * @return boolean If the application can read the path
+     */
+    private static boolean canRead(String path) {
+        return isInStorageVolume(path) && new File(path).canRead();
+    }
+
+    /**
+     * Method that returns if the application can access the information of a path of
+     * a storage volume.
+     *
+     * @param path The path
+     * @return boolean If the application can access the information of the path
+     */
+    private static boolean exists(String path) {
+        return isInStorageVolume(path) && new File(path).exists();
+    }
+
+    /**
+     * Method that returns if the application can create or remove a path of a storage
+     * volume (if the application can write its parent directory).
+     *
+     * @param path The path
+     * @return boolean If the application can create or remove the path
+     */
+    private static boolean canCreate(String path) {
+        if (!isInStorageVolume(path)) {
+            return false;
+        }
+        File parent = new File(path).getParentFile();
+        return parent != null && parent.canWrite();
+    }
+
+    /**
+     * Method that returns if the application can write a path of a storage volume.
+     *
+     * @param path The path
+     * @return boolean If the application can write the path
+     */
+    private static boolean canWrite(String path) {
+        if (!isInStorageVolume(path)) {
+            return false;
+        }
+        File file = new File(path);
+        return file.exists() ? file.canWrite() : canCreate(path);
+    }
+
+    /**
+     * Method that returns if a path is in a storage volume.
+     *
+     * @param path The path
+     * @return boolean If the path is in a storage volume
+     */
+    private static boolean isInStorageVolume(String path) {
+        return path != null && StorageHelper.isPathInStorageVolume(path);
+    }
+
+}
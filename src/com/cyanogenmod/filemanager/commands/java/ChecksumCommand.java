@@ -27,8 +27,10 @@ import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.security.MessageDigest;
+import java.util.concurrent.CancellationException;
 
 /**
  * A class for calculate MD5 and SHA-1 checksums of a file system object.<br />
@@ -43,9 +45,6 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
     private final String[] mChecksums;
     private final AsyncResultListener mAsyncResultListener;
 
-    private boolean mCancelled;
-    private final Object mSync = new Object();
-
     /**
      * Constructor of <code>ChecksumCommand</code>.
      *
@@ -110,7 +109,7 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
                 Log.v(TAG, "Result: OK"); //$NON-NLS-1$
             }
 
-        } catch (InterruptedException ie) {
+        } catch (CancellationException ce) {
             if (this.mAsyncResultListener != null) {
                 this.mAsyncResultListener.onAsyncEnd(true);
             }
@@ -143,9 +142,7 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
      */
     @Override
     public boolean isCancelled() {
-        synchronized (this.mSync) {
-            return this.mCancelled;
-        }
+        return getCancellationToken().isCancelled();
     }
 
     /**
@@ -153,11 +150,7 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
      */
     @Override
     public boolean cancel() {
-        try {
-            synchronized (this.mSync) {
-                this.mCancelled = true;
-            }
-        } catch (Throwable _throw) {/**NON BLOCK**/}
+        getCancellationToken().cancel();
         return true;
     }
 
@@ -221,51 +214,46 @@ public class ChecksumCommand extends Program implements ChecksumExecutable {
      * Method that calculate a digest of the file for the source file
      *
      * @param type The type of digest to obtain
-     * @throws InterruptedException If the operation was cancelled
+     * @throws CancellationException If the operation was cancelled
      * @throws Exception If an error occurs
      */
-    private void calculateDigest(CHECKSUMS type) throws InterruptedException, Exception {
+    private void calculateDigest(CHECKSUMS type) throws CancellationException, Exception {
 
         InputStream is = null;
         try {
             MessageDigest md = MessageDigest.getInstance(type.name());
             is = new FileInputStream(this.mSrc);
+            // The stream is closed if the operation is cancelled while reading
+            getCancellationToken().register(is);
 
             // Start digesting
             byte[] data = new byte[getBufferSize()];
             int read = 0;
             while ((read = is.read(data, 0, getBufferSize())) != -1) {
-                checkCancelled();
+                getCancellationToken().throwIfCancelled();
                 md.update(data, 0, read);
             }
-            checkCancelled();
+            getCancellationToken().throwIfCancelled();
 
             // Finally digest
             this.mChecksums[type.ordinal()] = HexDump.toHexString(md.digest()).toLowerCase();
-            checkCancelled();
+            getCancellationToken().throwIfCancelled();
             if (this.mAsyncResultListener != null) {
                 this.mAsyncResultListener.onPartialResult(this.mChecksums[type.ordinal()]);
             }
 
+        } catch (IOException ioe) {
+            // A read of a stream closed by the cancellation
+            getCancellationToken().throwIfCancelled();
+            throw ioe;
+
         } finally {
             try {
                 if (is != null) {
+                    getCancellationToken().unregister(is);
                     is.close();
                 }
             } catch (Exception e) {/**NON BLOCK**/}
         }
     }
-
-    /**
-     * Checks if the operation was cancelled
-     *
-     * @throws InterruptedException If the operation was cancelled
-     */
-    private void checkCancelled() throws InterruptedException {
-        synchronized (this.mSync) {
-            if (this.mCancelled) {
-                throw new InterruptedException();
-            }
-        }
-    }
 }
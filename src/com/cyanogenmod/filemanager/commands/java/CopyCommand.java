@@ -59,6 +59,14 @@ public class CopyCommand extends Program implements CopyExecutable {
         return Boolean.TRUE;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getModifiedPaths() {
+        return new String[]{this.mDst};
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -81,7 +89,7 @@ public class CopyCommand extends Program implements CopyExecutable {
         }
 
         //Copy recursively
-        if (!FileHelper.copyRecursive(s, d, getBufferSize())) {
+        if (!FileHelper.copyRecursive(s, d, getBufferSize(), getCancellationToken())) {
             if (isTrace()) {
                 Log.v(TAG, "Result: FAIL. InsufficientPermissionsException"); //$NON-NLS-1$
             }
@@ -55,6 +55,14 @@ public class CreateDirCommand extends Program implements CreateDirExecutable {
         return Boolean.TRUE;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getModifiedPaths() {
+        return new String[]{this.mPath};
+    }
+
     /**
      * {@inheritDoc}
      */
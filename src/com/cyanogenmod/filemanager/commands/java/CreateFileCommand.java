@@ -57,6 +57,14 @@ public class CreateFileCommand extends Program implements CreateFileExecutable {
         return Boolean.TRUE;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getModifiedPaths() {
+        return new String[]{this.mPath};
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -56,6 +56,14 @@ public class DeleteDirCommand extends Program implements DeleteDirExecutable {
         return Boolean.TRUE;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getModifiedPaths() {
+        return new String[]{this.mPath};
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -85,7 +93,13 @@ public class DeleteDirCommand extends Program implements DeleteDirExecutable {
         }
 
         // Delete the file
-        if (!FileHelper.deleteFolder(f)) {
+        if (!FileHelper.deleteFolder(f, getCancellationToken())) {
+            if (getCancellationToken().isCancelled()) {
+                if (isTrace()) {
+                    Log.v(TAG, "Result: CANCELLED"); //$NON-NLS-1$
+                }
+                throw new ExecutionException("the operation was cancelled"); //$NON-NLS-1$
+            }
             if (isTrace()) {
                 Log.v(TAG, "Result: FAIL. InsufficientPermissionsException"); //$NON-NLS-1$
             }
@@ -55,6 +55,14 @@ public class DeleteFileCommand extends Program implements DeleteFileExecutable {
         return Boolean.TRUE;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getModifiedPaths() {
+        return new String[]{this.mPath};
+    }
+
     /**
      * {@inheritDoc}
      */
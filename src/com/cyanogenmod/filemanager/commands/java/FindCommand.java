@@ -23,6 +23,7 @@ import com.cyanogenmod.filemanager.commands.FindExecutable;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.console.TraceRing;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.Query;
 import com.cyanogenmod.filemanager.util.FileHelper;
@@ -37,14 +38,14 @@ import java.util.Arrays;
 public class FindCommand extends Program implements FindExecutable {
 
     private static final String TAG = "FindCommand"; //$NON-NLS-1$
+    // The identifier of the program in the trace (the same that the java console uses)
+    private static final String TRACE_ID = "java:" + TAG; //$NON-NLS-1$
 
     private final String mDirectory;
     private final String[] mQueryRegExp;
     private final AsyncResultListener mAsyncResultListener;
 
-    private boolean mCancelled;
-    private boolean mEnded;
-    private final Object mSync = new Object();
+    private volatile boolean mEnded;
 
     /**
      * Constructor of <code>FindCommand</code>.
@@ -58,7 +59,6 @@ public class FindCommand extends Program implements FindExecutable {
         this.mDirectory = directory;
         this.mQueryRegExp = createRegexp(directory, query);
         this.mAsyncResultListener = asyncResultListener;
-        this.mCancelled = false;
         this.mEnded = false;
     }
 
@@ -108,7 +108,7 @@ public class FindCommand extends Program implements FindExecutable {
         findRecursive(f);
 
         if (this.mAsyncResultListener != null) {
-            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+            this.mAsyncResultListener.onAsyncEnd(isCancelled());
         }
         if (this.mAsyncResultListener != null) {
             this.mAsyncResultListener.onAsyncExitCode(0);
@@ -130,6 +130,11 @@ public class FindCommand extends Program implements FindExecutable {
         if (files != null) {
             int cc = files.length;
             for (int i = 0; i < cc; i++) {
+                // Check if the process was cancelled
+                if (getCancellationToken().isCancelled()) {
+                    return;
+                }
+
                 if (files[i].isDirectory()) {
                     findRecursive(files[i]);
                 }
@@ -142,9 +147,8 @@ public class FindCommand extends Program implements FindExecutable {
                             FileSystemObject fso =
                                     FileHelper.createFileSystemObject(files[i]);
                             if (fso != null) {
-                                if (isTrace()) {
-                                    Log.v(TAG, String.valueOf(fso));
-                                }
+                                TraceRing.getInstance().record(
+                                        TRACE_ID, TraceRing.Phase.ITEM, fso.getSize());
                                 if (this.mAsyncResultListener != null) {
                                     this.mAsyncResultListener.onPartialResult(fso);
                                 }
@@ -152,16 +156,6 @@ public class FindCommand extends Program implements FindExecutable {
                         }
                     }
                 } catch (Exception e) {/**NON-BLOCK**/}
-
-                // Check if the process was cancelled
-                try {
-                    synchronized (this.mSync) {
-                        if (this.mCancelled  || this.mEnded) {
-                            this.mSync.notify();
-                            break;
-                        }
-                    }
-                } catch (Exception e) {/**NON BLOCK**/}
             }
         }
     }
@@ -171,9 +165,7 @@ public class FindCommand extends Program implements FindExecutable {
      */
     @Override
     public boolean isCancelled() {
-        synchronized (this.mSync) {
-            return this.mCancelled;
-        }
+        return getCancellationToken().isCancelled() && !this.mEnded;
     }
 
     /**
@@ -181,12 +173,7 @@ public class FindCommand extends Program implements FindExecutable {
      */
     @Override
     public boolean cancel() {
-        try {
-            synchronized (this.mSync) {
-                this.mCancelled = true;
-                this.mSync.wait(5000L);
-            }
-        } catch (Exception e) {/**NON BLOCK**/}
+        getCancellationToken().cancel();
         return true;
     }
 
@@ -195,12 +182,8 @@ public class FindCommand extends Program implements FindExecutable {
      */
     @Override
     public boolean end() {
-        try {
-            synchronized (this.mSync) {
-                this.mEnded = true;
-                this.mSync.wait(5000L);
-            }
-        } catch (Exception e) {/**NON BLOCK**/}
+        this.mEnded = true;
+        getCancellationToken().cancel();
         return true;
     }
 
@@ -40,9 +40,7 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
     private final AsyncResultListener mAsyncResultListener;
     private final FolderUsage mFolderUsage;
 
-    private boolean mCancelled;
-    private boolean mEnded;
-    private final Object mSync = new Object();
+    private volatile boolean mEnded;
 
     /**
      * Constructor of <code>FolderUsageCommand</code>.
@@ -56,7 +54,6 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
         this.mDirectory = directory;
         this.mAsyncResultListener = asyncResultListener;
         this.mFolderUsage = new FolderUsage(directory);
-        this.mCancelled = false;
         this.mEnded = false;
     }
 
@@ -113,13 +110,8 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
         // Compute data recursively
         computeRecursive(f);
 
-        synchronized (this.mSync) {
-            this.mEnded = true;
-            this.mSync.notify();
-        }
-
         if (this.mAsyncResultListener != null) {
-            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+            this.mAsyncResultListener.onAsyncEnd(isCancelled());
         }
         if (this.mAsyncResultListener != null) {
             this.mAsyncResultListener.onAsyncExitCode(0);
@@ -143,6 +135,11 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
             if (files != null) {
                 int cc = files.length;
                 for (int i = 0; i < cc; i++) {
+                    // Check if the process was cancelled
+                    if (getCancellationToken().isCancelled()) {
+                        break;
+                    }
+
                     if (files[i].isDirectory()) {
                         this.mFolderUsage.addFolder();
                         computeRecursive(files[i]);
@@ -162,16 +159,6 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
                             getAsyncResultListener().onPartialResult(this.mFolderUsage);
                         }
                     }
-
-                    // Check if the process was cancelled
-                    try {
-                        synchronized (this.mSync) {
-                            if (this.mCancelled  || this.mEnded) {
-                                this.mSync.notify();
-                                break;
-                            }
-                        }
-                    } catch (Exception e) {/**NON BLOCK**/}
                 }
             }
         } finally {
@@ -187,9 +174,7 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
      */
     @Override
     public boolean isCancelled() {
-        synchronized (this.mSync) {
-            return this.mCancelled;
-        }
+        return getCancellationToken().isCancelled() && !this.mEnded;
     }
 
     /**
@@ -197,16 +182,7 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
      */
     @Override
     public boolean cancel() {
-        try {
-            synchronized (this.mSync) {
-                if (this.mEnded || this.mCancelled) {
-                    this.mCancelled = true;
-                    return true;
-                }
-                this.mCancelled = true;
-                this.mSync.wait(5000L);
-            }
-        } catch (Exception e) {/**NON BLOCK**/}
+        getCancellationToken().cancel();
         return true;
     }
 
@@ -215,12 +191,8 @@ public class FolderUsageCommand extends Program implements FolderUsageExecutable
      */
     @Override
     public boolean end() {
-        try {
-            synchronized (this.mSync) {
-                this.mEnded = true;
-                this.mSync.wait(5000L);
-            }
-        } catch (Exception e) {/**NON BLOCK**/}
+        this.mEnded = true;
+        getCancellationToken().cancel();
         return true;
     }
 
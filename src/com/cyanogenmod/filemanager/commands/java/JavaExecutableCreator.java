@@ -31,6 +31,7 @@ import com.cyanogenmod.filemanager.commands.DiskUsageExecutable;
 import com.cyanogenmod.filemanager.commands.EchoExecutable;
 import com.cyanogenmod.filemanager.commands.ExecExecutable;
 import com.cyanogenmod.filemanager.commands.ExecutableCreator;
+import com.cyanogenmod.filemanager.commands.ExecutionPriority;
 import com.cyanogenmod.filemanager.commands.FindExecutable;
 import com.cyanogenmod.filemanager.commands.FolderUsageExecutable;
 import com.cyanogenmod.filemanager.commands.GroupsExecutable;
@@ -182,7 +183,9 @@ public class JavaExecutableCreator implements ExecutableCreator {
     public FindExecutable createFindExecutable(
             String directory, Query query, AsyncResultListener asyncResultListener)
             throws CommandNotFoundException {
-        return new FindCommand(directory, query, asyncResultListener);
+        FindCommand find = new FindCommand(directory, query, asyncResultListener);
+        find.setPriority(ExecutionPriority.BACKGROUND);
+        return find;
     }
 
     /**
@@ -192,7 +195,9 @@ public class JavaExecutableCreator implements ExecutableCreator {
     public FolderUsageExecutable createFolderUsageExecutable(
             String directory, AsyncResultListener asyncResultListener)
             throws CommandNotFoundException {
-        return new FolderUsageCommand(directory, asyncResultListener);
+        FolderUsageCommand usage = new FolderUsageCommand(directory, asyncResultListener);
+        usage.setPriority(ExecutionPriority.BACKGROUND);
+        return usage;
     }
 
     /**
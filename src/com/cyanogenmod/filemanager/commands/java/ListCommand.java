@@ -22,6 +22,7 @@ import com.cyanogenmod.filemanager.commands.ListExecutable;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.console.TraceRing;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.ParentDirectory;
 import com.cyanogenmod.filemanager.util.FileHelper;
@@ -37,10 +38,16 @@ import java.util.List;
 public class ListCommand extends Program implements ListExecutable {
 
     private static final String TAG = "ListCommand"; //$NON-NLS-1$
+    // The identifier of the program in the trace (the same that the java console uses)
+    private static final String TRACE_ID = "java:" + TAG; //$NON-NLS-1$
+
+    // The number of files notified in every partial result
+    private static final int PARTIAL_LIST_SIZE = 64;
 
     private final String mSrc;
     private final LIST_MODE mMode;
     private final List<FileSystemObject> mFiles;
+    private OnPartialListListener mOnPartialListListener;
 
     /**
      * Constructor of <code>ListCommand</code>. List mode.
@@ -63,6 +70,14 @@ public class ListCommand extends Program implements ListExecutable {
         return this.mFiles;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnPartialListListener(OnPartialListListener listener) {
+        this.mOnPartialListListener = listener;
+    }
+
     /**
      * Method that returns a single result of the program invocation.
      * Only must be called within a <code>FILEINFO</code> mode listing.
@@ -93,33 +108,35 @@ public class ListCommand extends Program implements ListExecutable {
             throw new NoSuchFileOrDirectory(this.mSrc);
         }
         if (this.mMode.compareTo(LIST_MODE.DIRECTORY) == 0) {
+            //Now if not is the root directory
+            if (this.mSrc != null &&
+                    this.mSrc.compareTo(FileHelper.ROOT_DIRECTORY) != 0 &&
+                    this.mMode.compareTo(LIST_MODE.DIRECTORY) == 0) {
+                this.mFiles.add(new ParentDirectory(new File(this.mSrc).getParent()));
+            }
+
+            int notified = 0;
             File[] files = f.listFiles();
             if (files != null) {
                 for (int i = 0; i < files.length; i++) {
                     FileSystemObject fso = FileHelper.createFileSystemObject(files[i]);
                     if (fso != null) {
-                        if (isTrace()) {
-                            Log.v(TAG, String.valueOf(fso));
-                        }
+                        TraceRing.getInstance().record(
+                                TRACE_ID, TraceRing.Phase.ITEM, fso.getSize());
                         this.mFiles.add(fso);
                     }
+                    if (this.mFiles.size() - notified >= PARTIAL_LIST_SIZE) {
+                        notified = notifyPartialList(notified);
+                    }
                 }
             }
-
-            //Now if not is the root directory
-            if (this.mSrc != null &&
-                    this.mSrc.compareTo(FileHelper.ROOT_DIRECTORY) != 0 &&
-                    this.mMode.compareTo(LIST_MODE.DIRECTORY) == 0) {
-                this.mFiles.add(0, new ParentDirectory(new File(this.mSrc).getParent()));
-            }
+            notifyPartialList(notified);
 
         } else {
             // Build the parent information
             FileSystemObject fso = FileHelper.createFileSystemObject(f);
             if (fso != null) {
-                if (isTrace()) {
-                    Log.v(TAG, String.valueOf(fso));
-                }
+                TraceRing.getInstance().record(TRACE_ID, TraceRing.Phase.ITEM, fso.getSize());
                 this.mFiles.add(fso);
             }
         }
@@ -129,4 +146,20 @@ public class ListCommand extends Program implements ListExecutable {
         }
     }
 
+    /**
+     * Method that notifies the files listed since the last notification.
+     *
+     * @param notified The number of files already notified
+     * @return int The number of files notified
+     */
+    private int notifyPartialList(int notified) {
+        final OnPartialListListener listener = this.mOnPartialListListener;
+        int cc = this.mFiles.size();
+        if (listener != null && cc > notified) {
+            listener.onPartialList(
+                    new ArrayList<FileSystemObject>(this.mFiles.subList(notified, cc)));
+        }
+        return cc;
+    }
+
 }
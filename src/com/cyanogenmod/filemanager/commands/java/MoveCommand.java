@@ -59,6 +59,14 @@ public class MoveCommand extends Program implements MoveExecutable {
         return Boolean.TRUE;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getModifiedPaths() {
+        return new String[]{this.mSrc, this.mDst};
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -81,13 +89,13 @@ public class MoveCommand extends Program implements MoveExecutable {
 
         //Move or copy recursively
         if (d.exists()) {
-            if (!FileHelper.copyRecursive(s, d, getBufferSize())) {
+            if (!FileHelper.copyRecursive(s, d, getBufferSize(), getCancellationToken())) {
                 if (isTrace()) {
                     Log.v(TAG, "Result: FAIL. InsufficientPermissionsException"); //$NON-NLS-1$
                 }
                 throw new InsufficientPermissionsException();
             }
-            if (!FileHelper.deleteFolder(s)) {
+            if (!FileHelper.deleteFolder(s, getCancellationToken())) {
                 if (isTrace()) {
                     Log.v(TAG, "Result: OK. WARNING. Source not deleted."); //$NON-NLS-1$
                 }
@@ -95,13 +103,13 @@ public class MoveCommand extends Program implements MoveExecutable {
         } else {
             // Move between filesystem is not allow. If rename fails then use copy operation
             if (!s.renameTo(d)) {
-                if (!FileHelper.copyRecursive(s, d, getBufferSize())) {
+                if (!FileHelper.copyRecursive(s, d, getBufferSize(), getCancellationToken())) {
                     if (isTrace()) {
                         Log.v(TAG, "Result: FAIL. InsufficientPermissionsException"); //$NON-NLS-1$
                     }
                     throw new InsufficientPermissionsException();
                 }
-                if (!FileHelper.deleteFolder(s)) {
+                if (!FileHelper.deleteFolder(s, getCancellationToken())) {
                     if (isTrace()) {
                         Log.v(TAG, "Result: OK. WARNING. Source not deleted."); //$NON-NLS-1$
                     }
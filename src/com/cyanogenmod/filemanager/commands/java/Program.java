@@ -16,7 +16,9 @@
 
 package com.cyanogenmod.filemanager.commands.java;
 
+import com.cyanogenmod.filemanager.commands.CancellationToken;
 import com.cyanogenmod.filemanager.commands.Executable;
+import com.cyanogenmod.filemanager.commands.ExecutionPriority;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
@@ -29,12 +31,16 @@ public abstract class Program implements Executable {
 
     private boolean mTrace;
     private int mBufferSize;
+    private ExecutionPriority mPriority;
+    private final CancellationToken mCancellationToken;
 
     /**
      * Constructor of <code>Program</code>
      */
     public Program() {
         super();
+        this.mPriority = ExecutionPriority.INTERACTIVE;
+        this.mCancellationToken = new CancellationToken();
     }
 
     /**
@@ -84,6 +90,44 @@ public abstract class Program implements Executable {
         return false;
     }
 
+    /**
+     * Method that returns the paths that this program modifies. The console runs the
+     * programs that modify the same path in the order in which they were executed.
+     * <code>null</code> by default (the program doesn't modify the filesystem).
+     *
+     * @return String[] The paths that this program modifies
+     */
+    @SuppressWarnings("static-method")
+    public String[] getModifiedPaths() {
+        return null;
+    }
+
+    /**
+     * Method that returns the cancellation token of the program. The program checks
+     * the token in its inner loops.
+     *
+     * @return CancellationToken The cancellation token
+     */
+    public CancellationToken getCancellationToken() {
+        return this.mCancellationToken;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExecutionPriority getPriority() {
+        return this.mPriority;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setPriority(ExecutionPriority priority) {
+        this.mPriority = priority;
+    }
+
     /**
      * Method that executes the program
      *
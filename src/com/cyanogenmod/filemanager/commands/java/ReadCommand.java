@@ -38,9 +38,7 @@ public class ReadCommand extends Program implements ReadExecutable {
     private final String mFile;
     private final AsyncResultListener mAsyncResultListener;
 
-    private boolean mCancelled;
-    private boolean mEnded;
-    private final Object mSync = new Object();
+    private volatile boolean mEnded;
 
     /**
      * Constructor of <code>ExecCommand</code>.
@@ -53,7 +51,6 @@ public class ReadCommand extends Program implements ReadExecutable {
         super();
         this.mFile = file;
         this.mAsyncResultListener = asyncResultListener;
-        this.mCancelled = false;
         this.mEnded = false;
     }
 
@@ -103,7 +100,7 @@ public class ReadCommand extends Program implements ReadExecutable {
         read(f);
 
         if (this.mAsyncResultListener != null) {
-            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+            this.mAsyncResultListener.onAsyncEnd(isCancelled());
         }
         if (this.mAsyncResultListener != null) {
             this.mAsyncResultListener.onAsyncExitCode(0);
@@ -124,27 +121,27 @@ public class ReadCommand extends Program implements ReadExecutable {
         BufferedInputStream bis = null;
         try {
             bis = new BufferedInputStream(new FileInputStream(file), getBufferSize());
+            // The stream is closed if the operation is cancelled while reading
+            getCancellationToken().register(bis);
             int read = 0;
             byte[] data = new byte[getBufferSize()];
             while ((read = bis.read(data, 0, getBufferSize())) != -1) {
+                // Check if the process was cancelled
+                if (getCancellationToken().isCancelled()) {
+                    break;
+                }
                 if (this.mAsyncResultListener != null) {
                     byte[] readData = new byte[read];
                     System.arraycopy(data, 0, readData, 0, read);
                     this.mAsyncResultListener.onPartialResult(readData);
-
-                    // Check if the process was cancelled
-                    try {
-                        synchronized (this.mSync) {
-                            if (this.mCancelled  || this.mEnded) {
-                                this.mSync.notify();
-                                break;
-                            }
-                        }
-                    } catch (Exception e) {/**NON BLOCK**/}
                 }
             }
 
         } catch (Exception e) {
+            if (getCancellationToken().isCancelled()) {
+                // The stream was closed by the cancellation
+                return;
+            }
             if (isTrace()) {
                 Log.v(TAG, "Result: FAIL. InsufficientPermissionsException"); //$NON-NLS-1$
             }
@@ -155,6 +152,7 @@ public class ReadCommand extends Program implements ReadExecutable {
         } finally {
             try {
                 if (bis != null) {
+                    getCancellationToken().unregister(bis);
                     bis.close();
                 }
             } catch (Throwable _throw) {/**NON BLOCK**/}
@@ -166,9 +164,7 @@ public class ReadCommand extends Program implements ReadExecutable {
      */
     @Override
     public boolean isCancelled() {
-        synchronized (this.mSync) {
-            return this.mCancelled;
-        }
+        return getCancellationToken().isCancelled() && !this.mEnded;
     }
 
     /**
@@ -176,12 +172,7 @@ public class ReadCommand extends Program implements ReadExecutable {
      */
     @Override
     public boolean cancel() {
-        try {
-            synchronized (this.mSync) {
-                this.mCancelled = true;
-                this.mSync.wait(5000L);
-            }
-        } catch (Exception e) {/**NON BLOCK**/}
+        getCancellationToken().cancel();
         return true;
     }
 
@@ -190,12 +181,8 @@ public class ReadCommand extends Program implements ReadExecutable {
      */
     @Override
     public boolean end() {
-        try {
-            synchronized (this.mSync) {
-                this.mEnded = true;
-                this.mSync.wait(5000L);
-            }
-        } catch (Exception e) {/**NON BLOCK**/}
+        this.mEnded = true;
+        getCancellationToken().cancel();
         return true;
     }
 
@@ -29,6 +29,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A class for write data to disk.<br/>
@@ -45,13 +47,14 @@ public class WriteCommand extends Program implements WriteExecutable {
     private BufferedOutputStream mBuffer;
     private final AsyncResultListener mAsyncResultListener;
 
-    private boolean mCancelled;
-    private final Object mSync = new Object();
+    // The maximum time that the stream waits for the program (the program waits first
+    // for the programs that modify the same file)
+    private static final long TIMEOUT = 60000L;
 
-    private static final long TIMEOUT = 1000L;
-
-    private final Object mWriteSync = new Object();
-    private boolean mReady;
+    // Opened when the program is running (or when it's cancelled)
+    private final CountDownLatch mReady = new CountDownLatch(1);
+    // Opened when the program is ended or cancelled
+    private final CountDownLatch mDone = new CountDownLatch(1);
 
     /**
      * Constructor of <code>WriteCommand</code>.
@@ -64,8 +67,6 @@ public class WriteCommand extends Program implements WriteExecutable {
         super();
         this.mFile = file;
         this.mAsyncResultListener = asyncResultListener;
-        this.mCancelled = false;
-        this.mReady = false;
     }
 
     /**
@@ -83,12 +84,14 @@ public class WriteCommand extends Program implements WriteExecutable {
     public OutputStream createOutputStream() throws IOException {
         try {
             // Wait until command is ready
-            synchronized (this.mWriteSync) {
-                if (!this.mReady) {
-                    try {
-                        this.mWriteSync.wait(TIMEOUT);
-                    } catch (Exception e) {/**NON BLOCK**/}
-                }
+            boolean ready = false;
+            try {
+                ready = this.mReady.await(TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {/**NON BLOCK**/}
+            if (!ready || isCancelled()) {
+                // Don't let the program wait for a stream that nobody will end
+                cancel();
+                throw new IOException("The write command is not running"); //$NON-NLS-1$
             }
             this.mBuffer = new BufferedOutputStream(
                             new FileOutputStream(
@@ -102,16 +105,21 @@ public class WriteCommand extends Program implements WriteExecutable {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String[] getModifiedPaths() {
+        return new String[]{this.mFile};
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void execute()
             throws InsufficientPermissionsException, NoSuchFileOrDirectory, ExecutionException {
-        synchronized (this.mSync) {
-            this.mReady = true;
-            this.mSync.notify();
-        }
+        this.mReady.countDown();
 
         if (isTrace()) {
             Log.v(TAG,
@@ -122,15 +130,13 @@ public class WriteCommand extends Program implements WriteExecutable {
             this.mAsyncResultListener.onAsyncStart();
         }
 
-        // Wait the finalization
+        // Wait the finalization. The latch retains an end requested before this point
         try {
-            synchronized (this.mSync) {
-                this.mSync.wait();
-            }
+            this.mDone.await();
         } catch (Throwable _throw) {/**NON BLOCK**/}
 
         if (this.mAsyncResultListener != null) {
-            this.mAsyncResultListener.onAsyncEnd(this.mCancelled);
+            this.mAsyncResultListener.onAsyncEnd(isCancelled());
         }
         if (this.mAsyncResultListener != null) {
             this.mAsyncResultListener.onAsyncExitCode(0);
@@ -146,9 +152,7 @@ public class WriteCommand extends Program implements WriteExecutable {
      */
     @Override
     public boolean isCancelled() {
-        synchronized (this.mSync) {
-            return this.mCancelled;
-        }
+        return getCancellationToken().isCancelled();
     }
 
     /**
@@ -157,12 +161,9 @@ public class WriteCommand extends Program implements WriteExecutable {
     @Override
     public boolean cancel() {
         closeBuffer();
-        this.mCancelled = true;
-        try {
-            synchronized (this.mSync) {
-                this.mSync.notify();
-            }
-        } catch (Throwable _throw) {/**NON BLOCK**/}
+        getCancellationToken().cancel();
+        this.mReady.countDown();
+        this.mDone.countDown();
         return true;
     }
 
@@ -172,11 +173,7 @@ public class WriteCommand extends Program implements WriteExecutable {
     @Override
     public boolean end() {
         closeBuffer();
-        try {
-            synchronized (this.mSync) {
-                this.mSync.notify();
-            }
-        } catch (Throwable _throw) {/**NON BLOCK**/}
+        this.mDone.countDown();
         return true;
     }
 
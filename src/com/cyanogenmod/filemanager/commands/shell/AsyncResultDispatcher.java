@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The shared executor that delivers the partial results of the asynchronous programs.<br/>
+ * <br/>
+ * The executor has a bounded number of threads, that are created on demand and released
+ * when they are idle, so a search or a folder usage doesn't create its own thread. Every
+ * program has at most one pending task, so the results of a program are delivered in
+ * order and the queue of the executor is bounded by the number of running programs.
+ *
+ * @see AsyncResultProgram
+ */
+final class AsyncResultDispatcher {
+
+    // The time that an idle thread is retained (in seconds)
+    private static final long KEEP_ALIVE_TIME = 30L;
+
+    private static final int MAX_THREADS =
+            Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r,
+                    "AsyncResultDispatcher #" + this.mCount.incrementAndGet()); //$NON-NLS-1$
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
+    private static final ThreadPoolExecutor EXECUTOR;
+    static {
+        EXECUTOR = new ThreadPoolExecutor(
+                MAX_THREADS, MAX_THREADS, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Constructor of <code>AsyncResultDispatcher</code>.
+     */
+    private AsyncResultDispatcher() {
+        super();
+    }
+
+    /**
+     * Method that returns the shared executor.
+     *
+     * @return Executor The shared executor
+     */
+    static Executor getExecutor() {
+        return EXECUTOR;
+    }
+}
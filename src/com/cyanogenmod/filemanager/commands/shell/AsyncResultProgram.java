@@ -18,40 +18,46 @@ package com.cyanogenmod.filemanager.commands.shell;
 
 import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
 import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+import com.cyanogenmod.filemanager.commands.CancellationToken;
 import com.cyanogenmod.filemanager.commands.SIGNAL;
 import com.cyanogenmod.filemanager.util.FileHelper;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * An abstract class that allow the consumption of partial data. Commands
- * can parse the results while this are still retrieving.
+ * can parse the results while this are still retrieving.<br/>
+ * <br/>
+ * The partial results are queued in a ring per stream (the standard output and
+ * the standard error are read by different threads) and delivered in order by the
+ * shared {@link AsyncResultDispatcher}.
  */
 public abstract class AsyncResultProgram
     extends Program implements AsyncResultExecutable, AsyncResultProgramListener {
 
-    /**
-     * @hide
-     */
-    static final Byte STDIN = new Byte((byte)0);
-    /**
-     * @hide
-     */
-    static final Byte STDERR = new Byte((byte)1);
+    // The capacity of the partial result rings (in chunks)
+    private static final int RING_CAPACITY = 256;
+    // The maximum number of chunks delivered in a row, before leave the dispatcher
+    // thread to other programs
+    private static final int MAX_DRAIN_BATCH = 64;
+    // The time that a reader waits for a full ring (in nanoseconds)
+    private static final long FULL_RING_WAIT = 1000000L;
 
     private final AsyncResultListener mAsyncResultListener;
-    private AsyncResultProgramThread mWorkerThread;
-    /**
-     * @hide
-     */
-    final List<String> mPartialData;
-    /**
-     * @hide
-     */
-    final List<Byte> mPartialDataType;
-    final Object mSync = new Object();
+
+    // The partial results. Every ring has a single producer (the reader thread of
+    // the stream) and a single consumer (the drain task)
+    private final PartialResultRing mStdInRing;
+    private final PartialResultRing mStdErrRing;
+    // The incomplete lines. Only accessed by the reader thread of the stream
+    private final StringBuilder mStdInTail;
+    private final StringBuilder mStdErrTail;
+
+    private final AtomicBoolean mDrainScheduled;
+    private final Runnable mDrainTask;
+    // Cancelled when the delivery of partial results is stopped
+    private final CancellationToken mCancellationToken;
     /**
      * @hide
      */
@@ -61,8 +67,6 @@ public abstract class AsyncResultProgram
     private OnCancelListener mOnCancelListener;
     private OnEndListener mOnEndListener;
 
-    private StringBuffer mTempBuffer;
-
     /**
      * @Constructor of <code>AsyncResultProgram</code>.
      *
@@ -93,9 +97,13 @@ public abstract class AsyncResultProgram
             throws InvalidCommandDefinitionException {
         super(id, prepare, args);
         this.mAsyncResultListener = asyncResultListener;
-        this.mPartialData = Collections.synchronizedList(new ArrayList<String>());
-        this.mPartialDataType = Collections.synchronizedList(new ArrayList<Byte>());
-        this.mTempBuffer = new StringBuffer();
+        this.mStdInRing = new PartialResultRing(RING_CAPACITY);
+        this.mStdErrRing = new PartialResultRing(RING_CAPACITY);
+        this.mStdInTail = new StringBuilder();
+        this.mStdErrTail = new StringBuilder();
+        this.mDrainScheduled = new AtomicBoolean();
+        this.mDrainTask = new DrainTask();
+        this.mCancellationToken = new CancellationToken();
         this.mOnCancelListener = null;
         this.mOnEndListener = null;
         this.mCancelled = false;
@@ -106,9 +114,6 @@ public abstract class AsyncResultProgram
      * @hide
      */
     public final void onRequestStartParsePartialResult() {
-        this.mWorkerThread = new AsyncResultProgramThread();
-        this.mWorkerThread.start();
-
         //Notify start to command class
         this.onStartParsePartialResult();
 
@@ -126,16 +131,14 @@ public abstract class AsyncResultProgram
      * @hide
      */
     public final void onRequestEndParsePartialResult(boolean cancelled) {
-        synchronized (this.mSync) {
-            this.mWorkerThread.mAlive = false;
-            this.mSync.notify();
-        }
+        //Wait for the delivery of the pending partial results
         synchronized (this.mTerminateSync) {
-            if (this.mWorkerThread.isAlive()) {
+            while (!isDrained()) {
                 try {
                     this.mTerminateSync.wait();
                 } catch (Exception e) {
                     /**NON BLOCK**/
+                    break;
                 }
             }
         }
@@ -166,60 +169,101 @@ public abstract class AsyncResultProgram
      * Method that parse the result of a program invocation.
      *
      * @param partialIn A partial standard input buffer (incremental buffer)
+     * @param start The start of the new data in the buffer (inclusive)
+     * @param end The end of the new data in the buffer (exclusive)
      * @hide
      */
-    public final void onRequestParsePartialResult(String partialIn) {
-        synchronized (this.mSync) {
-            String data = partialIn;
-            String rest = ""; //$NON-NLS-1$
-            if (parseOnlyCompleteLines()) {
-                int pos = partialIn.lastIndexOf(FileHelper.NEWLINE);
-                if (pos == -1) {
-                    //Save partial data
-                    this.mTempBuffer.append(partialIn);
-                    return;
-                }
-
-                //Retrieve the data
-                data = this.mTempBuffer.append(partialIn.substring(0, pos + 1)).toString();
-                rest = partialIn.substring(pos + 1);
-            }
-
-            this.mPartialDataType.add(STDIN);
-            this.mPartialData.add(data);
-            this.mTempBuffer = new StringBuffer(rest);
-            this.mSync.notify();
-        }
+    public final void onRequestParsePartialResult(CharSequence partialIn, int start, int end) {
+        enqueue(this.mStdInRing, this.mStdInTail, partialIn, start, end);
     }
 
     /**
      * Method that parse the error result of a program invocation.
      *
      * @param partialErr A partial standard err buffer (incremental buffer)
+     * @param start The start of the new data in the buffer (inclusive)
+     * @param end The end of the new data in the buffer (exclusive)
      * @hide
      */
-    public final void parsePartialErrResult(String partialErr) {
-        synchronized (this.mSync) {
-            String data = partialErr;
-            String rest = ""; //$NON-NLS-1$
-            if (parseOnlyCompleteLines()) {
-                int pos = partialErr.lastIndexOf(FileHelper.NEWLINE);
-                if (pos == -1) {
-                    //Save partial data
-                    this.mTempBuffer.append(partialErr);
-                    return;
-                }
+    public final void parsePartialErrResult(CharSequence partialErr, int start, int end) {
+        enqueue(this.mStdErrRing, this.mStdErrTail, partialErr, start, end);
+    }
+
+    /**
+     * Method that queues a partial result of a stream and schedules its delivery.
+     * Only must be called by the reader thread of the stream. The partial result
+     * is a window over the buffer of the console, and only the queued data is copied.
+     *
+     * @param ring The ring of the stream
+     * @param tail The incomplete line of the stream
+     * @param partial The buffer of the partial result
+     * @param start The start of the partial result in the buffer (inclusive)
+     * @param end The end of the partial result in the buffer (exclusive)
+     */
+    private void enqueue(PartialResultRing ring, StringBuilder tail,
+            CharSequence partial, int start, int end) {
+        if (this.mCancellationToken.isCancelled() || start >= end) {
+            return;
+        }
+        String data;
+        if (parseOnlyCompleteLines()) {
+            int pos = lastIndexOf(partial, FileHelper.NEWLINE, start, end);
+            if (pos == -1) {
+                //Save partial data
+                tail.append(partial, start, end);
+                return;
+            }
 
-                //Retrieve the data
-                data = this.mTempBuffer.append(partialErr.substring(0, pos + 1)).toString();
-                rest = partialErr.substring(pos + 1);
+            //Retrieve the data
+            if (tail.length() > 0) {
+                data = tail.append(partial, start, pos + 1).toString();
+                tail.setLength(0);
+            } else {
+                data = partial.subSequence(start, pos + 1).toString();
             }
+            tail.append(partial, pos + 1, end);
+        } else {
+            data = partial.subSequence(start, end).toString();
+        }
 
-            this.mPartialDataType.add(STDERR);
-            this.mPartialData.add(data);
-            this.mTempBuffer = new StringBuffer(rest);
-            this.mSync.notify();
+        //If the ring is full, the reader waits for the dispatcher (back pressure)
+        while (!ring.offer(data)) {
+            scheduleDrain();
+            if (this.mCancellationToken.isCancelled()) {
+                return;
+            }
+            LockSupport.parkNanos(FULL_RING_WAIT);
         }
+        scheduleDrain();
+    }
+
+    /**
+     * Method that schedules the delivery of the queued partial results, if it
+     * isn't scheduled yet.
+     */
+    private void scheduleDrain() {
+        if (this.mDrainScheduled.compareAndSet(false, true)) {
+            AsyncResultDispatcher.getExecutor().execute(this.mDrainTask);
+        }
+    }
+
+    /**
+     * Method that returns if all the queued partial results were delivered.
+     *
+     * @return boolean If all the queued partial results were delivered
+     */
+    private boolean isDrained() {
+        return !this.mDrainScheduled.get() &&
+                this.mStdInRing.isEmpty() && this.mStdErrRing.isEmpty();
+    }
+
+    /**
+     * Method that stops the delivery of partial results. The queued partial results
+     * are discarded.
+     */
+    private void stopDelivery() {
+        this.mCancellationToken.cancel();
+        scheduleDrain();
     }
 
     /**
@@ -260,11 +304,8 @@ public abstract class AsyncResultProgram
             return false;
         }
 
-        //Stop the thread
-        synchronized (this.mSync) {
-            this.mWorkerThread.mAlive = false;
-            this.mSync.notify();
-        }
+        //Stop the delivery of partial results
+        stopDelivery();
 
         //Notify cancellation
         if (this.mOnCancelListener != null) {
@@ -287,11 +328,8 @@ public abstract class AsyncResultProgram
             return false;
         }
 
-        //Stop the thread
-        synchronized (this.mSync) {
-            this.mWorkerThread.mAlive = false;
-            this.mSync.notify();
-        }
+        //Stop the delivery of partial results
+        stopDelivery();
 
         //Notify ending
         SIGNAL signal = onRequestEnd();
@@ -340,6 +378,14 @@ public abstract class AsyncResultProgram
         return true;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final CancellationToken getCancellationToken() {
+        return this.mCancellationToken;
+    }
+
     /**
      * Method that returns if the command is expected to finalize by it self, or needs
      * a call to end method.
@@ -352,16 +398,14 @@ public abstract class AsyncResultProgram
     }
 
     /**
-     * An internal class for process partial results sequentially in a
-     * secure way.
+     * An internal class for deliver the queued partial results sequentially in the
+     * shared dispatcher.
      */
-    private class AsyncResultProgramThread extends Thread {
-        boolean mAlive = true;
-
+    private class DrainTask implements Runnable {
         /**
-         * Constructor of <code>AsyncResultProgramThread</code>.
+         * Constructor of <code>DrainTask</code>.
          */
-        AsyncResultProgramThread() {
+        DrainTask() {
             super();
         }
 
@@ -370,34 +414,42 @@ public abstract class AsyncResultProgram
          */
         @Override
         public void run() {
-            try {
-                this.mAlive = true;
-                while (this.mAlive) {
-                   synchronized (AsyncResultProgram.this.mSync) {
-                       AsyncResultProgram.this.mSync.wait();
-                       while (AsyncResultProgram.this.mPartialData.size() > 0) {
-                           Byte type = AsyncResultProgram.this.mPartialDataType.remove(0);
-                           String data = AsyncResultProgram.this.mPartialData.remove(0);
-                           try {
-                               if (type.compareTo(STDIN) == 0) {
-                                   AsyncResultProgram.this.onParsePartialResult(data);
-                               } else {
-                                   AsyncResultProgram.this.onParseErrorPartialResult(data);
-                               }
-                           } catch (Throwable ex) {
-                               /**NON BLOCK**/
-                           }
-                       }
-                   }
+            final AsyncResultProgram program = AsyncResultProgram.this;
+            int count = 0;
+            while (count < MAX_DRAIN_BATCH) {
+                boolean err = false;
+                String data = program.mStdInRing.poll();
+                if (data == null) {
+                    data = program.mStdErrRing.poll();
+                    err = true;
                 }
-            } catch (Exception e) {
-                /**NON BLOCK**/
-
-            } finally {
-                this.mAlive = false;
-                synchronized (AsyncResultProgram.this.mTerminateSync) {
-                    AsyncResultProgram.this.mTerminateSync.notify();
+                if (data == null) {
+                    break;
                 }
+                count++;
+                if (program.mCancellationToken.isCancelled()) {
+                    // Discard the data
+                    continue;
+                }
+                try {
+                    if (!err) {
+                        program.onParsePartialResult(data);
+                    } else {
+                        program.onParseErrorPartialResult(data);
+                    }
+                } catch (Throwable ex) {
+                    /**NON BLOCK**/
+                }
+            }
+            program.mDrainScheduled.set(false);
+
+            // More data was queued, or the batch was full. Queue a new delivery
+            if (!program.mStdInRing.isEmpty() || !program.mStdErrRing.isEmpty()) {
+                program.scheduleDrain();
+                return;
+            }
+            synchronized (program.mTerminateSync) {
+                program.mTerminateSync.notifyAll();
             }
         }
     }
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.android.internal.util.XmlUtils;
+import com.cyanogenmod.filemanager.FileManagerApplication;
+import com.cyanogenmod.filemanager.R;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A registry of the command definitions of the <code>command_list.xml</code> file.<br/>
+ * <br/>
+ * The file is parsed only once, and every command is stored as an immutable and
+ * precompiled {@link CommandTemplate}, so the creation of a command doesn't need
+ * to walk the xml file.
+ *
+ * @see "command_list.xml"
+ */
+public final class CommandRegistry {
+
+    private static final String TAG = "CommandRegistry"; //$NON-NLS-1$
+
+    // Command list XML tags
+    private static final String TAG_COMMAND_LIST = "CommandList"; //$NON-NLS-1$
+    private static final String TAG_COMMAND = "command"; //$NON-NLS-1$
+    private static final String TAG_STARTCODE = "startcode"; //$NON-NLS-1$
+    private static final String TAG_EXITCODE = "exitcode"; //$NON-NLS-1$
+    private static final String TAG_ERRORCODE = "errorcode"; //$NON-NLS-1$
+
+    private static CommandRegistry sInstance;
+
+    private final Map<String, CommandTemplate> mCommands;
+    private final CommandTemplate mStartCode;
+    private final CommandTemplate mExitCode;
+    private final CommandTemplate mErrorCode;
+    private final long mLoadTime;
+
+    /**
+     * Constructor of <code>CommandRegistry</code>.
+     *
+     * @param commands The command definitions
+     * @param startCode The start code definition
+     * @param exitCode The exit code definition
+     * @param errorCode The error code definition (optional)
+     * @param loadTime The time spent loading the definitions (in milliseconds)
+     */
+    private CommandRegistry(Map<String, CommandTemplate> commands,
+            CommandTemplate startCode, CommandTemplate exitCode, CommandTemplate errorCode,
+            long loadTime) {
+        super();
+        this.mCommands = Collections.unmodifiableMap(commands);
+        this.mStartCode = startCode;
+        this.mExitCode = exitCode;
+        this.mErrorCode = errorCode;
+        this.mLoadTime = loadTime;
+    }
+
+    /**
+     * Method that returns the registry of the application, loading it if it wasn't
+     * loaded yet.
+     *
+     * @return CommandRegistry The registry of the application
+     */
+    public static CommandRegistry getInstance() {
+        return getInstance(FileManagerApplication.getInstance().getResources());
+    }
+
+    /**
+     * Method that returns the registry of the application, loading it if it wasn't
+     * loaded yet.
+     *
+     * @param resources The application resource manager
+     * @return CommandRegistry The registry of the application
+     */
+    public static synchronized CommandRegistry getInstance(Resources resources) {
+        if (sInstance == null) {
+            sInstance = load(resources);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Method that returns the definition of a command.
+     *
+     * @param id The identifier of the command
+     * @return CommandTemplate The definition of the command
+     * @throws InvalidCommandDefinitionException If the command is not present or has an
+     * invalid definition
+     */
+    public CommandTemplate getCommand(String id) throws InvalidCommandDefinitionException {
+        CommandTemplate template = this.mCommands.get(id);
+        if (template == null) {
+            throw new InvalidCommandDefinitionException(id);
+        }
+        if (template.getPath() == null) {
+            throw new InvalidCommandDefinitionException(id + ": path is null"); //$NON-NLS-1$
+        }
+        if (template.getArguments() == null) {
+            throw new InvalidCommandDefinitionException(id + ": args is null"); //$NON-NLS-1$
+        }
+        return template;
+    }
+
+    /**
+     * Method that returns if the registry has the definition of a command.
+     *
+     * @param id The identifier of the command
+     * @return boolean If the registry has the definition of the command
+     */
+    public boolean hasCommand(String id) {
+        return this.mCommands.containsKey(id);
+    }
+
+    /**
+     * Method that returns the definition of the start code command.
+     *
+     * @return CommandTemplate The definition of the start code command
+     * @throws InvalidCommandDefinitionException If the command is not present or has an
+     * invalid definition
+     */
+    public CommandTemplate getStartCode() throws InvalidCommandDefinitionException {
+        return checkControlCode(this.mStartCode, TAG_STARTCODE);
+    }
+
+    /**
+     * Method that returns the definition of the exit code command.
+     *
+     * @return CommandTemplate The definition of the exit code command
+     * @throws InvalidCommandDefinitionException If the command is not present or has an
+     * invalid definition
+     */
+    public CommandTemplate getExitCode() throws InvalidCommandDefinitionException {
+        return checkControlCode(this.mExitCode, TAG_EXITCODE);
+    }
+
+    /**
+     * Method that returns the definition of the error code command. This command writes
+     * a control marker in the standard error, so the end of the standard error of a
+     * command can be detected.
+     *
+     * @return CommandTemplate The definition of the error code command, or
+     * <code>null</code> if the command is not defined
+     */
+    public CommandTemplate getErrorCode() {
+        if (this.mErrorCode == null || this.mErrorCode.getArguments() == null) {
+            return null;
+        }
+        return this.mErrorCode;
+    }
+
+    /**
+     * Method that returns the number of command definitions of the registry.
+     *
+     * @return int The number of command definitions
+     */
+    public int getTemplateCount() {
+        return this.mCommands.size();
+    }
+
+    /**
+     * Method that returns the time spent loading the registry.
+     *
+     * @return long The load time (in milliseconds)
+     */
+    public long getLoadTime() {
+        return this.mLoadTime;
+    }
+
+    /**
+     * Method that checks that a control code command is defined.
+     *
+     * @param template The control code command
+     * @param tag The tag of the control code command
+     * @return CommandTemplate The control code command
+     * @throws InvalidCommandDefinitionException If the command is not present or has an
+     * invalid definition
+     */
+    private static CommandTemplate checkControlCode(CommandTemplate template, String tag)
+            throws InvalidCommandDefinitionException {
+        if (template == null) {
+            throw new InvalidCommandDefinitionException(tag);
+        }
+        if (template.getArguments() == null) {
+            throw new InvalidCommandDefinitionException(tag + ": path is null"); //$NON-NLS-1$
+        }
+        return template;
+    }
+
+    /**
+     * Method that loads the resource command list xml.
+     *
+     * @param resources The application resource manager
+     * @return CommandRegistry The registry
+     */
+    private static CommandRegistry load(Resources resources) {
+        final long start = SystemClock.elapsedRealtime();
+        Map<String, CommandTemplate> commands = new HashMap<String, CommandTemplate>();
+        CommandTemplate startCode = null;
+        CommandTemplate exitCode = null;
+        CommandTemplate errorCode = null;
+
+        //Read the command list xml file
+        XmlResourceParser parser = resources.getXml(R.xml.command_list);
+        try {
+            //Find the root element
+            XmlUtils.beginDocument(parser, TAG_COMMAND_LIST);
+            while (true) {
+                XmlUtils.nextElement(parser);
+                String element = parser.getName();
+                if (element == null) {
+                    break;
+                }
+
+                if (TAG_COMMAND.equals(element)) {
+                    CharSequence id = parser.getAttributeValue(R.styleable.Command_commandId);
+                    if (id == null || commands.containsKey(id.toString())) {
+                        // The first definition wins
+                        continue;
+                    }
+                    CharSequence path =
+                            parser.getAttributeValue(R.styleable.Command_commandPath);
+                    CharSequence args =
+                            parser.getAttributeValue(R.styleable.Command_commandArgs);
+                    commands.put(id.toString(), new CommandTemplate(
+                                    id.toString(),
+                                    path == null ? null : path.toString(),
+                                    args == null ? null : args.toString()));
+
+                } else if (TAG_STARTCODE.equals(element) && startCode == null) {
+                    // The control codes are stored as arguments, without path
+                    CharSequence path = parser.getAttributeValue(R.styleable.Command_commandPath);
+                    startCode = new CommandTemplate(
+                            TAG_STARTCODE, null, path == null ? null : path.toString());
+
+                } else if (TAG_EXITCODE.equals(element) && exitCode == null) {
+                    CharSequence path = parser.getAttributeValue(R.styleable.Command_commandPath);
+                    exitCode = new CommandTemplate(
+                            TAG_EXITCODE, null, path == null ? null : path.toString());
+
+                } else if (TAG_ERRORCODE.equals(element) && errorCode == null) {
+                    CharSequence path = parser.getAttributeValue(R.styleable.Command_commandPath);
+                    errorCode = new CommandTemplate(
+                            TAG_ERRORCODE, null, path == null ? null : path.toString());
+                }
+            }
+        } catch (XmlPullParserException e) {
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            parser.close();
+        }
+
+        final long loadTime = SystemClock.elapsedRealtime() - start;
+        Log.i(TAG,
+                String.format(
+                        "Command registry loaded. templates: %d, time: %d ms", //$NON-NLS-1$
+                        Integer.valueOf(commands.size()), Long.valueOf(loadTime)));
+        return new CommandRegistry(commands, startCode, exitCode, errorCode, loadTime);
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.MissingFormatArgumentException;
+
+/**
+ * An immutable and precompiled definition of a command of the <code>command_list.xml</code>
+ * file.<br/>
+ * <br/>
+ * The arguments of the command are split once in literal segments and argument slots
+ * (<code>%1$s</code>, <code>%2$s</code>, ...), so formatting the arguments of a command
+ * only concatenates strings. Templates with other format specifiers are formatted with
+ * {@link String#format(String, Object...)}.
+ *
+ * @see CommandRegistry
+ */
+public final class CommandTemplate {
+
+    private final String mId;
+    private final String mPath;
+    private final String mArgs;
+
+    // The literal segments and the argument slots (0-based) between them. The
+    // segment i precedes the slot i, and the last segment follows the last slot.
+    // Null if the arguments couldn't be precompiled
+    private final String[] mSegments;
+    private final int[] mSlots;
+
+    /**
+     * Constructor of <code>CommandTemplate</code>.
+     *
+     * @param id The identifier of the command
+     * @param path The full qualified path of the command
+     * @param args The arguments definition of the command
+     */
+    public CommandTemplate(String id, String path, String args) {
+        super();
+        this.mId = id;
+        this.mPath = path;
+        this.mArgs = args;
+
+        List<String> segments = new ArrayList<String>();
+        List<Integer> slots = new ArrayList<Integer>();
+        if (args != null && compile(args, segments, slots)) {
+            int cc = slots.size();
+            this.mSlots = new int[cc];
+            for (int i = 0; i < cc; i++) {
+                this.mSlots[i] = slots.get(i).intValue();
+            }
+            this.mSegments = segments.toArray(new String[segments.size()]);
+        } else {
+            this.mSlots = null;
+            this.mSegments = null;
+        }
+    }
+
+    /**
+     * Method that returns the identifier of the command.
+     *
+     * @return String The identifier of the command
+     */
+    public String getId() {
+        return this.mId;
+    }
+
+    /**
+     * Method that returns the full qualified path of the command.
+     *
+     * @return String The full qualified path of the command
+     */
+    public String getPath() {
+        return this.mPath;
+    }
+
+    /**
+     * Method that returns the arguments definition of the command (not formatted).
+     *
+     * @return String The arguments definition of the command
+     */
+    public String getArguments() {
+        return this.mArgs;
+    }
+
+    /**
+     * Method that returns if the arguments definition was precompiled.
+     *
+     * @return boolean If the arguments definition was precompiled
+     */
+    public boolean isCompiled() {
+        return this.mSegments != null;
+    }
+
+    /**
+     * Method that formats the arguments definition of the command with the
+     * passed arguments.
+     *
+     * @param args The arguments of the command
+     * @return String The formatted arguments
+     * @throws MissingFormatArgumentException If the definition references an argument
+     * that wasn't passed
+     */
+    public String format(Object... args) {
+        if (this.mSegments == null) {
+            return String.format(this.mArgs, args);
+        }
+        if (this.mSlots.length == 0) {
+            return this.mSegments[0];
+        }
+
+        int len = this.mArgs.length();
+        StringBuilder sb = new StringBuilder(len + (args.length * 32));
+        int cc = this.mSlots.length;
+        for (int i = 0; i < cc; i++) {
+            int slot = this.mSlots[i];
+            if (slot >= args.length) {
+                throw new MissingFormatArgumentException(
+                        "%" + (slot + 1) + "$s"); //$NON-NLS-1$ //$NON-NLS-2$
+            }
+            sb.append(this.mSegments[i]);
+            sb.append(String.valueOf(args[slot]));
+        }
+        sb.append(this.mSegments[cc]);
+        return sb.toString();
+    }
+
+    /**
+     * Method that splits an arguments definition in literal segments and argument slots.
+     * Only the <code>%n$s</code> and <code>%%</code> specifiers are supported.
+     *
+     * @param args The arguments definition
+     * @param segments The list where the literal segments are returned
+     * @param slots The list where the argument slots are returned
+     * @return boolean If the arguments definition could be precompiled
+     */
+    private static boolean compile(String args, List<String> segments, List<Integer> slots) {
+        StringBuilder segment = new StringBuilder();
+        final int len = args.length();
+        int i = 0;
+        while (i < len) {
+            char c = args.charAt(i);
+            if (c != '%') {
+                segment.append(c);
+                i++;
+                continue;
+            }
+
+            // %%
+            if (i + 1 < len && args.charAt(i + 1) == '%') {
+                segment.append('%');
+                i += 2;
+                continue;
+            }
+
+            // %n$s
+            int j = i + 1;
+            int index = 0;
+            while (j < len && args.charAt(j) >= '0' && args.charAt(j) <= '9') {
+                index = (index * 10) + (args.charAt(j) - '0');
+                j++;
+            }
+            if (j == i + 1 || index == 0 || j + 1 >= len
+                    || args.charAt(j) != '$' || args.charAt(j + 1) != 's') {
+                // Not supported
+                return false;
+            }
+            segments.add(segment.toString());
+            slots.add(Integer.valueOf(index - 1));
+            segment.setLength(0);
+            i = j + 2;
+        }
+        segments.add(segment.toString());
+        return true;
+    }
+
+}
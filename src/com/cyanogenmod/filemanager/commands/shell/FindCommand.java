@@ -30,9 +30,7 @@ import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.ParseHelper;
 import com.cyanogenmod.filemanager.util.SearchHelper;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -86,16 +84,21 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
     @Override
     public void onParsePartialResult(final String partialIn) {
 
-        // Check the in buffer to extract information
+        // Check the in buffer to extract information. The partial data always
+        // has complete lines, so every line is parsed without buffer the data again
         final List<FileSystemObject> partialFiles = new ArrayList<FileSystemObject>();
-        BufferedReader br = null;
         try {
-            //Read the partial + previous partial and clean partial
-            br = new BufferedReader(new StringReader(partialIn));
+            final String dir = this.mDirectory.getAbsolutePath();
+            final int len = partialIn.length();
+            int start = 0;
+            while (start < len) {
+                int end = partialIn.indexOf('\n', start);
+                if (end == -1) {
+                    end = len;
+                }
+                String line = partialIn.substring(start, end);
+                start = end + 1;
 
-            //Add all lines to an array
-            String line = null;
-            while ((line = br.readLine()) != null) {
                 //Checks that there is some text in the line. Otherwise ignore it
                 if (line.trim().length() == 0) {
                     break;
@@ -106,7 +109,7 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
                     FileSystemObject fso = ParseHelper.parseStatOutput(line);
 
                     // Search directory is not part of the search
-                    if (fso.getFullPath().compareTo(this.mDirectory.getAbsolutePath()) != 0) {
+                    if (fso.getFullPath().compareTo(dir) != 0) {
                         partialFiles.add(fso);
                     }
 
@@ -128,15 +131,6 @@ public class FindCommand extends AsyncResultProgram implements FindExecutable {
 
         } catch (Exception ex) {
             Log.w(TAG, "Partial result fails", ex); //$NON-NLS-1$
-
-        } finally {
-            try {
-                if (br != null) {
-                    br.close();
-                }
-            } catch (Throwable ex) {
-                /**NON BLOCK**/
-            }
         }
     }
 
@@ -28,11 +28,9 @@ import com.cyanogenmod.filemanager.model.ParentDirectory;
 import com.cyanogenmod.filemanager.util.FileHelper;
 import com.cyanogenmod.filemanager.util.ParseHelper;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.StringReader;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
@@ -48,12 +46,26 @@ public class ListCommand extends SyncResultProgram implements ListExecutable {
     private static final String TAG = "ListCommand"; //$NON-NLS-1$
 
     private static final String ID_LS = "ls";  //$NON-NLS-1$
+    private static final String ID_LS_MACHINE = "lsmachine";  //$NON-NLS-1$
     private static final String ID_FILEINFO = "fileinfo";  //$NON-NLS-1$
 
+    // The records separator of the machine listing format
+    private static final String MACHINE_LIST_SEPARATOR = "\0"; //$NON-NLS-1$
+
+    // If the find command of the device supports the machine listing format (the
+    // plain listing is used until the probes of the application check it)
+    private static volatile boolean sMachineListing;
+
     private final LIST_MODE mMode;
+    private final boolean mMachineListing;
     private final List<FileSystemObject> mFiles;
     private String mParentDir;
 
+    private OnPartialListListener mOnPartialListListener;
+    private boolean mPartialParsed;
+    private boolean mEndOfList;
+    private int mNotified;
+
     /**
      * Constructor of <code>ListCommand</code>. List mode.
      *
@@ -66,11 +78,13 @@ public class ListCommand extends SyncResultProgram implements ListExecutable {
             throws InvalidCommandDefinitionException {
         // Always add backslash for list the files of the directory, instead of
         // the directory.
-        super(ID_LS, new String[]{ FileHelper.addTrailingSlash(src) });
+        super(sMachineListing ? ID_LS_MACHINE : ID_LS,
+                new String[]{ FileHelper.addTrailingSlash(src) });
 
         //Initialize files to something distinct of null
         this.mFiles = new ArrayList<FileSystemObject>();
         this.mMode = LIST_MODE.DIRECTORY;
+        this.mMachineListing = ID_LS_MACHINE.compareTo(getId()) == 0;
 
         //Retrieve parent directory information
         if (src.compareTo(FileHelper.ROOT_DIRECTORY) == 0) {
@@ -105,6 +119,7 @@ public class ListCommand extends SyncResultProgram implements ListExecutable {
         //Initialize files to something distinct of null
         this.mFiles = new ArrayList<FileSystemObject>();
         this.mMode = LIST_MODE.FILEINFO;
+        this.mMachineListing = false;
 
         //Get the absolute path
         if (followSymlinks) {
@@ -118,63 +133,192 @@ public class ListCommand extends SyncResultProgram implements ListExecutable {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setOnPartialListListener(OnPartialListListener listener) {
+        this.mOnPartialListListener = listener;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isParsePartialResult() {
+        // Every line is parsed when is received, so the output of big directories
+        // isn't held by the console
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getRecordSeparator() {
+        return this.mMachineListing ? MACHINE_LIST_SEPARATOR : super.getRecordSeparator();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onStartParsePartialResult() {
+        reset();
+        this.mPartialParsed = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onParsePartialResult(String partialIn) {
+        parseLines(partialIn);
+
+        //Notify the new files
+        final OnPartialListListener listener = this.mOnPartialListListener;
+        int cc = this.mFiles.size();
+        if (listener != null && cc > this.mNotified) {
+            List<FileSystemObject> files =
+                    new ArrayList<FileSystemObject>(this.mFiles.subList(this.mNotified, cc));
+            this.mNotified = cc;
+            listener.onPartialList(files);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void parse(String in, String err) throws ParseException {
+        //Partial results are already parsed
+        if (!this.mPartialParsed) {
+            reset();
+        }
+        this.mPartialParsed = false;
+
+        try {
+            parseLines(in);
+        } catch (Exception ex) {
+            throw new ParseException(ex.getMessage(), 0);
+        }
+    }
+
+    /**
+     * Method that resets the result. The parent directory is always the first file
+     * of a directory listing.
+     */
+    private void reset() {
         //Release the array
         this.mFiles.clear();
+        this.mNotified = 0;
+        this.mEndOfList = false;
 
-        // Read every line and parse it
-        BufferedReader br = null;
-        try {
-            br = new BufferedReader(new StringReader(in));
-            String line = null;
-            while ((line = br.readLine()) != null) {
-                //Checks that there is some text in the line. Otherwise ignore it
-                if (line.trim().length() == 0) {
-                    break;
-                }
+        // Add the parent directory
+        if (this.mParentDir != null &&
+                this.mParentDir.compareTo(FileHelper.ROOT_DIRECTORY) != 0 &&
+                this.mMode.compareTo(LIST_MODE.DIRECTORY) == 0) {
+            this.mFiles.add(new ParentDirectory(new File(this.mParentDir).getParent()));
+        }
+    }
 
-                // Parse and add to result files
-                try {
-                    this.mFiles.add(ParseHelper.parseStatOutput(line));
-                } catch (Exception e) {
-                    // Log the parsing error
-                    if (isTrace()) {
-                        Log.w(TAG,
-                            String.format(
-                                    "Failed to parse output: %s", //$NON-NLS-1$
-                                    String.valueOf(line)));
-                    }
-                }
+    /**
+     * Method that parses every line of the output of the <code>stat</code> command
+     * (the listing ends with the first empty line), or every record of the machine
+     * listing format.
+     *
+     * @param data The data to parse
+     */
+    private void parseLines(String data) {
+        if (this.mMachineListing) {
+            parseRecords(data);
+            return;
+        }
+
+        final int len = data.length();
+        int start = 0;
+        while (start < len && !this.mEndOfList) {
+            int end = data.indexOf('\n', start);
+            if (end == -1) {
+                end = len;
             }
+            final int lineStart = start;
+            start = end + 1;
 
-            // Add the parent directory
-            if (this.mParentDir != null &&
-                    this.mParentDir.compareTo(FileHelper.ROOT_DIRECTORY) != 0 &&
-                    this.mMode.compareTo(LIST_MODE.DIRECTORY) == 0) {
-                this.mFiles.add(0, new ParentDirectory(new File(this.mParentDir).getParent()));
+            //Checks that there is some text in the line. Otherwise ignore it
+            if (isBlank(data, lineStart, end)) {
+                this.mEndOfList = true;
+                break;
             }
 
-        } catch (IOException ioEx) {
-            throw new ParseException(ioEx.getMessage(), 0);
+            // Parse (in place) and add to result files
+            try {
+                this.mFiles.add(ParseHelper.parseStatOutput(data, lineStart, end));
+            } catch (Exception e) {
+                // Log the parsing error
+                if (isTrace()) {
+                    Log.w(TAG,
+                        String.format(
+                                "Failed to parse output: %s", //$NON-NLS-1$
+                                data.substring(lineStart, end)));
+                }
+            }
+        }
+    }
 
-        } catch (Exception ex) {
-            throw new ParseException(ex.getMessage(), 0);
+    /**
+     * Method that parses every <code>NUL</code> terminated record of the machine
+     * listing format. The filenames can contain any char (spaces, new lines, ...)
+     * except <code>NUL</code>.
+     *
+     * @param data The data to parse
+     */
+    private void parseRecords(String data) {
+        final int len = data.length();
+        int start = 0;
+        while (start < len) {
+            int end = data.indexOf('\0', start);
+            if (end == -1) {
+                end = len;
+            }
+            final int recordStart = start;
+            start = end + 1;
+            if (recordStart == end) {
+                continue;
+            }
 
-        } finally {
+            // Parse (in place) and add to result files
             try {
-                if (br != null) {
-                    br.close();
+                this.mFiles.add(ParseHelper.parseMachineListOutput(data, recordStart, end));
+            } catch (Exception e) {
+                // Log the parsing error
+                if (isTrace()) {
+                    Log.w(TAG,
+                        String.format(
+                                "Failed to parse output: %s", //$NON-NLS-1$
+                                data.substring(recordStart, end)));
                 }
-            } catch (Throwable ex) {
-                /**NON BLOCK**/
             }
         }
     }
 
+    /**
+     * Method that checks if a line only contains whitespaces.
+     *
+     * @param data The data
+     * @param start The start position of the line (inclusive)
+     * @param end The end position of the line (exclusive)
+     * @return boolean If the line only contains whitespaces
+     */
+    private static boolean isBlank(String data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -193,6 +337,18 @@ public class ListCommand extends SyncResultProgram implements ListExecutable {
         return this.mFiles.get(0);
     }
 
+    /**
+     * Method that sets if the <code>find</code> command of the device supports the
+     * machine listing format (the <code>-printf</code> action). The support is checked
+     * by the probes of the application.
+     *
+     * @param supported If the machine listing format is supported
+     * @see MachineListingCheckCommand
+     */
+    public static void setMachineListingSupported(boolean supported) {
+        sMachineListing = supported;
+    }
+
     /**
      * {@inheritDoc}
      */
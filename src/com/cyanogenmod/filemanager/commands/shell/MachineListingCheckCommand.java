@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import com.cyanogenmod.filemanager.commands.SyncResultExecutable;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+
+import java.text.ParseException;
+
+
+/**
+ * A class for check if the <code>find</code> command of the device supports the
+ * machine listing format of {@link ListCommand} (the <code>-printf</code> action).
+ *
+ * {@link "http://unixhelp.ed.ac.uk/CGI/man-cgi?find"}
+ */
+public class MachineListingCheckCommand
+    extends SyncResultProgram implements SyncResultExecutable {
+
+    private static final String ID = "lsmachine_check";  //$NON-NLS-1$
+    private Boolean mSupported;
+
+    /**
+     * Constructor of <code>MachineListingCheckCommand</code>.
+     *
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     */
+    public MachineListingCheckCommand() throws InvalidCommandDefinitionException {
+        super(ID);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void parse(String in, String err) throws ParseException {
+        // The check has no output. It is only parsed if the exit code was checked
+        this.mSupported = Boolean.TRUE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean getResult() {
+        return this.mSupported;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void checkExitCode(int exitCode)
+            throws InsufficientPermissionsException, CommandNotFoundException, ExecutionException {
+        if (exitCode != 0) {
+            throw new ExecutionException("exitcode != 0"); //$NON-NLS-1$
+        }
+    }
+}
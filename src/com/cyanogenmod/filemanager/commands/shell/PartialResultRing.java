@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded single-producer/single-consumer ring of partial results.<br/>
+ * <br/>
+ * Only one thread may offer chunks (the thread that reads the output of the program)
+ * and only one thread may poll them at a time (the dispatcher of the program). The
+ * ring doesn't use locks; the indexes are published with ordered writes, so a chunk
+ * is visible to the consumer before the index that includes it.
+ */
+final class PartialResultRing {
+
+    private final String[] mChunks;
+    private final int mMask;
+
+    // The next index to poll (written only by the consumer)
+    private final AtomicLong mHead = new AtomicLong();
+    // The next index to offer (written only by the producer)
+    private final AtomicLong mTail = new AtomicLong();
+
+    /**
+     * Constructor of <code>PartialResultRing</code>.
+     *
+     * @param capacity The capacity of the ring. Rounded up to a power of two
+     */
+    PartialResultRing(int capacity) {
+        super();
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mChunks = new String[size];
+        this.mMask = size - 1;
+    }
+
+    /**
+     * Method that adds a chunk to the ring. Only must be called by the producer.
+     *
+     * @param chunk The chunk
+     * @return boolean If the chunk was added, or <code>false</code> if the ring is full
+     */
+    boolean offer(String chunk) {
+        final long tail = this.mTail.get();
+        if (tail - this.mHead.get() >= this.mChunks.length) {
+            return false;
+        }
+        this.mChunks[(int)tail & this.mMask] = chunk;
+        this.mTail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Method that removes the oldest chunk of the ring. Only must be called by
+     * the consumer.
+     *
+     * @return String The chunk, or <code>null</code> if the ring is empty
+     */
+    String poll() {
+        final long head = this.mHead.get();
+        if (head == this.mTail.get()) {
+            return null;
+        }
+        final int index = (int)head & this.mMask;
+        String chunk = this.mChunks[index];
+        this.mChunks[index] = null;
+        this.mHead.lazySet(head + 1);
+        return chunk;
+    }
+
+    /**
+     * Method that returns if the ring is empty.
+     *
+     * @return boolean If the ring is empty
+     */
+    boolean isEmpty() {
+        return this.mHead.get() == this.mTail.get();
+    }
+
+    /**
+     * Method that returns the capacity of the ring.
+     *
+     * @return int The capacity of the ring
+     */
+    int getCapacity() {
+        return this.mChunks.length;
+    }
+}
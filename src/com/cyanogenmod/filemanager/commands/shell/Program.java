@@ -17,6 +17,7 @@
 package com.cyanogenmod.filemanager.commands.shell;
 
 import com.cyanogenmod.filemanager.commands.Executable;
+import com.cyanogenmod.filemanager.commands.ExecutionPriority;
 import com.cyanogenmod.filemanager.console.CommandNotFoundException;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
@@ -62,6 +63,12 @@ public abstract class Program extends Command implements Executable {
     // in the stderr the program should be killed
     private boolean mExitOnStdErrOutput;
 
+    // Indicate if the program can be executed by the resident helper of the console
+    private boolean mResidentHelperRouted;
+
+    // The priority of the program in the console
+    private ExecutionPriority mPriority = ExecutionPriority.INTERACTIVE;
+
     /**
      * @Constructor of <code>Program</code>
      *
@@ -128,6 +135,43 @@ public abstract class Program extends Command implements Executable {
         this.mExitOnStdErrOutput = exitOnStdErrOutput;
     }
 
+    /**
+     * Method that returns if the program can be executed by the resident helper of
+     * the console.
+     *
+     * @return boolean If the program can be executed by the resident helper
+     * @see com.cyanogenmod.filemanager.console.shell.ResidentHelper
+     */
+    public boolean isResidentHelperRouted() {
+        return this.mResidentHelperRouted;
+    }
+
+    /**
+     * Method that sets if the program can be executed by the resident helper of
+     * the console.
+     *
+     * @param routed If the program can be executed by the resident helper
+     */
+    public void setResidentHelperRouted(boolean routed) {
+        this.mResidentHelperRouted = routed;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExecutionPriority getPriority() {
+        return this.mPriority;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setPriority(ExecutionPriority priority) {
+        this.mPriority = priority;
+    }
+
     /**
      * Returns whether the shell should wait indefinitely for the end of the command.
      *
@@ -184,4 +228,28 @@ public abstract class Program extends Command implements Executable {
         /**NON BLOCK**/
     }
 
+    /**
+     * Method that returns the position of the last occurrence of a string in a window
+     * of a sequence of chars, without copying the window.
+     *
+     * @param cs The sequence of chars
+     * @param s The string to look for
+     * @param start The start of the window (inclusive)
+     * @param end The end of the window (exclusive)
+     * @return int The position of the last occurrence, or -1 if it wasn't found
+     */
+    static int lastIndexOf(CharSequence cs, String s, int start, int end) {
+        final int len = s.length();
+        for (int i = end - len; i >= start; i--) {
+            int j = 0;
+            while (j < len && cs.charAt(i + j) == s.charAt(j)) {
+                j++;
+            }
+            if (j == len) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
 }
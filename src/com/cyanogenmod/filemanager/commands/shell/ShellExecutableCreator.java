@@ -30,6 +30,7 @@ import com.cyanogenmod.filemanager.commands.DiskUsageExecutable;
 import com.cyanogenmod.filemanager.commands.EchoExecutable;
 import com.cyanogenmod.filemanager.commands.ExecExecutable;
 import com.cyanogenmod.filemanager.commands.ExecutableCreator;
+import com.cyanogenmod.filemanager.commands.ExecutionPriority;
 import com.cyanogenmod.filemanager.commands.FindExecutable;
 import com.cyanogenmod.filemanager.commands.FolderUsageExecutable;
 import com.cyanogenmod.filemanager.commands.GroupsExecutable;
@@ -173,7 +174,7 @@ public class ShellExecutableCreator implements ExecutableCreator {
     @Override
     public DiskUsageExecutable createDiskUsageExecutable() throws CommandNotFoundException {
         try {
-            return new DiskUsageCommand();
+            return route(new DiskUsageCommand());
         } catch (InvalidCommandDefinitionException icdEx) {
             throw new CommandNotFoundException("DiskUsageCommand", icdEx); //$NON-NLS-1$
         }
@@ -186,7 +187,7 @@ public class ShellExecutableCreator implements ExecutableCreator {
     public DiskUsageExecutable createDiskUsageExecutable(String dir)
             throws CommandNotFoundException {
         try {
-            return new DiskUsageCommand(dir);
+            return route(new DiskUsageCommand(dir));
         } catch (InvalidCommandDefinitionException icdEx) {
             throw new CommandNotFoundException("DiskUsageCommand", icdEx); //$NON-NLS-1$
         }
@@ -225,7 +226,7 @@ public class ShellExecutableCreator implements ExecutableCreator {
             String directory, Query query, AsyncResultListener asyncResultListener)
             throws CommandNotFoundException {
         try {
-            return new FindCommand(directory, query, asyncResultListener);
+            return background(new FindCommand(directory, query, asyncResultListener));
         } catch (InvalidCommandDefinitionException icdEx) {
             throw new CommandNotFoundException("FindCommand", icdEx); //$NON-NLS-1$
         }
@@ -239,7 +240,7 @@ public class ShellExecutableCreator implements ExecutableCreator {
             String directory, AsyncResultListener asyncResultListener)
             throws CommandNotFoundException {
         try {
-            return new FolderUsageCommand(directory, asyncResultListener);
+            return background(new FolderUsageCommand(directory, asyncResultListener));
         } catch (InvalidCommandDefinitionException icdEx) {
             throw new CommandNotFoundException("FolderUsageCommand", icdEx); //$NON-NLS-1$
         }
@@ -289,7 +290,7 @@ public class ShellExecutableCreator implements ExecutableCreator {
     @Override
     public ListExecutable createListExecutable(String src) throws CommandNotFoundException {
         try {
-            return new ListCommand(src, this.mConsole);
+            return route(new ListCommand(src, this.mConsole));
         } catch (Throwable throwEx) {
             throw new CommandNotFoundException("ListCommand (DIRECTORY)", throwEx); //$NON-NLS-1$
         }
@@ -302,7 +303,7 @@ public class ShellExecutableCreator implements ExecutableCreator {
     public ListExecutable createFileInfoExecutable(String src, boolean followSymlinks)
             throws CommandNotFoundException {
         try {
-            return new ListCommand(src, followSymlinks, this.mConsole);
+            return route(new ListCommand(src, followSymlinks, this.mConsole));
         } catch (Throwable throwEx) {
             throw new CommandNotFoundException("ListCommand (FILEINFO)", throwEx); //$NON-NLS-1$
         }
@@ -432,7 +433,7 @@ public class ShellExecutableCreator implements ExecutableCreator {
     public ResolveLinkExecutable createResolveLinkExecutable(String fso)
             throws CommandNotFoundException {
         try {
-            return new ResolveLinkCommand(fso);
+            return route(new ResolveLinkCommand(fso));
         } catch (InvalidCommandDefinitionException icdEx) {
             throw new CommandNotFoundException("ResolveLinkCommand", icdEx); //$NON-NLS-1$
         }
@@ -538,4 +539,28 @@ public class ShellExecutableCreator implements ExecutableCreator {
         }
     }
 
+    /**
+     * Method that routes a metadata query to the resident helper of the console, if
+     * the console has an available resident helper.
+     *
+     * @param program The program
+     * @return T The same program
+     */
+    private <T extends Program> T route(T program) {
+        program.setResidentHelperRouted(this.mConsole.isResidentHelperAvailable());
+        return program;
+    }
+
+    /**
+     * Method that marks a long running scan as a background program, so the console
+     * runs the interactive programs ahead of it.
+     *
+     * @param program The program
+     * @return T The same program
+     */
+    private static <T extends Program> T background(T program) {
+        program.setPriority(ExecutionPriority.BACKGROUND);
+        return program;
+    }
+
 }
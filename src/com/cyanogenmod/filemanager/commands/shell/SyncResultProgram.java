@@ -16,12 +16,22 @@
 
 package com.cyanogenmod.filemanager.commands.shell;
 
+import com.cyanogenmod.filemanager.util.FileHelper;
 
 /**
- * An abstract class that allow the consumption of the data when it's totally recovery.
+ * An abstract class that allow the consumption of the data when it's totally recovery.<br/>
+ * <br/>
+ * Programs with a large output can parse the standard output while it is received
+ * (see {@link #isParsePartialResult()}), so the console doesn't need to hold the
+ * whole output. Only complete records (lines, unless {@link #getRecordSeparator()} is
+ * overridden) are passed to {@link #onParsePartialResult(String)},
+ * and {@link #parse(String, String)} is invoked at the end with the data that wasn't
+ * passed yet (usually empty).
  */
 public abstract class SyncResultProgram extends Program implements SyncResultProgramListener {
 
+    private final StringBuilder mTempBuffer = new StringBuilder();
+
     /**
      * @Constructor of <code>SyncResultProgram</code>
      *
@@ -48,4 +58,91 @@ public abstract class SyncResultProgram extends Program implements SyncResultPro
         super(id, prepare, args);
     }
 
+    /**
+     * Method that returns if the program parses the standard output while it
+     * is received.
+     *
+     * @return boolean If the program parses the standard output while it is received
+     */
+    public boolean isParsePartialResult() {
+        return false;
+    }
+
+    /**
+     * Method that returns the separator of the records of the standard output. The
+     * partial results are split by this separator.
+     *
+     * @return String The separator of the records (a new line by default)
+     */
+    public String getRecordSeparator() {
+        return FileHelper.NEWLINE;
+    }
+
+    /**
+     * Method invoked when the parse of the partial results starts.
+     */
+    public void onStartParsePartialResult() {/**NON BLOCK**/}
+
+    /**
+     * Method that parses a partial result of the standard output. The data
+     * always contains complete records, except for the last partial result.
+     *
+     * @param partialIn A partial standard input buffer
+     */
+    public void onParsePartialResult(String partialIn) {/**NON BLOCK**/}
+
+    /**
+     * Method that communicates that a new partial result parse will start.
+     * @hide
+     */
+    public final void onRequestStartParsePartialResult() {
+        this.mTempBuffer.setLength(0);
+        onStartParsePartialResult();
+    }
+
+    /**
+     * Method that communicates a partial result of the standard output. The
+     * incomplete last record is retained until the next partial result. The partial
+     * result is a window over the buffer of the console, and only the complete records
+     * are copied.
+     *
+     * @param partialIn A partial standard input buffer (incremental buffer)
+     * @param start The start of the new data in the buffer (inclusive)
+     * @param end The end of the new data in the buffer (exclusive)
+     * @hide
+     */
+    public final void onRequestParsePartialResult(CharSequence partialIn, int start, int end) {
+        final String separator = getRecordSeparator();
+        int pos = lastIndexOf(partialIn, separator, start, end);
+        if (pos == -1) {
+            //Save partial data
+            this.mTempBuffer.append(partialIn, start, end);
+            return;
+        }
+
+        pos += separator.length();
+        String data;
+        if (this.mTempBuffer.length() > 0) {
+            data = this.mTempBuffer.append(partialIn, start, pos).toString();
+            this.mTempBuffer.setLength(0);
+        } else {
+            data = partialIn.subSequence(start, pos).toString();
+        }
+        this.mTempBuffer.append(partialIn, pos, end);
+        onParsePartialResult(data);
+    }
+
+    /**
+     * Method that communicates that partial result is ended. The retained data,
+     * if any, is parsed as the last partial result.
+     * @hide
+     */
+    public final void onRequestEndParsePartialResult() {
+        if (this.mTempBuffer.length() > 0) {
+            String data = this.mTempBuffer.toString();
+            this.mTempBuffer.setLength(0);
+            onParsePartialResult(data);
+        }
+    }
+
 }
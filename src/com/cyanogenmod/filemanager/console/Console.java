@@ -22,6 +22,8 @@ import com.cyanogenmod.filemanager.model.Identity;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.Preferences;
 
+import java.util.List;
+
 /**
  * This class represents a class for executing commands in the operating system layer,
  * being the base for all type of consoles (shell, java, ...).
@@ -53,7 +55,7 @@ public abstract class Console
     /**
      * Method that reload the status of trace setting
      */
-    public final void reloadTrace() {
+    public void reloadTrace() {
         this.mTrace = Preferences.getSharedPreferences().getBoolean(
                 FileManagerSettings.SETTINGS_SHOW_TRACES.getId(),
                 ((Boolean)FileManagerSettings.SETTINGS_SHOW_TRACES.getDefaultValue()).booleanValue());
@@ -124,4 +126,33 @@ public abstract class Console
            OperationTimeoutException, ExecutionException, CommandNotFoundException,
            ReadOnlyFilesystemException;
 
+   /**
+    * Method for execute a batch of synchronous commands in the operating system layer.<br/>
+    * <br/>
+    * Every executable is independent of the others, so the failure of one executable
+    * doesn't abort the rest of the batch. The default implementation executes the
+    * executables one by one. Consoles that can send several commands in a single round
+    * trip override this method.
+    *
+    * @param executables The executable commands to be executed
+    * @return Exception[] The exception raised by every executable, in the same order that
+    * the executables (<code>null</code> if the executable was successfully executed)
+    * @throws ConsoleAllocException If the console is not allocated
+    * @throws OperationTimeoutException If the batch exceeded the maximum time of wait
+    * @throws ExecutionException If the batch couldn't be sent to the console
+    */
+   public Exception[] executeBatch(List<? extends Executable> executables)
+           throws ConsoleAllocException, OperationTimeoutException, ExecutionException {
+       int cc = executables.size();
+       Exception[] errors = new Exception[cc];
+       for (int i = 0; i < cc; i++) {
+           try {
+               execute(executables.get(i));
+           } catch (Exception ex) {
+               errors[i] = ex;
+           }
+       }
+       return errors;
+   }
+
 }
@@ -23,12 +23,16 @@ import android.widget.Toast;
 import com.cyanogenmod.filemanager.FileManagerApplication;
 import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.commands.shell.InvalidCommandDefinitionException;
+import com.cyanogenmod.filemanager.console.hybrid.HybridConsole;
 import com.cyanogenmod.filemanager.console.java.JavaConsole;
 import com.cyanogenmod.filemanager.console.shell.NonPriviledgeConsole;
 import com.cyanogenmod.filemanager.console.shell.PrivilegedConsole;
+import com.cyanogenmod.filemanager.console.shell.ShellConsole;
+import com.cyanogenmod.filemanager.console.shell.ShellConsolePool;
 import com.cyanogenmod.filemanager.preferences.AccessMode;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.Preferences;
+import com.cyanogenmod.filemanager.util.CommandHelper;
 import com.cyanogenmod.filemanager.util.DialogHelper;
 
 import java.io.FileNotFoundException;
@@ -42,7 +46,7 @@ public final class ConsoleBuilder {
     private static final String TAG = "ConsoleBuilder"; //$NON-NLS-1$
 
     private static final Object SYNC = new Object();
-    private static ConsoleHolder sHolder;
+    private static volatile ConsoleHolder sHolder;
 
     private static final int ROOT_UID = 0;
 
@@ -53,6 +57,40 @@ public final class ConsoleBuilder {
         super();
     }
 
+    /**
+     * Method that allocates the configured console and the background console in a
+     * background thread, so the su request and the identity checks of the consoles don't
+     * delay the first listing. The callers that need the console before the warm-up ends
+     * wait for the console that is being allocated instead of allocating other.
+     *
+     * @param context The application context
+     * @return boolean If the warm-up was started (it can be disabled by configuration)
+     */
+    public static boolean warmUp(final Context context) {
+        if (!context.getResources().getBoolean(R.bool.console_warm_up)) {
+            return false;
+        }
+        Thread warmUp = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.currentTimeMillis();
+                try {
+                    getConsole(context);
+                } catch (Throwable ex) {
+                    // The console will be allocated (and the error reported) when used
+                    Log.w(TAG, "Console warm-up failed", ex); //$NON-NLS-1$
+                }
+                FileManagerApplication.getBackgroundConsole();
+                Log.i(TAG,
+                        String.format("Consoles warmed up in %d ms", //$NON-NLS-1$
+                                Long.valueOf(System.currentTimeMillis() - start)));
+            }
+        }, "ConsoleWarmUp"); //$NON-NLS-1$
+        warmUp.setDaemon(true);
+        warmUp.start();
+        return true;
+    }
+
     /**
      * Method that returns a console, and creates a new console
      * if no console is allocated. The console is create if not exists.
@@ -107,7 +145,8 @@ public final class ConsoleBuilder {
     public static boolean changeToNonPrivilegedConsole(Context context) {
 
         //Check the current console
-        if (sHolder != null && sHolder.getConsole() instanceof NonPriviledgeConsole) {
+        if (sHolder != null && sHolder.getConsole() != null &&
+            !sHolder.getConsole().isPrivileged()) {
             //The current console is non-privileged. Not needed
             return true;
         }
@@ -117,7 +156,8 @@ public final class ConsoleBuilder {
         try {
             //Create the console, destroy the current console, and marks as current
             holder = new ConsoleHolder(
-                    createNonPrivilegedConsole(context));
+                    createHybridConsole(context,
+                            createConsolePool(context, createNonPrivilegedConsole(context))));
             destroyConsole();
             sHolder = holder;
             return true;
@@ -139,7 +179,8 @@ public final class ConsoleBuilder {
     public static boolean changeToPrivilegedConsole(Context context) {
 
         //Destroy and create the new console
-        if (sHolder != null && sHolder.getConsole() instanceof PrivilegedConsole) {
+        if (sHolder != null && sHolder.getConsole() != null &&
+            sHolder.getConsole().isPrivileged()) {
             //The current console is privileged. Not needed
             return true;
         }
@@ -149,14 +190,16 @@ public final class ConsoleBuilder {
         try {
             //Create the console, destroy the current console, and marks as current
             holder = new ConsoleHolder(
-                    createAndCheckPrivilegedConsole(context));
+                    createHybridConsole(context,
+                            createConsolePool(context,
+                                    createAndCheckPrivilegedConsole(context))));
             destroyConsole();
             sHolder = holder;
 
             // Change also the background console to privileged
             FileManagerApplication.changeBackgroundConsoleToPriviligedConsole();
 
-            return sHolder.getConsole() instanceof PrivilegedConsole;
+            return sHolder.getConsole().isPrivileged();
 
         } catch (Throwable e) {
             destroyConsole();
@@ -223,20 +266,22 @@ public final class ConsoleBuilder {
         synchronized (ConsoleBuilder.SYNC) {
             //Check if console settings has changed
             if (sHolder != null) {
-                if (
-                    (sHolder.getConsole() instanceof NonPriviledgeConsole && superuserMode)
-                    || (sHolder.getConsole() instanceof PrivilegedConsole && !superuserMode)) {
+                Console current = sHolder.getConsole();
+                if (current != null && current.isPrivileged() != superuserMode) {
                     //Deallocate actual console
                     sHolder.dispose();
                     sHolder = null;
+                    CommandHelper.clearListingCache();
                 }
             }
 
             //Is there a console allocated
             if (sHolder == null) {
-                sHolder = (superuserMode)
-                        ? new ConsoleHolder(createAndCheckPrivilegedConsole(context))
-                        : new ConsoleHolder(createNonPrivilegedConsole(context));
+                Console console = (superuserMode)
+                        ? createAndCheckPrivilegedConsole(context)
+                        : createNonPrivilegedConsole(context);
+                sHolder = new ConsoleHolder(
+                        createHybridConsole(context, createConsolePool(context, console)));
                 if (superuserMode) {
                     // Change also the background console to privileged
                     FileManagerApplication.changeBackgroundConsoleToPriviligedConsole();
@@ -258,6 +303,7 @@ public final class ConsoleBuilder {
             /**NON BLOCK**/
         }
         sHolder = null;
+        CommandHelper.clearListingCache();
     }
 
     /**
@@ -291,6 +337,48 @@ public final class ConsoleBuilder {
         return console;
     }
 
+    /**
+     * Method that wraps an allocated shell console in a pool of consoles of the same
+     * kind. Non shell consoles are returned as is.
+     *
+     * @param context The current context
+     * @param console The allocated console
+     * @return Console The pooled console
+     * @see ShellConsolePool
+     */
+    public static Console createConsolePool(Context context, Console console) {
+        if (!(console instanceof ShellConsole)) {
+            return console;
+        }
+        return new ShellConsolePool(
+                (ShellConsole)console,
+                context.getResources().getInteger(R.integer.console_pool_size),
+                context.getResources().getInteger(R.integer.console_pool_async_size));
+    }
+
+    /**
+     * Method that wraps an allocated shell console (or a pool of shell consoles) in a
+     * console that executes the operations over the storage volumes that the application
+     * can access with java programs. Java consoles are returned as is.
+     *
+     * @param context The current context
+     * @param console The allocated console
+     * @return Console The hybrid console
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @see HybridConsole
+     */
+    public static Console createHybridConsole(Context context, Console console)
+            throws ConsoleAllocException {
+        if (console instanceof JavaConsole ||
+            !context.getResources().getBoolean(R.bool.console_hybrid)) {
+            return console;
+        }
+        JavaConsole javaConsole =
+                new JavaConsole(context, context.getResources().getInteger(R.integer.buffer_size));
+        javaConsole.alloc();
+        return new HybridConsole(javaConsole, console);
+    }
+
     /**
      * Method that creates a new privileged console. If the allocation of the
      * privileged console fails, the a non privileged console
@@ -309,6 +397,8 @@ public final class ConsoleBuilder {
             ConsoleAllocException, InsufficientPermissionsException {
         PrivilegedConsole console = new PrivilegedConsole();
         console.setBufferSize(context.getResources().getInteger(R.integer.buffer_size));
+        console.setResidentHelperEnabled(
+                context.getResources().getBoolean(R.bool.console_resident_helper));
         console.alloc();
         if (console.getIdentity().getUser().getId() != ROOT_UID) {
             //The console is not a privileged console
@@ -403,8 +493,8 @@ public final class ConsoleBuilder {
      * @return boolean If the current console is a privileged console
      */
     public static boolean isPrivileged() {
-        if (sHolder != null && sHolder.getConsole() instanceof PrivilegedConsole) {
-            return true;
+        if (sHolder != null && sHolder.getConsole() != null) {
+            return sHolder.getConsole().isPrivileged();
         }
         return false;
     }
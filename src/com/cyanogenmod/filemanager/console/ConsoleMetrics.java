@@ -0,0 +1,539 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console;
+
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The registry of the latency and the throughput of the executables of the consoles.<br/>
+ * <br/>
+ * Every execution is recorded by command identifier: the time that the executable waited
+ * for the console, the time until the first output, the total time, the output parsed,
+ * the time spent parsing the output, and the number of errors and timeouts. The values
+ * are recorded in histograms of power of two buckets, so the memory used by the registry
+ * doesn't depend on the number of executions.<br/>
+ * <br/>
+ * The registry is disabled by default. A disabled registry doesn't record anything
+ * and doesn't allocate anything per execution (see {@link #start(String)}).
+ */
+public final class ConsoleMetrics {
+
+    private static final String DUMP_FILE_PREFIX = "console-metrics-"; //$NON-NLS-1$
+    private static final String DUMP_FILE_EXTENSION = ".txt"; //$NON-NLS-1$
+
+    private static final Object SYNC = new Object();
+    private static final Map<String, CommandMetrics> METRICS =
+            new HashMap<String, CommandMetrics>();
+    // The execution returned while the registry is disabled. Nothing is recorded
+    private static final Sample DISABLED = new Sample(null, false);
+    private static volatile boolean sEnabled;
+
+    /**
+     * A histogram of values with power of two buckets.
+     */
+    public static final class Histogram {
+        private static final int BUCKETS = 48;
+
+        private final long[] mBuckets = new long[BUCKETS];
+        private long mCount;
+        private long mSum;
+        private long mMax;
+
+        /**
+         * Constructor of <code>Histogram</code>.
+         */
+        Histogram() {
+            super();
+        }
+
+        /**
+         * Method that records a value.
+         *
+         * @param value The value (negative values are recorded as 0)
+         */
+        synchronized void record(long value) {
+            long v = Math.max(0, value);
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(v));
+            this.mBuckets[bucket]++;
+            this.mCount++;
+            this.mSum += v;
+            this.mMax = Math.max(this.mMax, v);
+        }
+
+        /**
+         * Method that returns the number of recorded values.
+         *
+         * @return long The number of recorded values
+         */
+        public synchronized long getCount() {
+            return this.mCount;
+        }
+
+        /**
+         * Method that returns the sum of the recorded values.
+         *
+         * @return long The sum of the recorded values
+         */
+        public synchronized long getSum() {
+            return this.mSum;
+        }
+
+        /**
+         * Method that returns the maximum recorded value.
+         *
+         * @return long The maximum recorded value
+         */
+        public synchronized long getMax() {
+            return this.mMax;
+        }
+
+        /**
+         * Method that returns an upper bound of a percentile of the recorded values (the
+         * upper bound of the bucket of the percentile).
+         *
+         * @param percentile The percentile (between 0 and 1)
+         * @return long The upper bound of the percentile, or 0 if there are no values
+         */
+        public synchronized long getPercentile(double percentile) {
+            if (this.mCount == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long)Math.ceil(percentile * this.mCount));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += this.mBuckets[i];
+                if (seen >= rank) {
+                    // The bucket i holds the values of [2^(i-1), 2^i - 1]
+                    long upper = i == 0 ? 0 : (1L << i) - 1;
+                    return Math.min(upper, this.mMax);
+                }
+            }
+            return this.mMax;
+        }
+    }
+
+    /**
+     * The metrics of a command.
+     */
+    public static final class CommandMetrics {
+        private final String mCommandId;
+        // Times are recorded in microseconds
+        final Histogram mQueueWait = new Histogram();
+        final Histogram mFirstOutput = new Histogram();
+        final Histogram mTotal = new Histogram();
+        final Histogram mParse = new Histogram();
+        // Output is recorded in characters
+        final Histogram mOutput = new Histogram();
+        private long mErrors;
+        private long mTimeouts;
+
+        /**
+         * Constructor of <code>CommandMetrics</code>.
+         *
+         * @param commandId The identifier of the command
+         */
+        CommandMetrics(String commandId) {
+            super();
+            this.mCommandId = commandId;
+        }
+
+        /**
+         * Method that returns the identifier of the command.
+         *
+         * @return String The identifier of the command
+         */
+        public String getCommandId() {
+            return this.mCommandId;
+        }
+
+        /**
+         * Method that returns the time that the command waited for the console
+         * (in microseconds).
+         *
+         * @return Histogram The time that the command waited for the console
+         */
+        public Histogram getQueueWait() {
+            return this.mQueueWait;
+        }
+
+        /**
+         * Method that returns the time until the first output of the command
+         * (in microseconds).
+         *
+         * @return Histogram The time until the first output of the command
+         */
+        public Histogram getFirstOutput() {
+            return this.mFirstOutput;
+        }
+
+        /**
+         * Method that returns the total time of the command, including the time that
+         * the command waited for the console (in microseconds).
+         *
+         * @return Histogram The total time of the command
+         */
+        public Histogram getTotal() {
+            return this.mTotal;
+        }
+
+        /**
+         * Method that returns the time spent parsing the output of the command
+         * (in microseconds).
+         *
+         * @return Histogram The time spent parsing the output of the command
+         */
+        public Histogram getParse() {
+            return this.mParse;
+        }
+
+        /**
+         * Method that returns the output parsed of the command (in characters).
+         *
+         * @return Histogram The output parsed of the command
+         */
+        public Histogram getOutput() {
+            return this.mOutput;
+        }
+
+        /**
+         * Method that returns the number of executions of the command that failed.
+         *
+         * @return long The number of executions that failed (timeouts included)
+         */
+        public synchronized long getErrors() {
+            return this.mErrors;
+        }
+
+        /**
+         * Method that returns the number of executions of the command that exceeded
+         * the maximum time of wait.
+         *
+         * @return long The number of executions that exceeded the maximum time of wait
+         */
+        public synchronized long getTimeouts() {
+            return this.mTimeouts;
+        }
+
+        /**
+         * Method that records the result of an execution.
+         *
+         * @param succeeded If the execution succeeded
+         * @param timeout If the execution exceeded the maximum time of wait
+         */
+        synchronized void recordResult(boolean succeeded, boolean timeout) {
+            if (!succeeded) {
+                this.mErrors++;
+                if (timeout) {
+                    this.mTimeouts++;
+                }
+            }
+        }
+    }
+
+    /**
+     * An execution in progress. The console that executes the command informs of
+     * the progress of the execution, and the execution is recorded when it ends. An
+     * execution is recorded as failed unless the console informs that it succeeded.<br/>
+     * <br/>
+     * The output is informed by the thread that reads the output of the command, and the
+     * rest of events by the thread that executes the command.
+     */
+    public static final class Sample {
+        private final String mCommandId;
+        private final boolean mRecorded;
+        private final long mStart;
+        private long mDequeued;
+        private volatile long mFirstOutput;
+        private volatile long mOutput;
+        private volatile long mParse;
+        private boolean mSucceeded;
+        private boolean mTimeout;
+
+        /**
+         * Constructor of <code>Sample</code>.
+         *
+         * @param commandId The identifier of the command
+         * @param recorded If the execution is recorded when it ends
+         */
+        Sample(String commandId, boolean recorded) {
+            super();
+            this.mCommandId = commandId;
+            this.mRecorded = recorded;
+            this.mStart = recorded ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Method that informs that the command stopped waiting for the console.
+         */
+        public void onDequeued() {
+            if (this.mRecorded && this.mDequeued == 0) {
+                this.mDequeued = System.nanoTime();
+            }
+        }
+
+        /**
+         * Method that informs that the command produced output.
+         *
+         * @param length The length of the output (in characters)
+         */
+        public void onOutput(int length) {
+            if (!this.mRecorded) {
+                return;
+            }
+            if (this.mFirstOutput == 0) {
+                this.mFirstOutput = System.nanoTime();
+            }
+            this.mOutput += length;
+        }
+
+        /**
+         * Method that informs of the time spent parsing the output of the command.
+         *
+         * @param start The time when the parse started (in {@link System#nanoTime()} units)
+         */
+        public void onParsed(long start) {
+            if (this.mRecorded) {
+                this.mParse += System.nanoTime() - start;
+            }
+        }
+
+        /**
+         * Method that informs that the command succeeded.
+         */
+        public void onSucceeded() {
+            this.mSucceeded = true;
+        }
+
+        /**
+         * Method that informs that the command exceeded the maximum time of wait.
+         */
+        public void onTimeout() {
+            this.mTimeout = true;
+        }
+
+        /**
+         * Method that records the end of the execution.
+         */
+        public void end() {
+            if (!this.mRecorded) {
+                return;
+            }
+            long end = System.nanoTime();
+            long dequeued = this.mDequeued != 0 ? this.mDequeued : this.mStart;
+            CommandMetrics metrics = getOrCreate(this.mCommandId);
+            metrics.mQueueWait.record(toMicros(dequeued - this.mStart));
+            if (this.mFirstOutput != 0) {
+                metrics.mFirstOutput.record(toMicros(this.mFirstOutput - dequeued));
+            }
+            metrics.mTotal.record(toMicros(end - this.mStart));
+            metrics.mParse.record(toMicros(this.mParse));
+            metrics.mOutput.record(this.mOutput);
+            metrics.recordResult(this.mSucceeded, this.mTimeout);
+        }
+    }
+
+    /**
+     * Constructor of <code>ConsoleMetrics</code>.
+     */
+    private ConsoleMetrics() {
+        super();
+    }
+
+    /**
+     * Method that returns if the registry records the executions.
+     *
+     * @return boolean If the registry records the executions
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Method that sets if the registry records the executions.
+     *
+     * @param enabled If the registry records the executions
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Method that starts the record of an execution.
+     *
+     * @param commandId The identifier of the command
+     * @return Sample The execution. If the registry is disabled, a shared execution
+     * that isn't recorded
+     */
+    public static Sample start(String commandId) {
+        if (!sEnabled) {
+            return DISABLED;
+        }
+        return new Sample(commandId, true);
+    }
+
+    /**
+     * Method that returns the metrics of the recorded commands, sorted by identifier.
+     *
+     * @return List<CommandMetrics> The metrics of the recorded commands
+     */
+    public static List<CommandMetrics> getMetrics() {
+        List<String> ids;
+        List<CommandMetrics> metrics;
+        synchronized (SYNC) {
+            ids = new ArrayList<String>(METRICS.keySet());
+            Collections.sort(ids);
+            metrics = new ArrayList<CommandMetrics>(ids.size());
+            for (String id : ids) {
+                metrics.add(METRICS.get(id));
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Method that removes all the recorded metrics.
+     */
+    public static void reset() {
+        synchronized (SYNC) {
+            METRICS.clear();
+        }
+    }
+
+    /**
+     * Method that returns a readable dump of the recorded metrics.
+     *
+     * @return String The dump of the recorded metrics
+     */
+    public static String dump() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.US,
+                "Device: %s %s (%s), Android %s%n", //$NON-NLS-1$
+                Build.MANUFACTURER, Build.MODEL, Build.DEVICE, Build.VERSION.RELEASE));
+        List<CommandMetrics> metrics = getMetrics();
+        if (metrics.isEmpty()) {
+            sb.append(String.format(Locale.US, "No metrics recorded%n")); //$NON-NLS-1$
+        }
+        for (CommandMetrics m : metrics) {
+            sb.append(String.format(Locale.US,
+                    "%n%s: %d executions, %d errors, %d timeouts%n", //$NON-NLS-1$
+                    m.getCommandId(),
+                    Long.valueOf(m.getTotal().getCount()),
+                    Long.valueOf(m.getErrors()),
+                    Long.valueOf(m.getTimeouts())));
+            dumpTime(sb, "queue wait", m.getQueueWait()); //$NON-NLS-1$
+            dumpTime(sb, "first output", m.getFirstOutput()); //$NON-NLS-1$
+            dumpTime(sb, "total", m.getTotal()); //$NON-NLS-1$
+            dumpTime(sb, "parse", m.getParse()); //$NON-NLS-1$
+            Histogram output = m.getOutput();
+            sb.append(String.format(Locale.US,
+                    "  %-14s p50 %d  p90 %d  p99 %d  max %d  sum %d chars%n", //$NON-NLS-1$
+                    "output", //$NON-NLS-1$
+                    Long.valueOf(output.getPercentile(0.5)),
+                    Long.valueOf(output.getPercentile(0.9)),
+                    Long.valueOf(output.getPercentile(0.99)),
+                    Long.valueOf(output.getMax()),
+                    Long.valueOf(output.getSum())));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Method that dumps the recorded metrics to a new file.
+     *
+     * @param dir The directory where to create the file
+     * @return File The file with the dump of the recorded metrics
+     * @throws IOException If the file couldn't be written
+     */
+    public static File dumpToFile(File dir) throws IOException {
+        String timestamp =
+                new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()); //$NON-NLS-1$
+        File file = new File(dir, DUMP_FILE_PREFIX + timestamp + DUMP_FILE_EXTENSION);
+        Writer writer = new FileWriter(file);
+        try {
+            writer.write(dump());
+        } finally {
+            try {
+                writer.close();
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Method that dumps a histogram of times.
+     *
+     * @param sb The buffer where to dump the histogram
+     * @param name The name of the histogram
+     * @param histogram The histogram (in microseconds)
+     */
+    private static void dumpTime(StringBuilder sb, String name, Histogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        sb.append(String.format(Locale.US,
+                "  %-14s p50 %.2f  p90 %.2f  p99 %.2f  max %.2f  avg %.2f ms%n", //$NON-NLS-1$
+                name,
+                Double.valueOf(histogram.getPercentile(0.5) / 1000d),
+                Double.valueOf(histogram.getPercentile(0.9) / 1000d),
+                Double.valueOf(histogram.getPercentile(0.99) / 1000d),
+                Double.valueOf(histogram.getMax() / 1000d),
+                Double.valueOf(histogram.getSum() / 1000d / histogram.getCount())));
+    }
+
+    /**
+     * Method that returns the metrics of a command, creating them if needed.
+     *
+     * @param commandId The identifier of the command
+     * @return CommandMetrics The metrics of the command
+     */
+    static CommandMetrics getOrCreate(String commandId) {
+        synchronized (SYNC) {
+            CommandMetrics metrics = METRICS.get(commandId);
+            if (metrics == null) {
+                metrics = new CommandMetrics(commandId);
+                METRICS.put(commandId, metrics);
+            }
+            return metrics;
+        }
+    }
+
+    /**
+     * Method that converts nanoseconds to microseconds.
+     *
+     * @param nanos The nanoseconds
+     * @return long The microseconds
+     */
+    static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console;
+
+import com.cyanogenmod.filemanager.commands.ExecutionPriority;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class that schedules the executables that share a console that only can execute
+ * one executable at a time.<br/>
+ * <br/>
+ * When the console is released, the oldest waiting {@link ExecutionPriority#INTERACTIVE}
+ * executable runs ahead of the waiting {@link ExecutionPriority#BACKGROUND} executables,
+ * so the navigation doesn't wait for a queue of scans. A background executable that
+ * waited more than the starvation timeout is promoted to the interactive queue, so a
+ * continuous navigation can't starve a scan.<br/>
+ * <br/>
+ * The console is owned by a thread, and the owner thread can acquire it again (the
+ * console can execute its own executables while it is reallocated).
+ */
+public final class ConsoleScheduler {
+
+    /**
+     * A waiting executable.
+     */
+    private static final class Waiter {
+        final ExecutionPriority mPriority;
+        final Thread mThread;
+        final long mSince;
+        boolean mGranted;
+
+        /**
+         * Constructor of <code>Waiter</code>.
+         *
+         * @param priority The priority of the executable
+         * @param thread The waiting thread
+         */
+        Waiter(ExecutionPriority priority, Thread thread) {
+            super();
+            this.mPriority = priority;
+            this.mThread = thread;
+            this.mSince = System.nanoTime();
+            this.mGranted = false;
+        }
+    }
+
+    private final Object mSync = new Object();
+    private final List<Waiter> mWaiters = new ArrayList<Waiter>();
+    private final long mStarvationTimeout;
+    private Thread mOwner;
+    private int mHolds;
+
+    /**
+     * Constructor of <code>ConsoleScheduler</code>.
+     *
+     * @param starvationTimeout The maximum time that a background executable waits behind
+     * interactive executables (in milliseconds)
+     */
+    public ConsoleScheduler(long starvationTimeout) {
+        super();
+        this.mStarvationTimeout = TimeUnit.MILLISECONDS.toNanos(starvationTimeout);
+        this.mOwner = null;
+        this.mHolds = 0;
+    }
+
+    /**
+     * Method that waits until the executable can use the console. Every call must be
+     * followed by a call to {@link #release()}.
+     *
+     * @param priority The priority of the executable
+     * @throws InterruptedException If the wait was interrupted
+     */
+    public void acquire(ExecutionPriority priority) throws InterruptedException {
+        final Thread current = Thread.currentThread();
+        synchronized (this.mSync) {
+            if (this.mOwner == current) {
+                this.mHolds++;
+                return;
+            }
+            if (this.mOwner == null && this.mWaiters.isEmpty()) {
+                this.mOwner = current;
+                this.mHolds = 1;
+                return;
+            }
+            Waiter waiter = new Waiter(priority, current);
+            this.mWaiters.add(waiter);
+            try {
+                while (!waiter.mGranted) {
+                    this.mSync.wait();
+                }
+            } catch (InterruptedException ex) {
+                if (waiter.mGranted) {
+                    // The console was granted in the meantime. Pass it to the next one
+                    grantNext();
+                } else {
+                    this.mWaiters.remove(waiter);
+                }
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Method that releases the console, and grants it to the next waiting executable.
+     * The console is granted when the owner thread releases all its acquisitions.
+     */
+    public void release() {
+        synchronized (this.mSync) {
+            if (this.mOwner != Thread.currentThread()) {
+                throw new IllegalStateException("The console is not owned"); //$NON-NLS-1$
+            }
+            this.mHolds--;
+            if (this.mHolds == 0) {
+                grantNext();
+            }
+        }
+    }
+
+    /**
+     * Method that returns the number of executables waiting for the console.
+     *
+     * @return int The number of waiting executables
+     */
+    public int getWaiting() {
+        synchronized (this.mSync) {
+            return this.mWaiters.size();
+        }
+    }
+
+    /**
+     * Method that grants the console to the next waiting executable, or frees the console
+     * if there are no waiting executables.
+     */
+    private void grantNext() {
+        final int cc = this.mWaiters.size();
+        if (cc == 0) {
+            this.mOwner = null;
+            this.mHolds = 0;
+            return;
+        }
+
+        // The waiters are in arrival order. The first interactive or starved waiter
+        // is the next one, and the oldest background waiter otherwise
+        final long now = System.nanoTime();
+        int next = 0;
+        for (int i = 0; i < cc; i++) {
+            Waiter waiter = this.mWaiters.get(i);
+            if (waiter.mPriority != ExecutionPriority.BACKGROUND ||
+                now - waiter.mSince >= this.mStarvationTimeout) {
+                next = i;
+                break;
+            }
+        }
+        Waiter waiter = this.mWaiters.remove(next);
+        waiter.mGranted = true;
+        this.mOwner = waiter.mThread;
+        this.mHolds = 1;
+        this.mSync.notifyAll();
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console;
+
+import android.os.Build;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A preallocated ring of typed trace events of the consoles.<br/>
+ * <br/>
+ * An event is a command identifier, a phase, a timestamp, the thread and a size. Events
+ * are recorded without formatting or allocating anything, and without locks, so the ring
+ * can be kept enabled in production builds. When the ring is full the oldest events are
+ * overwritten. The recorded events can be exported to a file for offline analysis.<br/>
+ * <br/>
+ * Every slot has a sequence that is invalidated while the slot is written and published
+ * after it, so an event that is overwritten while it is exported is skipped instead of
+ * being exported torn. The fields of the events are volatile (atomic arrays), so the
+ * sequence orders them: a reader that sees the same published sequence before and after
+ * reading the fields read the fields of that event. The only exception is a writer that
+ * is lapped by the whole ring while it writes its slot.
+ */
+public final class TraceRing {
+
+    /**
+     * The phases of the traced events.
+     */
+    public enum Phase {
+        /**
+         * The command was sent. The size is the number of batched commands, if any
+         */
+        START,
+        /**
+         * The command wrote output. The size is the length of the output
+         */
+        OUTPUT,
+        /**
+         * The command found or listed a file. The size is the size of the file
+         */
+        ITEM,
+        /**
+         * The command ended. The size is the exit code
+         */
+        END,
+        /**
+         * The command failed. The size is not used
+         */
+        ERROR,
+        /**
+         * The command exceeded the maximum time of wait. The size is not used
+         */
+        TIMEOUT
+    }
+
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private static final String DUMP_FILE_PREFIX = "console-trace-"; //$NON-NLS-1$
+    private static final String DUMP_FILE_EXTENSION = ".txt"; //$NON-NLS-1$
+
+    private static final TraceRing INSTANCE = new TraceRing(DEFAULT_CAPACITY);
+
+    private final int mMask;
+    private final AtomicLong mNext = new AtomicLong();
+    // The sequence + 1 of the event of every slot (0 while the slot is written)
+    private final AtomicLongArray mSequences;
+    private final AtomicReferenceArray<String> mIds;
+    private final AtomicReferenceArray<Phase> mPhases;
+    private final AtomicLongArray mTimestamps;
+    private final AtomicLongArray mThreads;
+    private final AtomicLongArray mSizes;
+    private volatile boolean mEnabled = true;
+
+    /**
+     * Constructor of <code>TraceRing</code>.
+     *
+     * @param capacity The minimum number of events retained (rounded up to a power of two)
+     */
+    TraceRing(int capacity) {
+        super();
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mMask = size - 1;
+        this.mSequences = new AtomicLongArray(size);
+        this.mIds = new AtomicReferenceArray<String>(size);
+        this.mPhases = new AtomicReferenceArray<Phase>(size);
+        this.mTimestamps = new AtomicLongArray(size);
+        this.mThreads = new AtomicLongArray(size);
+        this.mSizes = new AtomicLongArray(size);
+    }
+
+    /**
+     * Method that returns the shared ring of the application.
+     *
+     * @return TraceRing The shared ring
+     */
+    public static TraceRing getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Method that returns the number of events retained by the ring.
+     *
+     * @return int The number of events retained by the ring
+     */
+    public int getCapacity() {
+        return this.mMask + 1;
+    }
+
+    /**
+     * Method that returns if the ring records the events.
+     *
+     * @return boolean If the ring records the events
+     */
+    public boolean isEnabled() {
+        return this.mEnabled;
+    }
+
+    /**
+     * Method that sets if the ring records the events.
+     *
+     * @param enabled If the ring records the events
+     */
+    public void setEnabled(boolean enabled) {
+        this.mEnabled = enabled;
+    }
+
+    /**
+     * Method that records an event.
+     *
+     * @param id The identifier of the command. Must be a constant or a retained string,
+     * so nothing is allocated per event
+     * @param phase The phase of the event
+     * @param size The size of the event (see {@link Phase})
+     */
+    public void record(String id, Phase phase, long size) {
+        if (!this.mEnabled) {
+            return;
+        }
+        long sequence = this.mNext.getAndIncrement();
+        int slot = (int)(sequence & this.mMask);
+        // Volatile stores, so the fields can't be seen before the invalidation nor after
+        // the publication of the sequence
+        this.mSequences.set(slot, 0);
+        this.mIds.set(slot, id);
+        this.mPhases.set(slot, phase);
+        this.mTimestamps.set(slot, System.nanoTime());
+        this.mThreads.set(slot, Thread.currentThread().getId());
+        this.mSizes.set(slot, size);
+        this.mSequences.set(slot, sequence + 1);
+    }
+
+    /**
+     * Method that exports the retained events, from the oldest to the newest. Every
+     * event is written in a line with the timestamp (in nanoseconds), the thread, the
+     * command identifier, the phase and the size.
+     *
+     * @param writer The writer where to export the events
+     * @return int The number of exported events
+     * @throws IOException If the events couldn't be written
+     */
+    public int export(Writer writer) throws IOException {
+        final int capacity = getCapacity();
+        long last = this.mNext.get();
+        long first = Math.max(0, last - capacity);
+        int exported = 0;
+        for (long sequence = first; sequence < last; sequence++) {
+            int slot = (int)(sequence & this.mMask);
+            if (this.mSequences.get(slot) != sequence + 1) {
+                continue;
+            }
+            String id = this.mIds.get(slot);
+            Phase phase = this.mPhases.get(slot);
+            long timestamp = this.mTimestamps.get(slot);
+            long thread = this.mThreads.get(slot);
+            long size = this.mSizes.get(slot);
+            if (this.mSequences.get(slot) != sequence + 1) {
+                // Overwritten while it was read
+                continue;
+            }
+            writer.write(String.format(Locale.US, "%d %d %s %s %d%n", //$NON-NLS-1$
+                    Long.valueOf(timestamp), Long.valueOf(thread), id, phase,
+                    Long.valueOf(size)));
+            exported++;
+        }
+        return exported;
+    }
+
+    /**
+     * Method that exports the retained events to a new file (see {@link #export(Writer)}).
+     *
+     * @param dir The directory where to create the file
+     * @return File The file with the exported events
+     * @throws IOException If the file couldn't be written
+     */
+    public File exportToFile(File dir) throws IOException {
+        String timestamp =
+                new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date()); //$NON-NLS-1$
+        File file = new File(dir, DUMP_FILE_PREFIX + timestamp + DUMP_FILE_EXTENSION);
+        Writer writer = new BufferedWriter(new FileWriter(file));
+        try {
+            writer.write(String.format(Locale.US,
+                    "# Device: %s %s (%s), Android %s%n", //$NON-NLS-1$
+                    Build.MANUFACTURER, Build.MODEL, Build.DEVICE, Build.VERSION.RELEASE));
+            writer.write(String.format(Locale.US,
+                    "# timestamp(ns) thread command phase size%n")); //$NON-NLS-1$
+            export(writer);
+        } finally {
+            try {
+                writer.close();
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+        return file;
+    }
+}
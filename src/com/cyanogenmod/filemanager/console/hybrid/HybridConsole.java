@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.hybrid;
+
+import com.cyanogenmod.filemanager.commands.Executable;
+import com.cyanogenmod.filemanager.commands.ExecutableFactory;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.commands.hybrid.HybridExecutableFactory;
+import com.cyanogenmod.filemanager.commands.java.Program;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.console.ConsoleAllocException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.console.OperationTimeoutException;
+import com.cyanogenmod.filemanager.console.ReadOnlyFilesystemException;
+import com.cyanogenmod.filemanager.console.java.JavaConsole;
+import com.cyanogenmod.filemanager.console.java.OrderedAsyncResultListener;
+import com.cyanogenmod.filemanager.model.Identity;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A {@link Console} that executes every operation in a {@link JavaConsole} or in a
+ * shell console.<br/>
+ * <br/>
+ * The operations over the storage volumes that the application can access are executed
+ * in process by the java programs, without the cost of fork and exec a program in the
+ * shell and parse its output. The rest of operations (the paths not accessible by the
+ * application, or the operations that need the shell, like change the permissions or
+ * mount a filesystem) are executed by the shell console. The identity and the privileges
+ * of this console are the identity and the privileges of the shell console.<br/>
+ * <br/>
+ * The operations of the shell console that modify the filesystem are ordered with the
+ * java programs that modify the same paths.
+ *
+ * @see HybridExecutableFactory
+ */
+public final class HybridConsole extends Console {
+
+    /**
+     * The paths that an executable of the shell console modifies.
+     */
+    private static final class Order {
+        final String[] mPaths;
+        final OrderedAsyncResultListener mListener;
+
+        /**
+         * Constructor of <code>Order</code>.
+         *
+         * @param paths The paths that the executable modifies
+         * @param listener The listener of an asynchronous executable (can be
+         * <code>null</code>)
+         */
+        Order(String[] paths, OrderedAsyncResultListener listener) {
+            super();
+            this.mPaths = paths;
+            this.mListener = listener;
+        }
+    }
+
+    private final JavaConsole mJavaConsole;
+    private final Console mShellConsole;
+
+    // The paths modified by the created executables of the shell console, until they
+    // are executed
+    private final Map<Executable, Order> mOrders =
+            Collections.synchronizedMap(new WeakHashMap<Executable, Order>());
+
+    /**
+     * Constructor of <code>HybridConsole</code>.
+     *
+     * @param javaConsole An allocated java console
+     * @param shellConsole An allocated shell console (or a pool of shell consoles)
+     */
+    public HybridConsole(JavaConsole javaConsole, Console shellConsole) {
+        super();
+        this.mJavaConsole = javaConsole;
+        this.mShellConsole = shellConsole;
+    }
+
+    /**
+     * Method that returns the java console.
+     *
+     * @return JavaConsole The java console
+     */
+    public JavaConsole getJavaConsole() {
+        return this.mJavaConsole;
+    }
+
+    /**
+     * Method that returns the shell console.
+     *
+     * @return Console The shell console
+     */
+    public Console getShellConsole() {
+        return this.mShellConsole;
+    }
+
+    /**
+     * Method that sets the paths that an executable of the shell console modifies. The
+     * executable is executed in the order of the java programs that modify the same
+     * paths.
+     *
+     * @param executable The executable of the shell console
+     * @param paths The paths that the executable modifies
+     * @param listener The listener of an asynchronous executable, that retains the paths
+     * until the executable ends (<code>null</code> for a synchronous executable)
+     */
+    public void setModifiedPaths(
+            Executable executable, String[] paths, OrderedAsyncResultListener listener) {
+        this.mOrders.put(executable, new Order(paths, listener));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reloadTrace() {
+        super.reloadTrace();
+        if (this.mShellConsole == null) {
+            // Invoked by the super constructor. There are no consoles yet
+            return;
+        }
+        this.mJavaConsole.reloadTrace();
+        this.mShellConsole.reloadTrace();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Identity getIdentity() {
+        return this.mShellConsole.getIdentity();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void alloc() throws ConsoleAllocException {
+        if (!this.mShellConsole.isActive()) {
+            this.mShellConsole.alloc();
+        }
+        this.mJavaConsole.alloc();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dealloc() {
+        this.mShellConsole.dealloc();
+        this.mJavaConsole.dealloc();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void realloc() throws ConsoleAllocException {
+        dealloc();
+        alloc();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isPrivileged() {
+        return this.mShellConsole.isPrivileged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isActive() {
+        return this.mShellConsole.isActive();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExecutableFactory getExecutableFactory() {
+        return new HybridExecutableFactory(this);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Executable executable)
+            throws ConsoleAllocException, InsufficientPermissionsException,
+            NoSuchFileOrDirectory, OperationTimeoutException, ExecutionException,
+            CommandNotFoundException, ReadOnlyFilesystemException {
+        if (executable instanceof Program) {
+            this.mJavaConsole.execute(executable);
+            return;
+        }
+        Order order = this.mOrders.remove(executable);
+        if (order != null) {
+            JavaConsole.executeInOrder(
+                    this.mShellConsole, executable, order.mPaths, order.mListener);
+        } else {
+            this.mShellConsole.execute(executable);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Exception[] executeBatch(List<? extends Executable> executables)
+            throws ConsoleAllocException, OperationTimeoutException, ExecutionException {
+        // Only the shell programs can share a round trip
+        int cc = executables.size();
+        for (int i = 0; i < cc; i++) {
+            if (executables.get(i) instanceof Program) {
+                return super.executeBatch(executables);
+            }
+        }
+        return this.mShellConsole.executeBatch(executables);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onCancel() {
+        // Programs are cancelled by the console that executes them
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onSendSignal(SIGNAL signal) {
+        // Programs are signaled by the console that executes them
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onEnd() {
+        // Programs are ended by the console that executes them
+        return false;
+    }
+
+}
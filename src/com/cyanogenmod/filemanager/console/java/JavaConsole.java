@@ -20,19 +20,24 @@ import android.content.Context;
 import android.os.Process;
 import android.util.Log;
 
+import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
 import com.cyanogenmod.filemanager.commands.Executable;
 import com.cyanogenmod.filemanager.commands.ExecutableFactory;
+import com.cyanogenmod.filemanager.commands.ExecutionPriority;
 import com.cyanogenmod.filemanager.commands.SIGNAL;
 import com.cyanogenmod.filemanager.commands.java.JavaExecutableFactory;
 import com.cyanogenmod.filemanager.commands.java.Program;
 import com.cyanogenmod.filemanager.console.CommandNotFoundException;
 import com.cyanogenmod.filemanager.console.Console;
 import com.cyanogenmod.filemanager.console.ConsoleAllocException;
+import com.cyanogenmod.filemanager.console.ConsoleMetrics;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.OperationTimeoutException;
 import com.cyanogenmod.filemanager.console.ReadOnlyFilesystemException;
+import com.cyanogenmod.filemanager.console.TraceRing;
 import com.cyanogenmod.filemanager.model.AID;
 import com.cyanogenmod.filemanager.model.Group;
 import com.cyanogenmod.filemanager.model.Identity;
@@ -40,17 +45,50 @@ import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.util.AIDHelper;
 
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An implementation of a {@link Console} based on a java implementation.<br/>
  * <br/>
  * This console is a non-privileged console an many of the functionality is not implemented
- * because can't be obtain from java api.
+ * because can't be obtain from java api.<br/>
+ * <br/>
+ * The programs run concurrently. Synchronous programs run in the thread of the caller,
+ * and asynchronous programs run in a bounded pool of threads (the background scans have
+ * their own pool with a background priority, so they can't take the threads of the
+ * interactive programs). Programs that modify the same path (or an ancestor or a
+ * descendant of the path) run in order.
  */
 public final class JavaConsole extends Console {
 
     private static final String TAG = "JavaConsole"; //$NON-NLS-1$
 
+    // The prefix of the identifiers of the java programs in the metrics and in the trace
+    private static final String PROGRAM_ID_PREFIX = "java:"; //$NON-NLS-1$
+    // The identifiers of the java programs, by class (built once per class)
+    private static final ConcurrentHashMap<Class<?>, String> PROGRAM_IDS =
+            new ConcurrentHashMap<Class<?>, String>();
+
+    // The maximum number of asynchronous programs that run at the same time
+    private static final int MAX_INTERACTIVE_PROGRAMS = 3;
+    private static final int MAX_BACKGROUND_PROGRAMS = 2;
+    // The time that an idle thread is retained (in seconds)
+    private static final long KEEP_ALIVE_TIME = 30L;
+
+    // The programs that modify the same path are ordered
+    private static final PathLocks PATH_LOCKS = new PathLocks();
+    // The asynchronous programs queue their paths and are submitted to the pool atomically
+    private static final Object SUBMIT_SYNC = new Object();
+    // The maximum time that a program waits for the programs that modify its paths
+    private static final long MAX_PATHS_WAIT = 30000L;
+
     private boolean mActive;
 
     private final Context mCtx;
@@ -154,7 +192,7 @@ public final class JavaConsole extends Console {
      * {@inheritDoc}
      */
     @Override
-    public synchronized void execute(Executable executable) throws ConsoleAllocException,
+    public void execute(Executable executable) throws ConsoleAllocException,
                                 InsufficientPermissionsException, NoSuchFileOrDirectory,
                                 OperationTimeoutException, ExecutionException,
                                 CommandNotFoundException, ReadOnlyFilesystemException {
@@ -178,27 +216,292 @@ public final class JavaConsole extends Console {
         final Program program = (Program)executable;
         program.setTrace(isTrace());
         program.setBufferSize(this.mBufferSize);
+
+        // Queue the program after the programs that modify the same paths. The program
+        // waits for them in the thread that runs it, so the caller of an asynchronous
+        // program doesn't block
+        final String id = getProgramId(program);
+        final ConsoleMetrics.Sample sample = ConsoleMetrics.start(id);
         if (program.isAsynchronous()) {
-            // Execute in a thread
-            Thread t = new Thread() {
-                @Override
-                public void run() {
-                    try {
-                        program.execute();
-                    } catch (Exception e) {
-                        // Program must use onException to communicate exceptions
-                        Log.v(TAG,
-                                String.format("Async execute failed program: %s", //$NON-NLS-1$
-                                program.getClass().toString()));
-                    }
+            // Execute in the pool. The paths are queued in the order in which the programs
+            // are submitted, so a thread of the pool never waits for a program that is
+            // still queued in the pool
+            synchronized (SUBMIT_SYNC) {
+                PathLocks.Lock lock = queuePaths(program.getModifiedPaths());
+                try {
+                    getExecutor(program.getPriority()).execute(
+                            createTask(program, id, sample, lock));
+                } catch (RejectedExecutionException e) {
+                    releasePaths(lock);
+                    throw new ExecutionException("The program was rejected", e); //$NON-NLS-1$
                 }
-            };
-            t.start();
+            }
 
         } else {
             // Synchronous execution
-            program.execute();
+            PathLocks.Lock lock = queuePaths(program.getModifiedPaths());
+            sample.onDequeued();
+            TraceRing.getInstance().record(id, TraceRing.Phase.START, 0);
+            boolean succeeded = false;
+            try {
+                try {
+                    awaitPaths(lock, program);
+                } catch (OperationTimeoutException e) {
+                    sample.onTimeout();
+                    throw e;
+                }
+                program.getCancellationToken().attach();
+                try {
+                    program.execute();
+                    sample.onSucceeded();
+                    succeeded = true;
+                } finally {
+                    program.getCancellationToken().detach();
+                }
+            } finally {
+                TraceRing.getInstance().record(
+                        id, succeeded ? TraceRing.Phase.END : TraceRing.Phase.ERROR, 0);
+                releasePaths(lock);
+                sample.end();
+            }
+        }
+    }
+
+    /**
+     * Method that creates the task that executes an asynchronous program in the pool.
+     *
+     * @param program The program
+     * @param id The identifier of the program in the metrics and in the trace
+     * @param sample The metrics of the program
+     * @param lock The queued operation of the program (can be <code>null</code>)
+     * @return Runnable The task
+     */
+    private static Runnable createTask(final Program program, final String id,
+            final ConsoleMetrics.Sample sample, final PathLocks.Lock lock) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                sample.onDequeued();
+                TraceRing.getInstance().record(id, TraceRing.Phase.START, 0);
+                try {
+                    awaitPaths(lock, program);
+                } catch (Exception e) {
+                    if (e instanceof OperationTimeoutException) {
+                        sample.onTimeout();
+                    }
+                    TraceRing.getInstance().record(id, TraceRing.Phase.ERROR, 0);
+                    sample.end();
+                    onLockFailed(program, e);
+                    return;
+                }
+                program.getCancellationToken().attach();
+                try {
+                    program.execute();
+                    sample.onSucceeded();
+                    TraceRing.getInstance().record(id, TraceRing.Phase.END, 0);
+                } catch (Exception e) {
+                    TraceRing.getInstance().record(id, TraceRing.Phase.ERROR, 0);
+                    // Program must use onException to communicate exceptions
+                    Log.v(TAG,
+                            String.format("Async execute failed program: %s", //$NON-NLS-1$
+                            program.getClass().toString()));
+                } finally {
+                    program.getCancellationToken().detach();
+                    releasePaths(lock);
+                    sample.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Method that executes an executable of other console in the order of the java
+     * programs that modify the same paths (or their ancestors or descendants). The
+     * executable is executed in the thread of the caller, after the programs queued
+     * before it.
+     *
+     * @param console The console that executes the executable
+     * @param executable The executable
+     * @param paths The paths that the executable modifies (can be <code>null</code>)
+     * @param listener The listener of an asynchronous executable, that retains the paths
+     * until the executable ends. <code>null</code> to release the paths when this method
+     * returns
+     * @throws ConsoleAllocException If the console is not allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws CommandNotFoundException If the executable can't be executed
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     */
+    public static void executeInOrder(Console console, Executable executable,
+            String[] paths, OrderedAsyncResultListener listener)
+            throws ConsoleAllocException, InsufficientPermissionsException,
+            NoSuchFileOrDirectory, OperationTimeoutException, ExecutionException,
+            CommandNotFoundException, ReadOnlyFilesystemException {
+        PathLocks.Lock lock = queuePaths(paths);
+        boolean held = false;
+        try {
+            awaitPaths(lock, executable);
+            console.execute(executable);
+            if (listener != null && lock != null) {
+                listener.hold(PATH_LOCKS, lock);
+                held = true;
+            }
+        } finally {
+            if (!held) {
+                releasePaths(lock);
+            }
+        }
+    }
+
+    /**
+     * Method that returns the identifier of a program in the metrics and in the trace.
+     *
+     * @param program The program
+     * @return String The identifier of the program
+     */
+    private static String getProgramId(Program program) {
+        Class<?> clazz = program.getClass();
+        String id = PROGRAM_IDS.get(clazz);
+        if (id == null) {
+            id = PROGRAM_ID_PREFIX + clazz.getSimpleName();
+            PROGRAM_IDS.putIfAbsent(clazz, id);
+        }
+        return id;
+    }
+
+    /**
+     * Method that queues an operation after the operations that modify the same paths.
+     *
+     * @param paths The paths that the operation modifies (can be <code>null</code>)
+     * @return PathLocks.Lock The queued operation, or <code>null</code> if the operation
+     * doesn't modify any path
+     */
+    private static PathLocks.Lock queuePaths(String[] paths) {
+        if (paths == null || paths.length == 0) {
+            return null;
+        }
+        return PATH_LOCKS.queue(paths);
+    }
+
+    /**
+     * Method that waits for the operations queued before an operation that modify the
+     * same paths. If the wait fails the operation is removed from the queue.
+     *
+     * @param lock The queued operation (can be <code>null</code>)
+     * @param executable The executable of the operation
+     * @throws OperationTimeoutException If the paths weren't released in time
+     * @throws ExecutionException If the wait was interrupted
+     */
+    private static void awaitPaths(PathLocks.Lock lock, Executable executable)
+            throws OperationTimeoutException, ExecutionException {
+        if (lock == null) {
+            return;
+        }
+        try {
+            if (!PATH_LOCKS.await(lock, MAX_PATHS_WAIT)) {
+                throw new OperationTimeoutException(
+                        MAX_PATHS_WAIT, executable.getClass().getSimpleName());
+            }
+        } catch (InterruptedException e) {
+            throw new ExecutionException("Interrupted waiting for the paths", e); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that releases the paths of an operation.
+     *
+     * @param lock The queued operation (can be <code>null</code>)
+     */
+    private static void releasePaths(PathLocks.Lock lock) {
+        if (lock != null) {
+            PATH_LOCKS.release(lock);
+        }
+    }
+
+    /**
+     * Method that communicates to an asynchronous program that it couldn't wait for
+     * its paths. The program is cancelled, so its callers don't wait for it.
+     *
+     * @param program The program
+     * @param cause The cause of the failure
+     */
+    private static void onLockFailed(Program program, Exception cause) {
+        Log.w(TAG, String.format("Async program not executed: %s", //$NON-NLS-1$
+                program.getClass().toString()), cause);
+        if (program instanceof AsyncResultExecutable) {
+            AsyncResultExecutable executable = (AsyncResultExecutable)program;
+            executable.cancel();
+            AsyncResultListener listener = executable.getAsyncResultListener();
+            if (listener != null) {
+                listener.onException(cause);
+            }
+        }
+    }
+
+    /**
+     * Method that returns the pool of threads of the asynchronous programs.
+     *
+     * @param priority The priority of the program
+     * @return Executor The pool of threads
+     */
+    private static Executor getExecutor(ExecutionPriority priority) {
+        if (priority == ExecutionPriority.BACKGROUND) {
+            return BackgroundExecutorHolder.EXECUTOR;
         }
+        return InteractiveExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Method that creates a pool of threads for the asynchronous programs.
+     *
+     * @param name The name of the threads
+     * @param threads The maximum number of threads
+     * @param priority The priority of the threads (a <code>Process</code> priority)
+     * @return ThreadPoolExecutor The pool of threads
+     */
+    private static ThreadPoolExecutor createExecutor(
+            final String name, int threads, final int priority) {
+        ThreadFactory factory = new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(priority);
+                        r.run();
+                    }
+                }, name + " #" + this.mCount.incrementAndGet()); //$NON-NLS-1$
+                t.setDaemon(true);
+                return t;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads, KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), factory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * The pool of the interactive asynchronous programs (created on demand).
+     */
+    private static final class InteractiveExecutorHolder {
+        static final ThreadPoolExecutor EXECUTOR =
+                createExecutor("JavaConsole", //$NON-NLS-1$
+                        MAX_INTERACTIVE_PROGRAMS, Process.THREAD_PRIORITY_DEFAULT);
+    }
+
+    /**
+     * The pool of the background scans (created on demand).
+     */
+    private static final class BackgroundExecutorHolder {
+        static final ThreadPoolExecutor EXECUTOR =
+                createExecutor("JavaConsole background", //$NON-NLS-1$
+                        MAX_BACKGROUND_PROGRAMS, Process.THREAD_PRIORITY_BACKGROUND);
     }
 
     /**
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.java;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultListener;
+
+/**
+ * An {@link AsyncResultListener} that retains the paths of an asynchronous executable of
+ * other console until the executable ends, so the java programs that modify the same
+ * paths run after it.
+ *
+ * @see JavaConsole#executeInOrder(com.cyanogenmod.filemanager.console.Console,
+ * com.cyanogenmod.filemanager.commands.Executable, String[], OrderedAsyncResultListener)
+ */
+public final class OrderedAsyncResultListener implements AsyncResultListener {
+
+    private final AsyncResultListener mListener;
+
+    private PathLocks mLocks;
+    private PathLocks.Lock mLock;
+    private boolean mEnded;
+
+    /**
+     * Constructor of <code>OrderedAsyncResultListener</code>.
+     *
+     * @param listener The listener of the executable (can be <code>null</code>)
+     */
+    public OrderedAsyncResultListener(AsyncResultListener listener) {
+        super();
+        this.mListener = listener;
+    }
+
+    /**
+     * Method that retains the paths of the executable until it ends. If the executable
+     * already ended the paths are released now.
+     *
+     * @param locks The locks of the paths
+     * @param lock The granted paths of the executable
+     */
+    void hold(PathLocks locks, PathLocks.Lock lock) {
+        synchronized (this) {
+            if (!this.mEnded) {
+                this.mLocks = locks;
+                this.mLock = lock;
+                return;
+            }
+        }
+        locks.release(lock);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncStart() {
+        if (this.mListener != null) {
+            this.mListener.onAsyncStart();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncEnd(boolean cancelled) {
+        // The executable doesn't modify its paths after this point
+        release();
+        if (this.mListener != null) {
+            this.mListener.onAsyncEnd(cancelled);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onAsyncExitCode(int exitCode) {
+        release();
+        if (this.mListener != null) {
+            this.mListener.onAsyncExitCode(exitCode);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPartialResult(Object result) {
+        if (this.mListener != null) {
+            this.mListener.onPartialResult(result);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onException(Exception cause) {
+        if (this.mListener != null) {
+            this.mListener.onException(cause);
+        }
+    }
+
+    /**
+     * Method that releases the paths of the executable (only once).
+     */
+    private void release() {
+        PathLocks locks;
+        PathLocks.Lock lock;
+        synchronized (this) {
+            this.mEnded = true;
+            locks = this.mLocks;
+            lock = this.mLock;
+            this.mLocks = null;
+            this.mLock = null;
+        }
+        if (lock != null) {
+            locks.release(lock);
+        }
+    }
+}
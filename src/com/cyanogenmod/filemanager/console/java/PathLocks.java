@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.java;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A class that orders the operations over the same paths.<br/>
+ * <br/>
+ * The operations are queued in the order in which they are executed, and an operation
+ * runs when no operation queued before it overlaps its paths. Two paths overlap if they
+ * are the same path or if one of them is an ancestor of the other one, so an operation
+ * over a directory is ordered with the operations over its children. An operation is
+ * granted all its paths at once, so the operations can't deadlock. The operation is
+ * queued by the thread that executes it and awaited by the thread that runs it, so a
+ * caller doesn't block to queue an asynchronous program.
+ */
+final class PathLocks {
+
+    /**
+     * The paths of a queued operation.
+     */
+    static final class Lock {
+        final String[] mKeys;
+        boolean mGranted;
+
+        /**
+         * Constructor of <code>Lock</code>.
+         *
+         * @param keys The absolute paths of the operation
+         */
+        Lock(String[] keys) {
+            super();
+            this.mKeys = keys;
+        }
+    }
+
+    // The queued and the granted operations, in the order in which they were queued
+    private final List<Lock> mLocks = new ArrayList<Lock>();
+
+    /**
+     * Constructor of <code>PathLocks</code>.
+     */
+    PathLocks() {
+        super();
+    }
+
+    /**
+     * Method that queues an operation over some paths. This method doesn't block.
+     *
+     * @param paths The paths
+     * @return Lock The queued operation, to be passed to {@link #await(Lock, long)} and
+     * {@link #release(Lock)}, or <code>null</code> if there are no paths
+     */
+    Lock queue(String[] paths) {
+        int cc = 0;
+        String[] keys = new String[paths.length];
+        for (String path : paths) {
+            if (path != null) {
+                keys[cc++] = new File(path).getAbsolutePath();
+            }
+        }
+        if (cc == 0) {
+            return null;
+        }
+        if (cc < keys.length) {
+            String[] trimmed = new String[cc];
+            System.arraycopy(keys, 0, trimmed, 0, cc);
+            keys = trimmed;
+        }
+
+        Lock lock = new Lock(keys);
+        synchronized (this) {
+            this.mLocks.add(lock);
+            grant();
+        }
+        return lock;
+    }
+
+    /**
+     * Method that waits until an operation is granted its paths, that is, until the
+     * overlapping operations queued before it are released.
+     *
+     * @param lock The queued operation
+     * @param timeout The maximum time of wait (in milliseconds)
+     * @return boolean If the operation was granted its paths. If not, the operation
+     * is removed from the queue
+     * @throws InterruptedException If the wait was interrupted. The operation is removed
+     * from the queue
+     */
+    boolean await(Lock lock, long timeout) throws InterruptedException {
+        synchronized (this) {
+            long end = System.currentTimeMillis() + timeout;
+            try {
+                while (!lock.mGranted) {
+                    long remaining = end - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        release(lock);
+                        return false;
+                    }
+                    wait(remaining);
+                }
+            } catch (InterruptedException ex) {
+                release(lock);
+                throw ex;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Method that releases the paths of an operation (or removes it from the queue if
+     * it wasn't granted its paths yet).
+     *
+     * @param lock The queued operation
+     */
+    synchronized void release(Lock lock) {
+        if (this.mLocks.remove(lock)) {
+            grant();
+        }
+    }
+
+    /**
+     * Method that returns the number of queued and granted operations.
+     *
+     * @return int The number of operations
+     */
+    synchronized int size() {
+        return this.mLocks.size();
+    }
+
+    /**
+     * Method that grants their paths to the queued operations that don't overlap an
+     * operation queued before them, and wakes up the threads that wait for them.
+     */
+    private void grant() {
+        boolean granted = false;
+        int cc = this.mLocks.size();
+        for (int i = 0; i < cc; i++) {
+            Lock lock = this.mLocks.get(i);
+            if (lock.mGranted) {
+                continue;
+            }
+            boolean free = true;
+            for (int j = 0; j < i && free; j++) {
+                free = !overlaps(this.mLocks.get(j), lock);
+            }
+            if (free) {
+                lock.mGranted = true;
+                granted = true;
+            }
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Method that returns if two operations have overlapping paths.
+     *
+     * @param a An operation
+     * @param b Other operation
+     * @return boolean If any path of an operation is, or is an ancestor of, or is a
+     * descendant of, a path of the other one
+     */
+    private static boolean overlaps(Lock a, Lock b) {
+        for (String x : a.mKeys) {
+            for (String y : b.mKeys) {
+                if (isAncestorOrSelf(x, y) || isAncestorOrSelf(y, x)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Method that returns if a path is the same path or an ancestor of other path.
+     *
+     * @param ancestor The possible ancestor
+     * @param path The path
+     * @return boolean If <code>ancestor</code> is <code>path</code> or one of its ancestors
+     */
+    static boolean isAncestorOrSelf(String ancestor, String path) {
+        if (!path.startsWith(ancestor)) {
+            return false;
+        }
+        int len = ancestor.length();
+        return path.length() == len
+                || ancestor.endsWith(File.separator)
+                || path.charAt(len) == File.separatorChar;
+    }
+}
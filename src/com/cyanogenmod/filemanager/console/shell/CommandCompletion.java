@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The completion of a command sent to a shell console.<br/>
+ * <br/>
+ * The reader threads complete the command as soon as they decode its control marker,
+ * and the executing thread waits until the command is completed or its deadline
+ * expires. The deadline can be extended while the command writes new data, so the
+ * waiting thread only wakes up when the command completes or when a deadline
+ * expires, and never polls the state of the command.
+ */
+final class CommandCompletion {
+
+    private final CountDownLatch mLatch = new CountDownLatch(1);
+    private volatile long mLastData;
+
+    /**
+     * Constructor of <code>CommandCompletion</code>.
+     */
+    CommandCompletion() {
+        super();
+        this.mLastData = System.nanoTime();
+    }
+
+    /**
+     * Method that returns a completion that is already completed.
+     *
+     * @return CommandCompletion A completed completion
+     */
+    static CommandCompletion completed() {
+        CommandCompletion completion = new CommandCompletion();
+        completion.complete();
+        return completion;
+    }
+
+    /**
+     * Method that completes the command. The waiting thread is released.
+     */
+    void complete() {
+        this.mLatch.countDown();
+    }
+
+    /**
+     * Method that returns if the command is completed.
+     *
+     * @return boolean If the command is completed
+     */
+    boolean isCompleted() {
+        return this.mLatch.getCount() == 0;
+    }
+
+    /**
+     * Method that records that the command wrote new data.
+     */
+    void onNewData() {
+        this.mLastData = System.nanoTime();
+    }
+
+    /**
+     * Method that waits until the command is completed, without timeout.
+     *
+     * @throws InterruptedException If the wait was interrupted
+     */
+    void await() throws InterruptedException {
+        this.mLatch.await();
+    }
+
+    /**
+     * Method that waits until the command is completed or its deadline expires.
+     *
+     * @param timeout The maximum time of wait (in milliseconds). If the deadline is
+     * extended, the maximum time of wait since the last data written by the command
+     * @param extendOnNewData If the deadline is extended while the command writes new data
+     * @param maxTimeout The maximum time that the deadline can be extended (in milliseconds)
+     * @return boolean If the command is completed, or <code>false</code> if the deadline
+     * expired
+     * @throws InterruptedException If the wait was interrupted
+     */
+    boolean await(long timeout, boolean extendOnNewData, long maxTimeout)
+            throws InterruptedException {
+        final long start = System.nanoTime();
+        final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        final long limit = start + TimeUnit.MILLISECONDS.toNanos(maxTimeout) + timeoutNanos;
+        while (true) {
+            long deadline = start + timeoutNanos;
+            if (extendOnNewData) {
+                deadline = Math.min(Math.max(deadline, this.mLastData + timeoutNanos), limit);
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return isCompleted();
+            }
+            if (this.mLatch.await(remaining, TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+        }
+    }
+}
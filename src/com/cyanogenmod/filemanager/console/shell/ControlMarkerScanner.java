@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+/**
+ * A class for detect the control markers that the shell console appends to the output
+ * of every command (<code>prefix + exit code + suffix</code>, where the exit code has
+ * between 1 and 3 digits).<br/>
+ * <br/>
+ * The scanner is fed incrementally with the output of the shell and never looks back
+ * over the data already scanned. The prefix is matched with a Knuth-Morris-Pratt
+ * automaton, and the exit code and the suffix are matched in place after every
+ * prefix, so the cost per character is constant (amortized).
+ */
+public final class ControlMarkerScanner {
+
+    private static final int MAX_EXIT_CODE_LENGTH = 3;
+
+    private final char[] mPrefix;
+    private final int[] mPrefixFailure;
+    private final char[] mSuffix;
+
+    // Matched chars of the prefix automaton
+    private int mPrefixState;
+
+    // The number of chars scanned since the last prefix was completed, or -1 if
+    // there is no prefix in progress
+    private int mSincePrefix;
+    private int mDigits;
+    private int mExitCode;
+
+    private boolean mFound;
+    private int mMarkerLength;
+
+    /**
+     * Constructor of <code>ControlMarkerScanner</code>.
+     *
+     * @param prefix The text that precedes the exit code
+     * @param suffix The text that follows the exit code
+     */
+    public ControlMarkerScanner(String prefix, String suffix) {
+        super();
+        this.mPrefix = prefix.toCharArray();
+        this.mPrefixFailure = createFailureFunction(this.mPrefix);
+        this.mSuffix = suffix.toCharArray();
+        reset();
+    }
+
+    /**
+     * Method that resets the scanner to its initial state.
+     */
+    public void reset() {
+        this.mPrefixState = 0;
+        this.mSincePrefix = -1;
+        this.mDigits = 0;
+        this.mExitCode = 0;
+        this.mFound = false;
+        this.mMarkerLength = 0;
+    }
+
+    /**
+     * Method that returns if a marker was found.
+     *
+     * @return boolean If a marker was found
+     */
+    public boolean isFound() {
+        return this.mFound;
+    }
+
+    /**
+     * Method that returns the exit code of the marker found.
+     *
+     * @return int The exit code, or <code>-1</code> if no marker was found
+     */
+    public int getExitCode() {
+        return this.mFound ? this.mExitCode : -1;
+    }
+
+    /**
+     * Method that returns the length of the marker found.
+     *
+     * @return int The length of the marker, or <code>0</code> if no marker was found
+     */
+    public int getMarkerLength() {
+        return this.mMarkerLength;
+    }
+
+    /**
+     * Method that returns the number of the last scanned chars that could be the
+     * beginning of a marker not completed yet.
+     *
+     * @return int The number of chars of a marker in progress
+     */
+    public int getPendingLength() {
+        if (this.mFound) {
+            return 0;
+        }
+        if (this.mSincePrefix >= 0) {
+            return this.mPrefix.length + this.mSincePrefix;
+        }
+        return this.mPrefixState;
+    }
+
+    /**
+     * Method that scans a region of a sequence, continuing the previous scans. Once a
+     * marker is found the next scans are ignored until the scanner is reset.
+     *
+     * @param seq The sequence to scan
+     * @param start The first position to scan (inclusive)
+     * @param end The last position to scan (exclusive)
+     * @return int The position of the sequence next to the end of the marker, or
+     * <code>-1</code> if the marker wasn't completed in the region
+     */
+    public int scan(CharSequence seq, int start, int end) {
+        if (this.mFound) {
+            return -1;
+        }
+        for (int i = start; i < end; i++) {
+            if (feed(seq.charAt(i))) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method that scans the next char.
+     *
+     * @param c The char to scan
+     * @return boolean If the char completes a marker
+     */
+    public boolean feed(char c) {
+        if (this.mFound) {
+            return false;
+        }
+
+        // The exit code follows the prefix and precedes the suffix
+        if (this.mSincePrefix >= 0) {
+            this.mSincePrefix++;
+            if (this.mSincePrefix == this.mDigits + 1
+                    && this.mDigits < MAX_EXIT_CODE_LENGTH && c >= '0' && c <= '9') {
+                this.mDigits++;
+                this.mExitCode = (this.mExitCode * 10) + (c - '0');
+            } else if (this.mDigits > 0
+                    && this.mSuffix[this.mSincePrefix - this.mDigits - 1] == c) {
+                if (this.mSincePrefix - this.mDigits == this.mSuffix.length) {
+                    this.mFound = true;
+                    this.mMarkerLength = this.mPrefix.length + this.mSincePrefix;
+                    return true;
+                }
+            } else {
+                // Not a marker
+                this.mSincePrefix = -1;
+            }
+        }
+
+        // Advance the prefix automaton (a new prefix restarts the exit code)
+        this.mPrefixState = advance(this.mPrefix, this.mPrefixFailure, this.mPrefixState, c);
+        if (this.mPrefixState == this.mPrefix.length) {
+            this.mPrefixState = this.mPrefixFailure[this.mPrefixState - 1];
+            this.mSincePrefix = 0;
+            this.mDigits = 0;
+            this.mExitCode = 0;
+        }
+        return false;
+    }
+
+    /**
+     * Method that advances a KMP automaton.
+     *
+     * @param pattern The pattern
+     * @param failure The failure function of the pattern
+     * @param state The current state (number of chars matched)
+     * @param c The next char
+     * @return int The new state
+     */
+    private static int advance(char[] pattern, int[] failure, int state, char c) {
+        int s = state;
+        while (s > 0 && pattern[s] != c) {
+            s = failure[s - 1];
+        }
+        if (pattern[s] == c) {
+            s++;
+        }
+        return s;
+    }
+
+    /**
+     * Method that computes the KMP failure function of a pattern.
+     *
+     * @param pattern The pattern
+     * @return int[] The length of the longest proper prefix that is also a suffix,
+     * for every prefix of the pattern
+     */
+    private static int[] createFailureFunction(char[] pattern) {
+        int[] failure = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+
+}
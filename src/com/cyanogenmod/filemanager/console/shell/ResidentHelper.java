@@ -0,0 +1,378 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+import com.cyanogenmod.filemanager.console.OperationTimeoutException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.security.SecureRandom;
+
+/**
+ * A resident helper process that answers metadata queries (listings, file information,
+ * links, ...) of a shell console.<br/>
+ * <br/>
+ * The helper is a script loop, installed once in a long-lived shell (usually
+ * <code>su</code>), that reads the requests from its standard input. Every request is
+ * framed as three lines:<br/>
+ * <br/>
+ * <code/>
+ *  check path (quoted, or an empty line)
+ *  command line
+ *  start and end control identifiers
+ * </code>
+ * <br/>
+ * and its response is the standard output and the standard error of the command, each
+ * one followed by a control marker with the exit code (the streams are read by different
+ * threads, so both must be ended). The control identifiers are created per request, so
+ * the output of a request can't end another one. The control markers are printed with
+ * the <code>echo</code> builtin, and the existence of the check path is tested with the
+ * <code>[</code> builtin, so a request only forks the command itself. If the check path
+ * doesn't exist the command is not executed and the exit code is
+ * {@link #EXIT_CODE_NOT_FOUND}.<br/>
+ * <br/>
+ * Command lines can't contain new lines.<br/>
+ * <br/>
+ * The helper prints the control markers when the loop is ready, and no request is sent
+ * before that, because the shell could read in advance the requests of the standard
+ * input while it parses the helper script.
+ */
+public final class ResidentHelper {
+
+    /**
+     * The exit code of a request which check path doesn't exist.
+     */
+    public static final int EXIT_CODE_NOT_FOUND = 254;
+
+    /**
+     * The exit code of a request that wasn't sent, because the helper is still executing
+     * a previous request that exceeded its time of wait.
+     */
+    public static final int EXIT_CODE_BUSY = -1;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    // The helper script. %1$s and %2$s are the control identifiers of the start
+    private static final String SCRIPT =
+            "fm_helper() {\n" + //$NON-NLS-1$
+            "  while read -r fm_check && read -r fm_cmd && read -r fm_s fm_e; do\n" + //$NON-NLS-1$
+            "    if [ -n \"$fm_check\" ] && " + //$NON-NLS-1$
+                    "eval \"[ ! -e $fm_check ] && [ ! -h $fm_check ]\"; then\n" + //$NON-NLS-1$
+            "      fm_r=" + EXIT_CODE_NOT_FOUND + "\n" + //$NON-NLS-1$ //$NON-NLS-2$
+            "    else\n" + //$NON-NLS-1$
+            "      eval \"$fm_cmd\" < /dev/null\n" + //$NON-NLS-1$
+            "      fm_r=$?\n" + //$NON-NLS-1$
+            "    fi\n" + //$NON-NLS-1$
+            "    echo -n \"$fm_s$fm_r$fm_e\" 1>&2\n" + //$NON-NLS-1$
+            "    echo -n \"$fm_s$fm_r$fm_e\"\n" + //$NON-NLS-1$
+            "  done\n" + //$NON-NLS-1$
+            "}\n" + //$NON-NLS-1$
+            "echo -n '%1$s'0'%2$s' 1>&2 ; echo -n '%1$s'0'%2$s' ; " + //$NON-NLS-1$
+            "fm_helper ; exit\n"; //$NON-NLS-1$
+
+    private final String[] mCmd;
+    private final long mTimeout;
+    private final long mMaxTimeout;
+    private final SecureRandom mRandom;
+
+    private final Object mSync = new Object();
+    private Process mProc;
+    private OutputStream mOut;
+    private boolean mActive;
+    // If the last request exceeded its time of wait, and its response is still pending
+    private boolean mPending;
+
+    // The response of the active request. Guarded by mSync
+    private final StringBuilder mResponse = new StringBuilder();
+    private ControlMarkerScanner mScanner;
+    private final StringBuilder mError = new StringBuilder();
+    private ControlMarkerScanner mErrorScanner;
+
+    /**
+     * Constructor of <code>ResidentHelper</code>.
+     *
+     * @param cmd The shell command (and its arguments) that runs the helper
+     * @param timeout The maximum time of wait of a request (in milliseconds). If the
+     * time of wait is extended, the maximum time of wait since the last data received
+     * @param maxTimeout The maximum time that the time of wait of a request can be
+     * extended while new data is received (in milliseconds)
+     * @throws IOException If the control identifiers can't be created
+     */
+    public ResidentHelper(String[] cmd, long timeout, long maxTimeout) throws IOException {
+        super();
+        this.mCmd = cmd;
+        this.mTimeout = timeout;
+        this.mMaxTimeout = maxTimeout;
+        try {
+            this.mRandom = SecureRandom.getInstance("SHA1PRNG"); //$NON-NLS-1$
+        } catch (Exception ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Method that starts the helper process and installs the helper script.
+     *
+     * @throws IOException If the helper can't be started
+     * @throws OperationTimeoutException If the helper doesn't respond
+     */
+    public void start() throws IOException, OperationTimeoutException {
+        synchronized (this.mSync) {
+            if (this.mActive) {
+                return;
+            }
+            this.mProc = Runtime.getRuntime().exec(this.mCmd, null, new File("/")); //$NON-NLS-1$
+            this.mOut = this.mProc.getOutputStream();
+            this.mActive = true;
+            this.mPending = false;
+            createReaderThread(this.mProc.getInputStream(), true);
+            createReaderThread(this.mProc.getErrorStream(), false);
+
+            // The helper must be ready before using it
+            try {
+                String[] ids = reset();
+                send(String.format(SCRIPT, ids[0], ids[1]));
+                if (waitForResponse("fm_helper", true, //$NON-NLS-1$
+                        new StringBuilder(), new StringBuilder()) != 0) {
+                    throw new IOException("The helper doesn't respond"); //$NON-NLS-1$
+                }
+            } catch (IOException ex) {
+                stop();
+                throw ex;
+            } catch (OperationTimeoutException ex) {
+                stop();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Method that stops the helper process.
+     */
+    public void stop() {
+        synchronized (this.mSync) {
+            if (!this.mActive) {
+                return;
+            }
+            this.mActive = false;
+            try {
+                this.mOut.close();
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+            try {
+                this.mProc.destroy();
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+            this.mOut = null;
+            this.mProc = null;
+            this.mSync.notifyAll();
+        }
+    }
+
+    /**
+     * Method that returns if the helper process is running.
+     *
+     * @return boolean If the helper process is running
+     */
+    public boolean isActive() {
+        synchronized (this.mSync) {
+            return this.mActive;
+        }
+    }
+
+    /**
+     * Method that executes a request in the helper. The request is waited the same way
+     * that the console waits a program: the time of wait is extended while new data is
+     * received only if <code>waitOnNewData</code> is set. If the time of wait is
+     * exceeded the helper is not stopped; the next request waits (with the time of
+     * wait of a request) for the end of the exceeded request before it is sent.
+     *
+     * @param check The quoted path that must exist before execute the command line,
+     * or <code>null</code> to not check any path
+     * @param cmdLine The command line
+     * @param waitOnNewData If the time of wait is extended while new data is received
+     * @param out The buffer where the standard output of the command is returned
+     * @param err The buffer where the standard error of the command is returned
+     * @return int The exit code of the command, {@link #EXIT_CODE_NOT_FOUND} if the
+     * check path doesn't exist, or {@link #EXIT_CODE_BUSY} if the request wasn't sent
+     * because the previous request didn't end yet
+     * @throws IOException If the request can't be sent or the helper ended
+     * @throws OperationTimeoutException If the request exceeded its time of wait
+     */
+    public synchronized int execute(String check, String cmdLine, boolean waitOnNewData,
+            StringBuilder out, StringBuilder err)
+            throws IOException, OperationTimeoutException {
+        if ((check != null && check.indexOf('\n') != -1) || cmdLine.indexOf('\n') != -1) {
+            throw new IOException("New lines are not allowed"); //$NON-NLS-1$
+        }
+
+        synchronized (this.mSync) {
+            if (!this.mActive) {
+                throw new IOException("The helper is not active"); //$NON-NLS-1$
+            }
+            if (this.mPending) {
+                // Discard the response of the previous request when it ends
+                try {
+                    waitForResponse(
+                            cmdLine, false, new StringBuilder(), new StringBuilder());
+                } catch (OperationTimeoutException ex) {
+                    return EXIT_CODE_BUSY;
+                }
+                this.mPending = false;
+            }
+            String[] ids = reset();
+            send((check == null ? "" : check) + "\n" + cmdLine + "\n" + //$NON-NLS-1$ //$NON-NLS-2$
+                    ids[0] + " " + ids[1] + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+            try {
+                return waitForResponse(cmdLine, waitOnNewData, out, err);
+            } catch (OperationTimeoutException ex) {
+                this.mPending = true;
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Method that clears the response of the last request, and creates the control
+     * identifiers of the next request. Must be called with the lock of
+     * <code>mSync</code>.
+     *
+     * @return String[] The start and the end control identifiers
+     */
+    private String[] reset() {
+        String[] ids = {
+                String.format("/#%d#/", Long.valueOf(this.mRandom.nextLong())), //$NON-NLS-1$
+                String.format("/#%d#/", Long.valueOf(this.mRandom.nextLong())) //$NON-NLS-1$
+        };
+        this.mResponse.setLength(0);
+        this.mScanner = new ControlMarkerScanner(ids[0], ids[1]);
+        this.mError.setLength(0);
+        this.mErrorScanner = new ControlMarkerScanner(ids[0], ids[1]);
+        return ids;
+    }
+
+    /**
+     * Method that waits for the control markers of the active request. Must be called
+     * with the lock of <code>mSync</code>.
+     *
+     * @param cmdLine The command line of the request
+     * @param waitOnNewData If the time of wait is extended while new data is received
+     * @param out The buffer where the standard output of the command is returned
+     * @param err The buffer where the standard error of the command is returned
+     * @return int The exit code of the command
+     * @throws IOException If the helper ended
+     * @throws OperationTimeoutException If the request exceeded its time of wait
+     */
+    private int waitForResponse(
+            String cmdLine, boolean waitOnNewData, StringBuilder out, StringBuilder err)
+            throws IOException, OperationTimeoutException {
+        final long start = System.currentTimeMillis();
+        final long limit = start + this.mTimeout + this.mMaxTimeout;
+        long deadline = start + this.mTimeout;
+        int received = this.mResponse.length() + this.mError.length();
+        while (!this.mScanner.isFound() || !this.mErrorScanner.isFound()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new OperationTimeoutException(
+                        System.currentTimeMillis() - start, cmdLine);
+            }
+            try {
+                this.mSync.wait(remaining);
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+            if (!this.mActive) {
+                throw new IOException("The helper ended"); //$NON-NLS-1$
+            }
+            int length = this.mResponse.length() + this.mError.length();
+            if (waitOnNewData && length != received) {
+                deadline = Math.min(System.currentTimeMillis() + this.mTimeout, limit);
+            }
+            received = length;
+        }
+
+        int len = this.mResponse.length() - this.mScanner.getMarkerLength();
+        out.append(this.mResponse, 0, len);
+        len = this.mError.length() - this.mErrorScanner.getMarkerLength();
+        err.append(this.mError, 0, len);
+        int exitCode = this.mScanner.getExitCode();
+        this.mResponse.setLength(0);
+        this.mError.setLength(0);
+        return exitCode;
+    }
+
+    /**
+     * Method that sends data to the helper.
+     *
+     * @param data The data to send
+     * @throws IOException If the data can't be sent
+     */
+    private void send(String data) throws IOException {
+        this.mOut.write(data.getBytes(StreamDecoder.CHARSET));
+        this.mOut.flush();
+    }
+
+    /**
+     * Method that creates the thread that reads a stream of the helper process.
+     *
+     * @param in The stream
+     * @param response If the stream is the standard output of the helper. Otherwise
+     * the stream is the standard error
+     */
+    private void createReaderThread(final InputStream in, final boolean response) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final ResidentHelper helper = ResidentHelper.this;
+                final char[] buffer = new char[BUFFER_SIZE];
+                final StringBuilder data = response ? helper.mResponse : helper.mError;
+                Reader reader = new InputStreamReader(in, StreamDecoder.CHARSET);
+                try {
+                    int read;
+                    while ((read = reader.read(buffer)) != -1) {
+                        synchronized (helper.mSync) {
+                            // The scanner of the active request
+                            ControlMarkerScanner scanner =
+                                    response ? helper.mScanner : helper.mErrorScanner;
+                            int start = data.length();
+                            data.append(buffer, 0, read);
+                            scanner.scan(data, start, data.length());
+                            helper.mSync.notifyAll();
+                        }
+                    }
+                } catch (Exception ex) {
+                    /**NON BLOCK**/
+                }
+
+                // The helper ended
+                if (response) {
+                    helper.stop();
+                }
+            }
+        });
+        t.setName(response ?
+                "ResidentHelper stdout" : "ResidentHelper stderr"); //$NON-NLS-1$ //$NON-NLS-2$
+        t.start();
+    }
+
+}
@@ -21,13 +21,15 @@ import android.util.Log;
 import com.cyanogenmod.filemanager.FileManagerApplication;
 import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
 import com.cyanogenmod.filemanager.commands.Executable;
+import com.cyanogenmod.filemanager.commands.ExecutionPriority;
 import com.cyanogenmod.filemanager.commands.ExecutableFactory;
 import com.cyanogenmod.filemanager.commands.GroupsExecutable;
 import com.cyanogenmod.filemanager.commands.IdentityExecutable;
 import com.cyanogenmod.filemanager.commands.ProcessIdExecutable;
 import com.cyanogenmod.filemanager.commands.SIGNAL;
 import com.cyanogenmod.filemanager.commands.shell.AsyncResultProgram;
-import com.cyanogenmod.filemanager.commands.shell.Command;
+import com.cyanogenmod.filemanager.commands.shell.CommandRegistry;
+import com.cyanogenmod.filemanager.commands.shell.CommandTemplate;
 import com.cyanogenmod.filemanager.commands.shell.InvalidCommandDefinitionException;
 import com.cyanogenmod.filemanager.commands.shell.Program;
 import com.cyanogenmod.filemanager.commands.shell.Shell;
@@ -36,11 +38,14 @@ import com.cyanogenmod.filemanager.commands.shell.SyncResultProgram;
 import com.cyanogenmod.filemanager.console.CommandNotFoundException;
 import com.cyanogenmod.filemanager.console.Console;
 import com.cyanogenmod.filemanager.console.ConsoleAllocException;
+import com.cyanogenmod.filemanager.console.ConsoleMetrics;
+import com.cyanogenmod.filemanager.console.ConsoleScheduler;
 import com.cyanogenmod.filemanager.console.ExecutionException;
 import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
 import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
 import com.cyanogenmod.filemanager.console.OperationTimeoutException;
 import com.cyanogenmod.filemanager.console.ReadOnlyFilesystemException;
+import com.cyanogenmod.filemanager.console.TraceRing;
 import com.cyanogenmod.filemanager.model.Identity;
 import com.cyanogenmod.filemanager.util.CommandHelper;
 import com.cyanogenmod.filemanager.util.FileHelper;
@@ -50,12 +55,18 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.security.SecureRandom;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * An implementation of a {@link Console} based in the execution of shell commands.<br/>
@@ -77,8 +88,35 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
     // MAX_OPERATION_TIMEOUT + DEFAULT_TIMEOUT
     private static final long MAX_OPERATION_TIMEOUT = 30000L;
 
+    // The maximum time that a background program waits behind the interactive programs
+    private static final long MAX_BACKGROUND_WAIT = 2000L;
+
     private static final int DEFAULT_BUFFER = 512;
 
+    // The identifier of the batches in the metrics and in the trace
+    private static final String BATCH_ID = "batch"; //$NON-NLS-1$
+    // The prefix of the identifiers of the metrics of the resident helper executions
+    private static final String METRICS_ID_HELPER_PREFIX = "helper:"; //$NON-NLS-1$
+
+    // The maximum capacity of the standard buffers that are reused between commands
+    private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    // The time that the idle thread of the asynchronous programs is retained (in seconds)
+    private static final long ASYNC_KEEP_ALIVE_TIME = 30L;
+
+    private static final ThreadFactory ASYNC_THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r,
+                    "ShellConsole async #" + this.mCount.incrementAndGet()); //$NON-NLS-1$
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
+
     //Shell References
     private final Shell mShell;
     private Identity mIdentity;
@@ -93,21 +131,19 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
      * @hide
      */
     boolean mActive = false;
-    private boolean mFinished = true;
-    private boolean mNewData = false;
     private Process mProc = null;
     /**
      * @hide
      */
-    Program mActiveCommand = null;
+    volatile Program mActiveCommand = null;
     /**
      * @hide
      */
-    boolean mCancelled;
+    volatile boolean mCancelled;
     /**
      * @hide
      */
-    boolean mStarted;
+    volatile boolean mStarted;
 
     //Buffers
     private InputStream mIn = null;
@@ -123,8 +159,22 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
     StringBuffer mSbErr = null;
 
     private final SecureRandom mRandom;
-    private String mStartControlPattern;
-    private String mEndControlPattern;
+    private volatile ControlMarkerScanner mStartControlScanner;
+    private volatile ControlMarkerScanner mEndControlScanner;
+    // The marker of the end of the standard error of the active command (optional)
+    private volatile ControlMarkerScanner mErrControlScanner;
+    // The standard error that could be part of the marker (only used by the stderr thread)
+    private final StringBuilder mErrHeld = new StringBuilder();
+    private ControlMarkerScanner mErrHeldScanner;
+
+    // The completion of the active command (standard output and standard error)
+    private volatile CommandCompletion mCompletion = CommandCompletion.completed();
+    private volatile CommandCompletion mErrCompletion = CommandCompletion.completed();
+    // The active synchronous program that parses its output while it is received
+    // (read by the stdout thread)
+    private volatile SyncResultProgram mPartialResultProgram;
+    // The metrics of the active program
+    private volatile ConsoleMetrics.Sample mActiveSample;
 
     /**
      * @hide
@@ -133,6 +183,26 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
 
     private final ShellExecutableFactory mExecutableFactory;
 
+    // The thread that executes the asynchronous programs. The console executes one
+    // program at a time, so a thread is enough, and it is reused by the next programs
+    private final ThreadPoolExecutor mAsyncExecutor;
+
+    // The number of programs sent to this console that are still running or waiting
+    // for the console (asynchronous programs are accounted until they end)
+    private final AtomicInteger mPendingCommands = new AtomicInteger();
+
+    // The order in which the waiting programs use the shell
+    /**
+     * @hide
+     */
+    final ConsoleScheduler mScheduler = new ConsoleScheduler(MAX_BACKGROUND_WAIT);
+
+    // The resident helper that answers the metadata queries (started on demand)
+    private final Object mResidentHelperSync = new Object();
+    private boolean mResidentHelperEnabled;
+    private boolean mResidentHelperFailed;
+    private ResidentHelper mResidentHelper;
+
     /**
      * Constructor of <code>ShellConsole</code>.
      *
@@ -145,6 +215,10 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         super();
         this.mShell = shell;
         this.mExecutableFactory = new ShellExecutableFactory(this);
+        this.mAsyncExecutor = new ThreadPoolExecutor(
+                1, 1, ASYNC_KEEP_ALIVE_TIME, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), ASYNC_THREAD_FACTORY);
+        this.mAsyncExecutor.allowCoreThreadTimeOut(true);
 
         this.mBufferSize = DEFAULT_BUFFER;
 
@@ -194,6 +268,54 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         this.mBufferSize = bufferSize;
     }
 
+    /**
+     * Method that returns the number of programs that are currently running or
+     * waiting to be executed by this console. Asynchronous programs are accounted
+     * until they end.
+     *
+     * @return int The number of pending programs
+     */
+    public int getPendingCommands() {
+        return this.mPendingCommands.get();
+    }
+
+    /**
+     * Method that sets if the console can use a resident helper to execute the
+     * metadata queries (listings, file information, ...).
+     *
+     * @param enabled If the console can use a resident helper
+     * @see ResidentHelper
+     */
+    public void setResidentHelperEnabled(boolean enabled) {
+        synchronized (this.mResidentHelperSync) {
+            this.mResidentHelperEnabled = enabled;
+        }
+    }
+
+    /**
+     * Method that returns if the console can use a resident helper to execute the
+     * metadata queries.
+     *
+     * @return boolean If the console can use a resident helper
+     */
+    public boolean isResidentHelperEnabled() {
+        synchronized (this.mResidentHelperSync) {
+            return this.mResidentHelperEnabled;
+        }
+    }
+
+    /**
+     * Method that returns if the programs can be routed to the resident helper of
+     * the console (the helper is enabled and it didn't fail to start).
+     *
+     * @return boolean If the resident helper is available
+     */
+    public boolean isResidentHelperAvailable() {
+        synchronized (this.mResidentHelperSync) {
+            return this.mResidentHelperEnabled && !this.mResidentHelperFailed;
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -207,6 +329,25 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
      */
     @Override
     public final void alloc() throws ConsoleAllocException {
+        // The commands of the allocation run ahead of the waiting programs
+        try {
+            this.mScheduler.acquire(ExecutionPriority.INTERACTIVE);
+        } catch (InterruptedException ex) {
+            throw new ConsoleAllocException("Console allocation interrupted.", ex); //$NON-NLS-1$
+        }
+        try {
+            allocShell();
+        } finally {
+            this.mScheduler.release();
+        }
+    }
+
+    /**
+     * Method that starts the shell and retrieves its identity.
+     *
+     * @throws ConsoleAllocException If the console can't be allocated
+     */
+    private void allocShell() throws ConsoleAllocException {
         try {
             //Create command string
             List<String> cmd = new ArrayList<String>();
@@ -268,7 +409,13 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
             // Wait indefinitely if the console is allocating a su command. We need to
             // wait to user response to SuperUser or SuperSu prompt (or whatever it is)
             // The rest of sync operations will run with a timeout.
-            execute(processIdCmd, this.isPrivileged());
+            ConsoleMetrics.Sample sample = ConsoleMetrics.start(getMetricsId(processIdCmd));
+            try {
+                execute(processIdCmd, this.isPrivileged(), sample);
+                sample.onSucceeded();
+            } finally {
+                sample.end();
+            }
             Integer pid = null;
             try {
                 pid = processIdCmd.getResult().get(0);
@@ -318,10 +465,12 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
      */
     @Override
     public final void dealloc() {
+        stopResidentHelper();
         synchronized (this.mSync) {
             if (this.mActive) {
                 this.mActive = false;
-                this.mFinished = true;
+                this.mCompletion.complete();
+                this.mErrCompletion.complete();
 
                 //Close buffers
                 try {
@@ -370,11 +519,122 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
      * {@inheritDoc}
      */
     @Override
-    public final synchronized void execute(final Executable executable)
+    public final void execute(final Executable executable)
             throws ConsoleAllocException, InsufficientPermissionsException,
             CommandNotFoundException, NoSuchFileOrDirectory,
             OperationTimeoutException, ExecutionException, ReadOnlyFilesystemException {
-        execute(executable, false);
+        // Asynchronous programs are released by its execution thread
+        boolean async =
+                executable instanceof Program && executable instanceof AsyncResultExecutable;
+        // Metadata queries are answered by the resident helper, if possible
+        if (executable instanceof SyncResultProgram &&
+            ((Program)executable).isResidentHelperRouted() &&
+            executeOnResidentHelper((SyncResultProgram)executable)) {
+            return;
+        }
+        final ConsoleMetrics.Sample sample = ConsoleMetrics.start(getMetricsId(executable));
+        this.mPendingCommands.incrementAndGet();
+        try {
+            if (async) {
+                // Scheduled by its execution thread
+                execute(executable, false, sample);
+            } else {
+                acquireShell(executable.getPriority());
+                try {
+                    execute(executable, false, sample);
+                    sample.onSucceeded();
+                } finally {
+                    this.mScheduler.release();
+                }
+            }
+        } catch (OperationTimeoutException otEx) {
+            sample.onTimeout();
+            throw otEx;
+        } catch (RuntimeException rEx) {
+            async = false;
+            throw rEx;
+        } finally {
+            if (!async) {
+                this.mPendingCommands.decrementAndGet();
+                sample.end();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Exception[] executeBatch(List<? extends Executable> executables)
+            throws ConsoleAllocException, OperationTimeoutException, ExecutionException {
+        //Only synchronous programs can share a round trip
+        final int cc = executables.size();
+        if (cc <= 1) {
+            return super.executeBatch(executables);
+        }
+        List<SyncResultProgram> programs = new ArrayList<SyncResultProgram>(cc);
+        for (int i = 0; i < cc; i++) {
+            Executable executable = executables.get(i);
+            if (!(executable instanceof SyncResultProgram)) {
+                return super.executeBatch(executables);
+            }
+            programs.add((SyncResultProgram)executable);
+        }
+
+        final ConsoleMetrics.Sample sample = ConsoleMetrics.start(BATCH_ID);
+        this.mPendingCommands.addAndGet(cc);
+        try {
+            acquireShell(ExecutionPriority.INTERACTIVE);
+            try {
+                //Batch execution (2 tries with 1 reallocation)
+                sample.onDequeued();
+                this.mActiveSample = sample;
+                Exception[] errors = new Exception[cc];
+                if (syncExecuteBatch(programs, errors, true)) {
+                    syncExecuteBatch(programs, errors, false);
+                }
+                sample.onSucceeded();
+                return errors;
+            } finally {
+                this.mActiveSample = null;
+                this.mScheduler.release();
+            }
+        } catch (OperationTimeoutException otEx) {
+            sample.onTimeout();
+            throw otEx;
+        } finally {
+            this.mPendingCommands.addAndGet(-cc);
+            sample.end();
+        }
+    }
+
+    /**
+     * Method that waits until the shell can be used by a program. The interactive programs
+     * use the shell ahead of the waiting background programs.
+     *
+     * @param priority The priority of the program
+     * @throws ExecutionException If the wait was interrupted
+     * @hide
+     */
+    void acquireShell(ExecutionPriority priority) throws ExecutionException {
+        try {
+            this.mScheduler.acquire(priority);
+        } catch (InterruptedException ex) {
+            throw new ExecutionException("Interrupted waiting for the console", ex); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that returns the identifier of the metrics of an executable.
+     *
+     * @param executable The executable
+     * @return String The identifier of the metrics
+     */
+    private static String getMetricsId(Executable executable) {
+        if (executable instanceof Program) {
+            return ((Program)executable).getId();
+        }
+        return executable.getClass().getSimpleName();
     }
 
     /**
@@ -382,6 +642,8 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
      *
      * @param executable The executable command to be executed
      * @param waitForSu Wait for su (do not used timeout)
+     * @param sample The metrics of the execution. The metrics of an asynchronous program
+     * are ended by its execution thread
      * @throws ConsoleAllocException If the console is not allocated
      * @throws InsufficientPermissionsException If an operation requires elevated permissions
      * @throws NoSuchFileOrDirectory If the file or directory was not found
@@ -390,7 +652,8 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
      * @throws ExecutionException If the operation returns a invalid exit code
      * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
      */
-    private synchronized void execute(final Executable executable, final boolean waitForSu)
+    private synchronized void execute(final Executable executable, final boolean waitForSu,
+            final ConsoleMetrics.Sample sample)
             throws ConsoleAllocException, InsufficientPermissionsException,
             CommandNotFoundException, NoSuchFileOrDirectory,
             OperationTimeoutException, ExecutionException, ReadOnlyFilesystemException {
@@ -403,18 +666,30 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         //Asynchronous or synchronous execution?
         final Program program = (Program)executable;
         if (executable instanceof AsyncResultExecutable) {
-            Thread asyncThread = new Thread(new Runnable() {
+            this.mAsyncExecutor.execute(new Runnable() {
                 @Override
                 public void run() {
-                    //Synchronous execution (but asynchronous running in a thread)
-                    //This way syncExecute is locked until this thread ends
+                    //Synchronous execution (but asynchronous running in the thread of the
+                    //asynchronous programs). This way syncExecute is locked until it ends
                     try {
                         //Synchronous execution (2 tries with 1 reallocation)
                         final ShellConsole shell = ShellConsole.this;
-                        if (shell.syncExecute(program, true, false)) {
-                            shell.syncExecute(program, false, false);
+                        shell.acquireShell(program.getPriority());
+                        try {
+                            sample.onDequeued();
+                            shell.mActiveSample = sample;
+                            if (shell.syncExecute(program, true, false)) {
+                                shell.syncExecute(program, false, false);
+                            }
+                            sample.onSucceeded();
+                        } finally {
+                            shell.mActiveSample = null;
+                            shell.mScheduler.release();
                         }
                     } catch (Exception ex) {
+                        if (ex instanceof OperationTimeoutException) {
+                            sample.onTimeout();
+                        }
                         if (((AsyncResultExecutable)executable).getAsyncResultListener() != null) {
                             ((AsyncResultExecutable)executable).
                                 getAsyncResultListener().onException(ex);
@@ -422,15 +697,24 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
                             //Capture exception
                             Log.e(TAG, "Fail asynchronous execution", ex); //$NON-NLS-1$
                         }
+                    } finally {
+                        ShellConsole.this.mPendingCommands.decrementAndGet();
+                        sample.end();
                     }
                 }
             });
-            asyncThread.start();
         } else {
             //Synchronous execution (2 tries with 1 reallocation)
             program.setExitOnStdErrOutput(waitForSu);
-            if (syncExecute(program, true, waitForSu) && !waitForSu) {
-                syncExecute(program, false, false);
+            sample.onDequeued();
+            ConsoleMetrics.Sample outer = this.mActiveSample;
+            this.mActiveSample = sample;
+            try {
+                if (syncExecute(program, true, waitForSu) && !waitForSu) {
+                    syncExecute(program, false, false);
+                }
+            } finally {
+                this.mActiveSample = outer;
             }
         }
     }
@@ -473,18 +757,14 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
             //Reset the buffers
             this.mStarted = false;
             this.mCancelled = false;
-            this.mSbIn = new StringBuffer();
-            this.mSbErr = new StringBuffer();
+            this.mSbIn = resetBuffer(this.mSbIn);
+            this.mSbErr = resetBuffer(this.mSbErr);
 
             //Random start/end identifiers
-            String startId1 =
-                    String.format("/#%d#/", Long.valueOf(this.mRandom.nextLong())); //$NON-NLS-1$
-            String startId2 =
-                    String.format("/#%d#/", Long.valueOf(this.mRandom.nextLong())); //$NON-NLS-1$
-            String endId1 =
-                    String.format("/#%d#/", Long.valueOf(this.mRandom.nextLong())); //$NON-NLS-1$
-            String endId2 =
-                    String.format("/#%d#/", Long.valueOf(this.mRandom.nextLong())); //$NON-NLS-1$
+            String startId1 = newControlId();
+            String startId2 = newControlId();
+            String endId1 = newControlId();
+            String endId2 = newControlId();
 
             //Create command string
             String cmd = program.getCommand();
@@ -516,20 +796,20 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
                                            (program instanceof AsyncResultProgram &&
                                             ((AsyncResultProgram)program).isExpectEnd()));
 
-                this.mStartControlPattern = startId1 + "\\d{1,3}" + startId2; //$NON-NLS-1$
-                this.mEndControlPattern = endId1 + "\\d{1,3}" + endId2; //$NON-NLS-1$
+                // The state of the command must be set before its scanners, which
+                // publish the command to the reader threads
+                this.mPartialResultProgram =
+                        program instanceof SyncResultProgram &&
+                        ((SyncResultProgram)program).isParsePartialResult() ?
+                                (SyncResultProgram)program : null;
+                this.mStartControlScanner = new ControlMarkerScanner(startId1, startId2);
+                this.mEndControlScanner =
+                        hasEndControl ? new ControlMarkerScanner(endId1, endId2) : null;
+                CommandRegistry registry = CommandRegistry.getInstance();
                 String startCmd =
-                        Command.getStartCodeCommandInfo(
-                                FileManagerApplication.getInstance().getResources());
-                startCmd = String.format(
-                        startCmd, "'" + startId1 +//$NON-NLS-1$
-                        "'", "'" + startId2 + "'"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                        getControlCommand(registry.getStartCode(), startId1, startId2);
                 String endCmd =
-                        Command.getExitCodeCommandInfo(
-                                FileManagerApplication.getInstance().getResources());
-                endCmd = String.format(
-                        endCmd, "'" + endId1 + //$NON-NLS-1$
-                        "'", "'" + endId2 + "'"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                        getControlCommand(registry.getExitCode(), endId1, endId2);
                 StringBuilder sb = new StringBuilder()
                     .append(startCmd)
                     .append(" ")  //$NON-NLS-1$
@@ -540,45 +820,30 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
                    sb = sb.append(" ") //$NON-NLS-1$
                           .append(endCmd);
                }
-               sb.append(FileHelper.NEWLINE);
-               synchronized (this.mSync) {
-                   this.mFinished = false;
-                   this.mNewData = false;
-                   this.mOut.write(sb.toString().getBytes());
+               //Programs that ends on stderr output can't receive the stderr marker
+               String errCmd = hasEndControl && !program.isExitOnStdErrOutput() ?
+                       prepareErrControl(registry) : prepareErrControl(null);
+               if (errCmd != null) {
+                   sb = sb.append(" ") //$NON-NLS-1$
+                          .append(errCmd);
                }
+               sb.append(FileHelper.NEWLINE);
+               send(sb.toString());
+               TraceRing.getInstance().record(program.getId(), TraceRing.Phase.START, 0);
             } catch (InvalidCommandDefinitionException icdEx) {
                 throw new CommandNotFoundException(
                         "ExitCodeCommandInfo not found", icdEx); //$NON-NLS-1$
             }
 
             //Now, wait for buffers to be filled
-            synchronized (this.mSync) {
-                if (!this.mFinished) {
-                    if (waitForSu || program.isIndefinitelyWait()) {
-                        this.mSync.wait();
-                    } else {
-                        final long start = System.currentTimeMillis();
-                        while (true) {
-                            this.mSync.wait(DEFAULT_TIMEOUT);
-                            if (!this.mFinished) {
-                                final long end = System.currentTimeMillis();
-                                if (!program.isWaitOnNewDataReceipt() ||
-                                    !this.mNewData ||
-                                    (end - start >= MAX_OPERATION_TIMEOUT)) {
-                                    throw new OperationTimeoutException(end - start, cmd);
-                                }
-
-                                // Still waiting for program ending
-                                this.mNewData = false;
-                                continue;
-                            }
-                            break;
-                        }
-                    }
-                }
-            }
+            waitForEnd(cmd, waitForSu || program.isIndefinitelyWait(),
+                    program.isWaitOnNewDataReceipt());
+            waitForStdErr(cmd);
 
             //End partial results?
+            if (this.mPartialResultProgram != null) {
+                this.mPartialResultProgram.onRequestEndParsePartialResult();
+            }
             if (program instanceof AsyncResultProgram) {
                 synchronized (this.mPartialSync) {
                     ((AsyncResultProgram)program).onRequestEndParsePartialResult(this.mCancelled);
@@ -586,7 +851,8 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
             }
 
             //Retrieve exit code
-            int exitCode = getExitCode(this.mSbIn);
+            int exitCode = getExitCode();
+            TraceRing.getInstance().record(program.getId(), TraceRing.Phase.END, exitCode);
             if (program instanceof AsyncResultProgram) {
                 synchronized (this.mPartialSync) {
                     ((AsyncResultProgram)program).onRequestExitCode(exitCode);
@@ -603,12 +869,6 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
 
             //Check if invocation was successfully or not
             if (!program.isIgnoreShellStdErrCheck()) {
-                //Wait for stderr buffer to be filled
-                if (exitCode != 0) {
-                    try {
-                        Thread.sleep(100L);
-                    } catch (Throwable ex) {/**NON BLOCK**/}
-                }
                 this.mShell.checkStdErr(this.mActiveCommand, exitCode, this.mSbErr.toString());
             }
             this.mShell.checkExitCode(exitCode);
@@ -617,9 +877,14 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
 
             //Parse the result? Only if not partial results
             if (program instanceof SyncResultProgram) {
+                long parseStart = System.nanoTime();
                 try {
                     ((SyncResultProgram)program).parse(
                             this.mSbIn.toString(), this.mSbErr.toString());
+                    final ConsoleMetrics.Sample sample = this.mActiveSample;
+                    if (sample != null) {
+                        sample.onParsed(parseStart);
+                    }
                 } catch (ParseException pEx) {
                     throw new ExecutionException(
                             "SyncResultProgram parse failed", pEx); //$NON-NLS-1$
@@ -630,12 +895,14 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
             //the operation, if any exists
 
         } catch (OperationTimeoutException otEx) {
+            TraceRing.getInstance().record(program.getId(), TraceRing.Phase.TIMEOUT, 0);
             try {
                 killCurrentCommand();
             } catch (Exception e) { /**NON BLOCK **/}
             throw otEx;
 
         } catch (IOException ioEx) {
+            TraceRing.getInstance().record(program.getId(), TraceRing.Phase.ERROR, 0);
             if (reallocate) {
                 realloc();
                 return true;
@@ -643,6 +910,7 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
             throw new ExecutionException("Console allocation error.", ioEx); //$NON-NLS-1$
 
         } catch (InterruptedException ioEx) {
+            TraceRing.getInstance().record(program.getId(), TraceRing.Phase.ERROR, 0);
             if (reallocate) {
                 realloc();
                 return true;
@@ -652,6 +920,7 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         } finally {
             //Dereference the active command
             this.mActiveCommand = null;
+            this.mPartialResultProgram = null;
         }
 
         //Operation complete
@@ -659,192 +928,513 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
     }
 
     /**
-     * Method that creates the standard input thread for read program response.
+     * Method for execute a batch of synchronous programs in a single round trip.<br/>
+     * <br/>
+     * All the programs are sent in one command line. Every program is followed by a
+     * separator with its exit code in the standard output and by other separator in the
+     * standard error, so the output of every program can be split after the batch ends.
      *
-     * @param in The standard input buffer
-     * @return Thread The standard input thread
+     * @param programs The programs to execute
+     * @param errors The array where the exception raised by every program is returned
+     * @param reallocate If the console must be reallocated on i/o error
+     * @return boolean If the console was reallocated
+     * @throws ConsoleAllocException If the console is not allocated
+     * @throws OperationTimeoutException If the batch exceeded the maximum time of wait
+     * @throws ExecutionException If the batch couldn't be sent to the console
+     * @hide
      */
-    private Thread createStdInThread(final InputStream in) {
-        Thread t = new Thread(new Runnable() {
-            @SuppressWarnings("synthetic-access")
-            @Override
-            public void run() {
-                final ShellConsole shell = ShellConsole.this;
-                int read = 0;
-                StringBuffer sb = null;
+    synchronized boolean syncExecuteBatch(
+            final List<SyncResultProgram> programs, Exception[] errors, boolean reallocate)
+            throws ConsoleAllocException, OperationTimeoutException, ExecutionException {
+
+        final int cc = programs.size();
+        try {
+            //Check the console status before send command
+            checkConsole();
+
+            synchronized (this.mSync) {
+                if (!this.mActive) {
+                    throw new ConsoleAllocException("No console allocated"); //$NON-NLS-1$
+                }
+            }
+
+            //The first program is the active command while the batch is running
+            this.mActiveCommand = programs.get(0);
+
+            //Reset the buffers
+            this.mStarted = false;
+            this.mCancelled = false;
+            this.mSbIn = resetBuffer(this.mSbIn);
+            this.mSbErr = resetBuffer(this.mSbErr);
+
+            //Random start/end identifiers and separators of every program
+            String startId1 = newControlId();
+            String startId2 = newControlId();
+            String endId1 = newControlId();
+            String endId2 = newControlId();
+            String outId1 = newControlId();
+            String outId2 = newControlId();
+            String errId1 = newControlId();
+            String errId2 = newControlId();
+
+            //Create the command string
+            String cmd = null;
+            try {
+                CommandRegistry registry = CommandRegistry.getInstance();
+                CommandTemplate exitCode = registry.getExitCode();
+                String outSeparator = getControlCommand(exitCode, outId1, outId2);
+                String errSeparator = getControlCommand(exitCode, errId1, errId2);
+                StringBuilder sb = new StringBuilder()
+                    .append(getControlCommand(registry.getStartCode(), startId1, startId2));
+                for (int i = 0; i < cc; i++) {
+                    SyncResultProgram program = programs.get(i);
+                    program.setProgramListener(this);
+                    if (i > 0) {
+                        sb.append(" ;"); //$NON-NLS-1$
+                    }
+                    sb.append(" ") //$NON-NLS-1$
+                      .append(program.getCommand())
+                      .append(" ") //$NON-NLS-1$
+                      .append(program.getArguments())
+                      .append(" ") //$NON-NLS-1$
+                      .append(outSeparator)
+                      .append(" ") //$NON-NLS-1$
+                      .append(errSeparator)
+                      .append(" 1>&2"); //$NON-NLS-1$
+                }
+                sb.append(" ") //$NON-NLS-1$
+                  .append(getControlCommand(exitCode, endId1, endId2));
+                String errCmd = prepareErrControl(registry);
+                if (errCmd != null) {
+                    sb.append(" ") //$NON-NLS-1$
+                      .append(errCmd);
+                }
+                sb.append(FileHelper.NEWLINE);
+                cmd = sb.toString();
+            } catch (InvalidCommandDefinitionException icdEx) {
+                throw new ExecutionException(
+                        "ExitCodeCommandInfo not found", icdEx); //$NON-NLS-1$
+            }
+
+            //Audit command
+            if (isTrace()) {
+                Log.v(TAG,
+                        String.format("%s-batch, programs: %d, command: %s",  //$NON-NLS-1$
+                                this.mShell.getId(),
+                                Integer.valueOf(cc),
+                                cmd));
+            }
+
+            //Send the batch and wait for buffers to be filled. The batch can be long,
+            //so wait while new data is received
+            //The output of the batch is split at the end, so partial results are not parsed
+            this.mPartialResultProgram = null;
+            this.mStartControlScanner = new ControlMarkerScanner(startId1, startId2);
+            this.mEndControlScanner = new ControlMarkerScanner(endId1, endId2);
+            send(cmd);
+            TraceRing.getInstance().record(BATCH_ID, TraceRing.Phase.START, cc);
+            waitForEnd(cmd, false, true);
+            waitForStdErr(cmd);
+
+            //Split the standard output of every program
+            int[] exitCodes = new int[cc];
+            String[] outs = split(this.mSbIn.toString(), outId1, outId2, cc, exitCodes);
+
+            //The standard error was read until the end marker of the batch
+            String[] errs = split(this.mSbErr.toString(), errId1, errId2, cc, null);
+
+            //Check and parse the result of every program
+            for (int i = 0; i < cc; i++) {
+                SyncResultProgram program = programs.get(i);
+                errors[i] = null;
+                if (outs[i] == null) {
+                    errors[i] = new ExecutionException(
+                            "The batched program has not exit code"); //$NON-NLS-1$
+                    continue;
+                }
+                int exitCode = exitCodes[i];
+                String err = errs[i] != null ? errs[i] : ""; //$NON-NLS-1$
+                TraceRing.getInstance().record(program.getId(), TraceRing.Phase.END, exitCode);
+                if (isTrace()) {
+                    Log.v(TAG,
+                            String.format("%s-%s, command: %s, exitCode: %s",  //$NON-NLS-1$
+                                    this.mShell.getId(),
+                                    program.getId(),
+                                    program.getCommand(),
+                                    String.valueOf(exitCode)));
+                }
                 try {
-                    while (shell.mActive) {
-                        //Read only one byte with active wait
-                        final int r = in.read();
-                        if (r == -1) {
-                            break;
-                        }
+                    if (!program.isIgnoreShellStdErrCheck()) {
+                        this.mShell.checkStdErr(program, exitCode, err);
+                    }
+                    this.mShell.checkExitCode(exitCode);
+                    program.checkExitCode(exitCode);
+                    program.checkStdErr(exitCode, err);
+                    try {
+                        program.parse(outs[i], err);
+                    } catch (ParseException pEx) {
+                        throw new ExecutionException(
+                                "SyncResultProgram parse failed", pEx); //$NON-NLS-1$
+                    }
+                } catch (Exception ex) {
+                    errors[i] = ex;
+                }
+            }
 
-                        // Type of command
-                        boolean async =
-                                shell.mActiveCommand != null &&
-                                shell.mActiveCommand instanceof AsyncResultProgram;
-                        if (!async || sb == null) {
-                            sb = new StringBuffer();
-                        }
+        } catch (OperationTimeoutException otEx) {
+            TraceRing.getInstance().record(BATCH_ID, TraceRing.Phase.TIMEOUT, 0);
+            try {
+                killCurrentCommand();
+            } catch (Exception e) { /**NON BLOCK **/}
+            throw otEx;
 
-                        if (!shell.mCancelled) {
-                            shell.mSbIn.append((char)r);
-                            if (!shell.mStarted) {
-                                shell.mStarted = isCommandStarted(shell.mSbIn);
-                                if (shell.mStarted) {
-                                    sb = new StringBuffer(shell.mSbIn.toString());
-                                    if (async) {
-                                        synchronized (shell.mPartialSync) {
-                                            ((AsyncResultProgram)
-                                                    shell.mActiveCommand).
-                                                        onRequestStartParsePartialResult();
-                                        }
-                                    }
-                                } else {
-                                    sb.append(shell.mSbIn.toString());
-                                }
-                            } else {
-                                sb.append((char)r);
-                            }
+        } catch (IOException ioEx) {
+            if (reallocate) {
+                realloc();
+                return true;
+            }
+            throw new ExecutionException("Console allocation error.", ioEx); //$NON-NLS-1$
 
-                            // New data received
-                            onNewData();
+        } catch (InterruptedException ioEx) {
+            if (reallocate) {
+                realloc();
+                return true;
+            }
+            throw new ExecutionException("Console allocation error.", ioEx); //$NON-NLS-1$
 
-                            //Check if the command has finished (and extract the control)
-                            boolean finished = isCommandFinished(shell.mSbIn, sb);
+        } finally {
+            //Dereference the active command
+            this.mActiveCommand = null;
+        }
 
-                            //Notify asynchronous partial data
-                            if (shell.mStarted && async) {
-                                AsyncResultProgram program =
-                                        ((AsyncResultProgram)shell.mActiveCommand);
-                                String partial = sb.toString();
-                                int cc = shell.mEndControlPattern.length();
-                                if (partial.length() >= cc) {
-                                    program.onRequestParsePartialResult(partial);
-                                    shell.toStdIn(partial);
+        //Operation complete
+        return false;
+    }
 
-                                    // Reset the temp buffer
-                                    sb = new StringBuffer();
-                                }
-                            }
+    /**
+     * Method that splits the output of a batch by the separators of its programs.
+     *
+     * @param data The output of the batch
+     * @param id1 The identifier that precedes the exit code of the separator
+     * @param id2 The identifier that follows the exit code of the separator
+     * @param count The number of programs of the batch
+     * @param exitCodes The array where the exit code of every program is returned
+     * (can be <code>null</code>)
+     * @return String[] The output of every program, or <code>null</code> if the separator
+     * of the program wasn't found
+     */
+    private static String[] split(
+            String data, String id1, String id2, int count, int[] exitCodes) {
+        String[] segments = new String[count];
+        ControlMarkerScanner scanner = new ControlMarkerScanner(id1, id2);
+        final int len = data.length();
+        int from = 0;
+        for (int i = 0; i < count; i++) {
+            int end = scanner.scan(data, from, len);
+            if (end == -1) {
+                break;
+            }
+            segments[i] = data.substring(from, end - scanner.getMarkerLength());
+            if (exitCodes != null) {
+                exitCodes[i] = scanner.getExitCode();
+            }
+            scanner.reset();
+            from = end;
+        }
+        return segments;
+    }
 
-                            if (finished) {
-                                if (!async) {
-                                    shell.toStdIn(String.valueOf((char)r));
-                                } else {
-                                    AsyncResultProgram program =
-                                            ((AsyncResultProgram)shell.mActiveCommand);
-                                    String partial = sb.toString();
-                                    if (program != null) {
-                                        program.onRequestParsePartialResult(partial);
-                                    }
-                                    shell.toStdIn(partial);
-                                }
+    /**
+     * Method that executes a synchronous program in the resident helper of the console.
+     * The helper is started on demand. If the helper isn't available or it fails, then
+     * the program must be executed by the console. A program that exceeded its time of
+     * wait in the helper is not executed again by the console.
+     *
+     * @param program The program to execute
+     * @return boolean If the program was executed by the resident helper
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws OperationTimeoutException If the program exceeded its time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @throws ReadOnlyFilesystemException If the operation writes in a read-only filesystem
+     */
+    private boolean executeOnResidentHelper(SyncResultProgram program)
+            throws InsufficientPermissionsException, CommandNotFoundException,
+            NoSuchFileOrDirectory, OperationTimeoutException, ExecutionException,
+            ReadOnlyFilesystemException {
+        // The helper waits a request with a time of wait
+        if (program.isIndefinitelyWait()) {
+            return false;
+        }
+        ResidentHelper helper = getResidentHelper();
+        if (helper == null) {
+            return false;
+        }
 
-                                //Notify the end
-                                notifyProcessFinished();
-                                break;
-                            }
-                            if (!async && !finished) {
-                                shell.toStdIn(String.valueOf((char)r));
-                            }
-                        }
+        // The program is recorded apart from the same program executed by the console
+        final ConsoleMetrics.Sample sample =
+                ConsoleMetrics.start(METRICS_ID_HELPER_PREFIX + program.getId());
+        sample.onDequeued();
+        String check = program.getResidentHelperCheckArgument();
+        StringBuilder out = new StringBuilder();
+        StringBuilder errBuffer = new StringBuilder();
+        int exitCode;
+        try {
+            String cmdLine = program.getResidentHelperCommandLine();
+            if (isTrace()) {
+                Log.v(TAG,
+                        String.format("%s-%s, helper command: %s",  //$NON-NLS-1$
+                                this.mShell.getId(),
+                                program.getId(),
+                                cmdLine));
+            }
+            exitCode = helper.execute(
+                    check, cmdLine, program.isWaitOnNewDataReceipt(), out, errBuffer);
+        } catch (OperationTimeoutException otEx) {
+            // The request was sent, so it isn't executed again by the console
+            sample.onTimeout();
+            sample.end();
+            throw otEx;
+        } catch (Exception ex) {
+            // The program is executed by the console. Start a new helper the next time
+            Log.w(TAG, "Resident helper execution failed", ex); //$NON-NLS-1$
+            helper.stop();
+            return false;
+        }
+        if (exitCode == ResidentHelper.EXIT_CODE_BUSY) {
+            // The helper is still executing a previous request
+            return false;
+        }
+        sample.onOutput(out.length());
+        try {
+            if (exitCode == ResidentHelper.EXIT_CODE_NOT_FOUND) {
+                throw new NoSuchFileOrDirectory(check);
+            }
 
-                        //Has more data? Read with available as more as exists
-                        //or maximum loop count is rebased
-                        int count = 0;
-                        while (in.available() > 0 && count < 10) {
-                            count++;
-                            int available =
-                                    Math.min(in.available(), shell.mBufferSize);
-                            byte[] data = new byte[available];
-                            read = in.read(data);
-
-                            // Type of command
-                            async =
-                                    shell.mActiveCommand != null &&
-                                    shell.mActiveCommand instanceof AsyncResultProgram;
-
-                            // Exit if active command is cancelled
-                            if (shell.mCancelled) continue;
-
-                            final String s = new String(data, 0, read);
-                            shell.mSbIn.append(s);
-                            if (!shell.mStarted) {
-                                shell.mStarted = isCommandStarted(shell.mSbIn);
-                                if (shell.mStarted) {
-                                    sb = new StringBuffer(shell.mSbIn.toString());
-                                    if (async) {
-                                        synchronized (shell.mPartialSync) {
-                                            AsyncResultProgram p =
-                                                    ((AsyncResultProgram)shell.mActiveCommand);
-                                            if (p != null) {
-                                                p.onRequestStartParsePartialResult();
-                                            }
-                                        }
-                                    }
-                                } else {
-                                    sb.append(shell.mSbIn.toString());
-                                }
-                            } else {
-                                sb.append(s);
-                            }
+            //Check if invocation was successfully or not
+            String err = errBuffer.toString();
+            if (!program.isIgnoreShellStdErrCheck()) {
+                this.mShell.checkStdErr(program, exitCode, err);
+            }
+            this.mShell.checkExitCode(exitCode);
+            program.checkExitCode(exitCode);
+            program.checkStdErr(exitCode, err);
 
-                            // New data received
-                            onNewData();
+            //Parse the result (the same way that a console execution does)
+            long parseStart = System.nanoTime();
+            try {
+                String in = out.toString();
+                if (program.isParsePartialResult()) {
+                    program.onRequestStartParsePartialResult();
+                    program.onRequestParsePartialResult(in, 0, in.length());
+                    program.onRequestEndParsePartialResult();
+                    in = ""; //$NON-NLS-1$
+                }
+                program.parse(in, err);
+            } catch (ParseException pEx) {
+                throw new ExecutionException(
+                        "SyncResultProgram parse failed", pEx); //$NON-NLS-1$
+            }
+            sample.onParsed(parseStart);
+            sample.onSucceeded();
+        } finally {
+            sample.end();
+        }
+        return true;
+    }
 
-                            //Check if the command has finished (and extract the control)
-                            boolean finished = isCommandFinished(shell.mSbIn, sb);
+    /**
+     * Method that returns the resident helper of the console, starting it if needed.
+     *
+     * @return ResidentHelper The resident helper, or <code>null</code> if the helper
+     * isn't available
+     */
+    private ResidentHelper getResidentHelper() {
+        synchronized (this.mResidentHelperSync) {
+            if (!this.mResidentHelperEnabled || this.mResidentHelperFailed || !isActive()) {
+                return null;
+            }
+            if (this.mResidentHelper != null && this.mResidentHelper.isActive()) {
+                return this.mResidentHelper;
+            }
 
-                            //Notify asynchronous partial data
-                            if (async) {
-                                AsyncResultProgram program = ((AsyncResultProgram)shell.mActiveCommand);
-                                String partial = sb.toString();
-                                int cc = shell.mEndControlPattern.length();
-                                if (partial.length() >= cc) {
-                                    if (program != null) {
-                                        program.onRequestParsePartialResult(partial);
-                                    }
-                                    shell.toStdIn(partial);
+            // Run the helper with the same shell of the console
+            List<String> cmd = new ArrayList<String>();
+            cmd.add(this.mShell.getCommand());
+            if (this.mShell.getArguments() != null && this.mShell.getArguments().length() > 0) {
+                cmd.add(this.mShell.getArguments());
+            }
+            try {
+                ResidentHelper helper = new ResidentHelper(
+                        cmd.toArray(new String[cmd.size()]), DEFAULT_TIMEOUT,
+                        MAX_OPERATION_TIMEOUT);
+                helper.start();
+                this.mResidentHelper = helper;
+                if (isTrace()) {
+                    Log.v(TAG, "Resident helper started"); //$NON-NLS-1$
+                }
+                return helper;
+            } catch (Exception ex) {
+                // Don't try it again
+                Log.w(TAG, "Resident helper not available", ex); //$NON-NLS-1$
+                this.mResidentHelperFailed = true;
+                this.mResidentHelper = null;
+            }
+            return null;
+        }
+    }
 
-                                    // Reset the temp buffer
-                                    sb = new StringBuffer();
-                                }
-                            }
+    /**
+     * Method that stops the resident helper of the console, if any.
+     */
+    private void stopResidentHelper() {
+        synchronized (this.mResidentHelperSync) {
+            if (this.mResidentHelper != null) {
+                this.mResidentHelper.stop();
+                this.mResidentHelper = null;
+            }
+        }
+    }
 
-                            if (finished) {
-                                if (!async) {
-                                    shell.toStdIn(s);
-                                } else {
-                                    AsyncResultProgram program =
-                                            ((AsyncResultProgram)shell.mActiveCommand);
-                                    String partial = sb.toString();
-                                    if (program != null) {
-                                        program.onRequestParsePartialResult(partial);
-                                    }
-                                    shell.toStdIn(partial);
-                                }
+    /**
+     * Method that returns a new random control identifier.
+     *
+     * @return String The control identifier
+     */
+    private String newControlId() {
+        return String.format("/#%d#/", Long.valueOf(this.mRandom.nextLong())); //$NON-NLS-1$
+    }
 
-                                //Notify the end
-                                notifyProcessFinished();
-                                break;
-                            }
-                            if (!async && !finished) {
-                                shell.toStdIn(s);
-                            }
+    /**
+     * Method that formats a control command (start or exit code) with its identifiers.
+     *
+     * @param template The control command template
+     * @param id1 The identifier that precedes the code
+     * @param id2 The identifier that follows the code
+     * @return String The control command
+     */
+    private static String getControlCommand(CommandTemplate template, String id1, String id2) {
+        return template.format(
+                "'" + id1 + "'", //$NON-NLS-1$ //$NON-NLS-2$
+                "'" + id2 + "'"); //$NON-NLS-1$ //$NON-NLS-2$
+    }
 
-                            //Wait for buffer to be filled
-                            try {
-                                Thread.sleep(1L);
-                            } catch (Throwable ex) {/**NON BLOCK**/}
-                        }
+    /**
+     * Method that sends a command line to the shell.
+     *
+     * @param cmd The command line
+     * @throws IOException If the command line couldn't be sent
+     */
+    private void send(String cmd) throws IOException {
+        synchronized (this.mSync) {
+            this.mCompletion = new CommandCompletion();
+            if (!this.mActive) {
+                //The shell has already exited. Don't wait for the command
+                this.mCompletion.complete();
+                this.mErrCompletion.complete();
+            }
+            this.mOut.write(cmd.getBytes(StreamDecoder.CHARSET));
+        }
+    }
 
-                        //Asynchronous programs can cause a lot of output, control buffers
-                        //for a low memory footprint
-                        if (async) {
-                            trimBuffer(shell.mSbIn);
-                            trimBuffer(shell.mSbErr);
+    /**
+     * Method that prepares the marker of the end of the standard error of the next
+     * command.
+     *
+     * @param registry The command registry, or <code>null</code> if the next command
+     * doesn't write the marker
+     * @return String The command that writes the marker, or <code>null</code> if
+     * the marker is not defined
+     */
+    private String prepareErrControl(CommandRegistry registry) {
+        CommandTemplate errorCode = registry != null ? registry.getErrorCode() : null;
+        if (errorCode == null) {
+            this.mErrControlScanner = null;
+            this.mErrCompletion = CommandCompletion.completed();
+            return null;
+        }
+        String errId1 = newControlId();
+        String errId2 = newControlId();
+        this.mErrControlScanner = new ControlMarkerScanner(errId1, errId2);
+        this.mErrCompletion = new CommandCompletion();
+        return getControlCommand(errorCode, errId1, errId2);
+    }
+
+    /**
+     * Method that waits until the active command finishes.
+     *
+     * @param cmd The command (for information purpose)
+     * @param indefinitelyWait If the command must be waited without timeout
+     * @param waitOnNewData If the timeout is extended while new data is received
+     * @throws InterruptedException If the wait was interrupted
+     * @throws OperationTimeoutException If the command exceeded the maximum time of wait
+     */
+    private void waitForEnd(String cmd, boolean indefinitelyWait, boolean waitOnNewData)
+            throws InterruptedException, OperationTimeoutException {
+        final CommandCompletion completion = this.mCompletion;
+        if (indefinitelyWait) {
+            completion.await();
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        if (!completion.await(DEFAULT_TIMEOUT, waitOnNewData, MAX_OPERATION_TIMEOUT)) {
+            throw new OperationTimeoutException(System.currentTimeMillis() - start, cmd);
+        }
+    }
+
+    /**
+     * Method that waits until the standard error of the active command was read (the
+     * marker of the end of the standard error was received). The marker is written
+     * after the exit code, so it's usually already received.
+     *
+     * @param cmd The command (for information purpose)
+     * @throws InterruptedException If the wait was interrupted
+     */
+    private void waitForStdErr(String cmd) throws InterruptedException {
+        if (this.mCancelled || !this.mActive) {
+            return;
+        }
+        if (!this.mErrCompletion.await(DEFAULT_TIMEOUT, true, 0L)) {
+            Log.w(TAG, String.format(
+                    "The stderr marker wasn't received: %s", cmd)); //$NON-NLS-1$
+        }
+    }
+
+    /**
+     * Method that creates the standard input thread for read program response.<br/>
+     * <br/>
+     * The thread reads the output of the shell in bulk over a reusable direct buffer,
+     * and decodes it with a streaming decoder, so multibyte characters split across
+     * reads are decoded properly. The control markers are looked up only over the new
+     * decoded data.
+     *
+     * @param in The standard input buffer
+     * @return Thread The standard input thread
+     * @see StreamDecoder
+     */
+    private Thread createStdInThread(final InputStream in) {
+        Thread t = new Thread(new Runnable() {
+            @SuppressWarnings("synthetic-access")
+            @Override
+            public void run() {
+                final ShellConsole shell = ShellConsole.this;
+                final ReadableByteChannel channel = Channels.newChannel(in);
+                final StreamDecoder decoder = new StreamDecoder(shell.mBufferSize, true);
+                final StreamDecoder.OnDecodedListener listener =
+                        new StreamDecoder.OnDecodedListener() {
+                    @Override
+                    public void onDecoded(CharBuffer chars) {
+                        shell.onStdInData(chars);
+                    }
+                };
+                try {
+                    while (shell.mActive) {
+                        //Read as more data as is available (blocks until some data exists)
+                        if (!decoder.read(channel, listener)) {
+                            //The shell exited. Release the active command
+                            notifyProcessExit(null);
+                            break;
                         }
 
                         //Check if process has exited
@@ -860,6 +1450,119 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         return t;
     }
 
+    /**
+     * Method that process a chunk of decoded data from the standard input of the shell.
+     * This method detects the start and end control markers of the active command,
+     * and delivers the partial results to asynchronous programs. The control markers
+     * are removed from the standard input buffer.
+     *
+     * @param chars The decoded data
+     * @hide
+     */
+    void onStdInData(CharBuffer chars) {
+        final StringBuffer sbIn = this.mSbIn;
+        final ControlMarkerScanner startScanner = this.mStartControlScanner;
+        if (this.mCancelled || sbIn == null || startScanner == null || chars.length() == 0) {
+            return;
+        }
+        final Program program = this.mActiveCommand;
+        final boolean async = program instanceof AsyncResultProgram;
+        final SyncResultProgram partialProgram = this.mPartialResultProgram;
+        if (isTrace()) {
+            toStdIn(chars.toString());
+        }
+
+        // New data received
+        onNewData();
+
+        //Check if the command has started. The data before the start control is discarded
+        int from = 0;
+        if (!this.mStarted) {
+            from = startScanner.scan(chars, 0, chars.length());
+            if (from == -1) {
+                return;
+            }
+            this.mStarted = true;
+            if (async) {
+                synchronized (this.mPartialSync) {
+                    ((AsyncResultProgram)program).onRequestStartParsePartialResult();
+                }
+            } else if (partialProgram != null) {
+                partialProgram.onRequestStartParsePartialResult();
+            }
+        }
+
+        //Check if the command has finished. The scanner only sees the new data
+        final ControlMarkerScanner endScanner = this.mEndControlScanner;
+        boolean finished = false;
+        int to = chars.length();
+        if (endScanner != null) {
+            int end = endScanner.scan(chars, from, to);
+            if (end != -1) {
+                finished = true;
+                to = end;
+            }
+        }
+        sbIn.append(chars, from, to);
+        final ConsoleMetrics.Sample sample = this.mActiveSample;
+        if (to > from) {
+            if (sample != null) {
+                sample.onOutput(to - from);
+            }
+            if (program != null) {
+                TraceRing.getInstance().record(
+                        program.getId(), TraceRing.Phase.OUTPUT, to - from);
+            }
+        }
+        if (finished) {
+            // Remove the end control (could be split between chunks)
+            sbIn.setLength(sbIn.length() - endScanner.getMarkerLength());
+        }
+
+        //Notify partial data. The tail of the buffer is retained while
+        //it could be part of the end control
+        if (async || partialProgram != null) {
+            int pending = endScanner != null ? endScanner.getPendingLength() : 0;
+            int deliverable = sbIn.length() - pending;
+            if (deliverable > 0) {
+                long parseStart = System.nanoTime();
+                if (async) {
+                    ((AsyncResultProgram)program).onRequestParsePartialResult(
+                            sbIn, 0, deliverable);
+                } else {
+                    partialProgram.onRequestParsePartialResult(sbIn, 0, deliverable);
+                }
+                if (sample != null) {
+                    sample.onParsed(parseStart);
+                }
+
+                //These programs can cause a lot of output, release the buffer
+                //for a low memory footprint
+                sbIn.delete(0, deliverable);
+            }
+        }
+
+        if (finished) {
+            //Notify the end
+            notifyProcessFinished();
+        }
+    }
+
+    /**
+     * Method that returns an empty buffer, reusing the passed buffer if it
+     * isn't too big.
+     *
+     * @param sb The buffer to reuse
+     * @return StringBuffer An empty buffer
+     */
+    private static StringBuffer resetBuffer(StringBuffer sb) {
+        if (sb == null || sb.capacity() > MAX_RETAINED_BUFFER) {
+            return new StringBuffer();
+        }
+        sb.setLength(0);
+        return sb;
+    }
+
     /**
      * Method that echoes the stdin
      *
@@ -876,7 +1579,10 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
     }
 
     /**
-     * Method that creates the standard error thread for read program response.
+     * Method that creates the standard error thread for read program response.<br/>
+     * <br/>
+     * The thread reads the standard error in bulk, the same way that the standard
+     * input thread does, so it blocks until new data exists instead of polling.
      *
      * @param err The standard error buffer
      * @return Thread The standard error thread
@@ -886,101 +1592,21 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
             @Override
             public void run() {
                 final ShellConsole shell = ShellConsole.this;
-                int read = 0;
+                final ReadableByteChannel channel = Channels.newChannel(err);
+                final StreamDecoder decoder = new StreamDecoder(shell.mBufferSize, false);
+                final StreamDecoder.OnDecodedListener listener =
+                        new StreamDecoder.OnDecodedListener() {
+                    @Override
+                    public void onDecoded(CharBuffer chars) {
+                        shell.onStdErrData(chars);
+                    }
+                };
                 try {
                     while (shell.mActive) {
-                        //Read only one byte with active wait
-                        int r = err.read();
-                        if (r == -1) {
+                        //Read as more data as is available (blocks until some data exists)
+                        if (!decoder.read(channel, listener)) {
                             break;
                         }
-
-                        // Has the process received something that we dont expect?
-                        if (shell.mActiveCommand != null &&
-                            shell.mActiveCommand.isExitOnStdErrOutput()) {
-                            notifyProcessFinished();
-                            continue;
-                        }
-
-                        // Type of command
-                        boolean async =
-                                shell.mActiveCommand != null &&
-                                shell.mActiveCommand instanceof AsyncResultProgram;
-
-                        StringBuffer sb = new StringBuffer();
-                        if (!shell.mCancelled) {
-                            shell.mSbErr.append((char)r);
-                            sb.append((char)r);
-
-                            //Notify asynchronous partial data
-                            if (shell.mStarted && async) {
-                                AsyncResultProgram program =
-                                        ((AsyncResultProgram)shell.mActiveCommand);
-                                if (program != null) {
-                                    program.parsePartialErrResult(new String(new char[]{(char)r}));
-                                }
-                            }
-
-                            toStdErr(sb.toString());
-                        }
-
-                        // New data received
-                        onNewData();
-
-                        //Has more data? Read with available as more as exists
-                        //or maximum loop count is rebased
-                        int count = 0;
-                        while (err.available() > 0 && count < 10) {
-                            count++;
-                            int available = Math.min(err.available(), shell.mBufferSize);
-                            byte[] data = new byte[available];
-                            read = err.read(data);
-
-                            // Type of command
-                            async =
-                                    shell.mActiveCommand != null &&
-                                    shell.mActiveCommand instanceof AsyncResultProgram;
-
-                            // Add to stderr
-                            String s = new String(data, 0, read);
-                            shell.mSbErr.append(s);
-                            sb.append(s);
-
-                            //Notify asynchronous partial data
-                            if (async) {
-                                AsyncResultProgram program =
-                                        ((AsyncResultProgram)shell.mActiveCommand);
-                                if (program != null) {
-                                    program.parsePartialErrResult(s);
-                                }
-                            }
-                            toStdErr(s);
-
-                            // Has the process received something that we dont expect?
-                            if (shell.mActiveCommand != null &&
-                                shell.mActiveCommand.isExitOnStdErrOutput()) {
-                                notifyProcessFinished();
-                                break;
-                            }
-
-                            // New data received
-                            onNewData();
-
-                            //Wait for buffer to be filled
-                            try {
-                                Thread.sleep(1L);
-                            } catch (Throwable ex) {
-                                /**NON BLOCK**/
-                            }
-                        }
-
-                        //Asynchronous programs can cause a lot of output, control buffers
-                        //for a low memory footprint
-                        if (shell.mActiveCommand != null &&
-                                shell.mActiveCommand instanceof AsyncResultProgram) {
-                            trimBuffer(shell.mSbIn);
-                            trimBuffer(shell.mSbErr);
-                        }
                     }
                 } catch (Exception ioEx) {
                     notifyProcessExit(ioEx);
@@ -992,6 +1618,81 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         return t;
     }
 
+    /**
+     * Method that process a chunk of decoded data from the standard error of the shell.
+     * This method detects the marker of the end of the standard error of the active
+     * command, and delivers the partial results to asynchronous programs. The marker
+     * is removed from the standard error buffer.
+     *
+     * @param chars The decoded data
+     * @hide
+     */
+    void onStdErrData(CharBuffer chars) {
+        final StringBuffer sbErr = this.mSbErr;
+        if (sbErr == null || chars.length() == 0) {
+            return;
+        }
+        final Program program = this.mActiveCommand;
+
+        // Has the process received something that we dont expect?
+        if (program != null && program.isExitOnStdErrOutput()) {
+            notifyProcessFinished();
+            return;
+        }
+        if (isTrace()) {
+            toStdErr(chars.toString());
+        }
+
+        // New data received
+        onNewData();
+        if (this.mCancelled) {
+            return;
+        }
+
+        //The data that could be part of the marker is held until it's resolved
+        final ControlMarkerScanner scanner = this.mErrControlScanner;
+        final StringBuilder held = this.mErrHeld;
+        if (scanner != this.mErrHeldScanner) {
+            held.setLength(0);
+            this.mErrHeldScanner = scanner;
+        }
+        boolean finished = false;
+        int pending = 0;
+        if (scanner != null && !scanner.isFound()) {
+            int end = scanner.scan(chars, 0, chars.length());
+            if (end != -1) {
+                held.append(chars, 0, end);
+                held.setLength(held.length() - scanner.getMarkerLength());
+                held.append(chars, end, chars.length());
+                finished = true;
+            } else {
+                held.append(chars, 0, chars.length());
+                pending = scanner.getPendingLength();
+            }
+        } else {
+            held.append(chars, 0, chars.length());
+        }
+
+        int deliverable = held.length() - pending;
+        if (deliverable > 0) {
+            sbErr.append(held, 0, deliverable);
+
+            //Notify asynchronous partial data
+            if (this.mStarted && program instanceof AsyncResultProgram) {
+                ((AsyncResultProgram)program).parsePartialErrResult(held, 0, deliverable);
+
+                //Asynchronous programs can cause a lot of output, control buffers
+                //for a low memory footprint
+                trimBuffer(sbErr);
+            }
+            held.delete(0, deliverable);
+        }
+
+        if (finished) {
+            this.mErrCompletion.complete();
+        }
+    }
+
     /**
      * Method that echoes the stderr
      *
@@ -1016,8 +1717,8 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
     private void checkConsole() throws ConsoleAllocException {
         try {
             //Test write something to the buffer
-            this.mOut.write(FileHelper.NEWLINE.getBytes());
-            this.mOut.write(FileHelper.NEWLINE.getBytes());
+            this.mOut.write(FileHelper.NEWLINE.getBytes(StreamDecoder.CHARSET));
+            this.mOut.write(FileHelper.NEWLINE.getBytes(StreamDecoder.CHARSET));
         } catch (IOException ioex) {
             //Something is wrong with the buffers. Reallocate console.
             Log.w(TAG,
@@ -1057,8 +1758,8 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
         synchronized (this.mSync) {
             if (this.mActive) {
                 this.mActive = false;
-                this.mFinished = true;
-                this.mSync.notify();
+                this.mCompletion.complete();
+                this.mErrCompletion.complete();
                 if (ex != null) {
                     Log.w(TAG, "Exit with exception", ex); //$NON-NLS-1$
                 }
@@ -1073,53 +1774,9 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
     void notifyProcessFinished() {
         synchronized (this.mSync) {
             if (this.mActive) {
-                this.mFinished = true;
-                this.mSync.notify();
-            }
-        }
-    }
-
-    /**
-     * Method that returns if the command has started by checking the
-     * standard input buffer. This method also removes the control start command
-     * from the buffer, if it's present, leaving in the buffer the new data bytes.
-     *
-     * @param stdin The standard in buffer
-     * @return boolean If the command has started
-     * @hide
-     */
-    boolean isCommandStarted(StringBuffer stdin) {
-        if (stdin == null) return false;
-        Pattern pattern = Pattern.compile(this.mStartControlPattern);
-        Matcher matcher = pattern.matcher(stdin.toString());
-        if (matcher.find()) {
-            stdin.replace(0, matcher.end(), ""); //$NON-NLS-1$
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Method that returns if the command has finished by checking the
-     * standard input buffer.
-     *
-     * @param stdin The standard in buffer
-     * @return boolean If the command has finished
-     * @hide
-     */
-    boolean isCommandFinished(StringBuffer stdin, StringBuffer partial) {
-        Pattern pattern = Pattern.compile(this.mEndControlPattern);
-        if (stdin == null) return false;
-        Matcher matcher = pattern.matcher(stdin.toString());
-        boolean ret = matcher.find();
-        // Remove partial
-        if (ret && partial != null) {
-            matcher = pattern.matcher(partial.toString());
-            if (matcher.find()) {
-                partial.replace(matcher.start(), matcher.end(), ""); //$NON-NLS-1$
+                this.mCompletion.complete();
             }
         }
-        return ret;
     }
 
     /**
@@ -1127,35 +1784,27 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
      * @hide
      */
     void onNewData() {
-        synchronized (this.mSync) {
-            this.mNewData = true;
-        }
+        this.mCompletion.onNewData();
+        this.mErrCompletion.onNewData();
     }
 
     /**
      * Method that returns the exit code of the last executed command.
      *
-     * @param stdin The standard in buffer
      * @return int The exit code of the last executed command
      */
-    private int getExitCode(StringBuffer stdin) {
+    private int getExitCode() {
         // If process was cancelled, don't expect a exit code.
         // Returns always 143 code
         if (this.mCancelled) {
             return 143;
         }
 
-        // Parse the stdin seeking exit code pattern
-        String txt = stdin.toString();
-        Pattern pattern = Pattern.compile(this.mEndControlPattern);
-        Matcher matcher = pattern.matcher(txt);
-        if (matcher.find()) {
-            this.mSbIn = new StringBuffer(txt.substring(0, matcher.start()));
-            String exitTxt = matcher.group();
-            return Integer.parseInt(
-                    exitTxt.substring(
-                            exitTxt.indexOf("#/") + 2,  //$NON-NLS-1$
-                            exitTxt.indexOf("/#", 2))); //$NON-NLS-1$
+        // The exit code was extracted by the scanner while reading the stdin
+        // (the control was already removed from the buffer)
+        ControlMarkerScanner scanner = this.mEndControlScanner;
+        if (scanner != null && scanner.isFound()) {
+            return scanner.getExitCode();
         }
         return 255;
     }
@@ -1226,7 +1875,6 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
                             // It's finished
                             this.mCancelled = true;
                             notifyProcessFinished();
-                            this.mSync.notify();
                         }
                     }
                 } catch (Throwable ex) {
@@ -1293,7 +1941,6 @@ public abstract class ShellConsole extends Console implements Program.ProgramLis
                             // It's finished
                             this.mCancelled = true;
                             notifyProcessFinished();
-                            this.mSync.notify();
                         }
                     }
                 } catch (Throwable ex) {
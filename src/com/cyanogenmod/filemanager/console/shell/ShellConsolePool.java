@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.commands.AsyncResultExecutable;
+import com.cyanogenmod.filemanager.commands.Executable;
+import com.cyanogenmod.filemanager.commands.ExecutableFactory;
+import com.cyanogenmod.filemanager.commands.ExecutionPriority;
+import com.cyanogenmod.filemanager.commands.SIGNAL;
+import com.cyanogenmod.filemanager.console.CommandNotFoundException;
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.console.ConsoleAllocException;
+import com.cyanogenmod.filemanager.console.ExecutionException;
+import com.cyanogenmod.filemanager.console.InsufficientPermissionsException;
+import com.cyanogenmod.filemanager.console.NoSuchFileOrDirectory;
+import com.cyanogenmod.filemanager.console.OperationTimeoutException;
+import com.cyanogenmod.filemanager.console.ReadOnlyFilesystemException;
+import com.cyanogenmod.filemanager.model.Identity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link Console} that holds a bounded pool of {@link ShellConsole} of the same kind
+ * ({@link NonPriviledgeConsole} or {@link PrivilegedConsole}), so independent programs
+ * don't have to wait for each other in a single shell.<br/>
+ * <br/>
+ * The pool is divided in two partitions. Synchronous programs (listings, file info, ...)
+ * are executed in the interactive partition, while asynchronous programs (find, folder
+ * usage, compress, ...) has affinity by the asynchronous partition. This way a long
+ * running operation never takes the shell used by the navigation. Consoles are allocated
+ * lazily, only when all the consoles of a partition are busy. The programs that wait
+ * for a console are run by {@link ExecutionPriority} (see
+ * {@link com.cyanogenmod.filemanager.console.ConsoleScheduler}).
+ */
+public final class ShellConsolePool extends Console {
+
+    private static final String TAG = "ShellConsolePool"; //$NON-NLS-1$
+
+    private static final int ROOT_UID = 0;
+
+    /**
+     * A pooled console and the number of programs dispatched to it by the pool.
+     */
+    private static class Member {
+        final ShellConsole mConsole;
+        int mReserved;
+
+        Member(ShellConsole console) {
+            super();
+            this.mConsole = console;
+            this.mReserved = 0;
+        }
+
+        int getLoad() {
+            return this.mReserved + this.mConsole.getPendingCommands();
+        }
+    }
+
+    private final Object mSync = new Object();
+
+    private final ShellConsole mPrimary;
+    private final List<Member> mInteractive;
+    private final List<Member> mAsync;
+    private final int mInteractiveSize;
+    private final int mAsyncSize;
+    // The consoles of every partition that are being allocated (out of the lock)
+    private int mInteractiveAllocating;
+    private int mAsyncAllocating;
+    // Incremented when the pool is deallocated, so a console allocated meanwhile is
+    // discarded
+    private int mGeneration;
+
+    /**
+     * Constructor of <code>ShellConsolePool</code>.
+     *
+     * @param primary An allocated console. This console is the first console of
+     * the interactive partition, and defines the kind of the rest of consoles of the pool
+     * @param interactiveSize The maximum number of consoles used by synchronous programs
+     * @param asyncSize The maximum number of consoles used by asynchronous programs
+     */
+    public ShellConsolePool(ShellConsole primary, int interactiveSize, int asyncSize) {
+        super();
+        this.mPrimary = primary;
+        this.mInteractiveSize = Math.max(1, interactiveSize);
+        this.mAsyncSize = Math.max(1, asyncSize);
+        this.mInteractive = new ArrayList<Member>(this.mInteractiveSize);
+        this.mAsync = new ArrayList<Member>(this.mAsyncSize);
+        this.mInteractive.add(new Member(primary));
+    }
+
+    /**
+     * Method that returns the primary console of the pool.
+     *
+     * @return ShellConsole The primary console
+     */
+    public ShellConsole getPrimaryConsole() {
+        return this.mPrimary;
+    }
+
+    /**
+     * Method that returns the number of consoles currently allocated by the pool.
+     *
+     * @return int The number of allocated consoles
+     */
+    public int getAllocatedConsoles() {
+        synchronized (this.mSync) {
+            return this.mInteractive.size() + this.mAsync.size();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reloadTrace() {
+        super.reloadTrace();
+        if (this.mSync == null) {
+            // Invoked by the super constructor. There are no consoles yet
+            return;
+        }
+        synchronized (this.mSync) {
+            int cc = this.mInteractive.size();
+            for (int i = 0; i < cc; i++) {
+                this.mInteractive.get(i).mConsole.reloadTrace();
+            }
+            cc = this.mAsync.size();
+            for (int i = 0; i < cc; i++) {
+                this.mAsync.get(i).mConsole.reloadTrace();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Identity getIdentity() {
+        return this.mPrimary.getIdentity();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void alloc() throws ConsoleAllocException {
+        if (!this.mPrimary.isActive()) {
+            this.mPrimary.alloc();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void dealloc() {
+        synchronized (this.mSync) {
+            int cc = this.mInteractive.size();
+            for (int i = 0; i < cc; i++) {
+                deallocQuietly(this.mInteractive.get(i).mConsole);
+            }
+            cc = this.mAsync.size();
+            for (int i = 0; i < cc; i++) {
+                deallocQuietly(this.mAsync.get(i).mConsole);
+            }
+
+            // Only the primary console survives
+            this.mInteractive.clear();
+            this.mAsync.clear();
+            this.mInteractive.add(new Member(this.mPrimary));
+            this.mGeneration++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void realloc() throws ConsoleAllocException {
+        dealloc();
+        alloc();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isPrivileged() {
+        return this.mPrimary.isPrivileged();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isActive() {
+        return this.mPrimary.isActive();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExecutableFactory getExecutableFactory() {
+        // Shell executables are not bound to the console that creates them
+        return this.mPrimary.getExecutableFactory();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute(Executable executable)
+            throws ConsoleAllocException, InsufficientPermissionsException,
+            NoSuchFileOrDirectory, OperationTimeoutException, ExecutionException,
+            CommandNotFoundException, ReadOnlyFilesystemException {
+        // Background scans never take the consoles of the navigation
+        Member member = acquire(executable instanceof AsyncResultExecutable ||
+                executable.getPriority() == ExecutionPriority.BACKGROUND);
+        try {
+            member.mConsole.execute(executable);
+        } finally {
+            release(member);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Exception[] executeBatch(List<? extends Executable> executables)
+            throws ConsoleAllocException, OperationTimeoutException, ExecutionException {
+        // A batch is a single round trip in one console of the interactive partition
+        Member member = acquire(false);
+        try {
+            return member.mConsole.executeBatch(executables);
+        } finally {
+            release(member);
+        }
+    }
+
+    /**
+     * Method that reserves the less loaded console of a partition. If all the consoles
+     * are busy and the partition isn't full, then a new console is allocated. The new
+     * console is allocated out of the lock of the pool (the allocation forks a shell, and
+     * maybe asks for the superuser permission), so the rest of programs don't wait for
+     * it. The allocation reserves its place in the partition meanwhile.
+     *
+     * @param async If the console is for an asynchronous program
+     * @return Member The reserved console
+     */
+    private Member acquire(boolean async) {
+        final int generation;
+        synchronized (this.mSync) {
+            List<Member> partition = async ? this.mAsync : this.mInteractive;
+            int max = async ? this.mAsyncSize : this.mInteractiveSize;
+            int allocating = async ? this.mAsyncAllocating : this.mInteractiveAllocating;
+
+            // Discard the consoles that were closed by its shell
+            for (int i = partition.size() - 1; i >= 0; i--) {
+                Member m = partition.get(i);
+                if (m.mConsole != this.mPrimary && !m.mConsole.isActive()) {
+                    partition.remove(i);
+                }
+            }
+
+            Member candidate = getLessLoaded(partition);
+            if ((candidate != null && candidate.getLoad() == 0)
+                    || partition.size() + allocating >= max) {
+                return reserve(candidate);
+            }
+
+            // Reserve the place of the new console in the partition
+            if (async) {
+                this.mAsyncAllocating++;
+            } else {
+                this.mInteractiveAllocating++;
+            }
+            generation = this.mGeneration;
+        }
+
+        ShellConsole console = createConsole();
+
+        synchronized (this.mSync) {
+            if (async) {
+                this.mAsyncAllocating--;
+            } else {
+                this.mInteractiveAllocating--;
+            }
+            List<Member> partition = async ? this.mAsync : this.mInteractive;
+            if (console != null && generation == this.mGeneration) {
+                Member member = new Member(console);
+                partition.add(member);
+                return reserve(member);
+            }
+            if (console != null) {
+                // The pool was deallocated meanwhile
+                deallocQuietly(console);
+            }
+            return reserve(getLessLoaded(partition));
+        }
+    }
+
+    /**
+     * Method that returns the less loaded console of a partition.
+     *
+     * @param partition The partition
+     * @return Member The less loaded console, or <code>null</code> if the partition
+     * is empty
+     */
+    private static Member getLessLoaded(List<Member> partition) {
+        Member candidate = null;
+        int cc = partition.size();
+        for (int i = 0; i < cc; i++) {
+            Member m = partition.get(i);
+            if (candidate == null || m.getLoad() < candidate.getLoad()) {
+                candidate = m;
+            }
+        }
+        return candidate;
+    }
+
+    /**
+     * Method that reserves a console. Must be invoked with the lock of the pool.
+     *
+     * @param member The console, or <code>null</code> to reserve the primary console
+     * @return Member The reserved console
+     */
+    private Member reserve(Member member) {
+        Member candidate = member;
+        if (candidate == null) {
+            // Not possible to allocate an asynchronous console. Use the primary
+            candidate = this.mInteractive.get(0);
+        }
+        candidate.mReserved++;
+        return candidate;
+    }
+
+    /**
+     * Method that releases the reservation of a console
+     *
+     * @param member The reserved console
+     */
+    private void release(Member member) {
+        synchronized (this.mSync) {
+            member.mReserved--;
+        }
+    }
+
+    /**
+     * Method that allocates a new console of the same kind that the primary console.
+     *
+     * @return ShellConsole The new console, or <code>null</code> if the console couldn't
+     * be allocated
+     */
+    private ShellConsole createConsole() {
+        ShellConsole console = null;
+        try {
+            if (this.mPrimary instanceof PrivilegedConsole) {
+                console = new PrivilegedConsole();
+            } else {
+                console = new NonPriviledgeConsole();
+            }
+            console.setBufferSize(this.mPrimary.getBufferSize());
+            console.alloc();
+            if (console.isPrivileged() &&
+                console.getIdentity().getUser().getId() != ROOT_UID) {
+                //The console is not a privileged console
+                throw new InsufficientPermissionsException(null);
+            }
+            if (isTrace()) {
+                Log.v(TAG, "New pooled console allocated"); //$NON-NLS-1$
+            }
+            return console;
+
+        } catch (Exception ex) {
+            Log.w(TAG, "Failed to allocate a pooled console", ex); //$NON-NLS-1$
+            if (console != null) {
+                deallocQuietly(console);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Method that deallocates a console ignoring any error
+     *
+     * @param console The console to deallocate
+     */
+    private static void deallocQuietly(Console console) {
+        try {
+            console.dealloc();
+        } catch (Throwable ex) {
+            /**NON BLOCK**/
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onCancel() {
+        // Programs are cancelled by the console that executes them
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onSendSignal(SIGNAL signal) {
+        // Programs are signaled by the console that executes them
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean onEnd() {
+        // Programs are ended by the console that executes them
+        return false;
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * The decoding stage of a stream of the shell.<br/>
+ * <br/>
+ * The stream is read in bulk over a reusable byte buffer and decoded with a persistent
+ * decoder into a reusable char buffer, so a multibyte character (a CJK or an emoji file
+ * name) split between two reads is decoded when its last byte is received, and the
+ * reader doesn't allocate a new buffer per read. The decoded data is passed to the
+ * listener as a window over the char buffer, that is only valid during the call.
+ */
+final class StreamDecoder {
+
+    /**
+     * The charset of the streams of the shell.
+     */
+    static final Charset CHARSET = Charset.forName("UTF-8"); //$NON-NLS-1$
+
+    /**
+     * An interface to receive the decoded data.
+     */
+    interface OnDecodedListener {
+        /**
+         * Invoked when new data was decoded.
+         *
+         * @param chars The decoded data. The buffer is reused after the call
+         */
+        void onDecoded(CharBuffer chars);
+    }
+
+    private final ByteBuffer mBytes;
+    private final CharBuffer mChars;
+    private final CharsetDecoder mDecoder;
+
+    /**
+     * Constructor of <code>StreamDecoder</code>.
+     *
+     * @param bufferSize The size of the buffers
+     * @param direct If the byte buffer is a direct buffer
+     */
+    StreamDecoder(int bufferSize, boolean direct) {
+        super();
+        this.mBytes = direct ?
+                ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        this.mChars = CharBuffer.allocate(bufferSize);
+        this.mDecoder = CHARSET.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Method that reads the available data of the channel (blocks until some data
+     * exists) and decodes it. An incomplete sequence remains in the byte buffer until
+     * the next read.
+     *
+     * @param channel The channel
+     * @param listener The listener of the decoded data
+     * @return boolean <code>false</code> if the end of the stream was reached
+     * @throws IOException If the channel couldn't be read
+     */
+    boolean read(ReadableByteChannel channel, OnDecodedListener listener) throws IOException {
+        if (channel.read(this.mBytes) == -1) {
+            // Flush the incomplete sequence, if any, as a replacement character
+            this.mBytes.flip();
+            decode(listener, true);
+            this.mBytes.clear();
+            this.mDecoder.reset();
+            return false;
+        }
+        this.mBytes.flip();
+        decode(listener, false);
+        this.mBytes.compact();
+        return true;
+    }
+
+    /**
+     * Method that decodes the data of the byte buffer.
+     *
+     * @param listener The listener of the decoded data
+     * @param endOfInput If no more data will be read
+     */
+    private void decode(OnDecodedListener listener, boolean endOfInput) {
+        CoderResult result = null;
+        do {
+            result = this.mDecoder.decode(this.mBytes, this.mChars, endOfInput);
+            deliver(listener);
+        } while (result.isOverflow());
+        if (endOfInput) {
+            do {
+                result = this.mDecoder.flush(this.mChars);
+                deliver(listener);
+            } while (result.isOverflow());
+        }
+    }
+
+    /**
+     * Method that passes the decoded data to the listener and clears the char buffer.
+     *
+     * @param listener The listener of the decoded data
+     */
+    private void deliver(OnDecodedListener listener) {
+        this.mChars.flip();
+        if (this.mChars.hasRemaining()) {
+            listener.onDecoded(this.mChars);
+        }
+        this.mChars.clear();
+    }
+}
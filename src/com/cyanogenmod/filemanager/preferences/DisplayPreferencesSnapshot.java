@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.preferences;
+
+import android.content.SharedPreferences;
+
+/**
+ * An immutable snapshot of the preferences that define how the listed files are
+ * displayed (hidden, system and symlinks files, sort mode, ...).<br/>
+ * <br/>
+ * The snapshot is captured once from the shared preferences and reused until one of its
+ * preferences changes, so the listings don't read the shared preferences for every file
+ * or every comparison.
+ */
+public final class DisplayPreferencesSnapshot {
+
+    private static volatile DisplayPreferencesSnapshot sCurrent;
+
+    // Invalidates the current snapshot when one of its preferences changes
+    private static final ConfigurationListener CONFIGURATION_LISTENER =
+            new ConfigurationListener() {
+        @Override
+        public void onConfigurationChanged(
+                FileManagerSettings pref, Object newValue, boolean applied) {
+            switch (pref) {
+                case SETTINGS_SORT_MODE:
+                case SETTINGS_SHOW_DIRS_FIRST:
+                case SETTINGS_SHOW_HIDDEN:
+                case SETTINGS_SHOW_SYSTEM:
+                case SETTINGS_SHOW_SYMLINKS:
+                case SETTINGS_CASE_SENSITIVE_SORT:
+                    invalidate();
+                    break;
+                default:
+                    break;
+            }
+        }
+    };
+
+    static {
+        Preferences.addConfigurationListener(CONFIGURATION_LISTENER);
+    }
+
+    private final boolean mShowHidden;
+    private final boolean mShowSystem;
+    private final boolean mShowSymlinks;
+    private final boolean mShowDirsFirst;
+    private final boolean mCaseSensitiveSort;
+    private final NavigationSortMode mSortMode;
+
+    /**
+     * Constructor of <code>DisplayPreferencesSnapshot</code>.
+     *
+     * @param showHidden If the hidden files are displayed
+     * @param showSystem If the system files are displayed
+     * @param showSymlinks If the symlinks are displayed
+     * @param showDirsFirst If the directories are sorted before the files
+     * @param caseSensitiveSort If the names are sorted with case sensitive comparisons
+     * @param sortMode The sort mode
+     */
+    public DisplayPreferencesSnapshot(
+            boolean showHidden, boolean showSystem, boolean showSymlinks,
+            boolean showDirsFirst, boolean caseSensitiveSort, NavigationSortMode sortMode) {
+        super();
+        this.mShowHidden = showHidden;
+        this.mShowSystem = showSystem;
+        this.mShowSymlinks = showSymlinks;
+        this.mShowDirsFirst = showDirsFirst;
+        this.mCaseSensitiveSort = caseSensitiveSort;
+        this.mSortMode = sortMode;
+    }
+
+    /**
+     * Method that returns the snapshot of the current preferences. The snapshot is
+     * captured if it wasn't captured yet or if it was invalidated.
+     *
+     * @return DisplayPreferencesSnapshot The snapshot of the current preferences
+     */
+    public static DisplayPreferencesSnapshot getInstance() {
+        DisplayPreferencesSnapshot snapshot = sCurrent;
+        if (snapshot == null) {
+            synchronized (DisplayPreferencesSnapshot.class) {
+                if (sCurrent == null) {
+                    sCurrent = capture(Preferences.getSharedPreferences());
+                }
+                snapshot = sCurrent;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Method that invalidates the current snapshot. The next call to
+     * {@link #getInstance()} captures the preferences again. This method must be invoked
+     * by the components that change the preferences without {@link Preferences}.
+     */
+    public static synchronized void invalidate() {
+        sCurrent = null;
+    }
+
+    /**
+     * Method that captures a snapshot of the preferences.
+     *
+     * @param prefs The shared preferences
+     * @return DisplayPreferencesSnapshot The snapshot of the preferences
+     */
+    private static DisplayPreferencesSnapshot capture(SharedPreferences prefs) {
+        FileManagerSettings sortModePref = FileManagerSettings.SETTINGS_SORT_MODE;
+        return new DisplayPreferencesSnapshot(
+                getBoolean(prefs, FileManagerSettings.SETTINGS_SHOW_HIDDEN),
+                getBoolean(prefs, FileManagerSettings.SETTINGS_SHOW_SYSTEM),
+                getBoolean(prefs, FileManagerSettings.SETTINGS_SHOW_SYMLINKS),
+                getBoolean(prefs, FileManagerSettings.SETTINGS_SHOW_DIRS_FIRST),
+                getBoolean(prefs, FileManagerSettings.SETTINGS_CASE_SENSITIVE_SORT),
+                NavigationSortMode.fromId(
+                        prefs.getInt(sortModePref.getId(),
+                        ((ObjectIdentifier)sortModePref.getDefaultValue()).getId())));
+    }
+
+    /**
+     * Method that returns the value of a boolean preference.
+     *
+     * @param prefs The shared preferences
+     * @param pref The preference
+     * @return boolean The value of the preference
+     */
+    private static boolean getBoolean(SharedPreferences prefs, FileManagerSettings pref) {
+        return prefs.getBoolean(
+                pref.getId(), ((Boolean)pref.getDefaultValue()).booleanValue());
+    }
+
+    /**
+     * Method that returns if the hidden files are displayed.
+     *
+     * @return boolean If the hidden files are displayed
+     */
+    public boolean isShowHidden() {
+        return this.mShowHidden;
+    }
+
+    /**
+     * Method that returns if the system files are displayed.
+     *
+     * @return boolean If the system files are displayed
+     */
+    public boolean isShowSystem() {
+        return this.mShowSystem;
+    }
+
+    /**
+     * Method that returns if the symlinks are displayed.
+     *
+     * @return boolean If the symlinks are displayed
+     */
+    public boolean isShowSymlinks() {
+        return this.mShowSymlinks;
+    }
+
+    /**
+     * Method that returns if the directories are sorted before the files.
+     *
+     * @return boolean If the directories are sorted before the files
+     */
+    public boolean isShowDirsFirst() {
+        return this.mShowDirsFirst;
+    }
+
+    /**
+     * Method that returns if the names are sorted with case sensitive comparisons.
+     *
+     * @return boolean If the names are sorted with case sensitive comparisons
+     */
+    public boolean isCaseSensitiveSort() {
+        return this.mCaseSensitiveSort;
+    }
+
+    /**
+     * Method that returns the sort mode.
+     *
+     * @return NavigationSortMode The sort mode
+     */
+    public NavigationSortMode getSortMode() {
+        return this.mSortMode;
+    }
+}
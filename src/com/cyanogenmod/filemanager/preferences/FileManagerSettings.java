@@ -135,6 +135,13 @@ public enum FileManagerSettings {
      */
     SETTINGS_SHOW_TRACES("cm_filemanager_show_debug_traces", Boolean.FALSE), //$NON-NLS-1$
 
+    /**
+     * When to record the metrics of the consoles
+     * @hide
+     */
+    SETTINGS_CONSOLE_METRICS(
+            "cm_filemanager_console_metrics", Boolean.FALSE), //$NON-NLS-1$
+
     /**
      * When to editor should display suggestions
      * @hide
@@ -43,6 +43,9 @@ import java.util.List;
  */
 public final class CopyMoveActionPolicy extends ActionsPolicy {
 
+    // The number of done operations that are checked in a single batch
+    private static final int CHECK_CHUNK_SIZE = 8;
+
     /**
      * @hide
      */
@@ -319,11 +322,19 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                 BackgroundAsyncTask task = (BackgroundAsyncTask)params[0];
 
                 int cc2 = this.mFiles.size();
+                List<String> dsts = new ArrayList<String>(CHECK_CHUNK_SIZE);
                 for (int i = 0; i < cc2; i++) {
                     File src = this.mFiles.get(i).mSrc;
                     File dst = this.mFiles.get(i).mDst;
 
-                    doOperation(this.mCtx, src, dst, this.mOperation);
+                    if (doOperation(this.mCtx, src, dst, this.mOperation)) {
+                        dsts.add(dst.getAbsolutePath());
+                    }
+                    // Check the done operations every few files, so a failure aborts
+                    // the rest of the operations
+                    if (dsts.size() >= CHECK_CHUNK_SIZE) {
+                        checkOperations(this.mCtx, dsts);
+                    }
 
                     // Next file
                     this.mCurrent++;
@@ -331,6 +342,31 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                         task.onRequestProgress();
                     }
                 }
+                checkOperations(this.mCtx, dsts);
+            }
+
+            /**
+             * Method that checks that the operations were completed retrieving the
+             * modified fso (all the fso are retrieved in a single batch).
+             *
+             * @param ctx The current context
+             * @param dsts The destinations of the done operations. The list is cleared
+             * @throws NoSuchFileOrDirectory If a destination doesn't exist (the first one
+             * in the order of the operations)
+             */
+            @SuppressWarnings("hiding")
+            private void checkOperations(Context ctx, List<String> dsts) throws Throwable {
+                if (dsts.isEmpty()) {
+                    return;
+                }
+                List<FileSystemObject> fsos = CommandHelper.getFileInfos(ctx, dsts, false, null);
+                int cc = fsos.size();
+                for (int i = 0; i < cc; i++) {
+                    if (fsos.get(i) == null) {
+                        throw new NoSuchFileOrDirectory(dsts.get(i));
+                    }
+                }
+                dsts.clear();
             }
 
             /**
@@ -340,13 +376,14 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
              * @param src The source file
              * @param dst The destination file
              * @param operation Indicates the operation to do
+             * @return boolean If the operation was done
              */
             @SuppressWarnings("hiding")
-            private void doOperation(
+            private boolean doOperation(
                     Context ctx, File src, File dst, COPY_MOVE_OPERATION operation)
                     throws Throwable {
                 // If the source is the same as destiny then don't do the operation
-                if (src.compareTo(dst) == 0) return;
+                if (src.compareTo(dst) == 0) return false;
 
                 try {
                     // Copy or move?
@@ -411,12 +448,7 @@ public final class CopyMoveActionPolicy extends ActionsPolicy {
                     }
                 }
 
-                // Check that the operation was completed retrieving the fso modified
-                FileSystemObject fso =
-                        CommandHelper.getFileInfo(ctx, dst.getAbsolutePath(), false, null);
-                if (fso == null) {
-                    throw new NoSuchFileOrDirectory(dst.getAbsolutePath());
-                }
+                return true;
             }
         };
         final BackgroundAsyncTask task = new BackgroundAsyncTask(ctx, callable);
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui.widgets;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The changes of a watched directory in a short window of time.<br/>
+ * <br/>
+ * The events of the window are coalesced by the name of the changed file system objects,
+ * in the order of their first event. The window is opened by its first event and closed
+ * when its changes are retrieved.
+ *
+ * @see DirectoryWatcher
+ */
+final class ChangeWindow {
+
+    // The maximum number of changes of a window that are applied one by one
+    static final int MAX_CHANGES = 128;
+
+    private final Set<String> mNames = new LinkedHashSet<String>();
+    private boolean mOpen;
+
+    /**
+     * Constructor of <code>ChangeWindow</code>.
+     */
+    ChangeWindow() {
+        super();
+    }
+
+    /**
+     * Method that adds the name of a changed file system object to the window.
+     *
+     * @param name The name of the file system object
+     * @return boolean If the event opened the window (the caller has to schedule the end
+     * of the window)
+     */
+    synchronized boolean add(String name) {
+        this.mNames.add(name);
+        if (this.mOpen) {
+            return false;
+        }
+        this.mOpen = true;
+        return true;
+    }
+
+    /**
+     * Method that closes the window and returns its changes.
+     *
+     * @return String[] The names of the changed file system objects
+     */
+    synchronized String[] close() {
+        String[] names = this.mNames.toArray(new String[this.mNames.size()]);
+        this.mNames.clear();
+        this.mOpen = false;
+        return names;
+    }
+
+    /**
+     * Method that discards the changes of the window.
+     */
+    synchronized void clear() {
+        this.mNames.clear();
+        this.mOpen = false;
+    }
+
+    /**
+     * Method that returns if the changes of a window are too many to be applied one by
+     * one (it's cheaper to list the directory again).
+     *
+     * @param names The names of the changed file system objects
+     * @return boolean If the directory has to be listed again
+     */
+    static boolean isReloadRequired(String[] names) {
+        return names.length > MAX_CHANGES;
+    }
+
+    /**
+     * Method that returns the full paths of the changed file system objects.
+     *
+     * @param directory The watched directory
+     * @param names The names of the changed file system objects
+     * @return String[] The full paths
+     */
+    static String[] toPaths(String directory, String[] names) {
+        String[] paths = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            paths[i] = new File(directory, names[i]).getPath();
+        }
+        return paths;
+    }
+
+    /**
+     * Method that splits the retrieved information of the changed file system objects
+     * in changed and removed objects. An object without information (the entry itself
+     * doesn't exist; a dangling symlink still exists) was removed.
+     *
+     * @param paths The full paths of the changed file system objects
+     * @param infos The information of every path (<code>null</code> if the entry doesn't
+     * exist)
+     * @param changed The new or modified file system objects (output)
+     * @param removed The full paths of the removed file system objects (output)
+     */
+    static void split(String[] paths, List<FileSystemObject> infos,
+            List<FileSystemObject> changed, List<String> removed) {
+        for (int i = 0; i < paths.length; i++) {
+            FileSystemObject fso = infos.get(i);
+            if (fso == null) {
+                removed.add(paths[i]);
+            } else {
+                changed.add(fso);
+            }
+        }
+    }
+}
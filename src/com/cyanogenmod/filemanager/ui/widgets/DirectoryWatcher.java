@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui.widgets;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.util.CommandHelper;
+import com.cyanogenmod.filemanager.util.FileHelper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A class that watches the changes of a directory with inotify.<br/>
+ * <br/>
+ * The events of a short window are coalesced by the name of the changed file system
+ * objects, so a file that is written continuously only is retrieved once per window. At
+ * the end of the window the changed file system objects are retrieved in background, in
+ * a single batch, and the changes are communicated in the main thread. If a window has
+ * too many changes, it's cheaper to list the directory again, so a reload is requested
+ * instead.
+ */
+final class DirectoryWatcher extends FileObserver {
+
+    private static final String TAG = "DirectoryWatcher"; //$NON-NLS-1$
+
+    /**
+     * An interface to communicate the changes of the watched directory. The methods are
+     * invoked in the main thread.
+     */
+    interface OnDirectoryChangesListener {
+        /**
+         * Method invoked when file system objects of the directory were changed.
+         *
+         * @param directory The watched directory
+         * @param changed The new or modified file system objects
+         * @param removed The full paths of the removed file system objects
+         */
+        void onDirectoryChanges(
+                String directory, List<FileSystemObject> changed, List<String> removed);
+
+        /**
+         * Method invoked when the directory has too many changes to be applied one by one.
+         *
+         * @param directory The watched directory
+         */
+        void onDirectoryReload(String directory);
+    }
+
+    // The events that change the listing of the directory
+    private static final int WATCHED_EVENTS =
+            CREATE | DELETE | MOVED_FROM | MOVED_TO | MODIFY | CLOSE_WRITE | ATTRIB
+            | DELETE_SELF | MOVE_SELF;
+
+    // The window in which the events are coalesced (in milliseconds)
+    private static final long COALESCE_WINDOW = 250L;
+
+    // The changes are retrieved in their own thread, so they don't wait for (nor delay)
+    // the tasks of the shared AsyncTask executor, like a copy or a delete
+    private static final Executor EXECUTOR =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread t = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, TAG);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /**
+     * @hide
+     */
+    final Context mContext;
+    /**
+     * @hide
+     */
+    final String mDirectory;
+    /**
+     * @hide
+     */
+    final OnDirectoryChangesListener mListener;
+    private final Handler mHandler;
+
+    private final ChangeWindow mWindow = new ChangeWindow();
+    /**
+     * @hide
+     */
+    volatile boolean mStopped;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Constructor of <code>DirectoryWatcher</code>.
+     *
+     * @param context The current context
+     * @param directory The directory to watch
+     * @param listener The listener of the changes of the directory
+     */
+    DirectoryWatcher(
+            Context context, String directory, OnDirectoryChangesListener listener) {
+        super(directory, WATCHED_EVENTS);
+        this.mContext = context.getApplicationContext();
+        this.mDirectory = directory;
+        this.mListener = listener;
+        this.mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Method that returns the watched directory.
+     *
+     * @return String The watched directory
+     */
+    String getDirectory() {
+        return this.mDirectory;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void startWatching() {
+        this.mStopped = false;
+        super.startWatching();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void stopWatching() {
+        this.mStopped = true;
+        super.stopWatching();
+        this.mHandler.removeCallbacks(this.mFlush);
+        this.mWindow.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onEvent(int event, String path) {
+        if ((event & (DELETE_SELF | MOVE_SELF)) != 0) {
+            // The directory is gone. Nothing more to watch
+            CommandHelper.invalidateListingCache(this.mDirectory);
+            return;
+        }
+        if (path == null || this.mStopped) {
+            return;
+        }
+        if (this.mWindow.add(path)) {
+            this.mHandler.postDelayed(this.mFlush, COALESCE_WINDOW);
+        }
+    }
+
+    /**
+     * Method that ends the current window and retrieves its changes in background.
+     */
+    void flush() {
+        String[] names = this.mWindow.close();
+        if (names.length == 0 || this.mStopped) {
+            return;
+        }
+
+        // The cached listing of the directory is no longer valid
+        CommandHelper.invalidateListingCache(this.mDirectory);
+        if (ChangeWindow.isReloadRequired(names)) {
+            this.mListener.onDirectoryReload(this.mDirectory);
+            return;
+        }
+
+        final String[] paths = ChangeWindow.toPaths(this.mDirectory, names);
+        final List<FileSystemObject> changed = new ArrayList<FileSystemObject>(paths.length);
+        final List<String> removed = new ArrayList<String>();
+        new AsyncTask<Void, Void, Boolean>() {
+            @Override
+            protected Boolean doInBackground(Void... params) {
+                if (DirectoryWatcher.this.mStopped) {
+                    return Boolean.TRUE;
+                }
+                try {
+                    // Retrieve the changes of the window in a single batch (symlinks
+                    // aren't followed, as the listing does, so a dangling symlink
+                    // isn't reported as removed)
+                    List<FileSystemObject> infos = CommandHelper.getFileInfos(
+                            DirectoryWatcher.this.mContext, Arrays.asList(paths),
+                            false, null);
+                    ChangeWindow.split(paths, infos, changed, removed);
+                    FileHelper.resolveSymlinks(DirectoryWatcher.this.mContext, changed);
+                    return Boolean.TRUE;
+                } catch (Exception e) {
+                    Log.w(TAG, "Failed to retrieve the changes of " //$NON-NLS-1$
+                            + DirectoryWatcher.this.mDirectory, e);
+                }
+                return Boolean.FALSE;
+            }
+
+            @Override
+            protected void onPostExecute(Boolean result) {
+                if (DirectoryWatcher.this.mStopped) {
+                    return;
+                }
+                if (result.booleanValue()) {
+                    DirectoryWatcher.this.mListener.onDirectoryChanges(
+                            DirectoryWatcher.this.mDirectory, changed, removed);
+                } else {
+                    // The changes are unknown. List the directory again
+                    DirectoryWatcher.this.mListener.onDirectoryReload(
+                            DirectoryWatcher.this.mDirectory);
+                }
+            }
+        }.executeOnExecutor(EXECUTOR);
+    }
+}
@@ -38,6 +38,7 @@ import com.cyanogenmod.filemanager.FileManagerApplication;
 import com.cyanogenmod.filemanager.R;
 import com.cyanogenmod.filemanager.adapters.FileSystemObjectAdapter;
 import com.cyanogenmod.filemanager.adapters.FileSystemObjectAdapter.OnSelectionChangedListener;
+import com.cyanogenmod.filemanager.commands.ListExecutable;
 import com.cyanogenmod.filemanager.console.ConsoleAllocException;
 import com.cyanogenmod.filemanager.listeners.OnHistoryListener;
 import com.cyanogenmod.filemanager.listeners.OnRequestRefreshListener;
@@ -69,9 +70,13 @@ import com.cyanogenmod.filemanager.util.StorageHelper;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The file manager implementation view (contains the graphical representation and the input
@@ -203,6 +208,28 @@ public class NavigationView extends RelativeLayout implements
         }
     };
 
+    /**
+     * A listener for the live changes of the current directory
+     */
+    private final DirectoryWatcher.OnDirectoryChangesListener mOnDirectoryChangesListener =
+            new DirectoryWatcher.OnDirectoryChangesListener() {
+
+        @Override
+        public void onDirectoryChanges(
+                String directory, List<FileSystemObject> changed, List<String> removed) {
+            if (directory.compareTo(getCurrentDir()) == 0) {
+                applyChanges(changed, removed);
+            }
+        }
+
+        @Override
+        public void onDirectoryReload(String directory) {
+            if (directory.compareTo(getCurrentDir()) == 0) {
+                refresh(true);
+            }
+        }
+    };
+
     private int mId;
     private String mCurrentDir;
     private NavigationLayoutMode mCurrentMode;
@@ -211,6 +238,7 @@ public class NavigationView extends RelativeLayout implements
      */
     List<FileSystemObject> mFiles;
     private FileSystemObjectAdapter mAdapter;
+    private DirectoryWatcher mWatcher;
 
     private final Object mSync = new Object();
 
@@ -253,6 +281,9 @@ public class NavigationView extends RelativeLayout implements
     //The current layout identifier (is shared for all the mode layout)
     private static final int RESOURCE_CURRENT_LAYOUT = R.id.navigation_view_layout;
 
+    //The number of files of a listing in progress that are shown before the listing ends
+    private static final int FIRST_SCREEN_FILES = 64;
+
     /**
      * Constructor of <code>NavigationView</code>.
      *
@@ -725,11 +756,109 @@ public class NavigationView extends RelativeLayout implements
     public void removeItem(String path) {
         FileSystemObject fso = this.mAdapter.getItem(path);
         if (fso != null) {
-            this.mAdapter.remove(fso);
-            this.mAdapter.notifyDataSetChanged();
+            removeItem(fso);
+        }
+    }
+
+    /**
+     * Method that applies the live changes of the current directory to the view, without
+     * list the directory again. The user preferences are applied to the changed items,
+     * and the scroll position and the selection are kept.
+     *
+     * @param changed The new or modified file system objects
+     * @param removed The full paths of the removed file system objects
+     * @hide
+     */
+    void applyChanges(List<FileSystemObject> changed, List<String> removed) {
+        if (this.mAdapter == null || this.mFiles == null) {
+            return;
+        }
+
+        // Items that are not displayed anymore are removed
+        List<FileSystemObject> displayed =
+                FileHelper.applyUserPreferences(
+                        new ArrayList<FileSystemObject>(changed),
+                        this.mRestrictions, true, this.mChRooted);
+        Set<FileSystemObject> shown = new HashSet<FileSystemObject>(displayed);
+        List<String> hidden = new ArrayList<String>(removed);
+        for (FileSystemObject fso : changed) {
+            if (!shown.contains(fso)) {
+                hidden.add(fso.getFullPath());
+            }
+        }
+
+        // Apply the changes to the internal list and to the adapter. The current items
+        // are found by the index of paths of the adapter (the adapter has the items of
+        // the internal list), before the adapter is changed
+        Comparator<FileSystemObject> comparator = FileHelper.getSortComparator();
+        for (String path : hidden) {
+            removeFile(this.mAdapter.getItem(path), comparator);
+        }
+        for (FileSystemObject fso : displayed) {
+            removeFile(this.mAdapter.getItem(fso.getFullPath()), comparator);
+            int pos = Collections.binarySearch(this.mFiles, fso, comparator);
+            this.mFiles.add(pos < 0 ? -(pos + 1) : pos, fso);
+        }
+        this.mAdapter.applyChanges(displayed, hidden, comparator);
+    }
+
+    /**
+     * Method that removes a file system object from the internal list.
+     *
+     * @param fso The file system object (<code>null</code> if it isn't displayed)
+     * @param comparator The comparator that sorts the internal list
+     */
+    private void removeFile(FileSystemObject fso, Comparator<FileSystemObject> comparator) {
+        if (fso != null) {
+            int pos = FileHelper.indexOf(this.mFiles, fso, comparator);
+            if (pos != -1) {
+                this.mFiles.remove(pos);
+            }
         }
     }
 
+    /**
+     * Method that starts to watch the live changes of a directory. The previous
+     * watched directory is not watched anymore.
+     *
+     * @param dir The directory to watch
+     */
+    private void watch(String dir) {
+        unwatch();
+        this.mWatcher = new DirectoryWatcher(getContext(), dir, this.mOnDirectoryChangesListener);
+        this.mWatcher.startWatching();
+    }
+
+    /**
+     * Method that stops to watch the live changes of the current directory.
+     */
+    private void unwatch() {
+        if (this.mWatcher != null) {
+            this.mWatcher.stopWatching();
+            this.mWatcher = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (this.mCurrentDir != null && this.mWatcher == null) {
+            watch(this.mCurrentDir);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        unwatch();
+        super.onDetachedFromWindow();
+    }
+
     /**
      * Method that returns the current directory.
      *
@@ -790,6 +919,10 @@ public class NavigationView extends RelativeLayout implements
             //Execute the listing in a background process
             AsyncTask<String, Integer, List<FileSystemObject>> task =
                     new AsyncTask<String, Integer, List<FileSystemObject>>() {
+                        private final List<FileSystemObject> mFirstScreen =
+                                new ArrayList<FileSystemObject>();
+                        boolean mFirstScreenShown = false;
+
                         /**
                          * {@inheritDoc}
                          */
@@ -824,7 +957,19 @@ public class NavigationView extends RelativeLayout implements
                                 //(sort, hidden, ...)
                                 List<FileSystemObject> files = NavigationView.this.mFiles;
                                 if (!useCurrent) {
-                                    files = CommandHelper.listFiles(getContext(), fNewDir, null);
+                                    //A forced reload doesn't trust the cached listing
+                                    if (reload) {
+                                        CommandHelper.invalidateListingCache(fNewDir);
+                                    }
+                                    files = CommandHelper.listFiles(
+                                            getContext(), fNewDir,
+                                            new ListExecutable.OnPartialListListener() {
+                                                @Override
+                                                public void onPartialList(
+                                                        List<FileSystemObject> partial) {
+                                                    showFirstScreen(partial);
+                                                }
+                                            }, null);
                                 }
                                 return files;
                             } catch (final ConsoleAllocException e) {
@@ -844,6 +989,16 @@ public class NavigationView extends RelativeLayout implements
                                 return null;
 
                             } catch (Exception ex) {
+                                //Restore the current files if the first screen was shown
+                                if (this.mFirstScreenShown) {
+                                    NavigationView.this.post(new Runnable() {
+                                        @Override
+                                        public void run() {
+                                            loadData(NavigationView.this.mFiles, false);
+                                        }
+                                    });
+                                }
+
                                 //End of loading data
                                 if (NavigationView.this.mBreadcrumb != null) {
                                     try {
@@ -924,11 +1079,45 @@ public class NavigationView extends RelativeLayout implements
                                         files, addToHistory, isNewHistory,
                                         hasChanged, searchInfo, fNewDir, scrollTo);
 
-                                // Do animation
-                                fadeEfect(false);
+                                // Do animation (if the first screen wasn't shown yet)
+                                if (!this.mFirstScreenShown) {
+                                    fadeEfect(false);
+                                }
                             }
                         }
 
+                        /**
+                         * Method that shows the first screen of files while the listing
+                         * is in progress, so big directories don't have to wait for the
+                         * whole listing. A reload of the current directory keeps showing
+                         * the current files instead. This method is invoked in the
+                         * background thread.
+                         *
+                         * @param partial The new listed files
+                         */
+                        void showFirstScreen(List<FileSystemObject> partial) {
+                            if (this.mFirstScreenShown || !hasChanged) {
+                                return;
+                            }
+                            this.mFirstScreen.addAll(partial);
+                            if (this.mFirstScreen.size() < FIRST_SCREEN_FILES) {
+                                return;
+                            }
+                            this.mFirstScreenShown = true;
+                            final List<FileSystemObject> firstScreen =
+                                    FileHelper.applyUserPreferences(
+                                            this.mFirstScreen,
+                                            NavigationView.this.mRestrictions,
+                                            NavigationView.this.mChRooted);
+                            NavigationView.this.post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    loadData(firstScreen, false);
+                                    fadeEfect(false);
+                                }
+                            });
+                        }
+
                         /**
                          * Method that performs a fade animation.
                          *
@@ -989,7 +1178,7 @@ public class NavigationView extends RelativeLayout implements
             }
 
             //Load the data
-            loadData(sortedFiles);
+            loadData(sortedFiles, !hasChanged);
             this.mFiles = sortedFiles;
             if (searchInfo != null) {
                 searchInfo.setSuccessNavigation(true);
@@ -1015,6 +1204,9 @@ public class NavigationView extends RelativeLayout implements
 
             //The current directory is now the "newDir"
             this.mCurrentDir = newDir;
+            if (this.mWatcher == null || this.mWatcher.getDirectory().compareTo(newDir) != 0) {
+                watch(newDir);
+            }
             if (this.mOnDirectoryChangedListener != null) {
                 FileSystemObject dir = FileHelper.createFileSystemObject(new File(newDir));
                 this.mOnDirectoryChangedListener.onDirectoryChanged(dir);
@@ -1035,21 +1227,23 @@ public class NavigationView extends RelativeLayout implements
     }
 
     /**
-     * Method that loads the files in the adapter.
+     * Method that loads the files in the adapter. Only the new and changed files are
+     * processed by the adapter.
      *
      * @param files The files to load in the adapter
+     * @param keepPosition If the scroll position is kept (a reload of the same directory)
      * @hide
      */
     @SuppressWarnings("unchecked")
-    private void loadData(final List<FileSystemObject> files) {
+    private void loadData(final List<FileSystemObject> files, boolean keepPosition) {
         //Notify data to adapter view
         final AdapterView<ListAdapter> view =
                 (AdapterView<ListAdapter>)findViewById(RESOURCE_CURRENT_LAYOUT);
         FileSystemObjectAdapter adapter = (FileSystemObjectAdapter)view.getAdapter();
-        adapter.clear();
-        adapter.addAll(files);
-        adapter.notifyDataSetChanged();
-        view.setSelection(0);
+        adapter.setFiles(files);
+        if (!keepPosition) {
+            view.setSelection(0);
+        }
     }
 
     /**
@@ -1325,6 +1519,16 @@ public class NavigationView extends RelativeLayout implements
         return newDir;
     }
 
+    /**
+     * Method that applies the current file time format to the shown items
+     */
+    public void applyFormat() {
+        if (this.mAdapter != null) {
+            this.mAdapter.notifyFormatChanged();
+        }
+        refresh();
+    }
+
     /**
      * Method that applies the current theme to the activity
      */
@@ -74,8 +74,10 @@ import com.cyanogenmod.filemanager.model.SearchResult;
 import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.preferences.CompressionMode;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -84,6 +86,11 @@ import java.util.List;
  */
 public final class CommandHelper {
 
+    // The maximum estimated size of the cached listings (in bytes)
+    private static final int LISTING_CACHE_SIZE = 2 * 1024 * 1024;
+
+    private static final ListingCache LISTING_CACHE = new ListingCache(LISTING_CACHE_SIZE);
+
     /**
      * A wrapper class for asynchronous operations that need restore the filesystem
      * after the operation.
@@ -95,6 +102,7 @@ public final class CommandHelper {
         boolean mUnmount = false;
         Console mConsole;
         MountPoint mMountPoint;
+        String mModifiedPath;
 
         /**
          * Constructor of <code>UnmountAsyncResultListener</code>
@@ -128,6 +136,10 @@ public final class CommandHelper {
          */
         @Override
         public void onAsyncExitCode(int exitCode) {
+            // The listings were modified while the operation was running
+            if (this.mModifiedPath != null) {
+                invalidateListingCache(this.mModifiedPath);
+            }
             if (this.mRef != null) {
                 this.mRef.onAsyncExitCode(exitCode);
             }
@@ -220,7 +232,11 @@ public final class CommandHelper {
         ChangeOwnerExecutable executable =
                 c.getExecutableFactory().
                     newCreator().createChangeOwnerExecutable(src, user, group);
-        writableExecute(context, executable, c);
+        try {
+            writableExecute(context, executable, c);
+        } finally {
+            invalidateListingCache(src);
+        }
         return executable.getResult().booleanValue();
     }
 
@@ -255,7 +271,11 @@ public final class CommandHelper {
         ChangePermissionsExecutable executable =
                 c.getExecutableFactory().newCreator().
                     createChangePermissionsExecutable(src, permissions);
-        writableExecute(context, executable, c);
+        try {
+            writableExecute(context, executable, c);
+        } finally {
+            invalidateListingCache(src);
+        }
         return executable.getResult().booleanValue();
     }
 
@@ -287,7 +307,11 @@ public final class CommandHelper {
         Console c = ensureConsole(context, console);
         CreateDirExecutable executable =
                 c.getExecutableFactory().newCreator().createCreateDirectoryExecutable(directory);
-        writableExecute(context, executable, c);
+        try {
+            writableExecute(context, executable, c);
+        } finally {
+            invalidateListingCache(directory);
+        }
         return executable.getResult().booleanValue();
     }
 
@@ -319,7 +343,11 @@ public final class CommandHelper {
         Console c = ensureConsole(context, console);
         CreateFileExecutable executable =
                 c.getExecutableFactory().newCreator().createCreateFileExecutable(file);
-        writableExecute(context, executable, c);
+        try {
+            writableExecute(context, executable, c);
+        } finally {
+            invalidateListingCache(file);
+        }
         return executable.getResult().booleanValue();
     }
 
@@ -351,7 +379,11 @@ public final class CommandHelper {
         Console c = ensureConsole(context, console);
         DeleteDirExecutable executable =
                 c.getExecutableFactory().newCreator().createDeleteDirExecutable(directory);
-        writableExecute(context, executable, c);
+        try {
+            writableExecute(context, executable, c);
+        } finally {
+            invalidateListingCache(directory);
+        }
         return executable.getResult().booleanValue();
     }
 
@@ -383,7 +415,11 @@ public final class CommandHelper {
         Console c = ensureConsole(context, console);
         DeleteFileExecutable executable =
                 c.getExecutableFactory().newCreator().createDeleteFileExecutable(file);
-        writableExecute(context, executable, c);
+        try {
+            writableExecute(context, executable, c);
+        } finally {
+            invalidateListingCache(file);
+        }
         return executable.getResult().booleanValue();
     }
 
@@ -418,6 +454,106 @@ public final class CommandHelper {
         return executable.getResult();
     }
 
+    /**
+     * Method that resolves a list of symlinks to its real file system objects. All the
+     * symlinks are resolved in a single batch.
+     *
+     * @param context The current context (needed if console == null)
+     * @param symlinks The links to be resolved
+     * @param console The console in which execute the program. <code>null</code>
+     * to attach to the default console
+     * @return List<FileSystemObject> The resolved links, in the same order that the links.
+     * A link is <code>null</code> if it couldn't be resolved
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the batch couldn't be executed
+     * @see ResolveLinkExecutable
+     * @see Console#executeBatch(List)
+     */
+    public static List<FileSystemObject> resolveSymlinks(
+            Context context, List<String> symlinks, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            InsufficientPermissionsException, CommandNotFoundException, NoSuchFileOrDirectory,
+            OperationTimeoutException, ExecutionException, InvalidCommandDefinitionException {
+        Console c = ensureConsole(context, console);
+        int cc = symlinks.size();
+        List<ResolveLinkExecutable> executables = new ArrayList<ResolveLinkExecutable>(cc);
+        for (int i = 0; i < cc; i++) {
+            executables.add(
+                    c.getExecutableFactory().newCreator().createResolveLinkExecutable(
+                            symlinks.get(i)));
+        }
+        Exception[] errors = c.executeBatch(executables);
+        List<FileSystemObject> result = new ArrayList<FileSystemObject>(cc);
+        for (int i = 0; i < cc; i++) {
+            result.add(errors[i] == null ? executables.get(i).getResult() : null);
+        }
+        return result;
+    }
+
+    /**
+     * Method that retrieves the information of a list of file system objects. The
+     * information of all the objects is retrieved in a single batch.
+     *
+     * @param context The current context (needed if console == null)
+     * @param files The file system objects
+     * @param followSymlinks It should be follow the symlinks
+     * @param console The console in which execute the program. <code>null</code>
+     * to attach to the default console
+     * @return List<FileSystemObject> The file system object references, in the same order
+     * that the files. A reference is <code>null</code> if its information couldn't be
+     * retrieved (for example, if the object doesn't exists)
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the batch couldn't be executed
+     * @see ListExecutable
+     * @see Console#executeBatch(List)
+     */
+    public static List<FileSystemObject> getFileInfos(
+            Context context, List<String> files, boolean followSymlinks, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            InsufficientPermissionsException, CommandNotFoundException, NoSuchFileOrDirectory,
+            OperationTimeoutException, ExecutionException, InvalidCommandDefinitionException {
+        Console c = ensureConsole(context, console);
+        int cc = files.size();
+        List<ListExecutable> executables = new ArrayList<ListExecutable>(cc);
+        for (int i = 0; i < cc; i++) {
+            executables.add(
+                    c.getExecutableFactory().newCreator().createFileInfoExecutable(
+                            files.get(i), followSymlinks));
+        }
+        Exception[] errors = c.executeBatch(executables);
+        List<FileSystemObject> result = new ArrayList<FileSystemObject>(cc);
+        for (int i = 0; i < cc; i++) {
+            List<FileSystemObject> info = executables.get(i).getResult();
+            boolean found = errors[i] == null && info != null && info.size() > 0;
+            result.add(found ? info.get(0) : null);
+        }
+        // Resolve symlinks prior to return the objects
+        if (followSymlinks) {
+            List<FileSystemObject> found = new ArrayList<FileSystemObject>(cc);
+            for (int i = 0; i < cc; i++) {
+                if (result.get(i) != null) {
+                    found.add(result.get(i));
+                }
+            }
+            FileHelper.resolveSymlinks(context, found);
+        }
+        return result;
+    }
+
     /**
      * Method that retrieves the information of a file system object.
      *
@@ -576,7 +712,11 @@ public final class CommandHelper {
        Console c = ensureConsole(context, console);
        LinkExecutable executable =
                c.getExecutableFactory().newCreator().createLinkExecutable(src, link);
-       writableExecute(context, executable, c);
+       try {
+           writableExecute(context, executable, c);
+       } finally {
+           invalidateListingCache(link);
+       }
        return executable.getResult().booleanValue();
    }
 
@@ -668,16 +808,94 @@ public final class CommandHelper {
             NoSuchFileOrDirectory, InsufficientPermissionsException,
             CommandNotFoundException, OperationTimeoutException,
             ExecutionException, InvalidCommandDefinitionException {
+        return listFiles(context, directory, null, console);
+    }
+
+    /**
+     * Method that lists a directory, receiving the files while they are listed.
+     *
+     * @param context The current context (needed if console == null)
+     * @param directory The path of the directory to list
+     * @param listener The listener that receives the files while they are listed.
+     * The symlinks of the partial results are not resolved
+     * @param console The console in which execute the program. <code>null</code>
+     * to attach to the default console
+     * @return List<FileSystemObject> The list of files of the directory
+     * @throws FileNotFoundException If the initial directory not exists
+     * @throws IOException If initial directory couldn't be checked
+     * @throws InvalidCommandDefinitionException If the command has an invalid definition
+     * @throws NoSuchFileOrDirectory If the file or directory was not found
+     * @throws ConsoleAllocException If the console can't be allocated
+     * @throws InsufficientPermissionsException If an operation requires elevated permissions
+     * @throws CommandNotFoundException If the command was not found
+     * @throws OperationTimeoutException If the operation exceeded the maximum time of wait
+     * @throws ExecutionException If the operation returns a invalid exit code
+     * @see ListExecutable
+     */
+    public static List<FileSystemObject> listFiles(
+            Context context, String directory,
+            ListExecutable.OnPartialListListener listener, Console console)
+            throws FileNotFoundException, IOException, ConsoleAllocException,
+            NoSuchFileOrDirectory, InsufficientPermissionsException,
+            CommandNotFoundException, OperationTimeoutException,
+            ExecutionException, InvalidCommandDefinitionException {
+        // The listing is cached (by the canonical path of the directory and the console)
+        // for a short time, while the directory isn't modified. The directories which
+        // modification time can't be read by the application are never cached
         Console c = ensureConsole(context, console);
+        final String key = FileHelper.getAbsPath(directory);
+        final long lastModified = new File(key).lastModified();
+        if (lastModified != 0) {
+            List<FileSystemObject> cached = LISTING_CACHE.get(
+                    key, directory, c, lastModified, System.currentTimeMillis());
+            if (cached != null) {
+                return cached;
+            }
+        }
+
         ListExecutable executable =
                 c.getExecutableFactory().newCreator().
                     createListExecutable(directory);
+        executable.setOnPartialListListener(listener);
+        long listed = System.currentTimeMillis();
         execute(context, executable, c);
         List<FileSystemObject> result = executable.getResult();
         FileHelper.resolveSymlinks(context, result);
+        if (lastModified != 0) {
+            LISTING_CACHE.put(key, directory, c, result, lastModified, listed);
+        }
         return result;
     }
 
+    /**
+     * Method that invalidates all the cached listings. The listings must be invalidated
+     * when a console is destroyed, because other console will not reuse them.
+     */
+    public static void clearListingCache() {
+        LISTING_CACHE.clear();
+    }
+
+    /**
+     * Method that invalidates the cached listings of the parent directories of the file
+     * system objects, and the cached listings of the file system objects and their
+     * subdirectories (if they are directories).
+     *
+     * @param paths The file system objects that were modified
+     */
+    public static void invalidateListingCache(String... paths) {
+        for (String path : paths) {
+            if (path == null) {
+                continue;
+            }
+            String key = FileHelper.getAbsPath(path);
+            LISTING_CACHE.invalidate(key);
+            String parent = new File(key).getParent();
+            if (parent != null) {
+                LISTING_CACHE.invalidate(parent);
+            }
+        }
+    }
+
     /**
      * Method that moves a file system object.
      *
@@ -707,7 +925,11 @@ public final class CommandHelper {
         Console c = ensureConsole(context, console);
         MoveExecutable executable =
                 c.getExecutableFactory().newCreator().createMoveExecutable(src, dst);
-        writableExecute(context, executable, c);
+        try {
+            writableExecute(context, executable, c);
+        } finally {
+            invalidateListingCache(src, dst);
+        }
         return executable.getResult().booleanValue();
     }
 
@@ -740,7 +962,11 @@ public final class CommandHelper {
         Console c = ensureConsole(context, console);
         CopyExecutable executable =
                 c.getExecutableFactory().newCreator().createCopyExecutable(src, dst);
-        writableExecute(context, executable, c);
+        try {
+            writableExecute(context, executable, c);
+        } finally {
+            invalidateListingCache(dst);
+        }
         return executable.getResult().booleanValue();
     }
 
@@ -1223,6 +1449,7 @@ public final class CommandHelper {
             // Configure the rest of attributes of the wrapper listener
             wrapperListener.mUnmount = unmount;
             wrapperListener.mMountPoint = executable1.getDstWritableMountPoint();
+            wrapperListener.mModifiedPath = file;
 
             //- Write
             WriteExecutable executable2 =
@@ -1289,6 +1516,7 @@ public final class CommandHelper {
             // Configure the rest of attributes of the wrapper listener
             wrapperListener.mUnmount = unmount;
             wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
+            wrapperListener.mModifiedPath = compressOutFile;
 
             // Some archive modes requires a new file. Ensure that the created
             // file doesn't exists
@@ -1361,6 +1589,7 @@ public final class CommandHelper {
             // Configure the rest of attributes of the wrapper listener
             wrapperListener.mUnmount = unmount;
             wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
+            wrapperListener.mModifiedPath = compressOutFile;
 
             //- Compress
             execute(context, executable1, c);
@@ -1435,6 +1664,7 @@ public final class CommandHelper {
             // Configure the rest of attributes of the wrapper listener
             wrapperListener.mUnmount = unmount;
             wrapperListener.mMountPoint = executable2.getDstWritableMountPoint();
+            wrapperListener.mModifiedPath = compressOutFile;
 
             //- Compress
             execute(context, executable1, c);
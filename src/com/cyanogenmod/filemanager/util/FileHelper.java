@@ -17,12 +17,12 @@
 package com.cyanogenmod.filemanager.util;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.util.Log;
 
 import com.cyanogenmod.filemanager.FileManagerApplication;
 import com.cyanogenmod.filemanager.R;
+import com.cyanogenmod.filemanager.commands.CancellationToken;
 import com.cyanogenmod.filemanager.commands.SyncResultExecutable;
 import com.cyanogenmod.filemanager.commands.shell.ResolveLinkCommand;
 import com.cyanogenmod.filemanager.console.Console;
@@ -43,11 +43,11 @@ import com.cyanogenmod.filemanager.model.RegularFile;
 import com.cyanogenmod.filemanager.model.Symlink;
 import com.cyanogenmod.filemanager.model.SystemFile;
 import com.cyanogenmod.filemanager.model.User;
+import com.cyanogenmod.filemanager.preferences.DisplayPreferencesSnapshot;
 import com.cyanogenmod.filemanager.preferences.DisplayRestrictions;
 import com.cyanogenmod.filemanager.preferences.FileManagerSettings;
 import com.cyanogenmod.filemanager.preferences.FileTimeFormatMode;
 import com.cyanogenmod.filemanager.preferences.NavigationSortMode;
-import com.cyanogenmod.filemanager.preferences.ObjectIdentifier;
 import com.cyanogenmod.filemanager.preferences.ObjectStringIdentifier;
 import com.cyanogenmod.filemanager.preferences.Preferences;
 import com.cyanogenmod.filemanager.util.MimeTypeHelper.MimeTypeCategory;
@@ -60,7 +60,8 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
@@ -530,105 +531,254 @@ public final class FileHelper {
     public static List<FileSystemObject> applyUserPreferences(
             List<FileSystemObject> files, Map<DisplayRestrictions, Object> restrictions,
             boolean noSort, boolean chRooted) {
-        //Retrieve user preferences
-        SharedPreferences prefs = Preferences.getSharedPreferences();
-        FileManagerSettings sortModePref = FileManagerSettings.SETTINGS_SORT_MODE;
-        FileManagerSettings showDirsFirstPref = FileManagerSettings.SETTINGS_SHOW_DIRS_FIRST;
-        FileManagerSettings showHiddenPref = FileManagerSettings.SETTINGS_SHOW_HIDDEN;
-        FileManagerSettings showSystemPref = FileManagerSettings.SETTINGS_SHOW_SYSTEM;
-        FileManagerSettings showSymlinksPref = FileManagerSettings.SETTINGS_SHOW_SYMLINKS;
-
-        //Remove all unnecessary files (no required by the user)
+        return applyUserPreferences(
+                files, restrictions, noSort, chRooted, DisplayPreferencesSnapshot.getInstance());
+    }
+
+    /**
+     * Method that applies the configuration modes to the listed files
+     * (sort mode, hidden files, ...).<br/>
+     * <br/>
+     * The files are filtered in a single pass that compacts the list in place, and are
+     * sorted by keys that are computed once per file.
+     *
+     * @param files The listed files
+     * @param restrictions The restrictions to apply when displaying files
+     * @param noSort If sort must be applied
+     * @param chRooted If app run with no privileges
+     * @param prefs The snapshot of the display preferences
+     * @return List<FileSystemObject> The applied mode listed files
+     */
+    public static List<FileSystemObject> applyUserPreferences(
+            List<FileSystemObject> files, Map<DisplayRestrictions, Object> restrictions,
+            boolean noSort, boolean chRooted, DisplayPreferencesSnapshot prefs) {
+        final boolean showHidden = prefs.isShowHidden() && !chRooted;
+        final boolean showSystem = prefs.isShowSystem() && !chRooted;
+        final boolean showSymlinks = prefs.isShowSymlinks() && !chRooted;
+
+        //Remove all unnecessary files (no required by the user). The displayed files
+        //are moved to the head of the list, and the rest is removed at once
         int cc = files.size();
-        for (int i = cc - 1; i >= 0; i--) {
+        int displayed = 0;
+        for (int i = 0; i < cc; i++) {
             FileSystemObject file = files.get(i);
 
             //Hidden files
-            if (!prefs.getBoolean(
-                    showHiddenPref.getId(),
-                    ((Boolean)showHiddenPref.getDefaultValue()).booleanValue()) || chRooted) {
-                if (file.isHidden()) {
-                    files.remove(i);
-                    continue;
-                }
+            if (!showHidden && file.isHidden()) {
+                continue;
             }
 
             //System files
-            if (!prefs.getBoolean(
-                    showSystemPref.getId(),
-                    ((Boolean)showSystemPref.getDefaultValue()).booleanValue()) || chRooted) {
-                if (file instanceof SystemFile) {
-                    files.remove(i);
-                    continue;
-                }
+            if (!showSystem && file instanceof SystemFile) {
+                continue;
             }
 
             //Symlinks files
-            if (!prefs.getBoolean(
-                    showSymlinksPref.getId(),
-                    ((Boolean)showSymlinksPref.getDefaultValue()).booleanValue()) || chRooted) {
-                if (file instanceof Symlink) {
-                    files.remove(i);
-                    continue;
-                }
+            if (!showSymlinks && file instanceof Symlink) {
+                continue;
             }
 
             // Restrictions (only apply to files)
             if (restrictions != null) {
                 if (!isDirectory(file)) {
                     if (!isDisplayAllowed(file, restrictions)) {
-                        files.remove(i);
                         continue;
                     }
                 }
             }
+
+            if (displayed != i) {
+                files.set(displayed, file);
+            }
+            displayed++;
+        }
+        if (displayed < cc) {
+            files.subList(displayed, cc).clear();
         }
 
         //Apply sort mode
         if (!noSort) {
-            final boolean showDirsFirst =
-                    prefs.getBoolean(
-                            showDirsFirstPref.getId(),
-                        ((Boolean)showDirsFirstPref.getDefaultValue()).booleanValue());
-            final NavigationSortMode sortMode =
-                    NavigationSortMode.fromId(
-                            prefs.getInt(sortModePref.getId(),
-                            ((ObjectIdentifier)sortModePref.getDefaultValue()).getId()));
-            Collections.sort(files, new Comparator<FileSystemObject>() {
-                @Override
-                public int compare(FileSystemObject lhs, FileSystemObject rhs) {
-                    //Parent directory always goes first
-                    boolean isLhsParentDirectory = lhs instanceof ParentDirectory;
-                    boolean isRhsParentDirectory = rhs instanceof ParentDirectory;
-                    if (isLhsParentDirectory || isRhsParentDirectory) {
-                        if (isLhsParentDirectory && isRhsParentDirectory) {
-                            return 0;
-                        }
-                        return (isLhsParentDirectory) ? -1 : 1;
-                    }
+            cc = files.size();
+            SortKey[] keys = new SortKey[cc];
+            for (int i = 0; i < cc; i++) {
+                keys[i] = new SortKey(files.get(i), prefs);
+            }
+            Arrays.sort(keys, new SortKeyComparator(prefs.getSortMode()));
+            for (int i = 0; i < cc; i++) {
+                files.set(i, keys[i].mFso);
+            }
+        }
 
-                    //Need to sort directory first?
-                    if (showDirsFirst) {
-                        boolean isLhsDirectory = FileHelper.isDirectory(lhs);
-                        boolean isRhsDirectory = FileHelper.isDirectory(rhs);
-                        if (isLhsDirectory || isRhsDirectory) {
-                            if (isLhsDirectory && isRhsDirectory) {
-                                //Apply sort mode
-                                return FileHelper.doCompare(lhs, rhs, sortMode);
-                            }
-                            return (isLhsDirectory) ? -1 : 1;
-                        }
-                    }
+        //Return the files
+        return files;
+    }
 
-                    //Apply sort mode
-                    return FileHelper.doCompare(lhs, rhs, sortMode);
-                }
+    /**
+     * Method that returns the comparator that sorts the listed files according to the
+     * user preferences (sort mode and directories first). The parent directory always
+     * goes first.
+     *
+     * @return Comparator<FileSystemObject> The comparator of the listed files
+     */
+    public static Comparator<FileSystemObject> getSortComparator() {
+        final DisplayPreferencesSnapshot prefs = DisplayPreferencesSnapshot.getInstance();
+        final SortKeyComparator comparator = new SortKeyComparator(prefs.getSortMode());
+        return new Comparator<FileSystemObject>() {
+            @Override
+            public int compare(FileSystemObject lhs, FileSystemObject rhs) {
+                return comparator.compare(new SortKey(lhs, prefs), new SortKey(rhs, prefs));
+            }
+        };
+    }
 
-            });
+    /**
+     * Method that returns the position of a file system object in a list sorted by a
+     * comparator. The position is searched with a binary search, and the list is only
+     * scanned if it isn't sorted by the comparator.
+     *
+     * @param files The sorted list of file system objects
+     * @param fso The file system object
+     * @param comparator The comparator that sorts the list
+     * @return int The position of the file system object, or -1 if it isn't in the list
+     */
+    public static int indexOf(List<FileSystemObject> files, FileSystemObject fso,
+            Comparator<FileSystemObject> comparator) {
+        // The first item that isn't sorted before the file system object
+        int low = 0;
+        int high = files.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(files.get(mid), fso) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        int cc = files.size();
+        for (int i = low; i < cc && comparator.compare(files.get(i), fso) == 0; i++) {
+            if (fso.equals(files.get(i))) {
+                return i;
+            }
         }
 
-        //Return the files
-        return files;
+        // The list isn't sorted by the comparator (the preferences changed)
+        for (int i = 0; i < cc; i++) {
+            if (fso.equals(files.get(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The sort key of a listed file. The values that are compared when the files are
+     * sorted are computed only once per file.
+     */
+    private static final class SortKey {
+        // The group of the file: the parent directory, the directories (if they are
+        // sorted first) and the rest of files
+        final int mGroup;
+        final String mName;
+        final long mTime;
+        final FileSystemObject mFso;
+
+        /**
+         * Constructor of <code>SortKey</code>.
+         *
+         * @param fso The file system object
+         * @param prefs The snapshot of the display preferences
+         */
+        SortKey(FileSystemObject fso, DisplayPreferencesSnapshot prefs) {
+            super();
+            this.mFso = fso;
+            if (fso instanceof ParentDirectory) {
+                this.mGroup = 0;
+            } else if (prefs.isShowDirsFirst() && isDirectory(fso)) {
+                this.mGroup = 1;
+            } else {
+                this.mGroup = 2;
+            }
+
+            // The parent directory is not compared by the sort mode
+            NavigationSortMode mode = prefs.getSortMode();
+            if (this.mGroup == 0) {
+                this.mName = null;
+                this.mTime = 0;
+            } else if (mode == NavigationSortMode.NAME_ASC
+                    || mode == NavigationSortMode.NAME_DESC) {
+                this.mName =
+                        prefs.isCaseSensitiveSort() ? fso.getName() : foldCase(fso.getName());
+                this.mTime = 0;
+            } else if (mode == NavigationSortMode.DATE_ASC
+                    || mode == NavigationSortMode.DATE_DESC) {
+                this.mName = null;
+                this.mTime = fso.getLastModifiedTime().getTime();
+            } else {
+                this.mName = fso.getFullPath();
+                this.mTime = 0;
+            }
+        }
+    }
+
+    /**
+     * A comparator of the sort keys of the listed files, that applies a sort mode.
+     */
+    private static final class SortKeyComparator implements Comparator<SortKey> {
+        private final NavigationSortMode mMode;
+
+        /**
+         * Constructor of <code>SortKeyComparator</code>.
+         *
+         * @param mode The sort mode
+         */
+        SortKeyComparator(NavigationSortMode mode) {
+            super();
+            this.mMode = mode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int compare(SortKey lhs, SortKey rhs) {
+            //Parent directory always goes first, and directories first (if needed)
+            if (lhs.mGroup != rhs.mGroup) {
+                return (lhs.mGroup < rhs.mGroup) ? -1 : 1;
+            }
+            if (lhs.mGroup == 0) {
+                return 0;
+            }
+
+            //Apply sort mode
+            if (this.mMode == NavigationSortMode.NAME_DESC) {
+                return lhs.mName.compareTo(rhs.mName) * -1;
+            }
+            if (this.mMode == NavigationSortMode.DATE_ASC) {
+                return (lhs.mTime < rhs.mTime) ? -1 : ((lhs.mTime == rhs.mTime) ? 0 : 1);
+            }
+            if (this.mMode == NavigationSortMode.DATE_DESC) {
+                return (lhs.mTime < rhs.mTime) ? 1 : ((lhs.mTime == rhs.mTime) ? 0 : -1);
+            }
+
+            //Name (ascending) or full path
+            return lhs.mName.compareTo(rhs.mName);
+        }
+    }
+
+    /**
+     * Method that folds the case of a name, so the comparison of the folded names is
+     * the same as the case insensitive comparison of the names.
+     *
+     * @param name The name
+     * @return String The folded name
+     * @see String#compareToIgnoreCase(String)
+     */
+    static String foldCase(String name) {
+        char[] chars = name.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
     }
 
     /**
@@ -710,23 +860,35 @@ public final class FileHelper {
     /**
      * Method that resolve the symbolic links of the list of files passed as argument.<br />
      * This method invokes the {@link ResolveLinkCommand} in those files that hasn't a valid
-     * symlink reference
+     * symlink reference. All the symlinks are resolved in a single batch
      *
      * @param context The current context
      * @param files The listed files
      */
     public static void resolveSymlinks(Context context, List<FileSystemObject> files) {
+        List<Symlink> symlinks = new ArrayList<Symlink>();
+        List<String> paths = new ArrayList<String>();
         int cc = files.size();
         for (int i = 0; i < cc; i++) {
             FileSystemObject fso = files.get(i);
             if (fso instanceof Symlink && ((Symlink)fso).getLinkRef() == null) {
-                try {
-                    FileSystemObject symlink =
-                            CommandHelper.resolveSymlink(context, fso.getFullPath(), null);
-                    ((Symlink)fso).setLinkRef(symlink);
-                } catch (Throwable ex) {/**NON BLOCK**/}
+                symlinks.add((Symlink)fso);
+                paths.add(fso.getFullPath());
             }
         }
+        if (symlinks.isEmpty()) {
+            return;
+        }
+        try {
+            List<FileSystemObject> refs = CommandHelper.resolveSymlinks(context, paths, null);
+            cc = symlinks.size();
+            for (int i = 0; i < cc; i++) {
+                FileSystemObject ref = refs.get(i);
+                if (ref != null) {
+                    symlinks.get(i).setLinkRef(ref);
+                }
+            }
+        } catch (Throwable ex) {/**NON BLOCK**/}
     }
 
     /**
@@ -745,12 +907,7 @@ public final class FileHelper {
             final NavigationSortMode mode) {
 
         // Retrieve the user preference for case sensitive sort
-        boolean caseSensitive =
-                Preferences.getSharedPreferences().
-                    getBoolean(
-                        FileManagerSettings.SETTINGS_CASE_SENSITIVE_SORT.getId(),
-                        ((Boolean)FileManagerSettings.SETTINGS_CASE_SENSITIVE_SORT.
-                                getDefaultValue()).booleanValue());
+        boolean caseSensitive = DisplayPreferencesSnapshot.getInstance().isCaseSensitiveSort();
 
         //Name (ascending)
         if (mode.getId() == NavigationSortMode.NAME_ASC.getId()) {
@@ -991,6 +1148,24 @@ public final class FileHelper {
      */
     public static boolean copyRecursive(
             final File src, final File dst, int bufferSize) throws ExecutionException {
+        return copyRecursive(src, dst, bufferSize, null);
+    }
+
+    /**
+     * Method that copies recursively to the destination
+     *
+     * @param src The source file or folder
+     * @param dst The destination file or folder
+     * @param bufferSize The buffer size for the operation
+     * @param token The cancellation token of the operation (can be <code>null</code>)
+     * @return boolean If the operation complete successfully
+     * @throws ExecutionException If a problem was detected in the operation or if the
+     * operation was cancelled
+     */
+    public static boolean copyRecursive(
+            final File src, final File dst, int bufferSize, CancellationToken token)
+            throws ExecutionException {
+        checkCancelled(token);
         if (src.isDirectory()) {
             // Create the directory
             if (dst.exists() && !dst.isDirectory()) {
@@ -1007,14 +1182,16 @@ public final class FileHelper {
             File[] files = src.listFiles();
             if (files != null) {
                 for (int i = 0; i < files.length; i++) {
-                    if (!copyRecursive(files[i], new File(dst, files[i].getName()), bufferSize)) {
+                    if (!copyRecursive(
+                            files[i], new File(dst, files[i].getName()), bufferSize, token)) {
                         return false;
                     }
                 }
             }
         } else {
             // Copy the directory
-            if (!bufferedCopy(src, dst,bufferSize)) {
+            if (!bufferedCopy(src, dst, bufferSize, token)) {
+                checkCancelled(token);
                 return false;
             }
         }
@@ -1030,25 +1207,53 @@ public final class FileHelper {
      * @return boolean If the operation complete successfully
      */
     public static boolean bufferedCopy(final File src, final File dst, int bufferSize) {
+        return bufferedCopy(src, dst, bufferSize, null);
+    }
+
+    /**
+     * Method that copies a file
+     *
+     * @param src The source file
+     * @param dst The destination file
+     * @param bufferSize The buffer size for the operation
+     * @param token The cancellation token of the operation (can be <code>null</code>)
+     * @return boolean If the operation complete successfully. <code>false</code> if the
+     * operation was cancelled
+     */
+    public static boolean bufferedCopy(
+            final File src, final File dst, int bufferSize, CancellationToken token) {
         BufferedInputStream bis = null;
         BufferedOutputStream bos = null;
         try {
             bis = new BufferedInputStream(new FileInputStream(src), bufferSize);
             bos = new BufferedOutputStream(new FileOutputStream(dst), bufferSize);
+            if (token != null) {
+                // The source is closed if the operation is cancelled while reading
+                token.register(bis);
+            }
             int read = 0;
             byte[] data = new byte[bufferSize];
             while ((read = bis.read(data, 0, bufferSize)) != -1) {
+                if (token != null && token.isCancelled()) {
+                    return false;
+                }
                 bos.write(data, 0, read);
             }
             return true;
 
         } catch (Throwable e) {
+            if (token != null && token.isCancelled()) {
+                return false;
+            }
             Log.e(TAG,
                     String.format(TAG, "Failed to copy from %s to %d", src, dst), e); //$NON-NLS-1$
             return false;
         } finally {
             try {
                 if (bis != null) {
+                    if (token != null) {
+                        token.unregister(bis);
+                    }
                     bis.close();
                 }
             } catch (Throwable e) {/**NON BLOCK**/}
@@ -1067,11 +1272,26 @@ public final class FileHelper {
      * @return boolean If the folder was deleted
      */
     public static boolean deleteFolder(File folder) {
+        return deleteFolder(folder, null);
+    }
+
+    /**
+     * Method that deletes a folder recursively
+     *
+     * @param folder The folder to delete
+     * @param token The cancellation token of the operation (can be <code>null</code>)
+     * @return boolean If the folder was deleted. <code>false</code> if the operation
+     * was cancelled
+     */
+    public static boolean deleteFolder(File folder, CancellationToken token) {
         File[] files = folder.listFiles();
         if (files != null) {
             for (int i = 0; i < files.length; i++) {
+                if (token != null && token.isCancelled()) {
+                    return false;
+                }
                 if (files[i].isDirectory()) {
-                    if (!deleteFolder(files[i])) {
+                    if (!deleteFolder(files[i], token)) {
                         return false;
                     }
                 } else {
@@ -1084,6 +1304,18 @@ public final class FileHelper {
         return folder.delete();
     }
 
+    /**
+     * Method that throws an {@link ExecutionException} if the operation was cancelled.
+     *
+     * @param token The cancellation token of the operation (can be <code>null</code>)
+     * @throws ExecutionException If the operation was cancelled
+     */
+    private static void checkCancelled(CancellationToken token) throws ExecutionException {
+        if (token != null && token.isCancelled()) {
+            throw new ExecutionException("the operation was cancelled"); //$NON-NLS-1$
+        }
+    }
+
     /**
      * Method that returns the canonical/absolute path of the path.<br/>
      * This method performs path resolution
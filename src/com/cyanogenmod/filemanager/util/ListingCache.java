@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A LRU cache of the listings of the directories, keyed by the path of the directory
+ * returned by {@link FileHelper#getAbsPath(String)} (the canonical path, or the absolute
+ * path if it can't be resolved).<br/>
+ * <br/>
+ * A listing is only returned to the console that listed it, because the consoles of
+ * the access modes (and the java consoles) don't see the same files.<br/>
+ * <br/>
+ * Every listing is validated by the modification time of its directory, that changes
+ * when a file is created, renamed or deleted in the directory. A listing isn't cached
+ * if its directory was modified just before it was listed, because a change in the
+ * same tick of the clock of the filesystem wouldn't change the modification time. The
+ * modification time of the directory doesn't change when a file is rewritten in place
+ * (or its permissions change), so the listings also expire after a short time. The
+ * operations of the application and the watcher of the current directory invalidate
+ * the listings that they modify, and the cache is bounded by the estimated size of the
+ * listings.
+ */
+final class ListingCache {
+
+    // The granularity of the modification time of the filesystems (FAT has 2 seconds)
+    private static final long MTIME_GRANULARITY = 2000L;
+
+    // The maximum age of a listing (in milliseconds). The changes inside the files of a
+    // directory that isn't watched are shown after this time at most
+    static final long MAX_AGE = 10000L;
+
+    // The estimated size of a file system object, without its name (in bytes)
+    private static final int FSO_SIZE = 160;
+
+    /**
+     * A cached listing.
+     */
+    private static final class Entry {
+        final String mDirectory;
+        final Console mConsole;
+        final List<FileSystemObject> mFiles;
+        final long mLastModified;
+        final long mListed;
+        final int mSize;
+
+        /**
+         * Constructor of <code>Entry</code>.
+         *
+         * @param directory The path of the directory, as it was listed
+         * @param console The console that listed the directory
+         * @param files The listing
+         * @param lastModified The modification time of the directory
+         * @param listed The time when the directory was listed
+         * @param size The estimated size of the listing (in bytes)
+         */
+        Entry(String directory, Console console, List<FileSystemObject> files,
+                long lastModified, long listed, int size) {
+            super();
+            this.mDirectory = directory;
+            this.mConsole = console;
+            this.mFiles = files;
+            this.mLastModified = lastModified;
+            this.mListed = listed;
+            this.mSize = size;
+        }
+    }
+
+    private final int mMaxSize;
+    private final LinkedHashMap<String, Entry> mEntries;
+    private int mSize;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * Constructor of <code>ListingCache</code>.
+     *
+     * @param maxSize The maximum estimated size of the listings (in bytes)
+     */
+    ListingCache(int maxSize) {
+        super();
+        this.mMaxSize = maxSize;
+        this.mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
+
+    /**
+     * Method that returns the cached listing of a directory, if it is still valid. The
+     * files of a listing have the path of the directory as it was listed, so a listing
+     * is only returned for the same path.
+     *
+     * @param key The key of the directory
+     * @param directory The path of the directory
+     * @param console The console that lists the directory
+     * @param lastModified The current modification time of the directory
+     * @param now The current time
+     * @return List<FileSystemObject> A copy of the listing, or <code>null</code> if the
+     * directory isn't cached for the console, was modified or the listing expired
+     */
+    synchronized List<FileSystemObject> get(
+            String key, String directory, Console console, long lastModified, long now) {
+        Entry entry = this.mEntries.get(key);
+        if (entry == null || entry.mLastModified != lastModified || lastModified == 0
+                || now < entry.mListed || now - entry.mListed >= MAX_AGE
+                || !entry.mDirectory.equals(directory) || entry.mConsole != console) {
+            if (entry != null) {
+                remove(key);
+            }
+            this.mMisses++;
+            return null;
+        }
+        this.mHits++;
+        return new ArrayList<FileSystemObject>(entry.mFiles);
+    }
+
+    /**
+     * Method that caches the listing of a directory.
+     *
+     * @param key The key of the directory
+     * @param directory The path of the directory
+     * @param console The console that listed the directory
+     * @param files The listing
+     * @param lastModified The modification time of the directory before it was listed
+     * @param listed The time when the directory was listed
+     * @return boolean If the listing was cached
+     */
+    synchronized boolean put(String key, String directory, Console console,
+            List<FileSystemObject> files, long lastModified, long listed) {
+        remove(key);
+        if (lastModified == 0 || listed - lastModified < MTIME_GRANULARITY) {
+            return false;
+        }
+        int size = estimateSize(files);
+        if (size > this.mMaxSize) {
+            return false;
+        }
+        this.mEntries.put(key, new Entry(directory, console,
+                new ArrayList<FileSystemObject>(files), lastModified, listed, size));
+        this.mSize += size;
+
+        // Evict the least recently used listings
+        Iterator<Map.Entry<String, Entry>> it = this.mEntries.entrySet().iterator();
+        while (this.mSize > this.mMaxSize && it.hasNext()) {
+            this.mSize -= it.next().getValue().mSize;
+            it.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Method that invalidates the listing of a directory and the listings of its
+     * subdirectories.
+     *
+     * @param key The key of the directory
+     */
+    synchronized void invalidate(String key) {
+        remove(key);
+        String prefix = key.endsWith(File.separator) ? key : key + File.separator;
+        Iterator<Map.Entry<String, Entry>> it = this.mEntries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> e = it.next();
+            if (e.getKey().startsWith(prefix)) {
+                this.mSize -= e.getValue().mSize;
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Method that invalidates all the listings.
+     */
+    synchronized void clear() {
+        this.mEntries.clear();
+        this.mSize = 0;
+    }
+
+    /**
+     * Method that returns the number of requests served by the cache.
+     *
+     * @return long The number of hits
+     */
+    synchronized long getHits() {
+        return this.mHits;
+    }
+
+    /**
+     * Method that returns the number of requests not served by the cache.
+     *
+     * @return long The number of misses
+     */
+    synchronized long getMisses() {
+        return this.mMisses;
+    }
+
+    /**
+     * Method that returns the estimated size of the cached listings.
+     *
+     * @return int The estimated size (in bytes)
+     */
+    synchronized int getSize() {
+        return this.mSize;
+    }
+
+    /**
+     * Method that removes a listing.
+     *
+     * @param key The key of the directory
+     */
+    private void remove(String key) {
+        Entry entry = this.mEntries.remove(key);
+        if (entry != null) {
+            this.mSize -= entry.mSize;
+        }
+    }
+
+    /**
+     * Method that estimates the size of a listing.
+     *
+     * @param files The listing
+     * @return int The estimated size (in bytes)
+     */
+    private static int estimateSize(List<FileSystemObject> files) {
+        long size = 0;
+        int cc = files.size();
+        for (int i = 0; i < cc; i++) {
+            String name = files.get(i).getName();
+            size += FSO_SIZE + (name != null ? name.length() * 2 : 0);
+        }
+        return (int)Math.min(size, Integer.MAX_VALUE);
+    }
+}
@@ -16,6 +16,8 @@
 
 package com.cyanogenmod.filemanager.util;
 
+import android.util.SparseArray;
+
 import com.cyanogenmod.filemanager.model.BlockDevice;
 import com.cyanogenmod.filemanager.model.CharacterDevice;
 import com.cyanogenmod.filemanager.model.Directory;
@@ -35,6 +37,7 @@ import com.cyanogenmod.filemanager.model.User;
 import com.cyanogenmod.filemanager.model.UserPermission;
 
 import java.io.File;
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.Date;
 
@@ -64,6 +67,29 @@ public final class ParseHelper {
     }
     private static int TERSE_STAT_STRUCT_LENGTH = TERSE_STAT_STRUCT.values().length;
 
+    // The structure of a machine listing record (the filename is the last field, and
+    // the record is terminated by a NUL char)
+    private static enum MACHINE_LIST_STRUCT {
+        TYPE,
+        MODE,
+        SIZE,
+        UID,
+        GID,
+        ACCESS,
+        MODIFY,
+        CHANGE,
+        FILENAME
+    }
+
+    // The per-thread scratch state of the terse stat parser
+    private static final ThreadLocal<TerseStatParser> sTerseStatParser =
+            new ThreadLocal<TerseStatParser>() {
+        @Override
+        protected TerseStatParser initialValue() {
+            return new TerseStatParser();
+        }
+    };
+
     // The structure of raw mode in hex format (defined with octal values)
     // http://unix.stackexchange.com/questions/39716/what-is-raw-mode-in-hex-from-stat-output
     private static enum RMIHF {
@@ -134,74 +160,115 @@ public final class ParseHelper {
      * @{link "http://www.gnu.org/software/coreutils/manual/html_node/stat-invocation.html"}
      */
     public static FileSystemObject parseStatOutput(final String output) throws ParseException {
+        return parseStatOutput(output, 0, output.length());
+    }
+
+    /**
+     * Method that parses a line of the output of a terse stat command. The line is
+     * read in place from a window of a buffer, so the buffer doesn't need to be split
+     * in lines first.
+     *
+     * @param src The buffer with the output of a stat command
+     * @param start The start position of the line (inclusive)
+     * @param end The end position of the line (exclusive)
+     * @return FileSystemObject The file system object reference
+     * @throws ParseException If the line can't be parsed
+     * @see #parseStatOutput(String)
+     */
+    public static FileSystemObject parseStatOutput(
+            final CharSequence src, final int start, final int end) throws ParseException {
 
         try {
-            // Split the terse line
-            String[] data = output.split(" "); //$NON-NLS-1$
-            boolean valid = true;
-            try {
-                getTerseStatInt(data, TERSE_STAT_STRUCT.IOBLOCK);
-            } catch (Exception e) {
-                valid = false;
-            }
-            if (valid && output.startsWith("stat:")) { //$NON-NLS-1$
+            if (startsWith(src, start, end, "stat:")) { //$NON-NLS-1$
                 throw new ParseException(
-                        String.format("Stat failed: %s", output), 0); //$NON-NLS-1$
+                        String.format("Stat failed: %s", //$NON-NLS-1$
+                                src.subSequence(start, end)), 0);
             }
-            if (valid && data.length < TERSE_STAT_STRUCT.values().length) {
+
+            // Locate the fields of the terse line. The filename can contains spaces,
+            // so the fields are located from the end of the line
+            TerseStatParser parser = sTerseStatParser.get();
+            if (!parser.tokenize(src, start, end)) {
                 throw new ParseException(
-                        String.format("Not enought data: %s", output), 0); //$NON-NLS-1$
+                        String.format("Not enought data: %s", //$NON-NLS-1$
+                                src.subSequence(start, end)), 0);
             }
 
             // Parse the line
-            String raw = getTerseRawPermissions(data);
-            char type = raw.charAt(0);
-            Permissions permissions = parsePermission(raw);
-            Date lastAccessedTime = getTerseStatDate(data, TERSE_STAT_STRUCT.ACCESS);
-            Date lastModifiedTime = getTerseStatDate(data, TERSE_STAT_STRUCT.MODIFY);
-            Date lastChangedTime = getTerseStatDate(data, TERSE_STAT_STRUCT.CHANGE);
-            int uid = getTerseStatInt(data, TERSE_STAT_STRUCT.UID);
-            User user = new User(uid, AIDHelper.getNullSafeName(uid));
-            int gid = getTerseStatInt(data, TERSE_STAT_STRUCT.GID);
-            Group group = new Group(gid, AIDHelper.getNullSafeName(gid));
-            long size = getTerseStatLong(data, TERSE_STAT_STRUCT.SIZE);
-            File file = new File(getTerseStatName(data));
-            String name = file.getName();
-            if (name.trim().length() == 0) {
-                name = FileHelper.ROOT_DIRECTORY;
-            }
-            String parentDir = FileHelper.getParentDir(file);
+            int rawInt = (int)parser.getLong(src, TERSE_STAT_STRUCT.RAW_MODE.ordinal(), 16);
+            return createStatObject(
+                    parser.getName(src),
+                    getTerseType(rawInt),
+                    parser.getPermissions(rawInt),
+                    parser.getUser(
+                            (int)parser.getLong(src, TERSE_STAT_STRUCT.UID.ordinal(), 10)),
+                    parser.getGroup(
+                            (int)parser.getLong(src, TERSE_STAT_STRUCT.GID.ordinal(), 10)),
+                    parser.getLong(src, TERSE_STAT_STRUCT.SIZE.ordinal(), 10),
+                    parser.getLong(src, TERSE_STAT_STRUCT.ACCESS.ordinal(), 10),
+                    parser.getLong(src, TERSE_STAT_STRUCT.MODIFY.ordinal(), 10),
+                    parser.getLong(src, TERSE_STAT_STRUCT.CHANGE.ordinal(), 10));
 
-            // Create the file system object
-            FileSystemObject fso =
-                    createObject(
-                        parentDir, type, name, null, user, group, permissions,
-                        size, lastAccessedTime, lastModifiedTime, lastChangedTime);
-
-            // Check if its a symlink
-            if (type == Symlink.UNIX_ID) {
-                // Extract the ref info
-                Symlink symlink = (Symlink)fso;
-                File refFile = file.getCanonicalFile();
-                char refType = refFile.isDirectory() ? Directory.UNIX_ID : RegularFile.UNIX_ID;
-                String refName = refFile.getName();
-                String refParentDir = FileHelper.getParentDir(refFile);
-                Date refLastModifiedTime = new Date(refFile.lastModified());
-                long refSize = refFile.length();
-
-                // Create the ref file system object
-                FileSystemObject refFso =
-                        createObject(
-                            refParentDir, refType, refName, null, null, null, null,
-                            refSize, null, refLastModifiedTime, null);
-
-                // Update the symlink ref
-                symlink.setLink(refParentDir);
-                symlink.setLinkRef(refFso);
+        } catch (Exception ex) {
+            // Notify the exception when parsing the data
+            throw new ParseException(ex.getMessage(), 0);
+        }
+    }
+
+    /**
+     * Method that parses a record of the machine listing format. A record has a fixed
+     * field order and is terminated by a <code>NUL</code> char (the terminator must not
+     * be included in the window), so the filename can contains any char:<br/>
+     * <br/>
+     * <code/>
+     *  machine format = "%y %m %s %U %G %A@ %T@ %C@ %p\0":
+     *      type (f, d, l, b, c, p, s)
+     *      permission bits (OCT)
+     *      size (bytes)
+     *      Uid
+     *      Gid
+     *      Access (Epoch seconds, with optional fraction)
+     *      Modify (Epoch seconds, with optional fraction)
+     *      Change (Epoch seconds, with optional fraction)
+     *      filename
+     * </code>
+     *
+     * @param src The buffer with the output of the machine listing
+     * @param start The start position of the record (inclusive)
+     * @param end The end position of the record (exclusive)
+     * @return FileSystemObject The file system object reference
+     * @throws ParseException If the record can't be parsed
+     * @{link "http://www.gnu.org/software/findutils/manual/html_mono/find.html"}
+     */
+    public static FileSystemObject parseMachineListOutput(
+            final CharSequence src, final int start, final int end) throws ParseException {
+
+        try {
+            // The fields are located from the start of the record. The rest of
+            // the record is the filename
+            TerseStatParser parser = sTerseStatParser.get();
+            if (!parser.tokenizeMachineList(src, start, end)) {
+                throw new ParseException(
+                        String.format("Not enought data: %s", //$NON-NLS-1$
+                                src.subSequence(start, end)), 0);
             }
 
-            // Parsed
-            return fso;
+            // Parse the record
+            char type = getMachineListType(
+                    src.charAt(parser.mStart[MACHINE_LIST_STRUCT.TYPE.ordinal()]));
+            int mode = (int)parser.getLong(src, MACHINE_LIST_STRUCT.MODE.ordinal(), 8);
+            return createStatObject(
+                    parser.getName(src),
+                    type,
+                    parser.getPermissions(mode),
+                    parser.getUser(
+                            (int)parser.getLong(src, MACHINE_LIST_STRUCT.UID.ordinal(), 10)),
+                    parser.getGroup(
+                            (int)parser.getLong(src, MACHINE_LIST_STRUCT.GID.ordinal(), 10)),
+                    parser.getLong(src, MACHINE_LIST_STRUCT.SIZE.ordinal(), 10),
+                    parser.getLong(src, MACHINE_LIST_STRUCT.ACCESS.ordinal(), 10),
+                    parser.getLong(src, MACHINE_LIST_STRUCT.MODIFY.ordinal(), 10),
+                    parser.getLong(src, MACHINE_LIST_STRUCT.CHANGE.ordinal(), 10));
 
         } catch (Exception ex) {
             // Notify the exception when parsing the data
@@ -209,6 +276,70 @@ public final class ParseHelper {
         }
     }
 
+    /**
+     * Method that creates the file system object of a parsed stat line or machine
+     * listing record.
+     *
+     * @param path The full path of the object
+     * @param type The raw char type of the file system object
+     * @param permissions The permissions of the object
+     * @param user The user proprietary of the object
+     * @param group The group proprietary of the object
+     * @param size The size in bytes of the object
+     * @param atime The last time that the object was accessed (in seconds)
+     * @param mtime The last time that the object was modified (in seconds)
+     * @param ctime The last time that the object was changed (in seconds)
+     * @return FileSystemObject The file system object reference
+     * @throws ParseException If type couldn't be translate into a reference
+     * file system object
+     * @throws IOException If the reference of a symlink couldn't be resolved
+     */
+    private static FileSystemObject createStatObject(
+            String path, char type, Permissions permissions, User user, Group group,
+            long size, long atime, long mtime, long ctime)
+            throws ParseException, IOException {
+        Date lastAccessedTime = new Date(atime * 1000L);
+        Date lastModifiedTime =
+                mtime == atime ? lastAccessedTime : new Date(mtime * 1000L);
+        Date lastChangedTime =
+                ctime == mtime ? lastModifiedTime : new Date(ctime * 1000L);
+        File file = new File(path);
+        String name = file.getName();
+        if (name.trim().length() == 0) {
+            name = FileHelper.ROOT_DIRECTORY;
+        }
+        String parentDir = FileHelper.getParentDir(file);
+
+        // Create the file system object
+        FileSystemObject fso =
+                createObject(
+                    parentDir, type, name, null, user, group, permissions,
+                    size, lastAccessedTime, lastModifiedTime, lastChangedTime);
+
+        // Check if its a symlink
+        if (type == Symlink.UNIX_ID) {
+            // Extract the ref info
+            Symlink symlink = (Symlink)fso;
+            File refFile = file.getCanonicalFile();
+            char refType = refFile.isDirectory() ? Directory.UNIX_ID : RegularFile.UNIX_ID;
+            String refName = refFile.getName();
+            String refParentDir = FileHelper.getParentDir(refFile);
+            Date refLastModifiedTime = new Date(refFile.lastModified());
+            long refSize = refFile.length();
+
+            // Create the ref file system object
+            FileSystemObject refFso =
+                    createObject(
+                        refParentDir, refType, refName, null, null, null, null,
+                        refSize, null, refLastModifiedTime, null);
+
+            // Update the symlink ref
+            symlink.setLink(refParentDir);
+            symlink.setLinkRef(refFso);
+        }
+        return fso;
+    }
+
     /**
      * Method that parses and extracts the permissions from a unix string format.
      *
@@ -415,90 +546,90 @@ public final class ParseHelper {
     }
 
     /**
-     * Method that extract a date from a terse stat ouput.
+     * Method that checks if a window of a buffer starts with a prefix.
      *
-     * @param stat The terse stat data
-     * @param e The position of the date
-     * @return Date The date
+     * @param src The buffer
+     * @param start The start position of the window (inclusive)
+     * @param end The end position of the window (exclusive)
+     * @param prefix The prefix
+     * @return boolean If the window starts with the prefix
      */
-    private static Date getTerseStatDate(String[] stat, TERSE_STAT_STRUCT e) {
-        int cc = stat.length;
-        return new Date(
-                Long.parseLong(stat[cc - (TERSE_STAT_STRUCT_LENGTH - e.ordinal())]) * 1000L);
-    }
-
-    /**
-     * Method that extract a integer value from a terse stat ouput.
-     *
-     * @param stat The terse stat data
-     * @param e The position of the date
-     * @return int The integer value
-     */
-    private static int getTerseStatInt(String[] stat, TERSE_STAT_STRUCT e) {
-        int cc = stat.length;
-        return Integer.parseInt(stat[cc - (TERSE_STAT_STRUCT_LENGTH - e.ordinal())]);
+    private static boolean startsWith(
+            CharSequence src, int start, int end, String prefix) {
+        final int len = prefix.length();
+        if (end - start < len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (src.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
-     * Method that extract a long value from a terse stat ouput.
+     * Method that extracts the type of a file system object from its raw mode.
      *
-     * @param stat The terse stat data
-     * @param e The position of the date
-     * @return long The long value
+     * @param rawInt The raw mode
+     * @return char The raw char type
      */
-    private static long getTerseStatLong(String[] stat, TERSE_STAT_STRUCT e) {
-        int cc = stat.length;
-        return Long.parseLong(stat[cc - (TERSE_STAT_STRUCT_LENGTH - e.ordinal())]);
+    private static char getTerseType(int rawInt) {
+        if (RMIHF.S_IFSOCK.mValue == (rawInt & RMIHF.S_IFSOCK.mValue)) {
+            return DomainSocket.UNIX_ID;
+        } else if (RMIHF.S_IFLNK.mValue == (rawInt & RMIHF.S_IFLNK.mValue)) {
+            return Symlink.UNIX_ID;
+        } else if (RMIHF.S_IFREG.mValue == (rawInt & RMIHF.S_IFREG.mValue)) {
+            return RegularFile.UNIX_ID;
+        } else if (RMIHF.S_IFBLK.mValue == (rawInt & RMIHF.S_IFBLK.mValue)) {
+            return BlockDevice.UNIX_ID;
+        } else if (RMIHF.S_IFDIR.mValue == (rawInt & RMIHF.S_IFDIR.mValue)) {
+            return Directory.UNIX_ID;
+        } else if (RMIHF.S_IFCHR.mValue == (rawInt & RMIHF.S_IFCHR.mValue)) {
+            return CharacterDevice.UNIX_ID;
+        } else if (RMIHF.S_IFIFO.mValue == (rawInt & RMIHF.S_IFIFO.mValue)) {
+            return NamedPipe.UNIX_ID;
+        }
+        return RegularFile.UNIX_ID;
     }
 
     /**
-     * Method that returns the name of file
+     * Method that translates the type of the machine listing format (the
+     * <code>%y</code> directive of <code>find</code>) into a raw char type.
      *
-     * @param stat The terse stat data
-     * @return String The name of file
+     * @param y The type of the machine listing format
+     * @return char The raw char type
+     * @throws ParseException If the type is unknown
      */
-    private static String getTerseStatName(String[] stat) {
-        int cc = stat.length;
-        int to = cc - (TERSE_STAT_STRUCT_LENGTH - TERSE_STAT_STRUCT.SIZE.ordinal());
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < to; i++) {
-            sb.append(stat[i]);
-            if (i < to-1) {
-                sb.append(" "); //$NON-NLS-1$
-            }
+    private static char getMachineListType(char y) throws ParseException {
+        switch (y) {
+            case 'f':
+                return RegularFile.UNIX_ID;
+            case 'd':
+                return Directory.UNIX_ID;
+            case 'l':
+                return Symlink.UNIX_ID;
+            case 'b':
+                return BlockDevice.UNIX_ID;
+            case 'c':
+                return CharacterDevice.UNIX_ID;
+            case 'p':
+                return NamedPipe.UNIX_ID;
+            case 's':
+                return DomainSocket.UNIX_ID;
+            default:
+                throw new ParseException(
+                        String.format("Unknown type: %s", String.valueOf(y)), 0); //$NON-NLS-1$
         }
-        return sb.toString();
     }
 
     /**
      * Method that retrieve the raw string with the permissions.
      *
-     * @param stat The terse stat data
+     * @param rawInt The raw mode
      * @return String The raw string
      */
-    private static String getTerseRawPermissions(String[] stat) {
-        int cc = stat.length;
-        int rawInt = Integer.parseInt(
-                stat[cc - (TERSE_STAT_STRUCT_LENGTH - TERSE_STAT_STRUCT.RAW_MODE.ordinal())],16);
-
-        // Extract the type
-        char t = RegularFile.UNIX_ID;
-        if (RMIHF.S_IFSOCK.mValue == (rawInt & RMIHF.S_IFSOCK.mValue)) {
-            t = DomainSocket.UNIX_ID;
-        } else if (RMIHF.S_IFLNK.mValue == (rawInt & RMIHF.S_IFLNK.mValue)) {
-            t = Symlink.UNIX_ID;
-        } else if (RMIHF.S_IFREG.mValue == (rawInt & RMIHF.S_IFREG.mValue)) {
-            t = RegularFile.UNIX_ID;
-        } else if (RMIHF.S_IFBLK.mValue == (rawInt & RMIHF.S_IFBLK.mValue)) {
-            t = BlockDevice.UNIX_ID;
-        } else if (RMIHF.S_IFDIR.mValue == (rawInt & RMIHF.S_IFDIR.mValue)) {
-            t = Directory.UNIX_ID;
-        } else if (RMIHF.S_IFCHR.mValue == (rawInt & RMIHF.S_IFCHR.mValue)) {
-            t = CharacterDevice.UNIX_ID;
-        } else if (RMIHF.S_IFIFO.mValue == (rawInt & RMIHF.S_IFIFO.mValue)) {
-            t = NamedPipe.UNIX_ID;
-        }
-
+    private static String getTerseRawPermissions(int rawInt) {
         // Extract User/Group/Others
         boolean us = RMIHF.S_ISUID.mValue == (rawInt & RMIHF.S_ISUID.mValue);
         boolean ur = RMIHF.S_IRUSR.mValue == (rawInt & RMIHF.S_IRUSR.mValue);
@@ -515,7 +646,7 @@ public final class ParseHelper {
 
         // Build the raw string
         StringBuilder sb = new StringBuilder();
-        sb.append(t);
+        sb.append(getTerseType(rawInt));
         sb.append(ur ? Permission.READ : Permission.UNASIGNED);
         sb.append(uw ? Permission.WRITE : Permission.UNASIGNED);
         sb.append(us ? (ux ?
@@ -534,4 +665,194 @@ public final class ParseHelper {
         return sb.toString();
     }
 
+    /**
+     * The scratch state used to parse terse stat lines and machine listing records.
+     * Every thread has its own instance, so the fields bounds are reused between lines,
+     * and the users, groups and permissions (that are repeated for almost every file of
+     * a listing) are created only once per thread.<br/>
+     * <br/>
+     * The interned objects are shared by the parsed file system objects, so they
+     * must not be modified. Use the setters of the file system object instead.
+     */
+    private static final class TerseStatParser {
+        // Don't let the interned users and groups grow indefinitely
+        private static final int MAX_INTERNED_AIDS = 256;
+
+        // The bounds of the fields. The filename is not tokenized
+        final int[] mStart = new int[TERSE_STAT_STRUCT_LENGTH];
+        final int[] mEnd = new int[TERSE_STAT_STRUCT_LENGTH];
+        int mNameStart;
+        int mNameEnd;
+
+        final SparseArray<User> mUsers = new SparseArray<User>();
+        final SparseArray<Group> mGroups = new SparseArray<Group>();
+        // Indexed by the permission bits of the raw mode (07777)
+        final Permissions[] mPermissions = new Permissions[07777 + 1];
+
+        /**
+         * Method that locates the fields of a terse stat line, walking the line from
+         * its end.
+         *
+         * @param src The buffer
+         * @param start The start position of the line (inclusive)
+         * @param end The end position of the line (exclusive)
+         * @return boolean If the line has all the fields of a terse stat line
+         */
+        boolean tokenize(CharSequence src, int start, int end) {
+            // Ignore the trailing separators
+            int pos = end;
+            while (pos > start && Character.isWhitespace(src.charAt(pos - 1))) {
+                pos--;
+            }
+            for (int i = TERSE_STAT_STRUCT_LENGTH - 1; i > 0; i--) {
+                int fieldEnd = pos;
+                while (pos > start && src.charAt(pos - 1) != ' ') {
+                    pos--;
+                }
+                if (pos == start) {
+                    // There isn't a separator before the field
+                    return false;
+                }
+                this.mStart[i] = pos;
+                this.mEnd[i] = fieldEnd;
+                pos--;
+            }
+            this.mNameStart = start;
+            this.mNameEnd = pos;
+            return true;
+        }
+
+        /**
+         * Method that locates the fields of a machine listing record, walking the
+         * record from its start. The fraction of the times is not part of the fields.
+         *
+         * @param src The buffer
+         * @param start The start position of the record (inclusive)
+         * @param end The end position of the record (exclusive)
+         * @return boolean If the record has all the fields of the machine listing format
+         */
+        boolean tokenizeMachineList(CharSequence src, int start, int end) {
+            int pos = start;
+            final int cc = MACHINE_LIST_STRUCT.FILENAME.ordinal();
+            for (int i = 0; i < cc; i++) {
+                this.mStart[i] = pos;
+                int fraction = -1;
+                while (pos < end && src.charAt(pos) != ' ') {
+                    if (src.charAt(pos) == '.' && fraction == -1) {
+                        fraction = pos;
+                    }
+                    pos++;
+                }
+                if (pos == end) {
+                    // There isn't a filename after the field
+                    return false;
+                }
+                this.mEnd[i] = fraction != -1 ? fraction : pos;
+                pos++;
+            }
+            this.mNameStart = pos;
+            this.mNameEnd = end;
+            return pos < end;
+        }
+
+        /**
+         * Method that parses a numeric field of the current line.
+         *
+         * @param src The buffer
+         * @param field The position of the field
+         * @param radix The radix of the number
+         * @return long The value of the field
+         * @throws NumberFormatException If the field is not a number
+         */
+        long getLong(CharSequence src, int field, int radix) {
+            final int start = this.mStart[field];
+            final int end = this.mEnd[field];
+            if (start >= end) {
+                throw new NumberFormatException(
+                        String.format("Empty field: %d", Integer.valueOf(field))); //$NON-NLS-1$
+            }
+            boolean negative = src.charAt(start) == '-';
+            int i = negative ? start + 1 : start;
+            if (i == end) {
+                throw new NumberFormatException(
+                        String.format("Invalid field: %d", Integer.valueOf(field))); //$NON-NLS-1$
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = Character.digit(src.charAt(i), radix);
+                if (digit < 0) {
+                    throw new NumberFormatException(
+                            String.format(
+                                    "Invalid field: %d (%s)", //$NON-NLS-1$
+                                    Integer.valueOf(field), src.subSequence(start, end)));
+                }
+                value = (value * radix) + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        /**
+         * Method that returns the filename of the current line or record.
+         *
+         * @param src The buffer
+         * @return String The filename
+         */
+        String getName(CharSequence src) {
+            return src.subSequence(this.mNameStart, this.mNameEnd).toString();
+        }
+
+        /**
+         * Method that returns the interned user of an user identifier.
+         *
+         * @param uid The user identifier
+         * @return User The user
+         */
+        User getUser(int uid) {
+            User user = this.mUsers.get(uid);
+            if (user == null) {
+                if (this.mUsers.size() >= MAX_INTERNED_AIDS) {
+                    this.mUsers.clear();
+                }
+                user = new User(uid, AIDHelper.getNullSafeName(uid));
+                this.mUsers.put(uid, user);
+            }
+            return user;
+        }
+
+        /**
+         * Method that returns the interned group of a group identifier.
+         *
+         * @param gid The group identifier
+         * @return Group The group
+         */
+        Group getGroup(int gid) {
+            Group group = this.mGroups.get(gid);
+            if (group == null) {
+                if (this.mGroups.size() >= MAX_INTERNED_AIDS) {
+                    this.mGroups.clear();
+                }
+                group = new Group(gid, AIDHelper.getNullSafeName(gid));
+                this.mGroups.put(gid, group);
+            }
+            return group;
+        }
+
+        /**
+         * Method that returns the interned permissions of a raw mode.
+         *
+         * @param rawInt The raw mode
+         * @return Permissions The permissions
+         * @throws ParseException If the permissions can't be parsed
+         */
+        Permissions getPermissions(int rawInt) throws ParseException {
+            final int mode = rawInt & 07777;
+            Permissions permissions = this.mPermissions[mode];
+            if (permissions == null) {
+                permissions = parsePermission(getTerseRawPermissions(rawInt));
+                this.mPermissions[mode] = permissions;
+            }
+            return permissions;
+        }
+    }
+
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A class for testing the cache of the probes of the device.
+ *
+ * @see ProbeCache
+ */
+public class ProbeCacheTest extends android.test.AndroidTestCase {
+
+    private static final String BUILD = "brand/device/1.0"; //$NON-NLS-1$
+
+    /**
+     * Method that performs a test over the probes stored and loaded by other launch.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testStoreLoad() throws Exception {
+        File file = File.createTempFile("probes", ".properties"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            Map<String, Boolean> commands = new HashMap<String, Boolean>();
+            commands.put("zip", Boolean.TRUE); //$NON-NLS-1$
+            commands.put("unrar", Boolean.FALSE); //$NON-NLS-1$
+            Map<String, Boolean> features = new HashMap<String, Boolean>();
+            features.put("lsmachine", Boolean.TRUE); //$NON-NLS-1$
+            Properties properties = new Properties();
+            properties.setProperty("ro.build.id", "JDQ39"); //$NON-NLS-1$ //$NON-NLS-2$
+            new ProbeCache(file).store(
+                    BUILD, "abc", commands, features, properties); //$NON-NLS-1$
+
+            ProbeCache cache = new ProbeCache(file);
+            assertTrue(cache.load(BUILD));
+            assertEquals("abc", cache.getFilesFingerprint()); //$NON-NLS-1$
+            assertEquals(commands, cache.getOptionalCommands());
+            assertEquals(features, cache.getFeatures());
+            assertEquals(properties, cache.getSystemProperties());
+
+            // The probes of other build are not used
+            assertFalse(new ProbeCache(file).load("brand/device/2.0")); //$NON-NLS-1$
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Method that performs a test over the fingerprint of the probed files.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testFilesFingerprint() throws Exception {
+        File file = File.createTempFile("probe", ".bin"); //$NON-NLS-1$ //$NON-NLS-2$
+        try {
+            String fingerprint = ProbeCache.getFilesFingerprint(Arrays.asList(file));
+            assertEquals(fingerprint, ProbeCache.getFilesFingerprint(Arrays.asList(file)));
+            assertTrue(file.setLastModified(file.lastModified() - 60000L));
+            assertFalse(fingerprint.equals(
+                    ProbeCache.getFilesFingerprint(Arrays.asList(file))));
+            file.delete();
+            assertFalse(fingerprint.equals(
+                    ProbeCache.getFilesFingerprint(Arrays.asList(file))));
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class for testing the cancellation token of the programs.
+ *
+ * @see CancellationToken
+ */
+public class CancellationTokenTest extends android.test.AndroidTestCase {
+
+    /**
+     * Method that performs a test over the state of a token.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testCancel() throws Exception {
+        CancellationToken token = new CancellationToken();
+        assertFalse(token.isCancelled());
+        token.throwIfCancelled();
+
+        assertTrue(token.cancel());
+        assertTrue(token.isCancelled());
+        assertFalse(token.cancel());
+        try {
+            token.throwIfCancelled();
+            fail();
+        } catch (CancellationException ex) {
+            /**NON BLOCK**/
+        }
+    }
+
+    /**
+     * Method that performs a test over the interruption of a blocked thread.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testInterrupt() throws Exception {
+        final CancellationToken token = new CancellationToken();
+        final CountDownLatch attached = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Thread worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                token.attach();
+                try {
+                    attached.countDown();
+                    Thread.sleep(60000L);
+                } catch (InterruptedException ex) {
+                    interrupted.countDown();
+                } finally {
+                    token.detach();
+                }
+            }
+        });
+        worker.start();
+        assertTrue(attached.await(5000L, TimeUnit.MILLISECONDS));
+
+        // The cancellation doesn't wait for the blocked thread
+        long start = System.currentTimeMillis();
+        assertTrue(token.cancel());
+        assertTrue(System.currentTimeMillis() - start < 1000L);
+        assertTrue(interrupted.await(5000L, TimeUnit.MILLISECONDS));
+        worker.join();
+    }
+
+    /**
+     * Method that performs a test over the close of a registered stream.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testRegister() throws Exception {
+        CancellationToken token = new CancellationToken();
+        final boolean[] closed = {false, false};
+        Closeable first = new Closeable() {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+            }
+        };
+        Closeable second = new Closeable() {
+            @Override
+            public void close() throws IOException {
+                closed[1] = true;
+            }
+        };
+
+        // An unregistered stream is not closed
+        token.register(first);
+        token.unregister(first);
+        token.cancel();
+        assertFalse(closed[0]);
+
+        // A stream registered after the cancellation is closed at once
+        try {
+            token.register(second);
+            fail();
+        } catch (CancellationException ex) {
+            /**NON BLOCK**/
+        }
+        assertTrue(closed[1]);
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.MissingFormatArgumentException;
+
+/**
+ * A class for testing the precompiled command definitions.
+ *
+ * @see CommandTemplate
+ */
+public class CommandTemplateTest extends android.test.AndroidTestCase {
+
+    private static final String LS_ARGS =
+            "%1$s 1> /dev/null && /system/xbin/stat -t %1$s.* %1$s* 2> /dev/null"; //$NON-NLS-1$
+    private static final String EXITCODE_ARGS =
+            " ; /system/xbin/echo -n %1$s$?%2$s"; //$NON-NLS-1$
+
+    /**
+     * Method that performs a test over the formatting of precompiled arguments.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testFormat() throws Exception {
+        CommandTemplate ls =
+                new CommandTemplate("ls", "/system/bin/ls", LS_ARGS); //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue(ls.isCompiled());
+        String arg = "\"/sdcard/\""; //$NON-NLS-1$
+        assertEquals(String.format(LS_ARGS, arg), ls.format(arg));
+
+        CommandTemplate exitCode =
+                new CommandTemplate("exitcode", null, EXITCODE_ARGS); //$NON-NLS-1$
+        assertTrue(exitCode.isCompiled());
+        assertEquals(
+                String.format(EXITCODE_ARGS, "'a'", "'b'"), //$NON-NLS-1$ //$NON-NLS-2$
+                exitCode.format("'a'", "'b'")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Method that performs a test over arguments without format specifiers.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testLiteral() throws Exception {
+        CommandTemplate pid =
+                new CommandTemplate(
+                        "pid_shell", //$NON-NLS-1$
+                        "/system/xbin/echo", //$NON-NLS-1$
+                        "$$"); //$NON-NLS-1$
+        assertTrue(pid.isCompiled());
+        assertEquals("$$", pid.format()); //$NON-NLS-1$
+
+        CommandTemplate percent =
+                new CommandTemplate(
+                        "p", "p", "100%% %1$s"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertEquals("100% x", percent.format("x")); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Method that performs a test over arguments that can't be precompiled.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testNotCompiled() throws Exception {
+        CommandTemplate number =
+                new CommandTemplate("n", "n", "-n %d"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        assertFalse(number.isCompiled());
+        assertEquals("-n 5", number.format(Integer.valueOf(5))); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that performs a test over missing arguments.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testMissingArgument() throws Exception {
+        CommandTemplate mv =
+                new CommandTemplate(
+                        "mv", //$NON-NLS-1$
+                        "/system/bin/mv", //$NON-NLS-1$
+                        "%1$s %2$s"); //$NON-NLS-1$
+        try {
+            mv.format("a"); //$NON-NLS-1$
+            fail("MissingFormatArgumentException expected"); //$NON-NLS-1$
+        } catch (MissingFormatArgumentException ex) {
+            // Expected
+        }
+    }
+
+}
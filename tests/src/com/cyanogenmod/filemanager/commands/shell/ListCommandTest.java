@@ -19,6 +19,7 @@ package com.cyanogenmod.filemanager.commands.shell;
 import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
 
+import com.cyanogenmod.filemanager.commands.ListExecutable;
 import com.cyanogenmod.filemanager.model.Directory;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.model.RegularFile;
@@ -26,6 +27,7 @@ import com.cyanogenmod.filemanager.model.Symlink;
 import com.cyanogenmod.filemanager.util.CommandHelper;
 import com.cyanogenmod.filemanager.util.FileHelper;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -123,4 +125,51 @@ public class ListCommandTest extends AbstractConsoleTest {
                     .toRawString().compareTo("rwxr-x---") == 0); //$NON-NLS-1$
     }
 
+    /**
+     * Method that performs a test over a known output received in partial results.
+     *
+     * @throws Exception If test failed
+     * {@link ListCommand#onParsePartialResult(String)}
+     */
+    @SmallTest
+    public void testParsePartialResults() throws Exception {
+        ListCommand cmd = new ListCommand(LS_PATH, getConsole());
+        final List<FileSystemObject> notified = new ArrayList<FileSystemObject>();
+        cmd.setOnPartialListListener(new ListExecutable.OnPartialListListener() {
+            @Override
+            public void onPartialList(List<FileSystemObject> files) {
+                notified.addAll(files);
+            }
+        });
+        String in =
+            "/acct 0 0 41ed 0 0 d 1054 3 0 0 1357390899 1357390899 1357390899 4096\n" + //$NON-NLS-1$
+            "/init.cm.rc 1238 8 81e8 0 0 1 370 1 0 0 1357390899 1357390899 1357390899 4096\n" + //$NON-NLS-1$
+            "/cache 4096 8 41f9 1000 2001 b307 2 5 0 0 0 1357390900 1357390900 4096"; //$NON-NLS-1$
+        if ("\0".equals(cmd.getRecordSeparator())) { //$NON-NLS-1$
+            // The device lists with the machine listing format
+            in =
+                "d 755 0 0 0 1357390899.5 1357390899.5 1357390899.5 /acct\0" + //$NON-NLS-1$
+                "f 750 1238 0 0 1357390899 1357390899 1357390899 /init.cm.rc\0" + //$NON-NLS-1$
+                "d 771 4096 1000 2001 0 1357390900 1357390900 /cache"; //$NON-NLS-1$
+        }
+
+        // Chunks split in the middle of the lines
+        cmd.onRequestStartParsePartialResult();
+        int chunk = 25;
+        for (int i = 0; i < in.length(); i += chunk) {
+            cmd.onRequestParsePartialResult(in, i, Math.min(in.length(), i + chunk));
+        }
+        assertEquals(2, notified.size());
+        cmd.onRequestEndParsePartialResult();
+        cmd.parse("", ""); //$NON-NLS-1$ //$NON-NLS-2$
+
+        List<FileSystemObject> files = cmd.getResult();
+        assertNotNull("files==null", files); //$NON-NLS-1$
+        assertTrue("length!=3", files.size() == 3); //$NON-NLS-1$
+        assertTrue("notified!=3", notified.size() == 3); //$NON-NLS-1$
+        assertTrue(
+                "files(2) != cache", //$NON-NLS-1$
+                files.get(2).getName().compareTo("cache") == 0); //$NON-NLS-1$
+    }
+
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.commands.shell;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * A class for testing the ring of partial results.
+ *
+ * @see PartialResultRing
+ */
+public class PartialResultRingTest extends android.test.AndroidTestCase {
+
+    /**
+     * Method that performs a test over the order and the bounds of the ring.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testOfferPoll() throws Exception {
+        PartialResultRing ring = new PartialResultRing(3);
+        assertEquals(4, ring.getCapacity());
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+
+        // Wrap around the ring several times
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 4; j++) {
+                assertTrue(ring.offer(i + "-" + j)); //$NON-NLS-1$
+            }
+            assertFalse(ring.offer("full")); //$NON-NLS-1$
+            for (int j = 0; j < 4; j++) {
+                assertEquals(i + "-" + j, ring.poll()); //$NON-NLS-1$
+            }
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    /**
+     * Method that performs a test over a producer and a consumer in different threads.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testProducerConsumer() throws Exception {
+        final int count = 100000;
+        final PartialResultRing ring = new PartialResultRing(16);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    String chunk = String.valueOf(i);
+                    while (!ring.offer(chunk)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+
+        int expected = 0;
+        while (expected < count) {
+            String chunk = ring.poll();
+            if (chunk == null) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(String.valueOf(expected), chunk);
+            expected++;
+        }
+        producer.join();
+        assertTrue(ring.isEmpty());
+    }
+
+}
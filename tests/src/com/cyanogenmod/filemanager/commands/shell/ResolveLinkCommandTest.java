@@ -21,6 +21,9 @@ import android.test.suitebuilder.annotation.SmallTest;
 import com.cyanogenmod.filemanager.model.FileSystemObject;
 import com.cyanogenmod.filemanager.util.CommandHelper;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * A class for testing the method for retrieve the value of a variable.
  *
@@ -30,6 +33,7 @@ public class ResolveLinkCommandTest extends AbstractConsoleTest {
 
     private static final String LINK = "/d"; //$NON-NLS-1$
     private static final String REAL_FILE = "/sys/kernel/debug"; //$NON-NLS-1$
+    private static final String NO_LINK = "/mnt/sdcard/nonexistent-link"; //$NON-NLS-1$
 
     /**
      * {@inheritDoc}
@@ -53,5 +57,23 @@ public class ResolveLinkCommandTest extends AbstractConsoleTest {
                 fso.getFullPath().compareTo(REAL_FILE) == 0);
     }
 
+    /**
+     * Method that performs a test to get the real files of several symlinks in a batch.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testReadLinkBatch() throws Exception {
+        List<FileSystemObject> fsos =
+                CommandHelper.resolveSymlinks(
+                        getContext(), Arrays.asList(LINK, NO_LINK, LINK), getConsole());
+        assertEquals(3, fsos.size());
+        assertNotNull("fso[0]==null)", fsos.get(0)); //$NON-NLS-1$
+        assertTrue(
+                String.format("parent!=%s", REAL_FILE), //$NON-NLS-1$
+                fsos.get(0).getFullPath().compareTo(REAL_FILE) == 0);
+        assertNull("fso[1]!=null)", fsos.get(1)); //$NON-NLS-1$
+        assertNotNull("fso[2]==null)", fsos.get(2)); //$NON-NLS-1$
+    }
 
 }
@@ -82,5 +82,51 @@ public class ConsoleBuilderTest extends android.test.AndroidTestCase {
         }
     }
 
+    /**
+     * Method that performs a test over creating a pool of consoles.
+     *
+     * @throws Exception If test failed
+     * @{link {@link ConsoleBuilder#createConsolePool(android.content.Context, Console)}
+     */
+    @SmallTest
+    public void testCreateConsolePool() throws Exception {
+        Console console = ConsoleBuilder.createConsolePool(
+                getContext(), ConsoleBuilder.createNonPrivilegedConsole(getContext()));
+        try {
+            assertNotNull("console==null", console); //$NON-NLS-1$
+            assertTrue("console not active", console.isActive()); //$NON-NLS-1$
+            assertNotNull("identity==null", console.getIdentity()); //$NON-NLS-1$
+        } finally {
+            try {
+                console.dealloc();
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+    }
+
+    /**
+     * Method that performs a test over creating a hybrid console.
+     *
+     * @throws Exception If test failed
+     * @{link {@link ConsoleBuilder#createHybridConsole(android.content.Context, Console)}
+     */
+    @SmallTest
+    public void testCreateHybridConsole() throws Exception {
+        Console shell = ConsoleBuilder.createNonPrivilegedConsole(getContext());
+        Console console = ConsoleBuilder.createHybridConsole(getContext(), shell);
+        try {
+            assertNotNull("console==null", console); //$NON-NLS-1$
+            assertTrue("console not active", console.isActive()); //$NON-NLS-1$
+            assertEquals(shell.isPrivileged(), console.isPrivileged());
+            assertNotNull("identity==null", console.getIdentity()); //$NON-NLS-1$
+        } finally {
+            try {
+                console.dealloc();
+            } catch (Throwable ex) {
+                /**NON BLOCK**/
+            }
+        }
+    }
 
 }
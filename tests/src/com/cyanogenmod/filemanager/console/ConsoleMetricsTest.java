@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.List;
+
+/**
+ * A class for testing the metrics of the consoles.
+ *
+ * @see ConsoleMetrics
+ */
+public class ConsoleMetricsTest extends android.test.AndroidTestCase {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        ConsoleMetrics.setEnabled(false);
+        ConsoleMetrics.reset();
+        super.tearDown();
+    }
+
+    /**
+     * Method that performs a test over the percentiles of a histogram.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testHistogram() throws Exception {
+        ConsoleMetrics.Histogram histogram = new ConsoleMetrics.Histogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(100, histogram.getMax());
+
+        // The percentiles are the upper bounds of their buckets
+        assertEquals(63, histogram.getPercentile(0.5));
+        assertEquals(100, histogram.getPercentile(0.9));
+        assertEquals(1, histogram.getPercentile(0.01));
+    }
+
+    /**
+     * Method that performs a test over the record of the executions.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testRecord() throws Exception {
+        // A disabled registry doesn't record anything
+        ConsoleMetrics.setEnabled(false);
+        ConsoleMetrics.Sample sample = ConsoleMetrics.start("ls"); //$NON-NLS-1$
+        sample.onSucceeded();
+        sample.end();
+        assertTrue(ConsoleMetrics.getMetrics().isEmpty());
+
+        ConsoleMetrics.setEnabled(true);
+        sample = ConsoleMetrics.start("ls"); //$NON-NLS-1$
+        sample.onDequeued();
+        sample.onOutput(10);
+        sample.onOutput(20);
+        sample.onSucceeded();
+        sample.end();
+        sample = ConsoleMetrics.start("ls"); //$NON-NLS-1$
+        sample.onTimeout();
+        sample.end();
+
+        List<ConsoleMetrics.CommandMetrics> metrics = ConsoleMetrics.getMetrics();
+        assertEquals(1, metrics.size());
+        ConsoleMetrics.CommandMetrics ls = metrics.get(0);
+        assertEquals("ls", ls.getCommandId()); //$NON-NLS-1$
+        assertEquals(2, ls.getTotal().getCount());
+        assertEquals(1, ls.getFirstOutput().getCount());
+        assertEquals(30, ls.getOutput().getSum());
+        assertEquals(1, ls.getErrors());
+        assertEquals(1, ls.getTimeouts());
+        assertTrue(ConsoleMetrics.dump().contains("ls: 2 executions")); //$NON-NLS-1$
+    }
+
+}
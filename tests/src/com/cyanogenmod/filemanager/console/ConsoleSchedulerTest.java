@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.commands.ExecutionPriority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class for testing the scheduler of the executables of a console.
+ *
+ * @see ConsoleScheduler
+ */
+public class ConsoleSchedulerTest extends android.test.AndroidTestCase {
+
+    /**
+     * Method that performs a test over interactive executables that run ahead of the
+     * waiting background executables.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testInteractiveFirst() throws Exception {
+        ConsoleScheduler scheduler = new ConsoleScheduler(60000L);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        scheduler.acquire(ExecutionPriority.INTERACTIVE);
+
+        Thread background =
+                start(scheduler, ExecutionPriority.BACKGROUND, "bg", order); //$NON-NLS-1$
+        waitForWaiting(scheduler, 1);
+        Thread interactive =
+                start(scheduler, ExecutionPriority.INTERACTIVE, "ui", order); //$NON-NLS-1$
+        waitForWaiting(scheduler, 2);
+
+        scheduler.release();
+        background.join();
+        interactive.join();
+        assertEquals("ui", order.get(0)); //$NON-NLS-1$
+        assertEquals("bg", order.get(1)); //$NON-NLS-1$
+        assertEquals(0, scheduler.getWaiting());
+    }
+
+    /**
+     * Method that performs a test over a background executable that waited more than
+     * the starvation timeout.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testStarvation() throws Exception {
+        ConsoleScheduler scheduler = new ConsoleScheduler(50L);
+        List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        scheduler.acquire(ExecutionPriority.INTERACTIVE);
+
+        Thread background =
+                start(scheduler, ExecutionPriority.BACKGROUND, "bg", order); //$NON-NLS-1$
+        waitForWaiting(scheduler, 1);
+        Thread.sleep(100L);
+        Thread interactive =
+                start(scheduler, ExecutionPriority.INTERACTIVE, "ui", order); //$NON-NLS-1$
+        waitForWaiting(scheduler, 2);
+
+        scheduler.release();
+        background.join();
+        interactive.join();
+        assertEquals("bg", order.get(0)); //$NON-NLS-1$
+        assertEquals("ui", order.get(1)); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that performs a test over the owner thread that acquires the console again.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testReentrant() throws Exception {
+        ConsoleScheduler scheduler = new ConsoleScheduler(0L);
+        scheduler.acquire(ExecutionPriority.BACKGROUND);
+        scheduler.acquire(ExecutionPriority.INTERACTIVE);
+        scheduler.release();
+        scheduler.release();
+
+        // The console is free
+        scheduler.acquire(ExecutionPriority.INTERACTIVE);
+        scheduler.release();
+    }
+
+    /**
+     * Method that starts a thread that acquires the console and records its turn.
+     *
+     * @param scheduler The scheduler
+     * @param priority The priority of the executable
+     * @param name The name of the executable
+     * @param order The turns of the executables
+     * @return Thread The started thread
+     */
+    private static Thread start(final ConsoleScheduler scheduler,
+            final ExecutionPriority priority, final String name, final List<String> order) {
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scheduler.acquire(priority);
+                    order.add(name);
+                    scheduler.release();
+                } catch (InterruptedException ex) {
+                    /**NON BLOCK**/
+                }
+            }
+        });
+        t.start();
+        return t;
+    }
+
+    /**
+     * Method that waits until a number of executables are waiting for the console.
+     *
+     * @param scheduler The scheduler
+     * @param waiting The number of waiting executables
+     * @throws InterruptedException If the wait was interrupted
+     */
+    private static void waitForWaiting(ConsoleScheduler scheduler, int waiting)
+            throws InterruptedException {
+        while (scheduler.getWaiting() < waiting) {
+            Thread.sleep(5L);
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.StringWriter;
+
+/**
+ * A class for testing the ring of trace events of the consoles.
+ *
+ * @see TraceRing
+ */
+public class TraceRingTest extends android.test.AndroidTestCase {
+
+    /**
+     * Method that performs a test over the order and the bounds of the exported events.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testExport() throws Exception {
+        TraceRing ring = new TraceRing(3);
+        assertEquals(4, ring.getCapacity());
+        for (int i = 0; i < 10; i++) {
+            ring.record("ls", TraceRing.Phase.OUTPUT, i); //$NON-NLS-1$
+        }
+
+        // Only the newest events are retained, from the oldest to the newest
+        StringWriter writer = new StringWriter();
+        assertEquals(4, ring.export(writer));
+        String[] lines = writer.toString().trim().split("\n"); //$NON-NLS-1$
+        assertEquals(4, lines.length);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(lines[i].endsWith(" ls OUTPUT " + (i + 6))); //$NON-NLS-1$
+        }
+
+        // A disabled ring doesn't record anything
+        ring.setEnabled(false);
+        ring.record("ls", TraceRing.Phase.END, 0); //$NON-NLS-1$
+        writer = new StringWriter();
+        ring.export(writer);
+        assertFalse(writer.toString().contains("END")); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that performs a test over events recorded by several threads.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testConcurrentRecord() throws Exception {
+        final TraceRing ring = new TraceRing(1024);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        ring.record("find", TraceRing.Phase.ITEM, j); //$NON-NLS-1$
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+        assertEquals(1024, ring.export(new StringWriter()));
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.java;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class for testing the order of the operations over the same paths.
+ *
+ * @see PathLocks
+ */
+public class PathLocksTest extends android.test.AndroidTestCase {
+
+    /**
+     * Method that performs a test over operations of different paths.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testDifferentPaths() throws Exception {
+        PathLocks locks = new PathLocks();
+        PathLocks.Lock a = locks.queue(new String[]{"/sdcard/a", null}); //$NON-NLS-1$
+        PathLocks.Lock b = locks.queue(new String[]{"/sdcard/ab"}); //$NON-NLS-1$
+        assertEquals(1, a.mKeys.length);
+        assertTrue(locks.await(a, 0L));
+        assertTrue(locks.await(b, 0L));
+        assertEquals(2, locks.size());
+        locks.release(a);
+        locks.release(b);
+        assertEquals(0, locks.size());
+        assertNull(locks.queue(new String[]{null}));
+    }
+
+    /**
+     * Method that performs a test over operations of the same path.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testSamePath() throws Exception {
+        final PathLocks locks = new PathLocks();
+        PathLocks.Lock first =
+                locks.queue(new String[]{"/sdcard/b", "/sdcard/a"}); //$NON-NLS-1$ //$NON-NLS-2$
+        final PathLocks.Lock second = locks.queue(new String[]{"/sdcard/a"}); //$NON-NLS-1$
+        assertTrue(locks.await(first, 0L));
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread other = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (locks.await(second, 5000L)) {
+                        acquired.countDown();
+                        locks.release(second);
+                    }
+                } catch (InterruptedException ex) {
+                    /**NON BLOCK**/
+                }
+            }
+        });
+        other.start();
+
+        // The second operation waits until the first one releases the path
+        assertFalse(acquired.await(100L, TimeUnit.MILLISECONDS));
+        locks.release(first);
+        assertTrue(acquired.await(5000L, TimeUnit.MILLISECONDS));
+        other.join();
+        assertEquals(0, locks.size());
+    }
+
+    /**
+     * Method that performs a test over operations of a directory and of its children.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testAncestorPath() throws Exception {
+        PathLocks locks = new PathLocks();
+        PathLocks.Lock child = locks.queue(new String[]{"/sdcard/a/b/c"}); //$NON-NLS-1$
+        PathLocks.Lock dir = locks.queue(new String[]{"/sdcard/a"}); //$NON-NLS-1$
+        PathLocks.Lock other = locks.queue(new String[]{"/sdcard/a/d"}); //$NON-NLS-1$
+        assertTrue(locks.await(child, 0L));
+        // The directory waits for its child, and the other child waits for the directory
+        assertFalse(dir.mGranted);
+        assertFalse(other.mGranted);
+        locks.release(child);
+        assertTrue(locks.await(dir, 0L));
+        assertFalse(other.mGranted);
+        locks.release(dir);
+        assertTrue(locks.await(other, 0L));
+        locks.release(other);
+        assertEquals(0, locks.size());
+
+        // A prefix that isn't a parent directory isn't an ancestor
+        String a = "/sdcard/a"; //$NON-NLS-1$
+        String ab = "/sdcard/ab"; //$NON-NLS-1$
+        assertTrue(PathLocks.isAncestorOrSelf("/", a)); //$NON-NLS-1$
+        assertTrue(PathLocks.isAncestorOrSelf(a, a));
+        assertFalse(PathLocks.isAncestorOrSelf(a, ab));
+    }
+
+    /**
+     * Method that performs a test over an operation that doesn't get its paths in time.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testTimeout() throws Exception {
+        PathLocks locks = new PathLocks();
+        PathLocks.Lock first = locks.queue(new String[]{"/sdcard/a"}); //$NON-NLS-1$
+        PathLocks.Lock second = locks.queue(new String[]{"/sdcard/a"}); //$NON-NLS-1$
+        PathLocks.Lock third = locks.queue(new String[]{"/sdcard/a"}); //$NON-NLS-1$
+        assertFalse(locks.await(second, 50L));
+        // The operation that timed out was removed from the queue
+        assertEquals(2, locks.size());
+        locks.release(first);
+        assertTrue(locks.await(third, 0L));
+        locks.release(third);
+        assertEquals(0, locks.size());
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * A class for testing the completion of the commands of a shell console.
+ *
+ * @see CommandCompletion
+ */
+public class CommandCompletionTest extends android.test.AndroidTestCase {
+
+    /**
+     * Method that performs a test over a command completed by other thread.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testComplete() throws Exception {
+        final CommandCompletion completion = new CommandCompletion();
+        assertFalse(completion.isCompleted());
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50L);
+                } catch (InterruptedException ex) {
+                    /**NON BLOCK**/
+                }
+                completion.complete();
+            }
+        }).start();
+
+        // The waiting thread is released when the command completes, not at the deadline
+        long start = System.currentTimeMillis();
+        assertTrue(completion.await(5000L, false, 0L));
+        assertTrue(System.currentTimeMillis() - start < 5000L);
+        assertTrue(completion.isCompleted());
+        assertTrue(CommandCompletion.completed().await(0L, false, 0L));
+    }
+
+    /**
+     * Method that performs a test over the deadline of a command.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testDeadline() throws Exception {
+        CommandCompletion completion = new CommandCompletion();
+        long start = System.currentTimeMillis();
+        assertFalse(completion.await(100L, false, 0L));
+        assertTrue(System.currentTimeMillis() - start >= 100L);
+    }
+
+    /**
+     * Method that performs a test over a deadline extended by new data.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testExtendedDeadline() throws Exception {
+        final CommandCompletion completion = new CommandCompletion();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 6; i++) {
+                        Thread.sleep(50L);
+                        completion.onNewData();
+                    }
+                    completion.complete();
+                } catch (InterruptedException ex) {
+                    /**NON BLOCK**/
+                }
+            }
+        });
+        writer.start();
+
+        // Every deadline is shorter than the command, but the command writes data
+        assertTrue(completion.await(150L, true, 5000L));
+        writer.join();
+
+        // Without new data, the deadline is not extended beyond the maximum
+        CommandCompletion silent = new CommandCompletion();
+        long start = System.currentTimeMillis();
+        assertFalse(silent.await(100L, true, 5000L));
+        assertTrue(System.currentTimeMillis() - start < 5000L);
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+/**
+ * A class for testing the control marker scanner.
+ *
+ * @see ControlMarkerScanner
+ */
+public class ControlMarkerScannerTest extends android.test.AndroidTestCase {
+
+    private static final String PREFIX = "/#-1234#/"; //$NON-NLS-1$
+    private static final String SUFFIX = "/#5678#/"; //$NON-NLS-1$
+
+    /**
+     * Method that performs a test over a marker in a single chunk.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testSingleChunk() throws Exception {
+        ControlMarkerScanner scanner = new ControlMarkerScanner(PREFIX, SUFFIX);
+        String data = "output\n" + PREFIX + "127" + SUFFIX + "trail"; //$NON-NLS-1$ //$NON-NLS-2$
+        int end = scanner.scan(data, 0, data.length());
+        assertEquals(data.length() - "trail".length(), end); //$NON-NLS-1$
+        assertTrue(scanner.isFound());
+        assertEquals(127, scanner.getExitCode());
+        assertEquals(PREFIX.length() + 3 + SUFFIX.length(), scanner.getMarkerLength());
+    }
+
+    /**
+     * Method that performs a test over a marker split between chunks.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testSplitChunks() throws Exception {
+        ControlMarkerScanner scanner = new ControlMarkerScanner(PREFIX, SUFFIX);
+        String data = "abc" + PREFIX + "0" + SUFFIX; //$NON-NLS-1$ //$NON-NLS-2$
+        int cc = data.length();
+        for (int i = 0; i < cc - 1; i++) {
+            assertEquals(-1, scanner.scan(data, i, i + 1));
+            assertTrue(scanner.getPendingLength() <= i + 1);
+        }
+        assertEquals(cc, scanner.scan(data, cc - 1, cc));
+        assertEquals(0, scanner.getExitCode());
+        assertEquals(0, scanner.getPendingLength());
+    }
+
+    /**
+     * Method that performs a test over the pending length of a marker in progress.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testPendingLength() throws Exception {
+        ControlMarkerScanner scanner = new ControlMarkerScanner(PREFIX, SUFFIX);
+        String data = "line\n" + PREFIX + "12/#5"; //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(-1, scanner.scan(data, 0, data.length()));
+        assertEquals(PREFIX.length() + "12/#5".length(), //$NON-NLS-1$
+                scanner.getPendingLength());
+
+        // Not a marker. Nothing is pending
+        String more = "9\n"; //$NON-NLS-1$
+        assertEquals(-1, scanner.scan(more, 0, more.length()));
+        assertEquals(0, scanner.getPendingLength());
+        assertFalse(scanner.isFound());
+    }
+
+    /**
+     * Method that performs a test over invalid exit codes.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testInvalidExitCodes() throws Exception {
+        ControlMarkerScanner scanner = new ControlMarkerScanner(PREFIX, SUFFIX);
+        String data = PREFIX + SUFFIX + PREFIX + "1234" + SUFFIX //$NON-NLS-1$
+                + PREFIX + "a1" + SUFFIX; //$NON-NLS-1$
+        assertEquals(-1, scanner.scan(data, 0, data.length()));
+        assertFalse(scanner.isFound());
+        assertEquals(-1, scanner.getExitCode());
+    }
+
+    /**
+     * Method that performs a test over overlapped prefixes.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testOverlappedPrefixes() throws Exception {
+        ControlMarkerScanner scanner = new ControlMarkerScanner(PREFIX, SUFFIX);
+        String data = "/#-12" + PREFIX + PREFIX + "1" + SUFFIX; //$NON-NLS-1$ //$NON-NLS-2$
+        assertEquals(data.length(), scanner.scan(data, 0, data.length()));
+        assertEquals(1, scanner.getExitCode());
+
+        // Scans are ignored once the marker was found
+        assertEquals(-1, scanner.scan(data, 0, data.length()));
+
+        // Reset
+        scanner.reset();
+        assertFalse(scanner.isFound());
+        assertEquals(data.length(), scanner.scan(data, 0, data.length()));
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.console.OperationTimeoutException;
+
+import java.io.IOException;
+
+/**
+ * A class for testing the resident helper. The helper runs in a non privileged
+ * <code>sh</code> in place of <code>su</code>.
+ *
+ * @see ResidentHelper
+ */
+public class ResidentHelperTest extends android.test.AndroidTestCase {
+
+    private static final String[] SHELL = {"/system/bin/sh"}; //$NON-NLS-1$
+    private static final long TIMEOUT = 5000L;
+
+    private ResidentHelper mHelper;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        this.mHelper = new ResidentHelper(SHELL, TIMEOUT, TIMEOUT);
+        this.mHelper.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        this.mHelper.stop();
+        super.tearDown();
+    }
+
+    /**
+     * Method that performs a test over the responses of consecutive requests.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testExecute() throws Exception {
+        assertTrue(this.mHelper.isActive());
+        for (int i = 0; i < 3; i++) {
+            StringBuilder out = new StringBuilder();
+            StringBuilder err = new StringBuilder();
+            int exitCode = this.mHelper.execute(
+                    null, "echo \"line " + i + "\"; echo 'end'", //$NON-NLS-1$ //$NON-NLS-2$
+                    false, out, err);
+            assertEquals(0, exitCode);
+            assertEquals("line " + i + "\nend\n", out.toString()); //$NON-NLS-1$ //$NON-NLS-2$
+            assertEquals(0, err.length());
+        }
+
+        // The exit code and an empty output
+        StringBuilder out = new StringBuilder();
+        assertEquals(3, this.mHelper.execute(
+                null, "(exit 3)", false, out, new StringBuilder())); //$NON-NLS-1$
+        assertEquals(0, out.length());
+
+        // The standard error is returned apart
+        out = new StringBuilder();
+        StringBuilder err = new StringBuilder();
+        assertEquals(1, this.mHelper.execute(
+                null, "echo 'err' 1>&2; printf 'a\\0b'; false", false, out, err)); //$NON-NLS-1$
+        assertEquals("a\0b", out.toString()); //$NON-NLS-1$
+        assertEquals("err\n", err.toString()); //$NON-NLS-1$
+
+        // The standard error of a request is not returned by the next request
+        err = new StringBuilder();
+        assertEquals(0, this.mHelper.execute(null, "true", false, out, err)); //$NON-NLS-1$
+        assertEquals(0, err.length());
+    }
+
+    /**
+     * Method that performs a test over the check path of a request.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testCheckPath() throws Exception {
+        StringBuilder out = new StringBuilder();
+        assertEquals(0, this.mHelper.execute("\"/\"", "echo 'found'", //$NON-NLS-1$ //$NON-NLS-2$
+                false, out, new StringBuilder()));
+        assertEquals("found\n", out.toString()); //$NON-NLS-1$
+
+        // The command is not executed
+        out = new StringBuilder();
+        assertEquals(ResidentHelper.EXIT_CODE_NOT_FOUND, this.mHelper.execute(
+                "\"/not exists/a b\"", "echo 'found'", //$NON-NLS-1$ //$NON-NLS-2$
+                false, out, new StringBuilder()));
+        assertEquals(0, out.length());
+        assertTrue(this.mHelper.isActive());
+    }
+
+    /**
+     * Method that performs a test over requests with new lines.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testNewLines() throws Exception {
+        try {
+            this.mHelper.execute(null, "echo 'a'\necho 'b'", //$NON-NLS-1$
+                    false, new StringBuilder(), new StringBuilder());
+            fail("IOException expected"); //$NON-NLS-1$
+        } catch (IOException ex) {
+            // Expected
+        }
+        assertTrue(this.mHelper.isActive());
+        assertEquals(0, this.mHelper.execute(
+                null, "true", false, new StringBuilder(), new StringBuilder())); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that performs a test over requests that exceed its time of wait.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testTimeout() throws Exception {
+        ResidentHelper helper = new ResidentHelper(SHELL, 500L, 5000L);
+        helper.start();
+        try {
+            // The time of wait is extended while new data is received
+            StringBuilder out = new StringBuilder();
+            assertEquals(0, helper.execute(null,
+                    "for i in 1 2 3 4; do echo $i; sleep 0.3; done", //$NON-NLS-1$
+                    true, out, new StringBuilder()));
+            assertEquals("1\n2\n3\n4\n", out.toString()); //$NON-NLS-1$
+
+            try {
+                helper.execute(null, "sleep 2; echo 'late'", //$NON-NLS-1$
+                        false, new StringBuilder(), new StringBuilder());
+                fail("OperationTimeoutException expected"); //$NON-NLS-1$
+            } catch (OperationTimeoutException ex) {
+                // Expected
+            }
+            assertTrue(helper.isActive());
+
+            // The next request is not sent while the previous one is executing
+            assertEquals(ResidentHelper.EXIT_CODE_BUSY, helper.execute(
+                    null, "true", false, new StringBuilder(), new StringBuilder())); //$NON-NLS-1$
+
+            // The response of the previous request is discarded
+            Thread.sleep(2000L);
+            out = new StringBuilder();
+            assertEquals(0, helper.execute(
+                    null, "echo 'next'", false, out, new StringBuilder())); //$NON-NLS-1$
+            assertEquals("next\n", out.toString()); //$NON-NLS-1$
+        } finally {
+            helper.stop();
+        }
+    }
+
+}
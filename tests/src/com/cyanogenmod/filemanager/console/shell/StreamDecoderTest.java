@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.console.shell;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A class for testing the decoding stage of the streams of the shell.
+ *
+ * @see StreamDecoder
+ */
+public class StreamDecoderTest extends android.test.AndroidTestCase {
+
+    /**
+     * A channel that returns its data in chunks of a fixed size.
+     */
+    private static class ChunkedChannel implements ReadableByteChannel {
+        private final byte[] mData;
+        private final int mChunk;
+        private int mPos;
+
+        ChunkedChannel(byte[] data, int chunk) {
+            super();
+            this.mData = data;
+            this.mChunk = chunk;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (this.mPos == this.mData.length) {
+                return -1;
+            }
+            int len = Math.min(Math.min(this.mChunk, dst.remaining()),
+                    this.mData.length - this.mPos);
+            dst.put(this.mData, this.mPos, len);
+            this.mPos += len;
+            return len;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {/**NON BLOCK**/}
+    }
+
+    /**
+     * A listener that collects the decoded data.
+     */
+    private static class Collector implements StreamDecoder.OnDecodedListener {
+        final StringBuilder mData = new StringBuilder();
+
+        Collector() {
+            super();
+        }
+
+        @Override
+        public void onDecoded(CharBuffer chars) {
+            this.mData.append(chars);
+        }
+    }
+
+    /**
+     * Method that performs a test over multibyte file names split across reads.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testSplitMultibyte() throws Exception {
+        String names =
+                "/sdcard/\u4e2d\u6587\u6587\u4ef6.txt\n" + //$NON-NLS-1$
+                "/sdcard/\ud83d\ude00 caf\u00e9\n"; //$NON-NLS-1$
+        byte[] data = names.getBytes(StreamDecoder.CHARSET);
+
+        // Every chunk size splits some characters, and the buffers are smaller
+        // than the data
+        for (int chunk = 1; chunk <= 5; chunk++) {
+            StreamDecoder decoder = new StreamDecoder(8, chunk % 2 == 0);
+            ChunkedChannel channel = new ChunkedChannel(data, chunk);
+            Collector collector = new Collector();
+            while (decoder.read(channel, collector)) {
+                /**NON BLOCK**/
+            }
+            assertEquals(names, collector.mData.toString());
+        }
+    }
+
+    /**
+     * Method that performs a test over an incomplete sequence at the end of the stream.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testTruncated() throws Exception {
+        byte[] data = "a\u4e2d".getBytes(StreamDecoder.CHARSET); //$NON-NLS-1$
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        StreamDecoder decoder = new StreamDecoder(16, false);
+        ChunkedChannel channel = new ChunkedChannel(truncated, 16);
+        Collector collector = new Collector();
+        while (decoder.read(channel, collector)) {
+            /**NON BLOCK**/
+        }
+        assertEquals("a\ufffd", collector.mData.toString()); //$NON-NLS-1$
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.ui.widgets;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.RegularFile;
+import com.cyanogenmod.filemanager.model.Symlink;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A class for testing the coalescing of the changes of a watched directory.
+ *
+ * @see ChangeWindow
+ */
+public class ChangeWindowTest extends android.test.AndroidTestCase {
+
+    private static final String DIR = "/sdcard"; //$NON-NLS-1$
+
+    /**
+     * Method that performs a test over the coalescing of the events of a window.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testCoalesce() throws Exception {
+        ChangeWindow window = new ChangeWindow();
+
+        // Only the first event of a window schedules its end
+        assertTrue(window.add("b")); //$NON-NLS-1$
+        assertFalse(window.add("a")); //$NON-NLS-1$
+        assertFalse(window.add("b")); //$NON-NLS-1$
+        assertFalse(window.add("c")); //$NON-NLS-1$
+        assertEquals(Arrays.asList("b", "a", "c"), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+                Arrays.asList(window.close()));
+
+        // A closed window is empty, and the next event opens a new window
+        assertEquals(0, window.close().length);
+        assertTrue(window.add("a")); //$NON-NLS-1$
+        window.clear();
+        assertEquals(0, window.close().length);
+        assertTrue(window.add("a")); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that performs a test over the limit of changes applied one by one.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testReload() throws Exception {
+        ChangeWindow window = new ChangeWindow();
+        for (int i = 0; i < ChangeWindow.MAX_CHANGES; i++) {
+            window.add("file" + i); //$NON-NLS-1$
+            // The same file again doesn't count
+            window.add("file" + i); //$NON-NLS-1$
+        }
+        String[] names = window.close();
+        assertEquals(ChangeWindow.MAX_CHANGES, names.length);
+        assertFalse(ChangeWindow.isReloadRequired(names));
+
+        for (int i = 0; i <= ChangeWindow.MAX_CHANGES; i++) {
+            window.add("file" + i); //$NON-NLS-1$
+        }
+        assertTrue(ChangeWindow.isReloadRequired(window.close()));
+    }
+
+    /**
+     * Method that performs a test over the split of the retrieved changes.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testSplit() throws Exception {
+        String[] names = {"new", "deleted", "dangling"}; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        String[] paths = ChangeWindow.toPaths(DIR, names);
+        assertEquals("/sdcard/new", paths[0]); //$NON-NLS-1$
+
+        Date date = new Date();
+        FileSystemObject file =
+                new RegularFile("new", DIR, null, null, null, 0L, date, date, date); //$NON-NLS-1$
+        // A symlink whose target doesn't exist is still an entry of the directory
+        FileSystemObject link = new Symlink("dangling", "/missing", //$NON-NLS-1$ //$NON-NLS-2$
+                DIR, null, null, null, date, date, date);
+        List<FileSystemObject> infos = Arrays.asList(file, null, link);
+
+        List<FileSystemObject> changed = new ArrayList<FileSystemObject>();
+        List<String> removed = new ArrayList<String>();
+        ChangeWindow.split(paths, infos, changed, removed);
+        assertEquals(Arrays.asList(file, link), changed);
+        assertEquals(Arrays.asList("/sdcard/deleted"), removed); //$NON-NLS-1$
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+import com.cyanogenmod.filemanager.model.BlockDevice;
+import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.ParentDirectory;
+import com.cyanogenmod.filemanager.model.RegularFile;
+import com.cyanogenmod.filemanager.preferences.DisplayPreferencesSnapshot;
+import com.cyanogenmod.filemanager.preferences.NavigationSortMode;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A class for testing the application of the user preferences to the listed files.
+ *
+ * @see FileHelper#applyUserPreferences(List, java.util.Map, boolean, boolean,
+ * DisplayPreferencesSnapshot)
+ */
+public class FileHelperTest extends android.test.AndroidTestCase {
+
+    private static final String TAG = "FileHelperTest"; //$NON-NLS-1$
+
+    private static final String DIR = "/sdcard"; //$NON-NLS-1$
+    private static final long MTIME = 1357390899000L;
+
+    /**
+     * Method that performs a test over the filter of hidden and system files.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testFilter() throws Exception {
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+        files.add(createFile(".hidden1", MTIME)); //$NON-NLS-1$
+        files.add(createFile("b", MTIME)); //$NON-NLS-1$
+        files.add(createFile(".hidden2", MTIME)); //$NON-NLS-1$
+        files.add(createSystemFile("system")); //$NON-NLS-1$
+        files.add(createFile("a", MTIME)); //$NON-NLS-1$
+        files.add(createFile(".hidden3", MTIME)); //$NON-NLS-1$
+
+        // The displayed files keep their order if they are not sorted
+        DisplayPreferencesSnapshot prefs = new DisplayPreferencesSnapshot(
+                false, false, false, true, false, NavigationSortMode.NAME_ASC);
+        FileHelper.applyUserPreferences(files, null, true, false, prefs);
+        assertEquals(2, files.size());
+        assertEquals("b", files.get(0).getName()); //$NON-NLS-1$
+        assertEquals("a", files.get(1).getName()); //$NON-NLS-1$
+
+        // ChRooted environments never display hidden files
+        files.add(createFile(".hidden", MTIME)); //$NON-NLS-1$
+        prefs = new DisplayPreferencesSnapshot(
+                true, true, true, true, false, NavigationSortMode.NAME_ASC);
+        FileHelper.applyUserPreferences(files, null, true, true, prefs);
+        assertEquals(2, files.size());
+    }
+
+    /**
+     * Method that performs a test over the sort of the files.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testSort() throws Exception {
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>();
+        files.add(createFile("b", MTIME + 1000L)); //$NON-NLS-1$
+        files.add(createDirectory("Z")); //$NON-NLS-1$
+        files.add(createFile("A", MTIME + 2000L)); //$NON-NLS-1$
+        files.add(new ParentDirectory(DIR));
+        files.add(createFile("\u00e9", MTIME)); //$NON-NLS-1$
+        files.add(createDirectory("c")); //$NON-NLS-1$
+
+        // Case insensitive names, directories first
+        DisplayPreferencesSnapshot prefs = new DisplayPreferencesSnapshot(
+                true, true, true, true, false, NavigationSortMode.NAME_ASC);
+        FileHelper.applyUserPreferences(files, null, false, false, prefs);
+        assertNames(files, "..,c,Z,A,b,\u00e9"); //$NON-NLS-1$
+
+        // Case sensitive names, descending
+        prefs = new DisplayPreferencesSnapshot(
+                true, true, true, false, true, NavigationSortMode.NAME_DESC);
+        FileHelper.applyUserPreferences(files, null, false, false, prefs);
+        assertNames(files, "..,\u00e9,c,b,Z,A"); //$NON-NLS-1$
+
+        // Dates, descending. Directories have the oldest date
+        prefs = new DisplayPreferencesSnapshot(
+                true, true, true, false, false, NavigationSortMode.DATE_DESC);
+        FileHelper.applyUserPreferences(files, null, false, false, prefs);
+        assertNames(files, "..,A,b,\u00e9,c,Z"); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that measures the application of the user preferences to a big listing.
+     *
+     * @throws Exception If test failed
+     */
+    @LargeTest
+    public void testApplyUserPreferencesPerformance() throws Exception {
+        final int count = 100000;
+        Random random = new Random(count);
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>(count);
+        for (int i = 0; i < count; i++) {
+            // A third of the files are hidden
+            String name = (i % 3 == 0 ? "." : "") + Long.toHexString(random.nextLong());
+            files.add(createFile(name, MTIME));
+        }
+        DisplayPreferencesSnapshot prefs = new DisplayPreferencesSnapshot(
+                false, false, false, true, false, NavigationSortMode.NAME_ASC);
+
+        long start = System.currentTimeMillis();
+        FileHelper.applyUserPreferences(files, null, false, false, prefs);
+        long elapsed = System.currentTimeMillis() - start;
+        Log.i(TAG, String.format(
+                "applyUserPreferences: %d files in %d ms", //$NON-NLS-1$
+                Integer.valueOf(count), Long.valueOf(elapsed)));
+
+        assertEquals(count - (count + 2) / 3, files.size());
+        for (int i = 1; i < files.size(); i++) {
+            assertTrue(files.get(i - 1).getName().compareToIgnoreCase(
+                    files.get(i).getName()) <= 0);
+        }
+    }
+
+    /**
+     * Method that asserts the names of the files.
+     *
+     * @param files The files
+     * @param expected The expected names, separated by commas
+     */
+    private static void assertNames(List<FileSystemObject> files, String expected) {
+        String[] names = expected.split(","); //$NON-NLS-1$
+        assertEquals(names.length, files.size());
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(names[i], files.get(i).getName());
+        }
+    }
+
+    /**
+     * Method that creates a regular file.
+     *
+     * @param name The name of the file
+     * @param mtime The last modification time of the file
+     * @return FileSystemObject The file
+     */
+    private static FileSystemObject createFile(String name, long mtime) {
+        Date date = new Date(mtime);
+        return new RegularFile(name, DIR, null, null, null, 0L, date, date, date);
+    }
+
+    /**
+     * Method that creates a system file (a block device).
+     *
+     * @param name The name of the file
+     * @return FileSystemObject The file
+     */
+    private static FileSystemObject createSystemFile(String name) {
+        Date date = new Date(MTIME);
+        return new BlockDevice(name, DIR, null, null, null, date, date, date);
+    }
+
+    /**
+     * Method that creates a directory.
+     *
+     * @param name The name of the directory
+     * @return FileSystemObject The directory
+     */
+    private static FileSystemObject createDirectory(String name) {
+        Date date = new Date(MTIME - 1000L);
+        return new Directory(name, DIR, null, null, null, date, date, date);
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.console.Console;
+import com.cyanogenmod.filemanager.console.java.JavaConsole;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.RegularFile;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A class for testing the cache of the listings of the directories.
+ *
+ * @see ListingCache
+ */
+public class ListingCacheTest extends android.test.AndroidTestCase {
+
+    private static final String SDCARD = "/sdcard"; //$NON-NLS-1$
+    private static final String MNT_SDCARD = "/mnt/sdcard"; //$NON-NLS-1$
+    private static final long MTIME = 1357390899000L;
+    private static final long LISTED = MTIME + 60000L;
+
+    /**
+     * Method that performs a test over the validation by the modification time.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testValidation() throws Exception {
+        ListingCache cache = new ListingCache(1024 * 1024);
+        List<FileSystemObject> files = createListing(SDCARD, 10);
+        assertNull(cache.get(SDCARD, SDCARD, null, MTIME, LISTED));
+        assertTrue(cache.put(SDCARD, SDCARD, null, files, MTIME, LISTED));
+
+        // The listing is a copy
+        List<FileSystemObject> cached = cache.get(SDCARD, SDCARD, null, MTIME, LISTED);
+        assertEquals(files, cached);
+        cached.clear();
+        assertEquals(10, cache.get(SDCARD, SDCARD, null, MTIME, LISTED).size());
+
+        // A listing of other path of the same directory isn't returned
+        assertNull(cache.get(SDCARD, MNT_SDCARD, null, MTIME, LISTED));
+
+        // A modified directory isn't returned
+        cache.put(SDCARD, SDCARD, null, files, MTIME, LISTED);
+        assertNull(cache.get(SDCARD, SDCARD, null, MTIME + 1000L, LISTED));
+        assertNull(cache.get(SDCARD, SDCARD, null, MTIME, LISTED));
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+
+        // A directory modified just before the listing isn't cached
+        assertFalse(cache.put(SDCARD, SDCARD, null, files, MTIME, MTIME + 500L));
+        assertFalse(cache.put(SDCARD, SDCARD, null, files, 0L, LISTED));
+    }
+
+    /**
+     * Method that performs a test over the listings of different consoles.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testConsoles() throws Exception {
+        ListingCache cache = new ListingCache(1024 * 1024);
+        List<FileSystemObject> files = createListing(SDCARD, 10);
+        Console console = new JavaConsole(getContext(), 1024);
+        cache.put(SDCARD, SDCARD, console, files, MTIME, LISTED);
+        assertNotNull(cache.get(SDCARD, SDCARD, console, MTIME, LISTED));
+
+        // A listing isn't returned to other console
+        assertNull(cache.get(
+                SDCARD, SDCARD, new JavaConsole(getContext(), 1024), MTIME, LISTED));
+        assertNull(cache.get(SDCARD, SDCARD, console, MTIME, LISTED));
+    }
+
+    /**
+     * Method that performs a test over the expiration of the listings.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testExpiration() throws Exception {
+        ListingCache cache = new ListingCache(1024 * 1024);
+        List<FileSystemObject> files = createListing(SDCARD, 10);
+        cache.put(SDCARD, SDCARD, null, files, MTIME, LISTED);
+        long last = LISTED + ListingCache.MAX_AGE - 1;
+        assertNotNull(cache.get(SDCARD, SDCARD, null, MTIME, last));
+
+        // An expired listing isn't returned, even if the directory wasn't modified
+        assertNull(cache.get(SDCARD, SDCARD, null, MTIME, last + 1));
+        assertNull(cache.get(SDCARD, SDCARD, null, MTIME, LISTED));
+
+        // Neither a listing of the future (the clock was changed)
+        cache.put(SDCARD, SDCARD, null, files, MTIME, LISTED);
+        assertNull(cache.get(SDCARD, SDCARD, null, MTIME, LISTED - 1));
+    }
+
+    /**
+     * Method that performs a test over the invalidation of a directory and its
+     * subdirectories.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testInvalidate() throws Exception {
+        ListingCache cache = new ListingCache(1024 * 1024);
+        String[] dirs = {
+                SDCARD,
+                SDCARD + "/DCIM", //$NON-NLS-1$
+                SDCARD + "/DCIM/Camera", //$NON-NLS-1$
+                SDCARD + "/DCIM2"}; //$NON-NLS-1$
+        for (String dir : dirs) {
+            cache.put(dir, dir, null, createListing(dir, 5), MTIME, LISTED);
+        }
+        cache.invalidate(dirs[1]);
+        assertNotNull(cache.get(dirs[0], dirs[0], null, MTIME, LISTED));
+        assertNull(cache.get(dirs[1], dirs[1], null, MTIME, LISTED));
+        assertNull(cache.get(dirs[2], dirs[2], null, MTIME, LISTED));
+        assertNotNull(cache.get(dirs[3], dirs[3], null, MTIME, LISTED));
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Method that performs a test over the eviction of the least recently used listings.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testEviction() throws Exception {
+        List<FileSystemObject> files = createListing("/a", 100); //$NON-NLS-1$
+        ListingCache cache = new ListingCache(Integer.MAX_VALUE);
+        cache.put("/a", "/a", null, files, MTIME, LISTED); //$NON-NLS-1$ //$NON-NLS-2$
+        int size = cache.getSize();
+
+        // Room for two listings
+        cache = new ListingCache(size * 2);
+        cache.put("/a", "/a", null, files, MTIME, LISTED); //$NON-NLS-1$ //$NON-NLS-2$
+        cache.put("/b", "/b", null, files, MTIME, LISTED); //$NON-NLS-1$ //$NON-NLS-2$
+        assertNotNull(cache.get("/a", "/a", null, MTIME, LISTED)); //$NON-NLS-1$ //$NON-NLS-2$
+        cache.put("/c", "/c", null, files, MTIME, LISTED); //$NON-NLS-1$ //$NON-NLS-2$
+        assertNotNull(cache.get("/a", "/a", null, MTIME, LISTED)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertNull(cache.get("/b", "/b", null, MTIME, LISTED)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertNotNull(cache.get("/c", "/c", null, MTIME, LISTED)); //$NON-NLS-1$ //$NON-NLS-2$
+        assertTrue(cache.getSize() <= size * 2);
+
+        // A listing bigger than the cache isn't cached
+        cache = new ListingCache(size - 1);
+        assertFalse(cache.put("/a", "/a", null, files, MTIME, LISTED)); //$NON-NLS-1$ //$NON-NLS-2$
+    }
+
+    /**
+     * Method that creates a listing.
+     *
+     * @param dir The directory
+     * @param count The number of files
+     * @return List<FileSystemObject> The listing
+     */
+    private static List<FileSystemObject> createListing(String dir, int count) {
+        List<FileSystemObject> files = new ArrayList<FileSystemObject>(count);
+        Date date = new Date(MTIME);
+        for (int i = 0; i < count; i++) {
+            files.add(new RegularFile(
+                    "file" + i, dir, null, null, null, 0L, date, date, date)); //$NON-NLS-1$
+        }
+        return files;
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2012 The CyanogenMod Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cyanogenmod.filemanager.util;
+
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.cyanogenmod.filemanager.model.Directory;
+import com.cyanogenmod.filemanager.model.FileSystemObject;
+import com.cyanogenmod.filemanager.model.RegularFile;
+
+import java.text.ParseException;
+
+/**
+ * A class for testing the parse of the terse stat output.
+ *
+ * @see ParseHelper#parseStatOutput(String)
+ */
+public class ParseHelperTest extends android.test.AndroidTestCase {
+
+    private static final String STAT_FILE =
+            "/mnt/sdcard/My Documents/a  file.txt 1234 8 81b4 1000 1015 " + //$NON-NLS-1$
+            "b301 3 1 0 0 1356000000 1356000100 1356000100 4096"; //$NON-NLS-1$
+    private static final String STAT_DIR =
+            "/mnt/sdcard/Music 4096 8 41f9 1000 1015 " + //$NON-NLS-1$
+            "b301 5 2 0 0 1356000000 1356000000 1356000000 4096"; //$NON-NLS-1$
+    private static final String STAT_ROOT =
+            "/ 0 0 41ed 0 0 1 1 13 0 0 1356000000 1356000000 1356000000 4096"; //$NON-NLS-1$
+
+    /**
+     * Method that performs a test over the parse of a terse stat line.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testParseStatOutput() throws Exception {
+        FileSystemObject fso = ParseHelper.parseStatOutput(STAT_FILE);
+        assertTrue(fso instanceof RegularFile);
+        assertEquals("a  file.txt", fso.getName()); //$NON-NLS-1$
+        assertEquals("/mnt/sdcard/My Documents", fso.getParent()); //$NON-NLS-1$
+        assertEquals(1234L, fso.getSize());
+        assertEquals(1000, fso.getUser().getId());
+        assertEquals(1015, fso.getGroup().getId());
+        assertEquals("rw-rw-r--", fso.getPermissions().toRawString()); //$NON-NLS-1$
+        assertEquals(1356000000000L, fso.getLastAccessedTime().getTime());
+        assertEquals(1356000100000L, fso.getLastModifiedTime().getTime());
+        assertEquals(1356000100000L, fso.getLastChangedTime().getTime());
+
+        FileSystemObject root = ParseHelper.parseStatOutput(STAT_ROOT);
+        assertTrue(root instanceof Directory);
+        assertEquals(FileHelper.ROOT_DIRECTORY, root.getName());
+        assertEquals("rwxr-xr-x", root.getPermissions().toRawString()); //$NON-NLS-1$
+    }
+
+    /**
+     * Method that performs a test over the parse of a line in place, inside a buffer.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testParseStatOutputWindow() throws Exception {
+        String data = STAT_FILE + "\n" + STAT_DIR + "\n"; //$NON-NLS-1$ //$NON-NLS-2$
+        int start = STAT_FILE.length() + 1;
+        FileSystemObject fso =
+                ParseHelper.parseStatOutput(data, start, start + STAT_DIR.length());
+        assertTrue(fso instanceof Directory);
+        assertEquals("Music", fso.getName()); //$NON-NLS-1$
+        assertEquals("/mnt/sdcard", fso.getParent()); //$NON-NLS-1$
+        assertEquals("rwxrwx--x", fso.getPermissions().toRawString()); //$NON-NLS-1$
+
+        // The user, group and permissions are shared between lines
+        FileSystemObject fso2 = ParseHelper.parseStatOutput(STAT_DIR);
+        assertSame(fso.getUser(), fso2.getUser());
+        assertSame(fso.getGroup(), fso2.getGroup());
+        assertSame(fso.getPermissions(), fso2.getPermissions());
+    }
+
+    /**
+     * Method that performs a test over the parse of machine listing records.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testParseMachineListOutput() throws Exception {
+        String data =
+                "f 664 1234 1000 1015 1356000000.25 1356000100 1356000100 " + //$NON-NLS-1$
+                "/mnt/sdcard/a \nfile.txt\0" + //$NON-NLS-1$
+                "d 4771 4096 1000 1015 1356000000 1356000000 1356000000 " + //$NON-NLS-1$
+                "/mnt/sdcard/Music\0"; //$NON-NLS-1$
+        int end = data.indexOf('\0');
+        FileSystemObject fso = ParseHelper.parseMachineListOutput(data, 0, end);
+        assertTrue(fso instanceof RegularFile);
+        assertEquals("a \nfile.txt", fso.getName()); //$NON-NLS-1$
+        assertEquals("/mnt/sdcard", fso.getParent()); //$NON-NLS-1$
+        assertEquals(1234L, fso.getSize());
+        assertEquals("rw-rw-r--", fso.getPermissions().toRawString()); //$NON-NLS-1$
+        assertEquals(1356000000000L, fso.getLastAccessedTime().getTime());
+        assertEquals(1356000100000L, fso.getLastModifiedTime().getTime());
+
+        FileSystemObject dir =
+                ParseHelper.parseMachineListOutput(data, end + 1, data.length() - 1);
+        assertTrue(dir instanceof Directory);
+        assertEquals("Music", dir.getName()); //$NON-NLS-1$
+        assertEquals("rwsrwx--x", dir.getPermissions().toRawString()); //$NON-NLS-1$
+
+        try {
+            ParseHelper.parseMachineListOutput(data, 0, 20);
+            fail("ParseException expected"); //$NON-NLS-1$
+        } catch (ParseException ex) {
+            // Expected
+        }
+    }
+
+    /**
+     * Method that performs a test over the parse of invalid terse stat lines.
+     *
+     * @throws Exception If test failed
+     */
+    @SmallTest
+    public void testParseInvalidStatOutput() throws Exception {
+        String[] lines = {
+                "stat: /mnt/sdcard/a: No such file or directory", //$NON-NLS-1$
+                "/mnt/sdcard/a 1234 8 81b4 1000", //$NON-NLS-1$
+                "/mnt/sdcard/a 1234 8 zzzz 1000 1015 " + //$NON-NLS-1$
+                    "b301 3 1 0 0 1356000000 1356000100 1356000100 4096" //$NON-NLS-1$
+        };
+        for (int i = 0; i < lines.length; i++) {
+            try {
+                ParseHelper.parseStatOutput(lines[i]);
+                fail("ParseException expected: " + lines[i]); //$NON-NLS-1$
+            } catch (ParseException ex) {
+                // Expected
+            }
+        }
+    }
+
+}